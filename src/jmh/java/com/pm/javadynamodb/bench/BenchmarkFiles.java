@@ -0,0 +1,94 @@
+package com.pm.javadynamodb.bench;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecordEncoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Scratch directories and generated data shared by the benchmarks.
+ */
+final class BenchmarkFiles {
+
+    static final String TABLE = "Bench";
+    static final String PARTITION_KEY = "customer";
+    static final String SORT_KEY = "orderId";
+
+    private BenchmarkFiles() {
+    }
+
+    static Path newDirectory() {
+        try {
+            return Files.createTempDirectory("jkeydb-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // an order-like item, the same shape the replay benchmark test uses
+    static Item order(String customer, String orderId, int i) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put(PARTITION_KEY, customer);
+        attributes.put(SORT_KEY, orderId);
+        attributes.put("amount", i % 1000);
+        attributes.put("status", i % 7 == 0 ? "SHIPPED" : "OPEN");
+        Item item = new Item();
+        item.setAttributes(attributes);
+        return item;
+    }
+
+    /**
+     * Writes a WAL with one CREATE_TABLE and records PUT_ITEMs spread over partitions.
+     * Goes straight through the encoder, going through WALService would mostly measure fsync.
+     */
+    static void generateLog(Path wal, int records, int partitions) throws IOException {
+        WALRecordEncoder encoder = new WALRecordEncoder();
+        BinaryWriter out = new BinaryWriter(1024 * 1024);
+        long sequence = 0;
+
+        try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            WALRecordEncoder.writeFileHeader(out, 0);
+            encoder.encode(++sequence, WALEntry.forTable(TABLE, PARTITION_KEY, SORT_KEY), out);
+
+            for (int i = 0; i < records; i++) {
+                Item item = order("c" + (i % partitions), "o" + (i / partitions % 50), i);
+                encoder.encode(++sequence, WALEntry.forItem(OperationType.PUT_ITEM, TABLE, item), out);
+                if (out.position() > 512 * 1024) {
+                    drain(out, channel);
+                }
+            }
+            drain(out, channel);
+        }
+    }
+
+    private static void drain(BinaryWriter out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.buffer().hasRemaining()) {
+            channel.write(out.buffer());
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,74 @@
+package com.pm.javadynamodb.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files (-rf json) benchmark by benchmark, so a build can
+ * be checked against the previous one:
+ *
+ *   java -cp target/test-classes:... com.pm.javadynamodb.bench.JmhResultDiff base.json new.json
+ *
+ * A positive change is always an improvement: more throughput, or less time per operation.
+ */
+public final class JmhResultDiff {
+
+    private JmhResultDiff() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: JmhResultDiff <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> candidate = load(new File(args[1]));
+
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "candidate", "change");
+        for (Map.Entry<String, JsonNode> entry : candidate.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue().get("primaryMetric");
+            String unit = after.get("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", after.get("score").asDouble(), "new", unit);
+                continue;
+            }
+            double old = before.get("primaryMetric").get("score").asDouble();
+            double now = after.get("score").asDouble();
+            // throughput is better when higher, the time based modes when lower
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().get("mode").asText());
+            double change = old == 0 ? 0 : (higherIsBetter ? now - old : old - now) / old * 100;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%n", entry.getKey(), old, now, change, unit);
+        }
+    }
+
+    // benchmark name plus its parameters, e.g. StorageBenchmark.getItem{itemsPerPartition=10, items=100000}
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText()
+                    .replace("com.pm.javadynamodb.bench.", ""));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                key.append('{');
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(param.getKey()).append('=').append(param.getValue().asText());
+                    if (fields.hasNext()) {
+                        key.append(", ");
+                    }
+                }
+                key.append('}');
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
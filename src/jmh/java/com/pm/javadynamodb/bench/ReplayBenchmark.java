@@ -0,0 +1,85 @@
+package com.pm.javadynamodb.bench;
+
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for replayWalOnStartup to rebuild a table from a generated log of records
+ * PUT_ITEMs, sequentially and with the parallel replayer. Each invocation is one
+ * complete startup, so this runs in single shot mode.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+
+    @Param({"1000000"})
+    int records;
+
+    @Param({"20000"})
+    int partitions;
+
+    @Param({"1", "4"})
+    int replayThreads;
+
+    private Path directory;
+    private Path wal;
+    private StorageService replayed;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = BenchmarkFiles.newDirectory();
+        wal = directory.resolve("wal.log");
+        BenchmarkFiles.generateLog(wal, records, partitions);
+    }
+
+    @TearDown(Level.Invocation)
+    public void release() {
+        // let the previous startup's tables be collected before the next one is timed
+        if (replayed != null) {
+            replayed.close();
+            replayed = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public StorageService replay() {
+        WALService walService = new WALService(wal.toString(), DurabilityMode.OS_BUFFERED, 10, 1024);
+        walService.init();
+        try {
+            replayed = new StorageService(walService,
+                    new SnapshotService(directory.resolve("snapshots").toString(), 1), replayThreads);
+            replayed.replayWalOnStartup();
+            return replayed;
+        } finally {
+            walService.close();
+        }
+    }
+}
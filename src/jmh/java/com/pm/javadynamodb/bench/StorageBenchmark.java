@@ -0,0 +1,159 @@
+package com.pm.javadynamodb.bench;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * putItem / getItem / query throughput of StorageService on one table holding a fixed
+ * number of items, spread over fewer, larger partitions as itemsPerPartition grows.
+ * Every benchmark has a single-threaded and an all-cores variant. The WAL runs in
+ * OS_BUFFERED mode so the put numbers are about the storage path, not the disk
+ * (WALAppendBenchmark covers that).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int itemsPerPartition;
+
+    @Param("100000")
+    int items;
+
+    private Path directory;
+    private WALService walService;
+    private StorageService storageService;
+    private String[] partitionKeys;
+    private String[] sortKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = BenchmarkFiles.newDirectory();
+        walService = new WALService(directory.resolve("wal.log").toString(), DurabilityMode.OS_BUFFERED, 10, 1024);
+        walService.init();
+        storageService = new StorageService(walService, new SnapshotService(directory.resolve("snapshots").toString(), 1));
+        storageService.replayWalOnStartup();
+        storageService.createTable(BenchmarkFiles.TABLE, BenchmarkFiles.PARTITION_KEY, BenchmarkFiles.SORT_KEY);
+
+        // keys are built up front so the benchmarks don't measure String.format
+        int partitions = Math.max(1, items / itemsPerPartition);
+        partitionKeys = new String[partitions];
+        for (int p = 0; p < partitions; p++) {
+            partitionKeys[p] = "c" + p;
+        }
+        sortKeys = new String[itemsPerPartition];
+        for (int s = 0; s < itemsPerPartition; s++) {
+            sortKeys[s] = String.format("o%06d", s);
+        }
+
+        // loaded in batches, one WAL append each
+        List<WriteRequest> batch = new ArrayList<>();
+        int i = 0;
+        for (String partitionKey : partitionKeys) {
+            for (String sortKey : sortKeys) {
+                batch.add(WriteRequest.put(BenchmarkFiles.order(partitionKey, sortKey, i++).getAttributes()));
+                if (batch.size() == 100) {
+                    storageService.batchWriteItems(Map.of(BenchmarkFiles.TABLE, batch));
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            storageService.batchWriteItems(Map.of(BenchmarkFiles.TABLE, batch));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageService.close();
+        walService.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Item> getItem() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<Item> getItemAllCores() {
+        return get();
+    }
+
+    // overwrites an existing item, so the table keeps its size
+    @Benchmark
+    @Threads(1)
+    public Item putItem() {
+        return put();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Item putItemAllCores() {
+        return put();
+    }
+
+    // first page (up to 100 items) of a random partition
+    @Benchmark
+    @Threads(1)
+    public ItemPage query() {
+        return queryPage();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ItemPage queryAllCores() {
+        return queryPage();
+    }
+
+    private Optional<Item> get() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return storageService.getItem(BenchmarkFiles.TABLE,
+                partitionKeys[random.nextInt(partitionKeys.length)], sortKeys[random.nextInt(sortKeys.length)]);
+    }
+
+    private Item put() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Item item = BenchmarkFiles.order(partitionKeys[random.nextInt(partitionKeys.length)],
+                sortKeys[random.nextInt(sortKeys.length)], random.nextInt());
+        return storageService.putItem(BenchmarkFiles.TABLE, item);
+    }
+
+    private ItemPage queryPage() {
+        String partitionKey = partitionKeys[ThreadLocalRandom.current().nextInt(partitionKeys.length)];
+        return storageService.query(BenchmarkFiles.TABLE, partitionKey, null, null, 100, null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.pm.javadynamodb.bench;
+
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of WALService.log (enqueue until the group commit acknowledges it) in each
+ * durability mode, for one writer and for 16 writers sharing the flusher. Sampled, so
+ * the JSON results carry percentiles and not just the mean.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WALAppendBenchmark {
+
+    @Param({"FSYNC_PER_BATCH", "FSYNC_INTERVAL", "OS_BUFFERED"})
+    DurabilityMode durabilityMode;
+
+    private Path directory;
+    private WALService walService;
+    private WALEntry entry;
+
+    // a fresh log every iteration, so the file doesn't grow across the whole run
+    @Setup(Level.Iteration)
+    public void setUp() {
+        directory = BenchmarkFiles.newDirectory();
+        walService = new WALService(directory.resolve("wal.log").toString(), durabilityMode, 10, 1024);
+        walService.init();
+        entry = WALEntry.forItem(OperationType.PUT_ITEM, BenchmarkFiles.TABLE,
+                BenchmarkFiles.order("c42", "o000042", 42));
+        walService.log(WALEntry.forTable(BenchmarkFiles.TABLE, BenchmarkFiles.PARTITION_KEY, BenchmarkFiles.SORT_KEY));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        walService.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long append() {
+        return walService.log(entry);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long appendConcurrent() {
+        return walService.log(entry);
+    }
+}
@@ -0,0 +1,111 @@
+package com.pm.javadynamodb.api.controller;
+
+import com.pm.javadynamodb.storage.cache.ResponseCache;
+import com.pm.javadynamodb.storage.cache.ResponseCacheStats;
+import com.pm.javadynamodb.storage.engine.StorageEngine;
+import com.pm.javadynamodb.storage.metrics.PrometheusWriter;
+import com.pm.javadynamodb.storage.recovery.RecoveryStats;
+import com.pm.javadynamodb.storage.replication.ReplicationFollower;
+import com.pm.javadynamodb.storage.replication.ReplicationLeader;
+import com.pm.javadynamodb.storage.replication.ReplicationRole;
+import com.pm.javadynamodb.storage.replication.ReplicationStatus;
+import com.pm.javadynamodb.storage.service.MetricsService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.WALStats;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Read-only endpoints that show what the storage internals are doing.
+@RestController
+@RequestMapping("/api/v1/admin")
+public class AdminController {
+
+    private final WALService walService;
+    private final StorageService storageService;
+    private final StorageEngine storageEngine;
+    private final MetricsService metricsService;
+    private final ReplicationLeader replicationLeader;
+    private final ReplicationFollower replicationFollower;
+    private final ResponseCache responseCache;
+
+    public AdminController(WALService walService, StorageService storageService, StorageEngine storageEngine,
+                           MetricsService metricsService, ReplicationLeader replicationLeader,
+                           ReplicationFollower replicationFollower, ResponseCache responseCache) {
+        this.walService = walService;
+        this.storageService = storageService;
+        this.storageEngine = storageEngine;
+        this.metricsService = metricsService;
+        this.replicationLeader = replicationLeader;
+        this.replicationFollower = replicationFollower;
+        this.responseCache = responseCache;
+    }
+
+    // Latency percentiles, WAL counters, table sizes and replay progress in the Prometheus text format.
+    // Point a Prometheus scrape job at it with metrics_path: /api/v1/admin/metrics
+    // GET http://localhost:8080/api/v1/admin/metrics
+    @GetMapping("/metrics")
+    public ResponseEntity<String> getMetrics() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(PrometheusWriter.CONTENT_TYPE))
+                .body(metricsService.scrape());
+    }
+
+    // Group-commit counters: how many entries share a batch and how long writers wait.
+    // GET http://localhost:8080/api/v1/admin/wal/stats
+    @GetMapping("/wal/stats")
+    public ResponseEntity<WALStats> getWalStats() {
+        return ResponseEntity.ok(walService.getStats());
+    }
+
+    // How long the last startup spent loading the snapshot and replaying the WAL tail.
+    // GET http://localhost:8080/api/v1/admin/recovery
+    @GetMapping("/recovery")
+    public ResponseEntity<RecoveryStats> getRecoveryStats() {
+        return ResponseEntity.ok(storageService.getRecoveryStats());
+    }
+
+    // This node's replication role and position; on a follower also how far behind the leader it is.
+    // GET http://localhost:8080/api/v1/admin/replication
+    @GetMapping("/replication")
+    public ResponseEntity<ReplicationStatus> getReplicationStatus() {
+        if (replicationLeader.isEnabled()) {
+            return ResponseEntity.ok(replicationLeader.getStatus());
+        }
+        if (replicationFollower.isEnabled()) {
+            return ResponseEntity.ok(replicationFollower.getStatus());
+        }
+        long sequence = walService.getLastSequence();
+        return ResponseEntity.ok(new ReplicationStatus(ReplicationRole.NONE, sequence, sequence, 0, false, 0, 0, 0));
+    }
+
+    // Storage engine counters; for the LSM engine: lookup hit rate and Bloom filter false positives,
+    // for the memory engine with tiering: resident and spilled partitions, faults and eviction cost.
+    // GET http://localhost:8080/api/v1/admin/storage/stats
+    @GetMapping("/storage/stats")
+    public ResponseEntity<Object> getStorageStats() {
+        return ResponseEntity.ok(storageEngine.getStats());
+    }
+
+    // Hit ratio and memory use of the response cache (all zero while jkeydb.cache.max-bytes=0).
+    // GET http://localhost:8080/api/v1/admin/cache/stats
+    @GetMapping("/cache/stats")
+    public ResponseEntity<ResponseCacheStats> getCacheStats() {
+        return ResponseEntity.ok(responseCache.getStats());
+    }
+
+    // Take a checkpoint right now instead of waiting for the background one.
+    // POST http://localhost:8080/api/v1/admin/checkpoint
+    @PostMapping("/checkpoint")
+    public ResponseEntity<Map<String, Long>> checkpoint() throws IOException {
+        long sequence = storageService.checkpoint();
+        return ResponseEntity.ok(Map.of("sequence", sequence));
+    }
+}
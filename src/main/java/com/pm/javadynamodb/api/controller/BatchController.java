@@ -0,0 +1,55 @@
+package com.pm.javadynamodb.api.controller;
+
+import com.pm.javadynamodb.api.dto.BatchGetRequest;
+import com.pm.javadynamodb.api.dto.BatchWriteRequest;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.storage.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+// BatchWriteItem / BatchGetItem: many items, possibly across tables, in one request.
+// A batch write is logged to the WAL as one append, entries that fail validation are
+// reported in errors and the rest still goes through.
+@RestController
+@RequestMapping("/api/v1/batch")
+public class BatchController {
+
+    private final StorageService storageService;
+    // most puts/deletes (or keys) a single batch may carry
+    private final int maxBatchItems;
+
+    public BatchController(StorageService storageService,
+                           @Value("${jkeydb.api.max-batch-items:100}") int maxBatchItems) {
+        this.storageService = storageService;
+        this.maxBatchItems = maxBatchItems;
+    }
+
+    // POST http://localhost:8080/api/v1/batch/write
+    @PostMapping("/write")
+    public ResponseEntity<BatchWriteResult> batchWrite(@RequestBody BatchWriteRequest request) {
+        checkSize(request.getRequestItems());
+        return ResponseEntity.ok(storageService.batchWriteItems(request.getRequestItems()));
+    }
+
+    // POST http://localhost:8080/api/v1/batch/get
+    @PostMapping("/get")
+    public ResponseEntity<BatchGetResult> batchGet(@RequestBody BatchGetRequest request) {
+        checkSize(request.getRequestItems());
+        return ResponseEntity.ok(storageService.batchGetItems(request.getRequestItems()));
+    }
+
+    private void checkSize(Map<String, ? extends List<?>> requestItems) {
+        if (requestItems == null || requestItems.isEmpty()) {
+            throw new IllegalArgumentException("requestItems must not be empty");
+        }
+        int count = requestItems.values().stream().mapToInt(list -> list == null ? 0 : list.size()).sum();
+        if (count > maxBatchItems) {
+            throw new IllegalArgumentException("A batch may hold at most " + maxBatchItems + " items, got " + count);
+        }
+    }
+}
@@ -1,13 +1,26 @@
 package com.pm.javadynamodb.api.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.javadynamodb.api.dto.QueryResponse;
+import com.pm.javadynamodb.api.dto.UpdateItemRequest;
 import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.storage.cache.ResponseCache;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
 import com.pm.javadynamodb.storage.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 // @RestController marks this class as a request handler.
 // @RequestMapping("/api/v1") sets a base path for all endpoints in this controller.
@@ -16,9 +29,20 @@ import java.util.Optional;
 public class DatabaseController {
 
     private final StorageService storageService;
+    private final ObjectMapper objectMapper;
+    // JSON of hot getItem/queryItems responses, off unless jkeydb.cache.max-bytes is set
+    private final ResponseCache responseCache;
+    // upper bound (and default) for the Limit of a paginated read
+    private final int maxPageSize;
 
-    public DatabaseController(StorageService storageService) {
+    public DatabaseController(StorageService storageService,
+                              ObjectMapper objectMapper,
+                              ResponseCache responseCache,
+                              @Value("${jkeydb.api.max-page-size:1000}") int maxPageSize) {
         this.storageService = storageService;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
+        this.maxPageSize = maxPageSize;
     }
 
     // Endpoint to add or update an item in a table.
@@ -35,16 +59,32 @@ public class DatabaseController {
 
     // Endpoint to retrieve an item from a table.
     // GET http://localhost:8080/api/v1/tables/Users/items/user123
+    // Add projection=name,email to only get those attributes back.
     @GetMapping("/tables/{tableName}/items/{partitionKey}/{sortKey}")
-    public ResponseEntity<Item> getItem(
+    public ResponseEntity<Object> getItem(
             @PathVariable String tableName, // @PathVariable gets the tableName directly from the url
             @PathVariable String partitionKey,
-            @PathVariable String sortKey) {
+            @PathVariable String sortKey,
+            @RequestParam(required = false) String projection) {
+
+        return cached(tableName, partitionKey, cacheRequest("item", sortKey, projection),
+                () -> storageService.getItem(tableName, partitionKey, sortKey, ProjectionExpression.parse(projection)));
+    }
+
+    // Endpoint to change some attributes of an item in place, creating it if it doesn't exist.
+    // Returns the item as it is after the update.
+    // PATCH http://localhost:8080/api/v1/tables/Music/items/Daft%20Punk/Around%20the%20World
+    // {"updateExpression": "SET genre = 'House' ADD plays 1 REMOVE draft"}
+    @PatchMapping("/tables/{tableName}/items/{partitionKey}/{sortKey}")
+    public ResponseEntity<Item> updateItem(
+            @PathVariable String tableName,
+            @PathVariable String partitionKey,
+            @PathVariable String sortKey,
+            @RequestBody UpdateItemRequest request) {
 
-        Optional<Item> item = storageService.getItem(tableName, partitionKey, sortKey);
-        // A clean way to return the item if present, or a 404 Not Found otherwise.
-        return item.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        Item updated = storageService.updateItem(tableName, partitionKey, sortKey,
+                UpdateExpression.parse(request.getUpdateExpression()));
+        return ResponseEntity.ok(updated);
     }
 
     // Endpoint to delete an item from a table.
@@ -60,14 +100,103 @@ public class DatabaseController {
         return ResponseEntity.noContent().build();
     }
 
+    // Query one partition, one page at a time (DynamoDB style Limit / ExclusiveStartKey).
+    // Pass the returned lastEvaluatedKey.sortKey as exclusiveStartSortKey to get the next page.
+    // filter (e.g. year >= 2001 AND begins_with(genre, 'House')) drops items on the server and
+    // projection (e.g. title,year) trims attributes. Limit counts items read before the filter,
+    // so a filtered page can be short and still have a lastEvaluatedKey.
+    // GET http://localhost:8080/api/v1/tables/Music/items?partitionKey=Daft%20Punk&limit=100
     @GetMapping("/tables/{tableName}/items")
-    public ResponseEntity<Collection<Item>> queryItems(
+    public ResponseEntity<Object> queryItems(
             @PathVariable String tableName, @RequestParam String partitionKey,
             @RequestParam(required = false) String startKey,
+            @RequestParam(required = false) String endKey,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String exclusiveStartSortKey,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String projection
+    ) {
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        String request = cacheRequest("query", startKey, endKey, Integer.toString(pageSize),
+                exclusiveStartSortKey, filter, projection);
+        return cached(tableName, partitionKey, request, () -> {
+            ItemPage page = storageService.query(tableName, partitionKey, startKey, endKey, pageSize, exclusiveStartSortKey,
+                    FilterExpression.parse(filter), ProjectionExpression.parse(projection));
+            return Optional.of(new QueryResponse(page.items(), page.items().size(), page.lastEvaluatedKey()));
+        });
+    }
+
+    // Query a global secondary index: items whose index partition key matches, in index sort key order.
+    // GET http://localhost:8080/api/v1/tables/Music/indexes/GenreIndex/items?partitionKey=House
+    @GetMapping("/tables/{tableName}/indexes/{indexName}/items")
+    public ResponseEntity<QueryResponse> queryIndex(
+            @PathVariable String tableName, @PathVariable String indexName,
+            @RequestParam String partitionKey,
+            @RequestParam(required = false) String startKey,
             @RequestParam(required = false) String endKey
     ) {
-        Collection<Item> items = storageService.query(tableName, partitionKey, startKey, endKey);
+        List<Item> items = storageService.queryIndex(tableName, indexName, partitionKey, startKey, endKey);
+        return ResponseEntity.ok(new QueryResponse(items, items.size(), null));
+    }
+
+    // Stream a whole partition (or range) as NDJSON, one item per line, without paging.
+    // GET http://localhost:8080/api/v1/tables/Music/items/stream?partitionKey=Daft%20Punk
+    @GetMapping("/tables/{tableName}/items/stream")
+    public ResponseEntity<StreamingResponseBody> streamQuery(
+            @PathVariable String tableName, @RequestParam String partitionKey,
+            @RequestParam(required = false) String startKey,
+            @RequestParam(required = false) String endKey,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String projection
+    ) {
+        storageService.getTable(tableName); // 404 now, not half way through the response
+        // parsed up front so a bad expression is a 400, not a broken stream
+        FilterExpression filterExpression = FilterExpression.parse(filter);
+        ProjectionExpression projectionExpression = ProjectionExpression.parse(projection);
+        StreamingResponseBody body = ItemStreams.ndjson(objectMapper,
+                () -> storageService.openQuery(tableName, partitionKey, startKey, endKey, filterExpression, projectionExpression));
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Answers a read of one partition from the response cache when it can. Otherwise it reads,
+    // writes the JSON once and keeps the bytes for the next time (if they are small enough).
+    // An empty result is a 404 and isn't cached.
+    private ResponseEntity<Object> cached(String tableName, String partitionKey, String request,
+                                          Supplier<Optional<?>> read) {
+        if (!responseCache.isEnabled()) {
+            return read.get().<ResponseEntity<Object>>map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        }
+        String cachePartition = storageService.cachePartitionKey(tableName, partitionKey);
+        ResponseCache.Key key = new ResponseCache.Key(tableName, cachePartition, request);
+        // taken before anything is read, so a write from here on keeps this read out of the cache
+        long stamp = responseCache.stamp(tableName, cachePartition);
+        boolean cacheable = storageService.isResponseCacheable(tableName);
+
+        byte[] body = cacheable ? responseCache.get(key) : null;
+        if (body == null) {
+            Optional<?> response = read.get();
+            if (response.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            try {
+                body = objectMapper.writeValueAsBytes(response.get());
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Failed to serialize the response", e);
+            }
+            if (cacheable) {
+                responseCache.put(key, body, stamp);
+            }
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 
-        return ResponseEntity.ok(items);
+    // the parameters of a read as one cache key; lengths first, so no two reads end up with the same one
+    private static String cacheRequest(String... parts) {
+        StringBuilder request = new StringBuilder();
+        for (String part : parts) {
+            request.append(part == null ? "-" : part.length() + ":" + part).append('|');
+        }
+        return request.toString();
     }
 }
@@ -0,0 +1,42 @@
+package com.pm.javadynamodb.api.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.function.Supplier;
+
+/**
+ * Writes items as NDJSON (one JSON object per line) straight from a store iterator.
+ * Only the item being written is held in memory, so a stream can cover a whole table.
+ */
+final class ItemStreams {
+
+    // push what we have to the client every so often instead of buffering the whole response
+    private static final int FLUSH_EVERY = 256;
+
+    private ItemStreams() {
+    }
+
+    /**
+     * The iterator is opened and closed on the thread that writes the response, which is
+     * not the request thread, so callers should check the table exists before this.
+     */
+    static StreamingResponseBody ndjson(ObjectMapper objectMapper, Supplier<ItemIterator> items) {
+        return out -> {
+            try (ItemIterator iterator = items.get();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // the container owns the stream
+                int written = 0;
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                    generator.writeRaw('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+        };
+    }
+}
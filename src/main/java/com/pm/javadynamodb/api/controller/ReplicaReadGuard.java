@@ -0,0 +1,40 @@
+package com.pm.javadynamodb.api.controller;
+
+import com.pm.javadynamodb.storage.replication.ReplicationFollower;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// On a replication follower: tells every reader how far behind the leader the data is
+// (X-JKeyDB-Replication-Lag-Millis, -1 before the first sync) and refuses reads with a 503
+// once that is more than jkeydb.replication.max-lag-millis. Does nothing on other nodes.
+// The wire protocol does the same check in WireRequestHandler.
+@Configuration
+public class ReplicaReadGuard implements WebMvcConfigurer, HandlerInterceptor {
+
+    public static final String LAG_HEADER = "X-JKeyDB-Replication-Lag-Millis";
+
+    private final ReplicationFollower follower;
+
+    public ReplicaReadGuard(ReplicationFollower follower) {
+        this.follower = follower;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/api/v1/tables/**", "/api/v1/batch/get", "/api/v1/transact/get");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!follower.isEnabled()) {
+            return true;
+        }
+        response.setHeader(LAG_HEADER, Long.toString(follower.getLagMillis()));
+        follower.checkReadLag();
+        return true;
+    }
+}
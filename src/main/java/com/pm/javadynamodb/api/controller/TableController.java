@@ -1,29 +1,58 @@
 package com.pm.javadynamodb.api.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pm.javadynamodb.api.dto.CreateTableRequest;
+import com.pm.javadynamodb.api.dto.ParallelScanResponse;
 import com.pm.javadynamodb.api.dto.TableResponse;
-import com.pm.javadynamodb.core.model.Item;
-import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.api.dto.TimeToLiveRequest;
+import com.pm.javadynamodb.api.dto.TimeToLiveResponse;
+import com.pm.javadynamodb.core.model.ChangePage;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.core.model.ParallelScanPage;
+import com.pm.javadynamodb.core.model.ScanSegment;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import com.pm.javadynamodb.storage.service.ParallelScanService;
 import com.pm.javadynamodb.storage.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/v1/tables")
 public class TableController {
+    // longest a change stream read may wait for new changes
+    private static final long MAX_CHANGE_WAIT_MILLIS = 20_000;
+
     private final StorageService storageService;
+    private final ParallelScanService parallelScanService;
+    private final ObjectMapper objectMapper;
+    // upper bound (and default) for the Limit of a paginated read
+    private final int maxPageSize;
 
-    public TableController(StorageService storageService) {
+    public TableController(StorageService storageService,
+                           ParallelScanService parallelScanService,
+                           ObjectMapper objectMapper,
+                           @Value("${jkeydb.api.max-page-size:1000}") int maxPageSize) {
         this.storageService = storageService;
+        this.parallelScanService = parallelScanService;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
     }
 
     // endpoint to create a new table
@@ -33,7 +62,10 @@ public class TableController {
         storageService.createTable(
                 request.getTableName(),
                 request.getPartitionKeyName(),
-                request.getSortKeyName());
+                request.getPartitionKeyType() == null ? KeyType.STRING : request.getPartitionKeyType(),
+                request.getSortKeyName(),
+                request.getSortKeyType() == null ? KeyType.STRING : request.getSortKeyType(),
+                request.getGlobalSecondaryIndexes() == null ? List.of() : request.getGlobalSecondaryIndexes());
 
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
@@ -44,15 +76,107 @@ public class TableController {
         return ResponseEntity.noContent().build();
     }
 
-    @GetMapping("/{tableName}")
-    public ResponseEntity<TableResponse> getTable(@PathVariable String tableName) {
-        Table table = storageService.getTable(tableName);
+    // Turn item expiry on (or off with a null attributeName). Items whose attribute holds an
+    // epoch-seconds time in the past disappear from reads at once and are deleted in the background.
+    // PUT http://localhost:8080/api/v1/tables/Sessions/ttl  {"attributeName": "expiresAt"}
+    @PutMapping("/{tableName}/ttl")
+    public ResponseEntity<TimeToLiveResponse> updateTimeToLive(@PathVariable String tableName,
+                                                               @RequestBody TimeToLiveRequest request) {
+        storageService.updateTimeToLive(tableName, request.getAttributeName());
+        return describeTimeToLive(tableName);
+    }
+
+    // GET http://localhost:8080/api/v1/tables/Sessions/ttl
+    @GetMapping("/{tableName}/ttl")
+    public ResponseEntity<TimeToLiveResponse> describeTimeToLive(@PathVariable String tableName) {
+        String attributeName = storageService.getTable(tableName).getTimeToLiveAttribute();
+        return ResponseEntity.ok(new TimeToLiveResponse(tableName, attributeName, attributeName != null));
+    }
+
+    // Long-poll the table's change stream: the puts, updates and deletes after checkpoint (a WAL
+    // sequence number; leave it out to start from now), oldest first, with old and new images.
+    // If there are none yet the request waits up to waitMillis for one. Pass the returned
+    // nextCheckpoint back to continue. 410 Gone means the consumer fell behind further than
+    // anything still kept and has to read the table again.
+    // GET http://localhost:8080/api/v1/tables/Music/changes?checkpoint=1200&limit=100&waitMillis=20000
+    @GetMapping("/{tableName}/changes")
+    public ResponseEntity<ChangePage> readChanges(
+            @PathVariable String tableName,
+            @RequestParam(required = false) Long checkpoint,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "0") long waitMillis) {
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        ChangePage page = storageService.readChanges(tableName, checkpoint, pageSize,
+                Math.min(waitMillis, MAX_CHANGE_WAIT_MILLIS));
+        return ResponseEntity.ok(page);
+    }
 
-        List<Item> allItemsInTable = table.getItems().values().stream()
-                .flatMap(sortedMap -> sortedMap.values().stream())
-                .toList();
+    // Read a table one page at a time. To continue, pass both parts of the returned
+    // lastEvaluatedKey as exclusiveStartPartitionKey / exclusiveStartSortKey.
+    // With segment + totalSegments only that slice of the table is read, so several
+    // clients can scan it in parallel (each one pages through its own segment).
+    // GET http://localhost:8080/api/v1/tables/Music?limit=100
+    // filter and projection work as on the query endpoint.
+    // GET http://localhost:8080/api/v1/tables/Music?limit=100&segment=0&totalSegments=4
+    @GetMapping("/{tableName}")
+    public ResponseEntity<TableResponse> getTable(
+            @PathVariable String tableName,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String exclusiveStartPartitionKey,
+            @RequestParam(required = false) String exclusiveStartSortKey,
+            @RequestParam(required = false) Integer segment,
+            @RequestParam(required = false) Integer totalSegments,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String projection) {
+        if ((exclusiveStartPartitionKey == null) != (exclusiveStartSortKey == null)) {
+            throw new IllegalArgumentException("exclusiveStartPartitionKey and exclusiveStartSortKey go together");
+        }
+        if ((segment == null) != (totalSegments == null)) {
+            throw new IllegalArgumentException("segment and totalSegments go together");
+        }
+        Key exclusiveStartKey = exclusiveStartPartitionKey == null
+                ? null
+                : new Key(exclusiveStartPartitionKey, exclusiveStartSortKey);
+        ScanSegment scanSegment = segment == null ? null : new ScanSegment(segment, totalSegments);
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        ItemPage page = storageService.scan(tableName, pageSize, exclusiveStartKey, scanSegment,
+                FilterExpression.parse(filter), ProjectionExpression.parse(projection));
 
-        TableResponse response = new TableResponse(tableName, allItemsInTable);
+        TableResponse response = new TableResponse(tableName, page.items(), page.lastEvaluatedKey());
         return ResponseEntity.ok(response);
     }
+
+    // Server-side parallel scan: the table is split into totalSegments hash segments that
+    // are scanned at the same time. Pass the returned nextToken back to continue.
+    // GET http://localhost:8080/api/v1/tables/Music/parallel-scan?limit=500&totalSegments=8
+    @GetMapping("/{tableName}/parallel-scan")
+    public ResponseEntity<ParallelScanResponse> parallelScan(
+            @PathVariable String tableName,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "4") int totalSegments,
+            @RequestParam(required = false) String nextToken,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String projection) {
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        ParallelScanPage page = parallelScanService.scan(tableName, pageSize, totalSegments, nextToken,
+                FilterExpression.parse(filter), ProjectionExpression.parse(projection));
+
+        return ResponseEntity.ok(new ParallelScanResponse(tableName, page.items(), page.items().size(), page.nextToken()));
+    }
+
+    // Stream every item of the table as NDJSON, one item per line, without paging.
+    // GET http://localhost:8080/api/v1/tables/Music/stream
+    @GetMapping("/{tableName}/stream")
+    public ResponseEntity<StreamingResponseBody> streamTable(
+            @PathVariable String tableName,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String projection) {
+        storageService.getTable(tableName); // 404 now, not half way through the response
+        FilterExpression filterExpression = FilterExpression.parse(filter);
+        ProjectionExpression projectionExpression = ProjectionExpression.parse(projection);
+        StreamingResponseBody body = ItemStreams.ndjson(objectMapper,
+                () -> storageService.openScan(tableName, null, filterExpression, projectionExpression));
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 }
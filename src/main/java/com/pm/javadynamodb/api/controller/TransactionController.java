@@ -0,0 +1,54 @@
+package com.pm.javadynamodb.api.controller;
+
+import com.pm.javadynamodb.api.dto.TransactGetRequest;
+import com.pm.javadynamodb.api.dto.TransactWriteRequest;
+import com.pm.javadynamodb.core.model.TransactGetResult;
+import com.pm.javadynamodb.storage.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// TransactWriteItems / TransactGetItems: several items, possibly across tables, written
+// all together or not at all (a failed condition cancels the whole transaction with a 409),
+// or read at one point in time.
+@RestController
+@RequestMapping("/api/v1/transact")
+public class TransactionController {
+
+    private final StorageService storageService;
+    // most items a single transaction may hold
+    private final int maxTransactionItems;
+
+    public TransactionController(StorageService storageService,
+                                 @Value("${jkeydb.api.max-transaction-items:100}") int maxTransactionItems) {
+        this.storageService = storageService;
+        this.maxTransactionItems = maxTransactionItems;
+    }
+
+    // POST http://localhost:8080/api/v1/transact/write
+    @PostMapping("/write")
+    public ResponseEntity<Void> transactWrite(@RequestBody TransactWriteRequest request) {
+        checkSize(request.getTransactItems());
+        storageService.transactWriteItems(request.getTransactItems());
+        return ResponseEntity.noContent().build();
+    }
+
+    // POST http://localhost:8080/api/v1/transact/get
+    @PostMapping("/get")
+    public ResponseEntity<TransactGetResult> transactGet(@RequestBody TransactGetRequest request) {
+        checkSize(request.getTransactItems());
+        return ResponseEntity.ok(storageService.transactGetItems(request.getTransactItems()));
+    }
+
+    private void checkSize(List<?> transactItems) {
+        if (transactItems == null || transactItems.isEmpty()) {
+            throw new IllegalArgumentException("transactItems must not be empty");
+        }
+        if (transactItems.size() > maxTransactionItems) {
+            throw new IllegalArgumentException("A transaction may hold at most " + maxTransactionItems
+                    + " items, got " + transactItems.size());
+        }
+    }
+}
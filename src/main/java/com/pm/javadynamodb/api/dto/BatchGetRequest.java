@@ -0,0 +1,13 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.Key;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+// body of POST /api/v1/batch/get: table name -> the keys to read from that table
+@Data
+public class BatchGetRequest {
+    private Map<String, List<Key>> requestItems;
+}
@@ -0,0 +1,13 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.WriteRequest;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+// body of POST /api/v1/batch/write: table name -> the puts/deletes for that table
+@Data
+public class BatchWriteRequest {
+    private Map<String, List<WriteRequest>> requestItems;
+}
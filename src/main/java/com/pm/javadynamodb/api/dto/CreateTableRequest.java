@@ -1,10 +1,17 @@
 package com.pm.javadynamodb.api.dto;
 
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
+import com.pm.javadynamodb.core.model.KeyType;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class CreateTableRequest {
     private String tableName;
     private String partitionKeyName;
+    private KeyType partitionKeyType; // STRING if not given
     private String sortKeyName;
+    private KeyType sortKeyType;      // STRING if not given
+    private List<GlobalSecondaryIndex> globalSecondaryIndexes; // optional
 }
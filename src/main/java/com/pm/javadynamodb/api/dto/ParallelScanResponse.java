@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.List;
+
+public record ParallelScanResponse(String tableName, List<Item> items, int count, String nextToken) {
+}
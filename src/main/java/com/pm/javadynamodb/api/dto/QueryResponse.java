@@ -0,0 +1,9 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+
+import java.util.List;
+
+public record QueryResponse(List<Item> items, int count, Key lastEvaluatedKey) {
+}
@@ -1,8 +1,9 @@
 package com.pm.javadynamodb.api.dto;
 
 import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
 
 import java.util.List;
 
-public record TableResponse(String tableName, List<Item> items) {
+public record TableResponse(String tableName, List<Item> items, Key lastEvaluatedKey) {
 }
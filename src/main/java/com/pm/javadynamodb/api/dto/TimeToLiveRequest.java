@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.dto;
+
+import lombok.Data;
+
+@Data
+public class TimeToLiveRequest {
+    private String attributeName; // epoch-seconds attribute, null turns expiry off
+}
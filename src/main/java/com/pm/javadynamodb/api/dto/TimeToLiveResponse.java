@@ -0,0 +1,4 @@
+package com.pm.javadynamodb.api.dto;
+
+public record TimeToLiveResponse(String tableName, String attributeName, boolean enabled) {
+}
@@ -0,0 +1,12 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.TransactGetItem;
+import lombok.Data;
+
+import java.util.List;
+
+// body of POST /api/v1/transact/get: the items to read at one point in time
+@Data
+public class TransactGetRequest {
+    private List<TransactGetItem> transactItems;
+}
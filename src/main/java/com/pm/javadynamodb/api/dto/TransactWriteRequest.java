@@ -0,0 +1,12 @@
+package com.pm.javadynamodb.api.dto;
+
+import com.pm.javadynamodb.core.model.TransactWriteItem;
+import lombok.Data;
+
+import java.util.List;
+
+// body of POST /api/v1/transact/write: the puts/updates/deletes/condition checks, all or nothing
+@Data
+public class TransactWriteRequest {
+    private List<TransactWriteItem> transactItems;
+}
@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.dto;
+
+import lombok.Data;
+
+@Data
+public class UpdateItemRequest {
+    private String updateExpression; // e.g. SET title = 'Home' ADD plays 1 REMOVE draft
+}
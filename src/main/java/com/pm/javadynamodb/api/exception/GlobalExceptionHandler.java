@@ -17,6 +17,34 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    // a change stream checkpoint that is older than anything still kept
+    @ExceptionHandler(TrimmedChangesException.class)
+    public ResponseEntity<ErrorResponse> handleTrimmedChangesException(TrimmedChangesException ex) {
+        ErrorResponse error = new ErrorResponse(HttpStatus.GONE.value(), ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.GONE);
+    }
+
+    // a write sent to a read replica
+    @ExceptionHandler(ReadOnlyReplicaException.class)
+    public ResponseEntity<ErrorResponse> handleReadOnlyReplicaException(ReadOnlyReplicaException ex) {
+        ErrorResponse error = new ErrorResponse(HttpStatus.FORBIDDEN.value(), ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.FORBIDDEN);
+    }
+
+    // a read replica too far behind its leader to serve reads
+    @ExceptionHandler(ReplicaLagException.class)
+    public ResponseEntity<ErrorResponse> handleReplicaLagException(ReplicaLagException ex) {
+        ErrorResponse error = new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // a transaction whose conditions didn't all hold, nothing of it was written
+    @ExceptionHandler(TransactionCanceledException.class)
+    public ResponseEntity<ErrorResponse> handleTransactionCanceledException(TransactionCanceledException ex) {
+        ErrorResponse error = new ErrorResponse(HttpStatus.CONFLICT.value(), ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
     // method to handle other general exceptions
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponse> handleIllegalArgumentException(IllegalArgumentException ex) {
@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.exception;
+
+// a write sent to a replication follower, it only takes writes from its leader
+public class ReadOnlyReplicaException extends RuntimeException {
+    public ReadOnlyReplicaException(String message) {
+        super(message);
+    }
+}
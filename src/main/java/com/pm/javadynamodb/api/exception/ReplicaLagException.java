@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.exception;
+
+// a read on a replication follower that is further behind its leader than jkeydb.replication.max-lag-millis
+public class ReplicaLagException extends RuntimeException {
+    public ReplicaLagException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.javadynamodb.api.exception;
+
+import java.util.List;
+
+// a transaction that wrote nothing because a condition didn't hold; cancellationReasons has
+// one entry per item of the transaction, null for the items that were fine
+public class TransactionCanceledException extends RuntimeException {
+
+    private final List<String> cancellationReasons;
+
+    public TransactionCanceledException(String message, List<String> cancellationReasons) {
+        super(message);
+        this.cancellationReasons = cancellationReasons;
+    }
+
+    public List<String> getCancellationReasons() {
+        return cancellationReasons;
+    }
+}
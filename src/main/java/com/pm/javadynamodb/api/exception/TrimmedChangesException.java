@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.api.exception;
+
+// the changes after a stream checkpoint are no longer kept anywhere, the consumer has to re-read the table
+public class TrimmedChangesException extends RuntimeException {
+    public TrimmedChangesException(String message) {
+        super(message);
+    }
+}
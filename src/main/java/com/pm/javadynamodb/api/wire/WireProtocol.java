@@ -0,0 +1,132 @@
+package com.pm.javadynamodb.api.wire;
+
+import com.pm.javadynamodb.core.model.BatchItemError;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary wire protocol shared by the WireServer and the JKeyDBClient.
+ * <p>
+ * Every frame is length-prefixed: [int length][int requestId][byte opcode or status][payload],
+ * where length counts everything after itself. A client may send many requests without
+ * waiting (pipelining) and from many threads over one connection (multiplexing); the server
+ * answers each with the same requestId, in whatever order they finish.
+ * <p>
+ * Payloads reuse the WAL's encoding: varints for counts, length-prefixed UTF-8 strings
+ * and AttributeCodec for item attributes.
+ */
+public final class WireProtocol {
+
+    // --- opcodes (request frames) ---
+    public static final byte GET_ITEM = 1;
+    public static final byte PUT_ITEM = 2;
+    public static final byte DELETE_ITEM = 3;
+    public static final byte QUERY = 4;
+    public static final byte BATCH_WRITE = 5;
+    public static final byte BATCH_GET = 6;
+
+    // --- status (response frames); anything but OK carries just a message string ---
+    public static final byte OK = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte BAD_REQUEST = 2;
+    public static final byte ERROR = 3;
+    // a replication follower further behind its leader than jkeydb.replication.max-lag-millis refused a read
+    public static final byte REPLICA_LAG = 4;
+
+    // kinds of one entry of a BATCH_WRITE
+    public static final byte WRITE_PUT = 1;
+    public static final byte WRITE_DELETE = 2;
+
+    // requestId + opcode/status, the part of a frame after the length prefix that isn't payload
+    public static final int HEADER_BYTES = 5;
+
+    // a frame longer than this is treated as garbage and the connection is closed
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private WireProtocol() {
+    }
+
+    /** Starts a frame in a cleared writer; finish it with endFrame(). */
+    public static void beginFrame(BinaryWriter out, int requestId, byte opcodeOrStatus) {
+        out.putInt(0); // length, patched by endFrame
+        out.putInt(requestId);
+        out.putByte(opcodeOrStatus);
+    }
+
+    /** Patches the length prefix and returns the frame as a heap buffer ready to be written. */
+    public static ByteBuffer endFrame(BinaryWriter out) {
+        out.putIntAt(0, out.position() - Integer.BYTES);
+        ByteBuffer written = out.flip();
+        ByteBuffer frame = ByteBuffer.allocate(written.remaining());
+        frame.put(written).flip();
+        return frame;
+    }
+
+    // -------------------- keys and items --------------------
+
+    public static void writeKey(BinaryWriter out, String partitionKey, String sortKey) {
+        out.putString(partitionKey);
+        out.putNullableString(sortKey);
+    }
+
+    public static Key readKey(ByteBuffer in) {
+        String partitionKey = BinaryReader.getString(in);
+        return new Key(partitionKey, BinaryReader.getNullableString(in));
+    }
+
+    public static void writeItem(BinaryWriter out, Item item) {
+        Key key = item.getPrimaryKey();
+        writeKey(out, key.getPartitionKey(), key.getSortKey());
+        AttributeCodec.writeAttributes(out, item.getAttributes());
+    }
+
+    public static Item readItem(ByteBuffer in) {
+        Item item = new Item();
+        item.setPrimaryKey(readKey(in));
+        item.setAttributes(AttributeCodec.readAttributes(in));
+        return item;
+    }
+
+    public static void writeItems(BinaryWriter out, List<Item> items) {
+        out.putVarInt(items.size());
+        for (Item item : items) {
+            writeItem(out, item);
+        }
+    }
+
+    public static List<Item> readItems(ByteBuffer in) {
+        int count = BinaryReader.getVarInt(in);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(readItem(in));
+        }
+        return items;
+    }
+
+    public static void writeErrors(BinaryWriter out, List<BatchItemError> errors) {
+        out.putVarInt(errors.size());
+        for (BatchItemError error : errors) {
+            out.putString(error.tableName());
+            out.putVarInt(error.index());
+            out.putNullableString(error.message());
+        }
+    }
+
+    public static List<BatchItemError> readErrors(ByteBuffer in) {
+        int count = BinaryReader.getVarInt(in);
+        List<BatchItemError> errors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String tableName = BinaryReader.getString(in);
+            int index = BinaryReader.getVarInt(in);
+            errors.add(new BatchItemError(tableName, index, BinaryReader.getNullableString(in)));
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,222 @@
+package com.pm.javadynamodb.api.wire;
+
+import com.pm.javadynamodb.api.exception.ReplicaLagException;
+import com.pm.javadynamodb.api.exception.TableNotFoundException;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.codec.BinaryWriterPool;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import com.pm.javadynamodb.storage.replication.ReplicationFollower;
+import com.pm.javadynamodb.storage.service.StorageService;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decodes one request frame, calls the StorageService directly (no JSON, no HTTP)
+ * and encodes the response frame. Errors map to the same cases as the REST API:
+ * unknown table = NOT_FOUND, invalid input = BAD_REQUEST. On a replication follower,
+ * reads are refused with REPLICA_LAG like ReplicaReadGuard refuses them over REST.
+ */
+final class WireRequestHandler {
+
+    private static final BinaryWriterPool RESPONSE_BUFFERS = BinaryWriterPool.perCore(4096);
+
+    private final StorageService storageService;
+    private final int maxPageSize;
+    private final int maxBatchItems;
+    // null where there is no replication at all (tests)
+    private final ReplicationFollower follower;
+
+    WireRequestHandler(StorageService storageService, int maxPageSize, int maxBatchItems, ReplicationFollower follower) {
+        this.storageService = storageService;
+        this.follower = follower;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchItems = maxBatchItems;
+    }
+
+    /** The complete response frame (length prefix included) for one request. */
+    ByteBuffer handle(int requestId, byte opcode, ByteBuffer payload) {
+        BinaryWriter out = RESPONSE_BUFFERS.acquire();
+        try {
+            try {
+                WireProtocol.beginFrame(out, requestId, WireProtocol.OK);
+                dispatch(opcode, payload, out);
+            } catch (TableNotFoundException e) {
+                error(out, requestId, WireProtocol.NOT_FOUND, e.getMessage());
+            } catch (ReplicaLagException e) {
+                error(out, requestId, WireProtocol.REPLICA_LAG, e.getMessage());
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                // a truncated payload is the client's fault as much as a missing key attribute
+                error(out, requestId, WireProtocol.BAD_REQUEST,
+                        e.getMessage() != null ? e.getMessage() : "Malformed request payload");
+            } catch (RuntimeException e) {
+                error(out, requestId, WireProtocol.ERROR, String.valueOf(e.getMessage()));
+            }
+            return WireProtocol.endFrame(out);
+        } finally {
+            RESPONSE_BUFFERS.release(out);
+        }
+    }
+
+    private static void error(BinaryWriter out, int requestId, byte status, String message) {
+        // throw away whatever part of the OK payload was already written
+        out.clear();
+        WireProtocol.beginFrame(out, requestId, status);
+        out.putNullableString(message);
+    }
+
+    private void dispatch(byte opcode, ByteBuffer in, BinaryWriter out) {
+        switch (opcode) {
+            case WireProtocol.GET_ITEM -> getItem(in, out);
+            case WireProtocol.PUT_ITEM -> putItem(in, out);
+            case WireProtocol.DELETE_ITEM -> deleteItem(in);
+            case WireProtocol.QUERY -> query(in, out);
+            case WireProtocol.BATCH_WRITE -> batchWrite(in, out);
+            case WireProtocol.BATCH_GET -> batchGet(in, out);
+            default -> throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    // table, key, projection -> [byte found][item]
+    private void getItem(ByteBuffer in, BinaryWriter out) {
+        checkReadLag();
+        String tableName = BinaryReader.getString(in);
+        Key key = WireProtocol.readKey(in);
+        ProjectionExpression projection = ProjectionExpression.parse(BinaryReader.getNullableString(in));
+
+        Optional<Item> item = storageService.getItem(tableName, key.getPartitionKey(), key.getSortKey(), projection);
+        out.putByte(item.isPresent() ? 1 : 0);
+        item.ifPresent(found -> WireProtocol.writeItem(out, found));
+    }
+
+    // table, attributes -> item as stored
+    private void putItem(ByteBuffer in, BinaryWriter out) {
+        String tableName = BinaryReader.getString(in);
+        Item item = new Item();
+        item.setAttributes(AttributeCodec.readAttributes(in));
+        WireProtocol.writeItem(out, storageService.putItem(tableName, item));
+    }
+
+    // table, key -> nothing
+    private void deleteItem(ByteBuffer in) {
+        String tableName = BinaryReader.getString(in);
+        Key key = WireProtocol.readKey(in);
+        storageService.deleteItem(tableName, key.getPartitionKey(), key.getSortKey());
+    }
+
+    // table, pk, start, end, limit, exclusiveStartSortKey, filter, projection -> [items][byte more][key]
+    private void query(ByteBuffer in, BinaryWriter out) {
+        checkReadLag();
+        String tableName = BinaryReader.getString(in);
+        String partitionKey = BinaryReader.getString(in);
+        String startKey = BinaryReader.getNullableString(in);
+        String endKey = BinaryReader.getNullableString(in);
+        int limit = BinaryReader.getVarInt(in);
+        String exclusiveStartSortKey = BinaryReader.getNullableString(in);
+        FilterExpression filter = FilterExpression.parse(BinaryReader.getNullableString(in));
+        ProjectionExpression projection = ProjectionExpression.parse(BinaryReader.getNullableString(in));
+
+        // 0 = no limit asked for, capped like the REST endpoint
+        int pageSize = limit == 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        ItemPage page = storageService.query(tableName, partitionKey, startKey, endKey, pageSize,
+                exclusiveStartSortKey, filter, projection);
+
+        WireProtocol.writeItems(out, page.items());
+        Key last = page.lastEvaluatedKey();
+        out.putByte(last != null ? 1 : 0);
+        if (last != null) {
+            WireProtocol.writeKey(out, last.getPartitionKey(), last.getSortKey());
+        }
+    }
+
+    // [tables]{name, [writes]{kind, attributes | key}} -> processed, errors
+    private void batchWrite(ByteBuffer in, BinaryWriter out) {
+        int tableCount = BinaryReader.getVarInt(in);
+        Map<String, List<WriteRequest>> requestItems = new LinkedHashMap<>();
+        int total = 0;
+        for (int t = 0; t < tableCount; t++) {
+            String tableName = BinaryReader.getString(in);
+            int count = BinaryReader.getVarInt(in);
+            total += count;
+            checkSize(total);
+            List<WriteRequest> writes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte kind = in.get();
+                if (kind == WireProtocol.WRITE_PUT) {
+                    writes.add(WriteRequest.put(AttributeCodec.readAttributes(in)));
+                } else if (kind == WireProtocol.WRITE_DELETE) {
+                    Key key = WireProtocol.readKey(in);
+                    writes.add(WriteRequest.delete(key.getPartitionKey(), key.getSortKey()));
+                } else {
+                    throw new IllegalArgumentException("Unknown batch write kind " + kind);
+                }
+            }
+            requestItems.put(tableName, writes);
+        }
+        if (requestItems.isEmpty()) {
+            throw new IllegalArgumentException("requestItems must not be empty");
+        }
+
+        BatchWriteResult result = storageService.batchWriteItems(requestItems);
+        out.putVarInt(result.processed());
+        WireProtocol.writeErrors(out, result.errors());
+    }
+
+    // [tables]{name, [keys]} -> [tables]{name, [items]}, errors
+    private void batchGet(ByteBuffer in, BinaryWriter out) {
+        checkReadLag();
+        int tableCount = BinaryReader.getVarInt(in);
+        Map<String, List<Key>> requestItems = new LinkedHashMap<>();
+        int total = 0;
+        for (int t = 0; t < tableCount; t++) {
+            String tableName = BinaryReader.getString(in);
+            int count = BinaryReader.getVarInt(in);
+            total += count;
+            checkSize(total);
+            List<Key> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(WireProtocol.readKey(in));
+            }
+            requestItems.put(tableName, keys);
+        }
+        if (requestItems.isEmpty()) {
+            throw new IllegalArgumentException("requestItems must not be empty");
+        }
+
+        BatchGetResult result = storageService.batchGetItems(requestItems);
+        out.putVarInt(result.responses().size());
+        for (Map.Entry<String, List<Item>> table : result.responses().entrySet()) {
+            out.putString(table.getKey());
+            WireProtocol.writeItems(out, table.getValue());
+        }
+        WireProtocol.writeErrors(out, result.errors());
+    }
+
+    // a follower only serves reads that are at most jkeydb.replication.max-lag-millis old
+    private void checkReadLag() {
+        if (follower != null) {
+            follower.checkReadLag();
+        }
+    }
+
+    // same cap as the REST batch endpoints, checked before anything is allocated for the entries
+    private void checkSize(int count) {
+        if (count > maxBatchItems) {
+            throw new IllegalArgumentException("A batch may hold at most " + maxBatchItems + " items, got " + count);
+        }
+    }
+}
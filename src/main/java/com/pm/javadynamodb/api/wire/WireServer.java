@@ -0,0 +1,343 @@
+package com.pm.javadynamodb.api.wire;
+
+import com.pm.javadynamodb.storage.replication.ReplicationFollower;
+import com.pm.javadynamodb.storage.service.StorageService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional TCP endpoint speaking the WireProtocol next to the REST API.
+ * <p>
+ * One selector thread does all socket I/O: it accepts connections, cuts complete frames
+ * out of what was read and hands each one to a worker. Workers call the StorageService
+ * (a put blocks there until its WAL group commit) and queue the response on the connection;
+ * the selector thread writes it out, gathering whatever has piled up into one write.
+ * So a single connection can have many requests in flight at once.
+ */
+@Service
+public class WireServer {
+
+    // stop reading from a connection that has this many requests waiting for an answer
+    private static final int MAX_IN_FLIGHT_PER_CONNECTION = 1024;
+    // most queued responses handed to one gathering write
+    private static final int MAX_WRITE_BATCH = 64;
+
+    private final WireRequestHandler handler;
+    private final boolean enabled;
+    private final String host;
+    private final int port;
+    private final int workerThreads;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private volatile boolean running;
+    // connections that got a response since the selector last looked
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public WireServer(StorageService storageService,
+                      ReplicationFollower follower,
+                      @Value("${jkeydb.wire.enabled:false}") boolean enabled,
+                      @Value("${jkeydb.wire.host:0.0.0.0}") String host,
+                      @Value("${jkeydb.wire.port:7070}") int port,
+                      @Value("${jkeydb.wire.worker-threads:64}") int workerThreads,
+                      @Value("${jkeydb.api.max-page-size:1000}") int maxPageSize,
+                      @Value("${jkeydb.api.max-batch-items:100}") int maxBatchItems) {
+        this.handler = new WireRequestHandler(storageService, maxPageSize, maxBatchItems, follower);
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.workerThreads = workerThreads;
+    }
+
+    // for tests: always enabled, port 0 picks a free one (see getPort())
+    public WireServer(StorageService storageService, int port) {
+        this(storageService, null, port);
+    }
+
+    // for tests of a read replica
+    public WireServer(StorageService storageService, ReplicationFollower follower, int port) {
+        this(storageService, follower, true, "127.0.0.1", port, 16, 1000, 100);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            System.out.println("Binary wire protocol is disabled.");
+            return;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(host, port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start the wire protocol server on port " + port, e);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "wire-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "wire-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        System.out.println("Binary wire protocol listening on port " + getPort());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+
+    /** The port actually bound, or -1 when the server isn't running. */
+    public int getPort() {
+        if (serverChannel == null || !serverChannel.isOpen()) {
+            return -1;
+        }
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // -------------------- selector thread --------------------
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+
+                // responses finished by the workers
+                Connection ready;
+                while ((ready = pendingWrites.poll()) != null) {
+                    ready.flush();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Wire protocol selector failed: " + e.getMessage());
+            }
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void closeQuietly() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException ignored) {
+            // shutting down anyway
+        }
+    }
+
+    /**
+     * One client socket. Everything but respond() runs on the selector thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        // filled by the workers, drained by the selector thread
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        // part of the last gathering write the socket didn't take yet
+        private final ArrayDeque<ByteBuffer> unwritten = new ArrayDeque<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private boolean readPaused;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= Integer.BYTES) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < WireProtocol.HEADER_BYTES || length > WireProtocol.MAX_FRAME_BYTES) {
+                    System.err.println("Closing wire connection after a bad frame length " + length);
+                    close();
+                    return;
+                }
+                if (readBuffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                int requestId = readBuffer.getInt();
+                byte opcode = readBuffer.get();
+                // the worker runs after readBuffer is reused, so it gets its own copy
+                byte[] payload = new byte[length - WireProtocol.HEADER_BYTES];
+                readBuffer.get(payload);
+                dispatch(requestId, opcode, ByteBuffer.wrap(payload));
+            }
+            readBuffer.compact();
+
+            // a frame bigger than the buffer: grow it so the rest fits
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2,
+                        WireProtocol.MAX_FRAME_BYTES + Integer.BYTES));
+                readBuffer.flip();
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            }
+
+            if (inFlight.get() >= MAX_IN_FLIGHT_PER_CONNECTION && key.isValid()) {
+                // back-pressure: let TCP push back on the client until the workers catch up
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        private void dispatch(int requestId, byte opcode, ByteBuffer payload) {
+            inFlight.incrementAndGet();
+            try {
+                workers.execute(() -> respond(handler.handle(requestId, opcode, payload)));
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                inFlight.decrementAndGet();
+            }
+        }
+
+        // on a worker thread
+        private void respond(ByteBuffer response) {
+            responses.add(response);
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        void flush() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                while (true) {
+                    ByteBuffer response;
+                    while (unwritten.size() < MAX_WRITE_BATCH && (response = responses.poll()) != null) {
+                        unwritten.add(response);
+                        inFlight.decrementAndGet();
+                    }
+                    if (unwritten.isEmpty()) {
+                        break;
+                    }
+                    channel.write(unwritten.toArray(new ByteBuffer[0]));
+                    while (!unwritten.isEmpty() && !unwritten.peekFirst().hasRemaining()) {
+                        unwritten.pollFirst();
+                    }
+                    if (!unwritten.isEmpty()) {
+                        // socket buffer is full, continue when the selector says it's writable
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = unwritten.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            if (readPaused && inFlight.get() < MAX_IN_FLIGHT_PER_CONNECTION / 2) {
+                readPaused = false;
+            }
+            if (!readPaused) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        private void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the client is gone either way
+            }
+        }
+    }
+}
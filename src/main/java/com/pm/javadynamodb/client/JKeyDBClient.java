@@ -0,0 +1,336 @@
+package com.pm.javadynamodb.client;
+
+import com.pm.javadynamodb.api.exception.ReplicaLagException;
+import com.pm.javadynamodb.api.exception.TableNotFoundException;
+import com.pm.javadynamodb.api.wire.WireProtocol;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchItemError;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.codec.BinaryWriterPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A small client for the binary wire protocol (see WireProtocol and WireServer).
+ * <p>
+ * One instance holds one TCP connection and is meant to be shared: any number of threads
+ * can call it at the same time, their requests are pipelined over the socket and a reader
+ * thread hands each response to the caller waiting for its requestId. The *Async methods
+ * return right after the request is sent; the others wait for the answer.
+ * Errors come back as the exceptions the StorageService itself throws
+ * (TableNotFoundException, IllegalArgumentException).
+ */
+public class JKeyDBClient implements AutoCloseable {
+
+    private static final BinaryWriterPool REQUEST_BUFFERS = BinaryWriterPool.perCore(512);
+
+    private final SocketChannel channel;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private JKeyDBClient(SocketChannel channel) {
+        this.channel = channel;
+        this.reader = new Thread(this::readLoop, "jkeydb-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public static JKeyDBClient connect(String host, int port) {
+        try {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return new JKeyDBClient(channel);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not connect to " + host + ":" + port, e);
+        }
+    }
+
+    // -------------------- items --------------------
+
+    public CompletableFuture<Optional<Item>> getItemAsync(String tableName, String partitionKey, String sortKey,
+                                                          String projection) {
+        return send(WireProtocol.GET_ITEM, out -> {
+            out.putString(tableName);
+            WireProtocol.writeKey(out, partitionKey, sortKey);
+            out.putNullableString(projection);
+        }, in -> in.get() == 1 ? Optional.of(WireProtocol.readItem(in)) : Optional.empty());
+    }
+
+    public CompletableFuture<Optional<Item>> getItemAsync(String tableName, String partitionKey, String sortKey) {
+        return getItemAsync(tableName, partitionKey, sortKey, null);
+    }
+
+    public Optional<Item> getItem(String tableName, String partitionKey, String sortKey) {
+        return await(getItemAsync(tableName, partitionKey, sortKey));
+    }
+
+    // for tables without a sort key
+    public Optional<Item> getItem(String tableName, String partitionKey) {
+        return getItem(tableName, partitionKey, null);
+    }
+
+    public CompletableFuture<Item> putItemAsync(String tableName, Map<String, Object> attributes) {
+        return send(WireProtocol.PUT_ITEM, out -> {
+            out.putString(tableName);
+            AttributeCodec.writeAttributes(out, attributes);
+        }, WireProtocol::readItem);
+    }
+
+    public Item putItem(String tableName, Map<String, Object> attributes) {
+        return await(putItemAsync(tableName, attributes));
+    }
+
+    public CompletableFuture<Void> deleteItemAsync(String tableName, String partitionKey, String sortKey) {
+        return send(WireProtocol.DELETE_ITEM, out -> {
+            out.putString(tableName);
+            WireProtocol.writeKey(out, partitionKey, sortKey);
+        }, in -> null);
+    }
+
+    public void deleteItem(String tableName, String partitionKey, String sortKey) {
+        await(deleteItemAsync(tableName, partitionKey, sortKey));
+    }
+
+    // -------------------- query --------------------
+
+    /**
+     * One page of a query, like StorageService.query. limit 0 means the server's maximum page size;
+     * filter and projection are expression strings and may be null.
+     */
+    public CompletableFuture<ItemPage> queryAsync(String tableName, String partitionKey, String startKey, String endKey,
+                                                  int limit, String exclusiveStartSortKey,
+                                                  String filter, String projection) {
+        return send(WireProtocol.QUERY, out -> {
+            out.putString(tableName);
+            out.putString(partitionKey);
+            out.putNullableString(startKey);
+            out.putNullableString(endKey);
+            out.putVarInt(limit);
+            out.putNullableString(exclusiveStartSortKey);
+            out.putNullableString(filter);
+            out.putNullableString(projection);
+        }, in -> {
+            List<Item> items = WireProtocol.readItems(in);
+            Key last = in.get() == 1 ? WireProtocol.readKey(in) : null;
+            return new ItemPage(items, last);
+        });
+    }
+
+    public ItemPage query(String tableName, String partitionKey, String startKey, String endKey,
+                          int limit, String exclusiveStartSortKey) {
+        return await(queryAsync(tableName, partitionKey, startKey, endKey, limit, exclusiveStartSortKey, null, null));
+    }
+
+    // -------------------- batches --------------------
+
+    public CompletableFuture<BatchWriteResult> batchWriteItemsAsync(Map<String, List<WriteRequest>> requestItems) {
+        return send(WireProtocol.BATCH_WRITE, out -> {
+            out.putVarInt(requestItems.size());
+            for (Map.Entry<String, List<WriteRequest>> table : requestItems.entrySet()) {
+                out.putString(table.getKey());
+                out.putVarInt(table.getValue().size());
+                for (WriteRequest write : table.getValue()) {
+                    if (write.put() != null) {
+                        out.putByte(WireProtocol.WRITE_PUT);
+                        AttributeCodec.writeAttributes(out, write.put());
+                    } else {
+                        out.putByte(WireProtocol.WRITE_DELETE);
+                        WireProtocol.writeKey(out, write.delete().getPartitionKey(), write.delete().getSortKey());
+                    }
+                }
+            }
+        }, in -> {
+            int processed = BinaryReader.getVarInt(in);
+            return new BatchWriteResult(processed, WireProtocol.readErrors(in));
+        });
+    }
+
+    public BatchWriteResult batchWriteItems(Map<String, List<WriteRequest>> requestItems) {
+        return await(batchWriteItemsAsync(requestItems));
+    }
+
+    public CompletableFuture<BatchGetResult> batchGetItemsAsync(Map<String, List<Key>> requestItems) {
+        return send(WireProtocol.BATCH_GET, out -> {
+            out.putVarInt(requestItems.size());
+            for (Map.Entry<String, List<Key>> table : requestItems.entrySet()) {
+                out.putString(table.getKey());
+                out.putVarInt(table.getValue().size());
+                for (Key key : table.getValue()) {
+                    WireProtocol.writeKey(out, key.getPartitionKey(), key.getSortKey());
+                }
+            }
+        }, in -> {
+            int tableCount = BinaryReader.getVarInt(in);
+            Map<String, List<Item>> responses = new LinkedHashMap<>();
+            for (int i = 0; i < tableCount; i++) {
+                String tableName = BinaryReader.getString(in);
+                responses.put(tableName, WireProtocol.readItems(in));
+            }
+            List<BatchItemError> errors = WireProtocol.readErrors(in);
+            return new BatchGetResult(responses, errors);
+        });
+    }
+
+    public BatchGetResult batchGetItems(Map<String, List<Key>> requestItems) {
+        return await(batchGetItemsAsync(requestItems));
+    }
+
+    // -------------------- plumbing --------------------
+
+    private <T> CompletableFuture<T> send(byte opcode, Consumer<BinaryWriter> payload, Function<ByteBuffer, T> decoder) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Client is closed"));
+        }
+        int requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        // registered before the write: the answer can arrive before write() returns
+        pending.put(requestId, response);
+        if (closed && pending.remove(requestId) != null) {
+            // the reader already failed everything pending, it won't see this one
+            return CompletableFuture.failedFuture(new IllegalStateException("Client is closed"));
+        }
+
+        BinaryWriter out = REQUEST_BUFFERS.acquire();
+        try {
+            WireProtocol.beginFrame(out, requestId, opcode);
+            payload.accept(out);
+            out.putIntAt(0, out.position() - Integer.BYTES);
+            ByteBuffer frame = out.flip();
+
+            writeLock.lock();
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(requestId);
+            response.completeExceptionally(e instanceof IOException
+                    ? new RuntimeException("Failed to send request", e) : e);
+        } finally {
+            REQUEST_BUFFERS.release(out);
+        }
+        return response.thenApply(decoder);
+    }
+
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + WireProtocol.HEADER_BYTES);
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                header.flip();
+                int length = header.getInt();
+                int requestId = header.getInt();
+                byte status = header.get();
+                if (length < WireProtocol.HEADER_BYTES || length > WireProtocol.MAX_FRAME_BYTES) {
+                    throw new IOException("Bad frame length " + length);
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length - WireProtocol.HEADER_BYTES);
+                readFully(payload);
+                payload.flip();
+
+                CompletableFuture<ByteBuffer> response = pending.remove(requestId);
+                if (response == null) {
+                    continue; // nobody is waiting for it (should not happen)
+                }
+                if (status == WireProtocol.OK) {
+                    response.complete(payload);
+                } else {
+                    response.completeExceptionally(toException(status, BinaryReader.getNullableString(payload)));
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("JKeyDB connection lost: " + e.getMessage());
+            }
+        } finally {
+            closed = true;
+            failPending(new IllegalStateException("Connection closed"));
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    private static RuntimeException toException(byte status, String message) {
+        return switch (status) {
+            case WireProtocol.NOT_FOUND -> new TableNotFoundException(message);
+            case WireProtocol.BAD_REQUEST -> new IllegalArgumentException(message);
+            // a replica that is too far behind; another node (or a retry) may answer
+            case WireProtocol.REPLICA_LAG -> new ReplicaLagException(message);
+            default -> new RuntimeException("Server error: " + message);
+        };
+    }
+
+    private void failPending(RuntimeException cause) {
+        for (Integer requestId : pending.keySet()) {
+            CompletableFuture<ByteBuffer> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+
+    // unwraps the CompletionException so sync callers see the server's error directly
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing left to do with it
+        }
+        try {
+            reader.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending(new IllegalStateException("Client is closed"));
+    }
+}
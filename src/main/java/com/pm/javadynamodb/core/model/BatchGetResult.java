@@ -0,0 +1,11 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a batch get: the items that were found, grouped by table name, and an
+ * error for each key that could not be looked up. Keys without an item are just absent.
+ */
+public record BatchGetResult(Map<String, List<Item>> responses, List<BatchItemError> errors) {
+}
@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * Why one entry of a batch was not processed. index is the position of the
+ * entry in the list the caller sent for that table.
+ */
+public record BatchItemError(String tableName, int index, String message) {
+}
@@ -0,0 +1,10 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch write: how many puts/deletes were applied, and an error
+ * for each one that was rejected. The rejected ones don't fail the others.
+ */
+public record BatchWriteResult(int processed, List<BatchItemError> errors) {
+}
@@ -0,0 +1,14 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+
+/**
+ * One read of a table's change stream, oldest change first. Pass nextCheckpoint back as
+ * the checkpoint of the next read; it moves on even when there were no records.
+ *
+ * fromWal is true when the consumer had fallen so far behind that its records came from
+ * the WAL instead of the in-memory buffer. Those only have what the WAL keeps: no old
+ * images, and for an UPDATE only the attributes it set in newImage.
+ */
+public record ChangePage(List<ChangeRecord> records, long nextCheckpoint, boolean fromWal) {
+}
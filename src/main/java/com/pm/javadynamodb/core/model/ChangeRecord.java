@@ -0,0 +1,13 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.Map;
+
+/**
+ * One change to an item, as a table's change stream hands it out. sequence is the WAL
+ * sequence number of the write, so a consumer can use the last one it processed as its
+ * checkpoint. oldImage is null for a new item, newImage is null for a delete.
+ */
+public record ChangeRecord(long sequence, String tableName, ChangeType eventName, Key keys,
+                           Map<String, Object> oldImage, Map<String, Object> newImage,
+                           long approximateCreationMillis) {
+}
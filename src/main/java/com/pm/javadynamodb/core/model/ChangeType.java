@@ -0,0 +1,10 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * What a change stream record says happened to an item: the write operation that changed it.
+ */
+public enum ChangeType {
+    PUT,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,23 @@
+package com.pm.javadynamodb.core.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Definition of a global secondary index: a second partition/sort key over the same
+ * items, so they can be queried by attributes other than the table's primary key.
+ * Items that don't have the index key attributes are simply not in the index.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GlobalSecondaryIndex {
+    private String indexName;
+    private String partitionKeyName;
+    private String sortKeyName;            // optional
+    private ProjectionType projectionType; // ALL if not given
+    private List<String> nonKeyAttributes; // only for INCLUDE
+}
@@ -0,0 +1,11 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+
+/**
+ * One page of a paginated query or scan. lastEvaluatedKey is the key of the last item
+ * on the page when there may be more, and null once the read is complete; pass it back
+ * as the exclusive start key to get the next page.
+ */
+public record ItemPage(List<Item> items, Key lastEvaluatedKey) {
+}
@@ -0,0 +1,16 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * Type of a partition or sort key, declared when the table is created. It decides how
+ * key values are ordered: numbers numerically, binary keys byte by byte.
+ */
+public enum KeyType {
+    // compared as Java strings (the default, and what every table used before key types existed)
+    STRING,
+
+    // any JSON number or numeric string, compared by value: 9 < 10 < 10.5
+    NUMBER,
+
+    // raw bytes (base64 in JSON and URLs), compared as unsigned bytes
+    BINARY
+}
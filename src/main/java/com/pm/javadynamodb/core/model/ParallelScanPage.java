@@ -0,0 +1,10 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+
+/**
+ * One page of a server-side parallel scan. nextToken is an opaque string with the
+ * position of every segment; pass it back to continue, it is null once the scan is done.
+ */
+public record ParallelScanPage(List<Item> items, String nextToken) {
+}
@@ -0,0 +1,15 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * Which attributes a secondary index copies from the table, same choices as DynamoDB.
+ */
+public enum ProjectionType {
+    // only the table's and the index's key attributes
+    KEYS_ONLY,
+
+    // the keys plus the attributes listed in nonKeyAttributes
+    INCLUDE,
+
+    // the whole item
+    ALL
+}
@@ -0,0 +1,33 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * One of totalSegments disjoint slices of a table, DynamoDB's Segment / TotalSegments.
+ * A partition belongs to exactly one segment, picked by a hash of its (stored) partition
+ * key, so several scanners can each take a segment and together read every item once.
+ */
+public record ScanSegment(int segment, int totalSegments) {
+
+    // same cap as DynamoDB
+    public static final int MAX_TOTAL_SEGMENTS = 1_000_000;
+
+    public ScanSegment {
+        if (totalSegments < 1 || totalSegments > MAX_TOTAL_SEGMENTS) {
+            throw new IllegalArgumentException("totalSegments must be in [1, " + MAX_TOTAL_SEGMENTS + "], got " + totalSegments);
+        }
+        if (segment < 0 || segment >= totalSegments) {
+            throw new IllegalArgumentException("segment must be in [0, " + totalSegments + "), got " + segment);
+        }
+    }
+
+    public boolean contains(String partitionKey) {
+        if (totalSegments == 1) {
+            return true;
+        }
+        // String.hashCode is stable across JVMs; spread it so neighbouring keys don't cluster
+        int hash = partitionKey.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, totalSegments) == segment;
+    }
+}
@@ -1,10 +1,14 @@
 package com.pm.javadynamodb.core.model;
 
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.engine.TableStore;
+import com.pm.javadynamodb.storage.index.SecondaryIndex;
 import lombok.Getter;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 public class Table {
@@ -12,22 +16,90 @@ public class Table {
     private final String partitionKeyName;
     private final String sortKeyName;
 
-    // Key = partition key, value = kept items Sorted
-    // SortedMap key = SortKey, value = Item
-    private final Map<String, SortedMap<String, Item>> items;
+    // how key values are encoded and ordered, see KeyEncoding
+    private final KeyType partitionKeyType;
+    private final KeyType sortKeyType;
 
     /**
      * The actual data store for this table.
-     * We use a ConcurrentHashMap because it is thread-safe, which is crucial
-     * once we expose this through a multithreaded web server (Spring Boot).
-     * Key: The String value of the partition key.
-     * Value: The full Item object.
+     * Items are addressed by (partition key, sort key) and kept sorted by sort key
+     * within a partition. Which TableStore this is depends on the storage engine:
+     * plain heap maps by default, or an LSM tree that spills to disk.
      */
+    private final TableStore store;
 
-    public Table(String tableName, String partitionKeyName, String sortKeyName) {
+    /**
+     * Global secondary indexes by index name, empty for most tables.
+     * They live on the heap and are rebuilt from the items on startup.
+     */
+    private final Map<String, SecondaryIndex> indexes;
+
+    /**
+     * Name of the attribute holding an item's expiry time in epoch seconds, null if items
+     * of this table never expire. Items without it, or with a non-number in it, don't expire.
+     */
+    private volatile String timeToLiveAttribute;
+
+    public Table(String tableName, String partitionKeyName, String sortKeyName, TableStore store) {
+        this(tableName, partitionKeyName, sortKeyName, store, List.of());
+    }
+
+    public Table(String tableName, String partitionKeyName, String sortKeyName, TableStore store,
+                 List<GlobalSecondaryIndex> indexDefinitions) {
+        this(tableName, partitionKeyName, KeyType.STRING, sortKeyName, KeyType.STRING, store, indexDefinitions);
+    }
+
+    public Table(String tableName, String partitionKeyName, KeyType partitionKeyType,
+                 String sortKeyName, KeyType sortKeyType, TableStore store,
+                 List<GlobalSecondaryIndex> indexDefinitions) {
         this.tableName = tableName;
         this.partitionKeyName = partitionKeyName;
+        this.partitionKeyType = partitionKeyType == null ? KeyType.STRING : partitionKeyType;
         this.sortKeyName = sortKeyName;
-        this.items = new ConcurrentHashMap<>();
+        this.sortKeyType = sortKeyType == null ? KeyType.STRING : sortKeyType;
+        this.store = store;
+
+        Map<String, SecondaryIndex> indexes = new LinkedHashMap<>();
+        for (GlobalSecondaryIndex definition : indexDefinitions) {
+            indexes.put(definition.getIndexName(), new SecondaryIndex(definition, partitionKeyName, sortKeyName));
+        }
+        this.indexes = Collections.unmodifiableMap(indexes);
+    }
+
+    public List<GlobalSecondaryIndex> getIndexDefinitions() {
+        return indexes.values().stream().map(SecondaryIndex::getDefinition).toList();
+    }
+
+    // true if a key is stored differently from how clients write it (any non STRING key)
+    public boolean hasTypedKeys() {
+        return partitionKeyType != KeyType.STRING || (sortKeyName != null && sortKeyType != KeyType.STRING);
+    }
+
+    public String encodePartitionKey(Object value) {
+        return KeyEncoding.encode(partitionKeyType, value);
+    }
+
+    public String encodeSortKey(Object value) {
+        return KeyEncoding.encode(sortKeyType, value);
+    }
+
+    // a stored key the way clients see it; the sort key placeholder of tables without one is kept
+    public Key displayKey(Key stored) {
+        String sortKey = sortKeyName == null ? stored.getSortKey() : KeyEncoding.decode(sortKeyType, stored.getSortKey());
+        return new Key(KeyEncoding.decode(partitionKeyType, stored.getPartitionKey()), sortKey);
+    }
+
+    public void setTimeToLiveAttribute(String timeToLiveAttribute) {
+        this.timeToLiveAttribute = timeToLiveAttribute;
+    }
+
+    // true if the table has a TTL attribute and the item's expiry time is at or before now
+    public boolean isExpired(Item item, long nowEpochSeconds) {
+        String attribute = timeToLiveAttribute;
+        if (attribute == null || item.getAttributes() == null) {
+            return false;
+        }
+        return item.getAttributes().get(attribute) instanceof Number expiresAt
+                && expiresAt.longValue() <= nowEpochSeconds;
     }
 }
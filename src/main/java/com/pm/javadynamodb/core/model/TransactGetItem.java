@@ -0,0 +1,7 @@
+package com.pm.javadynamodb.core.model;
+
+/**
+ * One item a transactional read looks up: the key (as the client writes it) in tableName.
+ */
+public record TransactGetItem(String tableName, Key key) {
+}
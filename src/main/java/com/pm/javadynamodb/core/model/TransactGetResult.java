@@ -0,0 +1,10 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a transactional read: the items in the order they were asked for, null
+ * where there is none. They were all read at the same point, between transactions.
+ */
+public record TransactGetResult(List<Item> responses) {
+}
@@ -0,0 +1,40 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.Map;
+
+/**
+ * One action of a transaction on tableName, exactly one of: put (the attributes of the
+ * item to store), update (the key of an item plus updateExpression), delete (the key of
+ * the item to remove) or conditionCheck (the key of an item that is only checked, not
+ * written). conditionExpression has to hold for the item as it is before the transaction,
+ * otherwise nothing of the transaction is written; it is optional except for a conditionCheck.
+ */
+public record TransactWriteItem(String tableName,
+                                Map<String, Object> put,
+                                Key update,
+                                String updateExpression,
+                                Key delete,
+                                Key conditionCheck,
+                                String conditionExpression) {
+
+    public static TransactWriteItem put(String tableName, Map<String, Object> attributes) {
+        return new TransactWriteItem(tableName, attributes, null, null, null, null, null);
+    }
+
+    public static TransactWriteItem update(String tableName, Key key, String updateExpression) {
+        return new TransactWriteItem(tableName, null, key, updateExpression, null, null, null);
+    }
+
+    public static TransactWriteItem delete(String tableName, Key key) {
+        return new TransactWriteItem(tableName, null, null, null, key, null, null);
+    }
+
+    public static TransactWriteItem conditionCheck(String tableName, Key key, String conditionExpression) {
+        return new TransactWriteItem(tableName, null, null, null, null, key, conditionExpression);
+    }
+
+    // the same action, only done if the condition holds
+    public TransactWriteItem withCondition(String conditionExpression) {
+        return new TransactWriteItem(tableName, put, update, updateExpression, delete, conditionCheck, conditionExpression);
+    }
+}
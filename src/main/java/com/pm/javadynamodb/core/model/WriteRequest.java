@@ -0,0 +1,18 @@
+package com.pm.javadynamodb.core.model;
+
+import java.util.Map;
+
+/**
+ * One write of a batch: either put (the attributes of the item to store)
+ * or delete (the key of the item to remove), never both.
+ */
+public record WriteRequest(Map<String, Object> put, Key delete) {
+
+    public static WriteRequest put(Map<String, Object> attributes) {
+        return new WriteRequest(attributes, null);
+    }
+
+    public static WriteRequest delete(String partitionKey, String sortKey) {
+        return new WriteRequest(null, new Key(partitionKey, sortKey));
+    }
+}
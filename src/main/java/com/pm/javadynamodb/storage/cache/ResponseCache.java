@@ -0,0 +1,292 @@
+package com.pm.javadynamodb.storage.cache;
+
+import com.pm.javadynamodb.storage.service.StorageService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Responses of hot reads, already serialized to JSON, so a repeated GetItem or small
+ * Query is answered with the same bytes instead of serializing the same items again.
+ * Off unless jkeydb.cache.max-bytes is set.
+ * <p>
+ * Every entry belongs to one (table, stored partition key). StorageService calls
+ * invalidate() whenever it changes an item of a partition (puts, updates, deletes, live
+ * or replicated) and invalidateTable() when a table is created or dropped, which drops
+ * exactly the entries of that partition or table.
+ * <p>
+ * A read can race with a write: it reads the item, the write changes and invalidates it,
+ * then the read caches what it read. To catch that, every partition hashes to a version
+ * counter that invalidate() increments. A reader takes stamp() before it reads the table
+ * and put() only keeps the entry if the version is still the same afterwards.
+ * <p>
+ * Eviction is CLOCK: entries sit in a ring and a hit only sets the entry's referenced
+ * bit, without a lock. When the cache is over its size, the hand goes round the ring. It
+ * clears the bit of referenced entries and evicts the first one without it. Hot entries
+ * survive and cold ones go.
+ */
+@Service
+public class ResponseCache {
+
+    // roughly what an entry costs besides its bytes: the entry, its key, map and set nodes
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+    private static final int VERSION_STRIPES = 4096;
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private StorageService storageService;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    // cache keys by partition, so a write finds what to drop without looking at everything
+    private final Map<Partition, Set<Key>> partitions = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    // the CLOCK ring and everything about its size, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Entry> ring = new ArrayList<>();
+    private int hand;
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /** What a response is cached under: its table and stored partition key, and the rest of the request. */
+    public record Key(String tableName, String partitionKey, String request) {
+    }
+
+    private record Partition(String tableName, String partitionKey) {
+    }
+
+    private static final class Entry {
+        final Key key;
+        final byte[] body;
+        final long stamp;
+        final long size;
+        volatile boolean referenced;
+        // position in the ring, -1 once removed
+        int slot = -1;
+
+        Entry(Key key, byte[] body, long stamp) {
+            this.key = key;
+            this.body = body;
+            this.stamp = stamp;
+            this.size = body.length + ENTRY_OVERHEAD_BYTES + 2L * (key.tableName().length()
+                    + key.partitionKey().length() + key.request().length());
+        }
+    }
+
+    @Autowired
+    public ResponseCache(StorageService storageService,
+                         @Value("${jkeydb.cache.max-bytes:0}") long maxBytes,
+                         @Value("${jkeydb.cache.max-entry-bytes:65536}") int maxEntryBytes) {
+        this(maxBytes, maxEntryBytes);
+        this.storageService = storageService;
+    }
+
+    // for tests: not connected to a StorageService yet, see StorageService.setResponseCache
+    public ResponseCache(long maxBytes, int maxEntryBytes) {
+        if (maxBytes < 0 || maxEntryBytes < 0) {
+            throw new IllegalArgumentException("The response cache sizes can't be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (isEnabled() && storageService != null) {
+            storageService.setResponseCache(this);
+            System.out.println("Response cache enabled, up to " + maxBytes + " bytes.");
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * The version of a partition; take it before reading the table and hand it to put().
+     */
+    public long stamp(String tableName, String partitionKey) {
+        return versions.get(stripeOf(tableName, partitionKey));
+    }
+
+    /** The cached response, or null. */
+    public byte[] get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.stamp != stamp(key.tableName(), key.partitionKey())) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.body;
+    }
+
+    /**
+     * Caches a response read after stamp was taken. Responses larger than
+     * jkeydb.cache.max-entry-bytes aren't cached, nor ones whose partition changed since.
+     */
+    public void put(Key key, byte[] body, long stamp) {
+        if (!isEnabled() || body.length > maxEntryBytes || stamp != stamp(key.tableName(), key.partitionKey())) {
+            return;
+        }
+        Entry entry = new Entry(key, body, stamp);
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                removeFromRing(previous);
+            }
+            bytes += entry.size;
+            makeRoomFor(entry);
+            if (entry.slot < 0) {
+                entry.slot = ring.size();
+                ring.add(entry);
+            }
+            partitions.computeIfAbsent(new Partition(key.tableName(), key.partitionKey()),
+                    partition -> ConcurrentHashMap.newKeySet()).add(key);
+        } finally {
+            lock.unlock();
+        }
+        // a write that invalidated the partition after the stamp may have missed this entry
+        if (stamp != stamp(key.tableName(), key.partitionKey())) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Drops the responses of one partition. partitionKey is the stored form.
+     */
+    public void invalidate(String tableName, String partitionKey) {
+        if (!isEnabled()) {
+            return;
+        }
+        versions.incrementAndGet(stripeOf(tableName, partitionKey));
+        Set<Key> keys = partitions.remove(new Partition(tableName, partitionKey));
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            Entry entry = entries.get(key);
+            if (entry != null && remove(entry)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the responses of a whole table (it was created again or dropped).
+     */
+    public void invalidateTable(String tableName) {
+        if (!isEnabled()) {
+            return;
+        }
+        // every stripe, so no read that started before this can cache what it read
+        for (int stripe = 0; stripe < VERSION_STRIPES; stripe++) {
+            versions.incrementAndGet(stripe);
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.key.tableName().equals(tableName) && remove(entry)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public ResponseCacheStats getStats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        lock.lock();
+        try {
+            return new ResponseCacheStats(hitCount, lookups - hitCount, lookups == 0 ? 0 : (double) hitCount / lookups,
+                    ring.size(), bytes, maxBytes, evictions.sum(), invalidations.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // removes the entry if it is still the cached one for its key
+    private boolean remove(Entry entry) {
+        lock.lock();
+        try {
+            if (!entries.remove(entry.key, entry)) {
+                return false;
+            }
+            removeFromRing(entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held, entry is counted in bytes but not in the ring yet
+    private void makeRoomFor(Entry entry) {
+        // stops when nothing but the new entry is left, even if that alone is too big
+        while (bytes > maxBytes && ring.size() > (entry.slot < 0 ? 0 : 1)) {
+            if (hand >= ring.size()) {
+                hand = 0;
+            }
+            Entry candidate = ring.get(hand);
+            if (candidate.referenced || candidate == entry) {
+                // a second chance: it goes next time round unless it is read again
+                candidate.referenced = false;
+                hand++;
+                continue;
+            }
+            entries.remove(candidate.key, candidate);
+            evictions.increment();
+            if (entry.slot < 0) {
+                // the new entry takes the freed slot, right behind the hand
+                ring.set(hand, entry);
+                entry.slot = hand;
+                candidate.slot = -1;
+                forget(candidate);
+                hand++;
+            } else {
+                // the last entry moves into this slot and is looked at next
+                removeFromRing(candidate);
+            }
+        }
+    }
+
+    // called with the lock held
+    private void removeFromRing(Entry entry) {
+        if (entry.slot < 0) {
+            return;
+        }
+        Entry last = ring.remove(ring.size() - 1);
+        if (last != entry) {
+            ring.set(entry.slot, last);
+            last.slot = entry.slot;
+        }
+        entry.slot = -1;
+        forget(entry);
+    }
+
+    // called with the lock held, once the entry is out of the ring
+    private void forget(Entry entry) {
+        bytes -= entry.size;
+        partitions.computeIfPresent(new Partition(entry.key.tableName(), entry.key.partitionKey()), (partition, keys) -> {
+            keys.remove(entry.key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static int stripeOf(String tableName, String partitionKey) {
+        return Math.floorMod(31 * tableName.hashCode() + partitionKey.hashCode(), VERSION_STRIPES);
+    }
+}
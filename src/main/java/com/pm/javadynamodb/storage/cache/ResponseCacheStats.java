@@ -0,0 +1,25 @@
+package com.pm.javadynamodb.storage.cache;
+
+/**
+ * Counters of the ResponseCache, for GET /admin/cache/stats and the metrics.
+ *
+ * @param hits          lookups answered from the cache
+ * @param misses        lookups that had to read the table
+ * @param hitRatio      hits / (hits + misses), 0 before the first lookup
+ * @param entries       responses cached right now
+ * @param bytes         approximate memory they take, response bytes plus per-entry overhead
+ * @param maxBytes      the configured bound, 0 when the cache is off
+ * @param evictions     entries dropped to stay under maxBytes
+ * @param invalidations entries dropped because a write changed their partition
+ */
+public record ResponseCacheStats(
+        long hits,
+        long misses,
+        double hitRatio,
+        long entries,
+        long bytes,
+        long maxBytes,
+        long evictions,
+        long invalidations
+) {
+}
@@ -0,0 +1,170 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed binary encoding for item attributes.
+ *
+ * Every value starts with a one-byte tag so numbers, booleans and nested
+ * lists/maps survive a round trip without going through JSON text.
+ * The types are exactly the ones Jackson hands us when it parses a request body.
+ */
+public final class AttributeCodec {
+
+    public static final byte NULL = 0;
+    public static final byte TRUE = 1;
+    public static final byte FALSE = 2;
+    public static final byte LONG = 3;
+    public static final byte DOUBLE = 4;
+    public static final byte STRING = 5;
+    public static final byte LIST = 6;
+    public static final byte MAP = 7;
+    public static final byte BIG_INTEGER = 8;
+    public static final byte BIG_DECIMAL = 9;
+    public static final byte BYTES = 10;
+
+    private AttributeCodec() {
+    }
+
+    public static void writeAttributes(BinaryWriter out, Map<String, Object> attributes) {
+        out.putVarInt(attributes.size());
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            out.putString(attribute.getKey());
+            writeValue(out, attribute.getValue());
+        }
+    }
+
+    public static Map<String, Object> readAttributes(ByteBuffer in) {
+        int count = BinaryReader.getVarInt(in);
+        Map<String, Object> attributes = new LinkedHashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            String name = BinaryReader.getString(in);
+            attributes.put(name, readValue(in));
+        }
+        return attributes;
+    }
+
+    public static void writeValue(BinaryWriter out, Object value) {
+        if (value == null) {
+            out.putByte(NULL);
+        } else if (value instanceof Boolean bool) {
+            out.putByte(bool ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            out.putByte(LONG);
+            out.putVarLong(zigZag(((Number) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.putByte(DOUBLE);
+            out.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof String string) {
+            out.putByte(STRING);
+            out.putString(string);
+        } else if (value instanceof BigInteger bigInteger) {
+            out.putByte(BIG_INTEGER);
+            out.putString(bigInteger.toString());
+        } else if (value instanceof BigDecimal bigDecimal) {
+            out.putByte(BIG_DECIMAL);
+            out.putString(bigDecimal.toString());
+        } else if (value instanceof byte[] bytes) {
+            out.putByte(BYTES);
+            out.putBytes(bytes);
+        } else if (value instanceof List<?> list) {
+            out.putByte(LIST);
+            out.putVarInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.putByte(MAP);
+            out.putVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.putString(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported attribute type: " + value.getClass().getName());
+        }
+    }
+
+    public static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case LONG -> {
+                long value = unZigZag(BinaryReader.getVarLong(in));
+                // Jackson gives us Integer for small numbers, keep it that way so items compare equal
+                yield value == (int) value ? (Object) (int) value : (Object) value;
+            }
+            case DOUBLE -> in.getDouble();
+            case STRING -> BinaryReader.getString(in);
+            case BIG_INTEGER -> new BigInteger(BinaryReader.getString(in));
+            case BIG_DECIMAL -> new BigDecimal(BinaryReader.getString(in));
+            case BYTES -> BinaryReader.getBytes(in);
+            case LIST -> {
+                int size = BinaryReader.getVarInt(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case MAP -> {
+                int size = BinaryReader.getVarInt(in);
+                Map<String, Object> map = new LinkedHashMap<>(Math.max(4, size * 2));
+                for (int i = 0; i < size; i++) {
+                    String key = BinaryReader.getString(in);
+                    map.put(key, readValue(in));
+                }
+                yield map;
+            }
+            default -> throw new IllegalStateException("Unknown attribute tag: " + tag);
+        };
+    }
+
+    // moves past one value without building it, used to find a single attribute in packed bytes
+    public static void skipValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL, TRUE, FALSE -> {
+            }
+            case LONG -> BinaryReader.getVarLong(in);
+            case DOUBLE -> in.position(in.position() + Double.BYTES);
+            case STRING, BIG_INTEGER, BIG_DECIMAL, BYTES -> {
+                int length = BinaryReader.getVarInt(in);
+                in.position(in.position() + length);
+            }
+            case LIST -> {
+                int size = BinaryReader.getVarInt(in);
+                for (int i = 0; i < size; i++) {
+                    skipValue(in);
+                }
+            }
+            case MAP -> {
+                int size = BinaryReader.getVarInt(in);
+                for (int i = 0; i < size; i++) {
+                    int length = BinaryReader.getVarInt(in);
+                    in.position(in.position() + length);
+                    skipValue(in);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown attribute tag: " + tag);
+        }
+    }
+
+    // zig-zag keeps small negative numbers small once they are varint encoded
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-table mapping between attribute names and small integer ids.
+ *
+ * Rows of a table almost always share the same handful of attribute names, so packed
+ * items store the id (usually one varint byte) instead of repeating the name in every
+ * row. Ids are handed out on first use and never change or get reused; the dictionary
+ * only lives as long as the in-memory table, so it is never written to disk.
+ */
+public final class AttributeDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // only new names take the lock, lookups of known names never block
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile String[] names = new String[16];
+    private int size;
+
+    /** The id for name, assigning the next free one if the name is new. */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        lock.lock();
+        try {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = name;
+            names = current; // publish before the id becomes visible
+            ids.put(name, size);
+            return size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The id for name, or -1 if no item of this table ever had that attribute. */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
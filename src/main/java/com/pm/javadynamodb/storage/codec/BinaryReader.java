@@ -0,0 +1,58 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Static helpers that read what BinaryWriter wrote, straight from any ByteBuffer
+ * (heap, direct or memory-mapped). The buffer's position is advanced past each field.
+ */
+public final class BinaryReader {
+
+    private BinaryReader() {
+    }
+
+    public static int getVarInt(ByteBuffer buffer) {
+        long value = getVarLong(buffer);
+        if ((value >>> 32) != 0) {
+            throw new IllegalStateException("Varint does not fit in an int: " + value);
+        }
+        return (int) value;
+    }
+
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed varint");
+            }
+        }
+    }
+
+    public static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[getVarInt(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    public static String getNullableString(ByteBuffer buffer) {
+        int lengthPlusOne = getVarInt(buffer);
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[lengthPlusOne - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable, reusable ByteBuffer for building binary records.
+ * Callers clear() it, put their fields, then flip() and hand buffer() to a FileChannel.
+ * Integers that are usually small (lengths, counts, sequence numbers) are written as
+ * unsigned LEB128 varints so they take 1-2 bytes instead of 4-8.
+ */
+public final class BinaryWriter {
+
+    private ByteBuffer buffer;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    public void clear() {
+        buffer.clear();
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    public void position(int position) {
+        buffer.position(position);
+    }
+
+    /**
+     * The underlying buffer. It may be replaced when the writer grows,
+     * so don't hold on to it across put calls.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public ByteBuffer flip() {
+        return buffer.flip();
+    }
+
+    public void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    public void putInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    // overwrite 4 bytes that were reserved earlier, e.g. a length prefix
+    public void putIntAt(int index, int value) {
+        buffer.putInt(index, value);
+    }
+
+    public void putLong(long value) {
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void putDouble(double value) {
+        ensureCapacity(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    public void putVarInt(int value) {
+        putVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public void putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public void putBytes(byte[] bytes) {
+        putVarInt(bytes.length);
+        putRaw(bytes);
+    }
+
+    public void putRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public void putRaw(ByteBuffer bytes) {
+        ensureCapacity(bytes.remaining());
+        buffer.put(bytes);
+    }
+
+    public void putString(String value) {
+        putBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 0 means null, otherwise length + 1 followed by the UTF-8 bytes
+    public void putNullableString(String value) {
+        if (value == null) {
+            putVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length + 1);
+        putRaw(bytes);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        int needed = buffer.position() + extra;
+        int newCapacity = Math.max(buffer.capacity() * 2, needed);
+        ByteBuffer bigger = ByteBuffer.allocateDirect(newCapacity);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+}
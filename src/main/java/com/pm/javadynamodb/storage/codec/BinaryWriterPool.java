@@ -0,0 +1,60 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small lock-free pool of reusable BinaryWriters.
+ *
+ * A ThreadLocal buffer only pays off while threads live long; with virtual threads every
+ * request gets a fresh thread, so each one would allocate (and keep) a buffer of its own.
+ * This pool is shared instead: acquire() takes a writer from a random slot or makes a new
+ * one if the slots it tried are empty, release() puts it back if there is room. Nothing
+ * blocks, so it is safe to use from any kind of thread.
+ */
+public final class BinaryWriterPool {
+
+    // a writer that grew past this (one huge item) is dropped instead of being kept around
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<BinaryWriter> slots;
+    private final int initialCapacity;
+
+    public BinaryWriterPool(int size, int initialCapacity) {
+        this.slots = new AtomicReferenceArray<>(size);
+        this.initialCapacity = initialCapacity;
+    }
+
+    // a pool with a couple of slots per core, enough that contended threads rarely miss
+    public static BinaryWriterPool perCore(int initialCapacity) {
+        return new BinaryWriterPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), initialCapacity);
+    }
+
+    /** A cleared writer; give it back with release() when done. */
+    public BinaryWriter acquire() {
+        int start = ThreadLocalRandom.current().nextInt(slots.length());
+        for (int i = 0; i < Math.min(PROBES, slots.length()); i++) {
+            int slot = (start + i) % slots.length();
+            BinaryWriter writer = slots.getAndSet(slot, null);
+            if (writer != null) {
+                writer.clear();
+                return writer;
+            }
+        }
+        return new BinaryWriter(initialCapacity);
+    }
+
+    public void release(BinaryWriter writer) {
+        if (writer.buffer().capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        int start = ThreadLocalRandom.current().nextInt(slots.length());
+        for (int i = 0; i < Math.min(PROBES, slots.length()); i++) {
+            if (slots.compareAndSet((start + i) % slots.length(), null, writer)) {
+                return;
+            }
+        }
+        // every slot we tried is taken, let this one go
+    }
+}
@@ -0,0 +1,156 @@
+package com.pm.javadynamodb.storage.codec;
+
+import com.pm.javadynamodb.core.model.KeyType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Order-preserving encoding of typed key values into the String keys the stores use.
+ *
+ * NUMBER and BINARY keys are turned into bytes whose unsigned lexicographic order is the
+ * order of the values, and each byte becomes one char (0..255). Those strings are Latin-1
+ * only, so with compact strings they are backed by a plain byte[] and String.compareTo
+ * is exactly an unsigned byte[] comparison. Every store, the LSM segments and the WAL
+ * keep working on Strings without knowing anything about key types.
+ *
+ * STRING keys are stored as they are.
+ *
+ * Number layout (like the order-preserving encodings of HBase and FoundationDB):
+ * <pre>
+ *   zero      0x01
+ *   positive  0x02, exponent (4 bytes, sign bit flipped), digits (1..10), 0x00
+ *   negative  0x00, then the positive layout of the magnitude with every byte inverted
+ * </pre>
+ * where value = 0.digits x 10^exponent with no trailing zero digits, so two positive
+ * numbers order by exponent first and then digit by digit, a shorter one first.
+ */
+public final class KeyEncoding {
+
+    private static final char NEGATIVE = 0x00;
+    private static final char ZERO = 0x01;
+    private static final char POSITIVE = 0x02;
+
+    private KeyEncoding() {
+    }
+
+    /**
+     * The stored form of a key value. Numbers may come in as any Number or a numeric
+     * string, binary keys as byte[] or base64.
+     *
+     * @throws IllegalArgumentException if the value doesn't fit the type
+     */
+    public static String encode(KeyType type, Object value) {
+        return switch (type) {
+            case STRING -> value.toString();
+            case NUMBER -> encodeNumber(toBigDecimal(value));
+            case BINARY -> new String(toBytes(value), StandardCharsets.ISO_8859_1);
+        };
+    }
+
+    // the stored form back to what a client would have sent: plain number, base64 or the string
+    public static String decode(KeyType type, String stored) {
+        return switch (type) {
+            case STRING -> stored;
+            case NUMBER -> decodeNumber(stored).toPlainString();
+            case BINARY -> Base64.getEncoder().encodeToString(stored.getBytes(StandardCharsets.ISO_8859_1));
+        };
+    }
+
+    /**
+     * Key types as stored after a table definition (WAL CREATE_TABLE, snapshot TABLE block).
+     * Only written for tables with a non STRING key, so readKeyTypes() finds nothing for
+     * definitions written before key types existed.
+     */
+    public static void writeKeyTypes(BinaryWriter out, KeyType partitionKeyType, KeyType sortKeyType) {
+        out.putByte(partitionKeyType.ordinal());
+        out.putByte(sortKeyType.ordinal());
+    }
+
+    // {partition key type, sort key type}, both STRING if the payload ends here
+    public static KeyType[] readKeyTypes(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return new KeyType[]{KeyType.STRING, KeyType.STRING};
+        }
+        return new KeyType[]{KeyType.values()[payload.get()], KeyType.values()[payload.get()]};
+    }
+
+    private static String encodeNumber(BigDecimal number) {
+        int signum = number.signum();
+        if (signum == 0) {
+            return String.valueOf(ZERO);
+        }
+        BigDecimal magnitude = number.abs().stripTrailingZeros();
+        String digits = magnitude.unscaledValue().toString();
+        int exponent = digits.length() - magnitude.scale();
+
+        // negative numbers: same bytes inverted, so a bigger magnitude sorts first
+        int flip = signum > 0 ? 0 : 0xFF;
+        StringBuilder out = new StringBuilder(6 + digits.length());
+        out.append(signum > 0 ? POSITIVE : NEGATIVE);
+        int biasedExponent = exponent ^ 0x80000000;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.append((char) (((biasedExponent >>> shift) & 0xFF) ^ flip));
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            out.append((char) ((digits.charAt(i) - '0' + 1) ^ flip));
+        }
+        out.append((char) flip); // terminator, below every digit
+        return out.toString();
+    }
+
+    private static BigDecimal decodeNumber(String stored) {
+        char marker = stored.charAt(0);
+        if (marker == ZERO) {
+            return BigDecimal.ZERO;
+        }
+        int flip = marker == POSITIVE ? 0 : 0xFF;
+        int biasedExponent = 0;
+        for (int i = 1; i <= 4; i++) {
+            biasedExponent = (biasedExponent << 8) | (stored.charAt(i) ^ flip);
+        }
+        int exponent = biasedExponent ^ 0x80000000;
+
+        StringBuilder digits = new StringBuilder(stored.length() - 6);
+        for (int i = 5; i < stored.length() - 1; i++) {
+            digits.append((char) ('0' + (stored.charAt(i) ^ flip) - 1));
+        }
+        BigDecimal magnitude = new BigDecimal(new BigInteger(digits.toString()), digits.length() - exponent);
+        return marker == POSITIVE ? magnitude : magnitude.negate();
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        } else if (value instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (!Double.isFinite(number)) {
+                throw new IllegalArgumentException("Number key must be finite, got " + value);
+            }
+            return BigDecimal.valueOf(number);
+        } else if (value instanceof Number number) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Key value '" + value + "' is not a number");
+        }
+    }
+
+    private static byte[] toBytes(Object value) {
+        if (value instanceof byte[] bytes) {
+            return bytes;
+        }
+        try {
+            return Base64.getDecoder().decode(value.toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Binary key value must be base64, got '" + value + "'");
+        }
+    }
+}
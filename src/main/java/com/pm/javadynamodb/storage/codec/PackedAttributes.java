@@ -0,0 +1,126 @@
+package com.pm.javadynamodb.storage.codec;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An item's attributes packed into a single byte[]:
+ *
+ * <pre>
+ *   varint count
+ *   repeated: varint attribute id (see AttributeDictionary), typed value (see AttributeCodec)
+ * </pre>
+ *
+ * Compared to a HashMap of boxed values this drops the map entries, the boxes and the
+ * repeated attribute names, which is most of an item's heap footprint.
+ *
+ * As a Map it is read-only and decodes lazily: get() walks the bytes and only builds
+ * the value asked for, and the whole map is decoded (once) when it is iterated, e.g.
+ * when Jackson serializes the item.
+ */
+public final class PackedAttributes extends AbstractMap<String, Object> {
+
+    // reusable encode buffers, so putting an item doesn't allocate a new one; a shared pool
+    // rather than a ThreadLocal, which would give every virtual thread a buffer of its own
+    private static final BinaryWriterPool ENCODE_BUFFERS = BinaryWriterPool.perCore(1024);
+
+    private final AttributeDictionary dictionary;
+    private final byte[] data;
+    private Map<String, Object> decoded;
+
+    public PackedAttributes(AttributeDictionary dictionary, byte[] data) {
+        this.dictionary = dictionary;
+        this.data = data;
+    }
+
+    /** Packs attributes, reusing the bytes if they are already packed with this dictionary. */
+    public static byte[] pack(AttributeDictionary dictionary, Map<String, Object> attributes) {
+        if (attributes instanceof PackedAttributes packed && packed.dictionary == dictionary) {
+            return packed.data;
+        }
+        BinaryWriter out = ENCODE_BUFFERS.acquire();
+        try {
+            out.putVarInt(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                out.putVarInt(dictionary.idOf(attribute.getKey()));
+                AttributeCodec.writeValue(out, attribute.getValue());
+            }
+            ByteBuffer encoded = out.flip();
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        } finally {
+            ENCODE_BUFFERS.release(out);
+        }
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    @Override
+    public int size() {
+        return BinaryReader.getVarInt(ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<String, Object> all = decoded;
+        return all != null ? all.containsKey(key) : find(key) != null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Map<String, Object> all = decoded;
+        if (all != null) {
+            return all.get(key);
+        }
+        ByteBuffer value = find(key);
+        return value == null ? null : AttributeCodec.readValue(value);
+    }
+
+    // the buffer positioned at the value of the attribute, null if the item doesn't have it
+    private ByteBuffer find(Object key) {
+        if (!(key instanceof String name)) {
+            return null;
+        }
+        int id = dictionary.lookup(name);
+        if (id < 0) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = BinaryReader.getVarInt(in);
+        for (int i = 0; i < count; i++) {
+            if (BinaryReader.getVarInt(in) == id) {
+                return in;
+            }
+            AttributeCodec.skipValue(in);
+        }
+        return null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return decodeAll().entrySet();
+    }
+
+    private Map<String, Object> decodeAll() {
+        Map<String, Object> result = decoded;
+        if (result == null) {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            int count = BinaryReader.getVarInt(in);
+            result = new LinkedHashMap<>(Math.max(4, count * 2));
+            for (int i = 0; i < count; i++) {
+                String name = dictionary.nameOf(BinaryReader.getVarInt(in));
+                result.put(name, AttributeCodec.readValue(in));
+            }
+            result = Collections.unmodifiableMap(result);
+            decoded = result;
+        }
+        return result;
+    }
+}
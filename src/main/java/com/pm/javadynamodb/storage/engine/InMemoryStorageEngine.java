@@ -0,0 +1,53 @@
+package com.pm.javadynamodb.storage.engine;
+
+import com.pm.javadynamodb.storage.engine.tiering.PartitionTiering;
+
+import java.util.Map;
+
+/**
+ * Default engine: every table lives on the heap and is made durable by the WAL and
+ * snapshots alone. With partition tiering, cold partitions may be moved to spill files
+ * to keep the heap under a budget (see PartitionTiering).
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+
+    // null keeps everything on the heap
+    private final PartitionTiering tiering;
+
+    public InMemoryStorageEngine() {
+        this(null);
+    }
+
+    public InMemoryStorageEngine(PartitionTiering tiering) {
+        this.tiering = tiering;
+    }
+
+    @Override
+    public TableStore createTableStore(String tableName) {
+        return new InMemoryTableStore(tableName, tiering);
+    }
+
+    @Override
+    public TableStore openTableStore(String tableName) {
+        return new InMemoryTableStore(tableName, tiering);
+    }
+
+    public PartitionTiering getTiering() {
+        return tiering;
+    }
+
+    @Override
+    public Object getStats() {
+        if (tiering == null) {
+            return Map.of("engine", "memory");
+        }
+        return Map.of("engine", "memory", "tiering", tiering.getStats());
+    }
+
+    @Override
+    public void close() {
+        if (tiering != null) {
+            tiering.close();
+        }
+    }
+}
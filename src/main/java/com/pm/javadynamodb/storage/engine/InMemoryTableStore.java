@@ -0,0 +1,524 @@
+package com.pm.javadynamodb.storage.engine;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.AttributeDictionary;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.codec.PackedAttributes;
+import com.pm.javadynamodb.storage.engine.tiering.PartitionTiering;
+import com.pm.javadynamodb.storage.engine.tiering.SpillFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The original storage layout: everything on the heap.
+ *
+ * Key = partition key, value = that partition's items kept sorted by sort key.
+ * Partitions are sorted too, so a paginated scan can continue from any key.
+ * ConcurrentSkipListMap is thread safe, which is crucial
+ * because Spring Boot serves requests from many threads at once.
+ *
+ * Items are not kept as Item objects: only their attributes are stored, packed into a
+ * byte[] against this table's attribute dictionary (see PackedAttributes). The key
+ * comes back from the map keys, and an Item is put together again on every read.
+ *
+ * With partition tiering on (see PartitionTiering) a cold partition's items may be in
+ * the table's spill file instead, with only a stub left in the map. get, query and the
+ * writes fault it back in; scans read it from the file without keeping it.
+ */
+public class InMemoryTableStore implements TableStore {
+
+    // rough per-item overhead of the skip list node, the byte[] header and the sort key's String
+    private static final int ENTRY_OVERHEAD = 96;
+    // writers, faults and evictions of one partition hold its stripe; plain reads take no lock
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentSkipListMap<String, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final AttributeDictionary dictionary = new AttributeDictionary();
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    // kept up to date on every put/delete so metrics never have to walk the maps
+    private final AtomicLong itemCount = new AtomicLong();
+    private final AtomicLong approximateBytes = new AtomicLong();
+    private final AtomicLong partitionCount = new AtomicLong();
+    // the part of approximateBytes that is on the heap, the rest is spilled
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong spilledPartitions = new AtomicLong();
+
+    private final String tableName;
+    // null keeps every partition on the heap
+    private final PartitionTiering tiering;
+    // created with the first eviction; evictions and compactions only run on the tiering thread
+    private volatile SpillFile spillFile;
+    private BinaryWriter spillWriter;
+
+    /**
+     * One partition: its items while they are on the heap, where they are in the spill
+     * file while they are not. Without tiering this is just a holder for the items.
+     */
+    private static final class Partition {
+        // null while spilled; only changed while holding the partition's stripe
+        volatile ConcurrentSkipListMap<String, byte[]> items;
+        // set while spilled, guarded by the stripe
+        SpillFile.Location spilled;
+        // approximate bytes of the items, guarded by the stripe
+        long bytes;
+        // access count, halved once per tiering epoch that passed since lastEpoch;
+        // updated without a lock, an access lost to a race doesn't matter
+        volatile int frequency;
+        volatile int lastEpoch;
+
+        Partition(ConcurrentSkipListMap<String, byte[]> items) {
+            this.items = items;
+        }
+
+        int frequencyAt(int epoch) {
+            int age = epoch - lastEpoch;
+            return age <= 0 ? frequency : age >= 31 ? 0 : frequency >>> age;
+        }
+
+        void touch(int epoch) {
+            int current = frequencyAt(epoch);
+            lastEpoch = epoch;
+            frequency = Math.min(PartitionTiering.MAX_FREQUENCY, current + 1);
+        }
+    }
+
+    public InMemoryTableStore() {
+        this(null, null);
+    }
+
+    public InMemoryTableStore(String tableName, PartitionTiering tiering) {
+        this.tableName = tableName;
+        this.tiering = tiering;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        if (tiering != null) {
+            tiering.register(this);
+        }
+    }
+
+    @Override
+    public Optional<Item> get(String partitionKey, String sortKey) {
+        Partition partition = partitions.get(partitionKey);
+        if (partition == null) {
+            return Optional.empty();
+        }
+        byte[] packed = resident(partitionKey, partition).get(sortKey);
+        return packed == null ? Optional.empty() : Optional.of(unpack(partitionKey, sortKey, packed));
+    }
+
+    @Override
+    public void put(String partitionKey, String sortKey, Item item) {
+        byte[] packed = PackedAttributes.pack(dictionary, item.getAttributes());
+        // the stripe keeps this atomic with delete() removing an emptied partition
+        ReentrantLock lock = lockFor(partitionKey);
+        lock.lock();
+        try {
+            Partition partition = partitions.get(partitionKey);
+            if (partition == null) {
+                partition = new Partition(new ConcurrentSkipListMap<>());
+                partitions.put(partitionKey, partition);
+                partitionCount.incrementAndGet();
+            }
+            byte[] previous = resident(partitionKey, partition).put(sortKey, packed);
+            long delta;
+            if (previous == null) {
+                itemCount.incrementAndGet();
+                delta = ENTRY_OVERHEAD + 2L * sortKey.length() + packed.length;
+            } else {
+                delta = packed.length - previous.length;
+            }
+            partition.bytes += delta;
+            approximateBytes.addAndGet(delta);
+            residentBytesChanged(delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(String partitionKey, String sortKey) {
+        ReentrantLock lock = lockFor(partitionKey);
+        lock.lock();
+        try {
+            Partition partition = partitions.get(partitionKey);
+            if (partition == null) {
+                return;
+            }
+            ConcurrentSkipListMap<String, byte[]> items = resident(partitionKey, partition);
+            byte[] removed = items.remove(sortKey);
+            if (removed != null) {
+                long delta = -(ENTRY_OVERHEAD + 2L * sortKey.length() + removed.length);
+                itemCount.decrementAndGet();
+                partition.bytes += delta;
+                approximateBytes.addAndGet(delta);
+                residentBytesChanged(delta);
+            }
+            // if partition is now empty remove it to save memory
+            if (items.isEmpty()) {
+                partitions.remove(partitionKey);
+                partitionCount.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ItemIterator query(String partitionKey, String startKey, String endKey) {
+        Partition stored = partitions.get(partitionKey);
+        if (stored == null) {
+            return ItemIterator.empty();
+        }
+        NavigableMap<String, byte[]> partition = resident(partitionKey, stored);
+
+        // If a range is specified, use the highly efficient subMap/tailMap/headMap views.
+        // They return a "view" of the original map, not a copy, which is very fast.
+        if (startKey != null && endKey != null) {
+            partition = partition.subMap(startKey, true, endKey, false);
+        } else if (startKey != null) {
+            partition = partition.tailMap(startKey, true);
+        } else if (endKey != null) {
+            partition = partition.headMap(endKey, false);
+        }
+        return ItemIterator.of(unpacking(partitionKey, partition));
+    }
+
+    @Override
+    public ItemIterator scan(Key exclusiveStartKey) {
+        return scan(exclusiveStartKey, partitionKey -> true);
+    }
+
+    // skipped partitions are never unpacked, only their key is looked at
+    @Override
+    public ItemIterator scan(Key exclusiveStartKey, Predicate<String> partitionFilter) {
+        NavigableMap<String, Partition> remaining = exclusiveStartKey == null
+                ? partitions
+                : partitions.tailMap(exclusiveStartKey.getPartitionKey(), true);
+        Iterator<Map.Entry<String, Partition>> partitionIterator = remaining.entrySet().iterator();
+
+        return ItemIterator.of(new Iterator<>() {
+            private Iterator<Item> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && partitionIterator.hasNext()) {
+                    Map.Entry<String, Partition> partition = partitionIterator.next();
+                    if (!partitionFilter.test(partition.getKey())) {
+                        continue;
+                    }
+                    // a scan touches every partition once, which says nothing about which are hot,
+                    // so spilled ones are read from the file and left there
+                    NavigableMap<String, byte[]> items = itemsForScan(partition.getKey(), partition.getValue());
+                    if (exclusiveStartKey != null && partition.getKey().equals(exclusiveStartKey.getPartitionKey())) {
+                        items = items.tailMap(exclusiveStartKey.getSortKey(), false);
+                    }
+                    current = unpacking(partition.getKey(), items);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                hasNext();
+                return current.next();
+            }
+        });
+    }
+
+    private Iterator<Item> unpacking(String partitionKey, NavigableMap<String, byte[]> partition) {
+        Iterator<Map.Entry<String, byte[]>> entries = partition.entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                Map.Entry<String, byte[]> entry = entries.next();
+                return unpack(partitionKey, entry.getKey(), entry.getValue());
+            }
+        };
+    }
+
+    // the attributes are only decoded when somebody reads them
+    private Item unpack(String partitionKey, String sortKey, byte[] packed) {
+        Item item = new Item();
+        item.setPrimaryKey(new Key(partitionKey, sortKey));
+        item.setAttributes(new PackedAttributes(dictionary, packed));
+        return item;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Tiering
+    // ---------------------------------------------------------------------------------------------
+
+    private ReentrantLock lockFor(String partitionKey) {
+        int hash = partitionKey.hashCode();
+        return stripes[Math.floorMod(hash ^ (hash >>> 16), LOCK_STRIPES)];
+    }
+
+    // the partition's items, faulted back in from the spill file if they were evicted
+    private ConcurrentSkipListMap<String, byte[]> resident(String partitionKey, Partition partition) {
+        if (tiering != null) {
+            partition.touch(tiering.epoch());
+        }
+        ConcurrentSkipListMap<String, byte[]> items = partition.items;
+        if (items != null) {
+            return items;
+        }
+        ReentrantLock lock = lockFor(partitionKey);
+        lock.lock();
+        try {
+            if (partition.items == null) {
+                long start = System.nanoTime();
+                SpillFile.Location location = partition.spilled;
+                partition.items = readSpilled(location);
+                partition.spilled = null;
+                location.file().free(location);
+                spilledPartitions.decrementAndGet();
+                residentBytesChanged(partition.bytes);
+                tiering.recordFault(start, location.length());
+            }
+            return partition.items;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the partition's items without making a spilled partition resident again
+    private NavigableMap<String, byte[]> itemsForScan(String partitionKey, Partition partition) {
+        ConcurrentSkipListMap<String, byte[]> items = partition.items;
+        if (items != null) {
+            return items;
+        }
+        ReentrantLock lock = lockFor(partitionKey);
+        lock.lock();
+        try {
+            return partition.items != null ? partition.items : readSpilled(partition.spilled);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void residentBytesChanged(long delta) {
+        residentBytes.addAndGet(delta);
+        if (tiering != null) {
+            tiering.residentBytesChanged(this, delta);
+        }
+    }
+
+    /**
+     * Adds the resident bytes of every partition to bytesByFrequency[its access count],
+     * for the tiering thread to decide how cold a partition must be to go.
+     */
+    public void addResidentBytesByFrequency(int epoch, long[] bytesByFrequency) {
+        for (Partition partition : partitions.values()) {
+            if (partition.items != null) {
+                bytesByFrequency[partition.frequencyAt(epoch)] += partition.bytes;
+            }
+        }
+    }
+
+    /**
+     * Spills resident partitions whose access count is at most maxFrequency, in key order,
+     * until at least bytesToFree is freed. Returns the item bytes that left the heap.
+     * Only called by the tiering thread.
+     */
+    public long evict(int epoch, int maxFrequency, long bytesToFree) {
+        long freed = 0;
+        for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+            if (freed >= bytesToFree) {
+                break;
+            }
+            Partition partition = entry.getValue();
+            if (partition.items == null || partition.frequencyAt(epoch) > maxFrequency) {
+                continue;
+            }
+            ReentrantLock lock = lockFor(entry.getKey());
+            lock.lock();
+            try {
+                // it may have been emptied and removed, or faulted in again, since we looked
+                if (partition.items != null && !partition.items.isEmpty() && partitions.get(entry.getKey()) == partition) {
+                    freed += spill(partition);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return freed;
+    }
+
+    // must hold the partition's stripe
+    private long spill(Partition partition) {
+        try {
+            if (spillFile == null) {
+                spillFile = tiering.newSpillFile(tableName);
+                spillWriter = new BinaryWriter(64 * 1024);
+            }
+            // count, then (sort key, packed attributes) per item in sort key order
+            spillWriter.clear();
+            spillWriter.putVarInt(partition.items.size());
+            for (Map.Entry<String, byte[]> item : partition.items.entrySet()) {
+                spillWriter.putString(item.getKey());
+                spillWriter.putBytes(item.getValue());
+            }
+            partition.spilled = spillFile.append(spillWriter.flip());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to spill a partition of table " + tableName, e);
+        }
+        // readers that already have the items keep using them, later ones fault them in again
+        partition.items = null;
+        spilledPartitions.incrementAndGet();
+        residentBytesChanged(-partition.bytes);
+        tiering.recordEviction(partition.spilled.length());
+        return partition.bytes;
+    }
+
+    private ConcurrentSkipListMap<String, byte[]> readSpilled(SpillFile.Location location) {
+        try {
+            ByteBuffer buffer = location.file().read(location);
+            ConcurrentSkipListMap<String, byte[]> items = new ConcurrentSkipListMap<>();
+            int count = BinaryReader.getVarInt(buffer);
+            for (int i = 0; i < count; i++) {
+                String sortKey = BinaryReader.getString(buffer);
+                items.put(sortKey, BinaryReader.getBytes(buffer));
+            }
+            return items;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read a spilled partition of table " + tableName, e);
+        }
+    }
+
+    /**
+     * Once most of the spill file is dead (partitions that were faulted back in), copies
+     * the spilled partitions one by one into a new file and deletes the old one.
+     * Only called by the tiering thread. Returns whether it compacted.
+     */
+    public boolean compactSpillFile(long minBytes) {
+        SpillFile old = spillFile;
+        if (old == null || old.size() < minBytes || old.deadBytes() <= old.liveBytes()) {
+            return false;
+        }
+        try {
+            SpillFile compacted = tiering.newSpillFile(tableName);
+            for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                Partition partition = entry.getValue();
+                ReentrantLock lock = lockFor(entry.getKey());
+                lock.lock();
+                try {
+                    if (partition.spilled != null) {
+                        SpillFile.Location location = partition.spilled;
+                        partition.spilled = compacted.append(location.file().read(location));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            spillFile = compacted;
+            old.close();
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact the spill file of table " + tableName, e);
+        }
+    }
+
+    public long residentBytes() {
+        return residentBytes.get();
+    }
+
+    public long partitionCount() {
+        return partitionCount.get();
+    }
+
+    public long spilledPartitionCount() {
+        return spilledPartitions.get();
+    }
+
+    public long spillFileBytes() {
+        SpillFile file = spillFile;
+        return file == null ? 0 : file.size();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return false;
+    }
+
+    @Override
+    public long approximateItemCount() {
+        return itemCount.get();
+    }
+
+    @Override
+    public long approximateBytes() {
+        return approximateBytes.get();
+    }
+
+    @Override
+    public void flush() {
+        // nothing to do, the snapshot carries our items
+    }
+
+    @Override
+    public void close() {
+        releaseTiering();
+    }
+
+    @Override
+    public void drop() {
+        if (tiering != null) {
+            // waits for a running eviction pass, and no later one sees this store
+            tiering.unregister(this);
+        }
+        // the partitions go before the spill file does: a reader that got hold of a spilled one
+        // just before finds it empty, instead of faulting it in from a closed file
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            for (Partition partition : partitions.values()) {
+                if (partition.items == null) {
+                    partition.items = new ConcurrentSkipListMap<>();
+                    partition.spilled = null;
+                }
+            }
+            partitions.clear();
+            itemCount.set(0);
+            approximateBytes.set(0);
+            partitionCount.set(0);
+            spilledPartitions.set(0);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+        releaseTiering();
+    }
+
+    // the spill file is no use without this store; unregistering waits for a running eviction pass
+    private void releaseTiering() {
+        if (tiering == null) {
+            return;
+        }
+        tiering.unregister(this);
+        tiering.residentBytesChanged(this, -residentBytes.getAndSet(0));
+        if (spillFile != null) {
+            spillFile.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pm.javadynamodb.storage.engine;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * An iterator over items that may be holding on to files. Use it in a
+ * try-with-resources block unless you are sure you read it to the end.
+ */
+public interface ItemIterator extends Iterator<Item>, AutoCloseable {
+
+    @Override
+    void close();
+
+    static ItemIterator of(Iterator<Item> items) {
+        return new ItemIterator() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                return items.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // the items of source that match, closing source when closed
+    static ItemIterator filtered(ItemIterator source, Predicate<Item> filter) {
+        return new ItemIterator() {
+            private Item next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && source.hasNext()) {
+                    Item candidate = source.next();
+                    if (filter.test(candidate)) {
+                        next = candidate;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Item item = next;
+                next = null;
+                return item;
+            }
+
+            @Override
+            public void close() {
+                source.close();
+            }
+        };
+    }
+
+    static ItemIterator empty() {
+        return of(new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public Item next() {
+                throw new NoSuchElementException();
+            }
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.javadynamodb.storage.engine;
+
+/**
+ * Creates the TableStore behind every table. Which engine is used is picked once at
+ * startup with jkeydb.storage.engine (see StorageEngineConfig).
+ */
+public interface StorageEngine {
+
+    // a store for a table that is being created right now, any old data under that name is discarded
+    TableStore createTableStore(String tableName);
+
+    // a store for a table that already existed before this startup (e.g. found in a snapshot)
+    TableStore openTableStore(String tableName);
+
+    // counters to show on the admin endpoint, serialized to JSON as is
+    Object getStats();
+
+    void close();
+}
@@ -0,0 +1,56 @@
+package com.pm.javadynamodb.storage.engine;
+
+import com.pm.javadynamodb.storage.engine.lsm.LsmStorageEngine;
+import com.pm.javadynamodb.storage.engine.tiering.PartitionTiering;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Picks the storage engine from jkeydb.storage.engine:
+ * "memory" (default) keeps every table on the heap,
+ * "lsm" keeps tables in memtables that are flushed to sorted segment files under jkeydb.lsm.dir.
+ * The memory engine can keep its heap under jkeydb.tiering.max-heap-bytes (all tables) and/or
+ * jkeydb.tiering.table-max-heap-bytes (each table) by spilling cold partitions to jkeydb.tiering.dir.
+ */
+@Configuration
+public class StorageEngineConfig {
+
+    @Bean(destroyMethod = "close")
+    public StorageEngine storageEngine(@Value("${jkeydb.storage.engine:memory}") String engine,
+                                       @Value("${jkeydb.lsm.dir:data}") String lsmDir,
+                                       @Value("${jkeydb.lsm.memtable-bytes:16777216}") long memtableBytes,
+                                       @Value("${jkeydb.lsm.compaction-trigger:4}") int compactionTrigger,
+                                       @Value("${jkeydb.lsm.background-threads:2}") int backgroundThreads,
+                                       @Value("${jkeydb.lsm.index-interval-bytes:4096}") int indexIntervalBytes,
+                                       @Value("${jkeydb.lsm.bloom-bits-per-key:10}") int bloomBitsPerKey,
+                                       @Value("${jkeydb.tiering.max-heap-bytes:0}") long tieringMaxHeapBytes,
+                                       @Value("${jkeydb.tiering.table-max-heap-bytes:0}") long tieringTableMaxHeapBytes,
+                                       @Value("${jkeydb.tiering.dir:spill}") String tieringDir,
+                                       @Value("${jkeydb.tiering.check-interval-ms:1000}") long tieringCheckIntervalMillis,
+                                       @Value("${jkeydb.tiering.aging-period-ms:60000}") long tieringAgingPeriodMillis) {
+        boolean tiering = tieringMaxHeapBytes > 0 || tieringTableMaxHeapBytes > 0;
+        return switch (engine.toLowerCase()) {
+            case "memory" -> {
+                if (!tiering) {
+                    yield new InMemoryStorageEngine();
+                }
+                System.out.println("Spilling cold partitions to " + tieringDir + " above " + tieringMaxHeapBytes
+                        + " bytes in all, " + tieringTableMaxHeapBytes + " per table (0 = no limit)");
+                yield new InMemoryStorageEngine(new PartitionTiering(Paths.get(tieringDir), tieringMaxHeapBytes,
+                        tieringTableMaxHeapBytes, tieringCheckIntervalMillis, tieringAgingPeriodMillis));
+            }
+            case "lsm" -> {
+                System.out.println("Using the LSM storage engine in " + lsmDir);
+                if (tiering) {
+                    System.out.println("Ignoring jkeydb.tiering.*, the LSM engine keeps its tables on disk anyway");
+                }
+                yield new LsmStorageEngine(Paths.get(lsmDir), memtableBytes, compactionTrigger, backgroundThreads,
+                        indexIntervalBytes, bloomBitsPerKey);
+            }
+            default -> throw new IllegalArgumentException("Unknown storage engine '" + engine + "', use memory or lsm");
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.pm.javadynamodb.storage.engine;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Where the items of one table actually live.
+ *
+ * StorageService decides what to log and when; a TableStore only keeps items addressable
+ * by (partition key, sort key) and returns them in sort key order within a partition.
+ * The in-memory store keeps everything on the heap, the LSM store spills to sorted files.
+ */
+public interface TableStore {
+
+    Optional<Item> get(String partitionKey, String sortKey);
+
+    void put(String partitionKey, String sortKey, Item item);
+
+    void delete(String partitionKey, String sortKey);
+
+    /**
+     * Items of one partition in ascending sort key order.
+     *
+     * @param startKey first sort key to include, null for the start of the partition
+     * @param endKey   first sort key to exclude, null for the end of the partition
+     */
+    ItemIterator query(String partitionKey, String startKey, String endKey);
+
+    /**
+     * Every item of the table in (partition key, sort key) order.
+     */
+    default ItemIterator scan() {
+        return scan(null);
+    }
+
+    /**
+     * Like scan(), but starting right after exclusiveStartKey, which is how a paginated
+     * read picks up where the previous page stopped. Null starts at the beginning.
+     */
+    ItemIterator scan(Key exclusiveStartKey);
+
+    /**
+     * Like scan(exclusiveStartKey), but only the partitions whose key passes partitionFilter,
+     * used by segmented scans. Stores that can skip a whole partition without reading its
+     * items override this, the default filters item by item.
+     */
+    default ItemIterator scan(Key exclusiveStartKey, Predicate<String> partitionFilter) {
+        return ItemIterator.filtered(scan(exclusiveStartKey),
+                item -> partitionFilter.test(item.getPrimaryKey().getPartitionKey()));
+    }
+
+    /**
+     * True if the store keeps its items in its own files, in which case a snapshot only
+     * has to record the table definition and call flush() first.
+     */
+    boolean isDurable();
+
+    /**
+     * Roughly how many items the table holds, for metrics; must be cheap to call.
+     * Stores that keep old versions around until a compaction may count them too.
+     */
+    long approximateItemCount();
+
+    // roughly how many bytes the items take, on the heap and in the store's files
+    long approximateBytes();
+
+    // push everything buffered in memory into the store's files (no-op for in-memory stores)
+    void flush() throws IOException;
+
+    // release files and threads, the data stays where it is
+    void close();
+
+    // the table was deleted: release everything and remove the data for good
+    void drop();
+}
@@ -0,0 +1,92 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Bloom filter over the partition keys of one segment.
+ *
+ * "No" is always right, "maybe" is wrong with a probability that depends on bits per
+ * key (about 1% at 10 bits). The k probe positions come from one 64-bit hash split in
+ * two halves (Kirsch-Mitzenmacher), so a lookup hashes the key only once.
+ *
+ * The bits are a ByteBuffer of longs, which lets a segment check its filter straight
+ * from the mapped file without copying it onto the heap.
+ */
+final class BloomFilter {
+
+    private static final int MAX_HASHES = 30;
+
+    private final ByteBuffer bits;
+    private final long bitCount;
+    private final int hashes;
+
+    private BloomFilter(ByteBuffer bits, int hashes) {
+        this.bits = bits;
+        this.bitCount = (long) (bits.capacity() / Long.BYTES) * Long.SIZE;
+        this.hashes = hashes;
+    }
+
+    /** An empty filter sized for keyCount keys at bitsPerKey bits each. */
+    static BloomFilter create(int keyCount, int bitsPerKey) {
+        long wantedBits = Math.max(64, (long) keyCount * Math.max(1, bitsPerKey));
+        int words = (int) Math.min(Integer.MAX_VALUE / Long.BYTES, (wantedBits + 63) / 64);
+        // k = ln2 * bits per key is optimal
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * 0.69)));
+        return new BloomFilter(ByteBuffer.allocate(words * Long.BYTES), hashes);
+    }
+
+    /** A filter over bits that were written by writeTo, e.g. a slice of a mapped segment. */
+    static BloomFilter wrap(ByteBuffer bits, int hashes) {
+        return new BloomFilter(bits, hashes);
+    }
+
+    static long hash(String key) {
+        // FNV-1a over the chars, then the murmur3 finalizer so both halves are well mixed
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    void add(long keyHash) {
+        int h1 = (int) keyHash;
+        int h2 = (int) (keyHash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int index = (int) (bit >>> 6) * Long.BYTES;
+            bits.putLong(index, bits.getLong(index) | (1L << bit));
+        }
+    }
+
+    boolean mightContain(String key) {
+        long keyHash = hash(key);
+        int h1 = (int) keyHash;
+        int h2 = (int) (keyHash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.getLong((int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    int sizeInBytes() {
+        return bits.capacity();
+    }
+
+    ByteBuffer bits() {
+        return bits.duplicate().clear();
+    }
+}
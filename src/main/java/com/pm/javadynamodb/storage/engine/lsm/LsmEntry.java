@@ -0,0 +1,26 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.Comparator;
+
+/**
+ * One key as the LSM layers see it. A null item is a tombstone: the key was deleted
+ * and older layers must not bring it back.
+ */
+record LsmEntry(String partitionKey, String sortKey, Item item) {
+
+    // the order everything in the LSM tree is sorted in: partition key first, then sort key
+    static final Comparator<LsmEntry> KEY_ORDER = Comparator
+            .comparing(LsmEntry::partitionKey)
+            .thenComparing(LsmEntry::sortKey);
+
+    boolean isTombstone() {
+        return item == null;
+    }
+
+    static int compareKeys(String partitionKeyA, String sortKeyA, String partitionKeyB, String sortKeyB) {
+        int result = partitionKeyA.compareTo(partitionKeyB);
+        return result != 0 ? result : sortKeyA.compareTo(sortKeyB);
+    }
+}
@@ -0,0 +1,48 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by every table of one LsmStorageEngine. LongAdder because point
+ * lookups bump several of them on every request from many threads.
+ */
+final class LsmMetrics {
+
+    final LongAdder pointLookups = new LongAdder();
+    final LongAdder memtableHits = new LongAdder();
+    final LongAdder segmentHits = new LongAdder();
+
+    // one check per segment whose key range covers the partition key
+    final LongAdder bloomChecks = new LongAdder();
+    // the filter said "no", the segment was skipped without touching its data
+    final LongAdder bloomNegatives = new LongAdder();
+    // the filter said "maybe" but the segment didn't have the partition after all
+    final LongAdder bloomFalsePositives = new LongAdder();
+    // segments whose index and data blocks were actually searched
+    final LongAdder segmentsSearched = new LongAdder();
+
+    final LongAdder flushes = new LongAdder();
+    final LongAdder compactions = new LongAdder();
+
+    LsmStats snapshot(int bloomBitsPerKey) {
+        long negatives = bloomNegatives.sum();
+        long falsePositives = bloomFalsePositives.sum();
+        long absent = negatives + falsePositives;
+        long lookups = pointLookups.sum();
+        long hits = memtableHits.sum() + segmentHits.sum();
+
+        return new LsmStats(
+                lookups,
+                memtableHits.sum(),
+                segmentHits.sum(),
+                lookups == 0 ? 0 : (double) hits / lookups,
+                bloomBitsPerKey,
+                bloomChecks.sum(),
+                negatives,
+                falsePositives,
+                absent == 0 ? 0 : (double) falsePositives / absent,
+                segmentsSearched.sum(),
+                flushes.sum(),
+                compactions.sum());
+    }
+}
@@ -0,0 +1,24 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+/**
+ * A point-in-time copy of the LSM engine's read counters, summed over all tables.
+ *
+ * hitRate is the share of point lookups that found an item. bloomFalsePositiveRate is
+ * the share of segments that did not have the partition but still passed the filter;
+ * if it is well above what bloomBitsPerKey promises (~1% at 10), raise the bits.
+ */
+public record LsmStats(
+        long pointLookups,
+        long memtableHits,
+        long segmentHits,
+        double hitRate,
+        int bloomBitsPerKey,
+        long bloomChecks,
+        long bloomNegatives,
+        long bloomFalsePositives,
+        double bloomFalsePositiveRate,
+        long segmentsSearched,
+        long flushes,
+        long compactions
+) {
+}
@@ -0,0 +1,103 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.storage.engine.StorageEngine;
+import com.pm.javadynamodb.storage.engine.TableStore;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps every table as an LSM tree in its own directory under dataDir.
+ * Memtable flushes and compactions of all tables share a small pool of background threads.
+ */
+public class LsmStorageEngine implements StorageEngine {
+
+    private final Path dataDir;
+    private final long memtableBytes;
+    private final int compactionTrigger;
+    private final int bloomBitsPerKey;
+    private final SegmentWriter segmentWriter;
+    private final LsmMetrics metrics = new LsmMetrics();
+    private final ExecutorService background;
+
+    public LsmStorageEngine(Path dataDir, long memtableBytes, int compactionTrigger, int backgroundThreads) {
+        this(dataDir, memtableBytes, compactionTrigger, backgroundThreads, 4096, 10);
+    }
+
+    public LsmStorageEngine(Path dataDir, long memtableBytes, int compactionTrigger, int backgroundThreads,
+                            int indexIntervalBytes, int bloomBitsPerKey) {
+        this.dataDir = dataDir;
+        this.memtableBytes = memtableBytes;
+        this.compactionTrigger = compactionTrigger;
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.segmentWriter = new SegmentWriter(indexIntervalBytes, bloomBitsPerKey);
+        this.background = Executors.newFixedThreadPool(Math.max(1, backgroundThreads), runnable -> {
+            Thread thread = new Thread(runnable, "lsm-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public TableStore createTableStore(String tableName) {
+        Path directory = directoryOf(tableName);
+        try {
+            deleteRecursively(directory);
+            return newStore(tableName, directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create storage for table " + tableName, e);
+        }
+    }
+
+    @Override
+    public TableStore openTableStore(String tableName) {
+        try {
+            return newStore(tableName, directoryOf(tableName));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open storage for table " + tableName, e);
+        }
+    }
+
+    private LsmTableStore newStore(String tableName, Path directory) throws IOException {
+        return new LsmTableStore(tableName, directory, background, memtableBytes, compactionTrigger, segmentWriter, metrics);
+    }
+
+    @Override
+    public LsmStats getStats() {
+        return metrics.snapshot(bloomBitsPerKey);
+    }
+
+    // table names can contain anything, the directory name can't
+    private Path directoryOf(String tableName) {
+        return dataDir.resolve(URLEncoder.encode(tableName, StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        background.shutdown();
+        try {
+            background.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
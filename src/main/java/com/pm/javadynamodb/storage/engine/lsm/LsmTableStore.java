@@ -0,0 +1,399 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.AttributeDictionary;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import com.pm.javadynamodb.storage.engine.TableStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * One table stored as a log-structured merge tree.
+ *
+ * Writes go into the active memtable. Once it grows past memtableBytes it is frozen
+ * (a new empty memtable takes over) and a background thread writes it out as an
+ * immutable sorted segment file. When there are compactionTrigger segments they are
+ * merged into one, which drops overwritten versions and tombstones.
+ *
+ * Reads check the active memtable, the frozen one and then the segments newest first;
+ * range reads merge all of them with newest-wins precedence.
+ *
+ * The WAL stays the source of truth between checkpoints: a flush is only there to get
+ * items off the heap, and the checkpoint calls flush() before it truncates the log.
+ */
+public class LsmTableStore implements TableStore {
+
+    private final String tableName;
+    private final Path directory;
+    private final ExecutorService background;
+    private final long memtableBytes;
+    private final int compactionTrigger;
+    private final SegmentWriter segmentWriter;
+    private final LsmMetrics metrics;
+
+    // attribute names of this table, shared by all its memtables
+    private final AttributeDictionary dictionary = new AttributeDictionary();
+    private volatile Memtable active = new Memtable(dictionary);
+    private volatile Memtable frozen;
+
+    // newest first; replaced as a whole (copy on write) on every flush and compaction
+    private volatile List<Segment> segments;
+    private final AtomicLong nextSegmentId;
+
+    // writers hold the read lock, freezing the memtable takes the write lock for a moment
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    // flushes and compactions of one table run one at a time
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    LsmTableStore(String tableName, Path directory, ExecutorService background, long memtableBytes,
+                  int compactionTrigger, SegmentWriter segmentWriter, LsmMetrics metrics) throws IOException {
+        this.tableName = tableName;
+        this.directory = directory;
+        this.background = background;
+        this.memtableBytes = memtableBytes;
+        this.compactionTrigger = Math.max(2, compactionTrigger);
+        this.segmentWriter = segmentWriter;
+        this.metrics = metrics;
+
+        Files.createDirectories(directory);
+        List<String> live = Manifest.read(directory);
+        deleteUnlistedFiles(live);
+
+        List<Segment> opened = new ArrayList<>();
+        long maxId = 0;
+        try {
+            for (String name : live) {
+                opened.add(0, Segment.open(directory.resolve(name), metrics));
+                maxId = Math.max(maxId, SegmentFormat.idOf(name));
+            }
+        } catch (IOException e) {
+            opened.forEach(Segment::release);
+            throw e;
+        }
+        this.segments = Collections.unmodifiableList(opened);
+        this.nextSegmentId = new AtomicLong(maxId + 1);
+    }
+
+    @Override
+    public Optional<Item> get(String partitionKey, String sortKey) {
+        metrics.pointLookups.increment();
+        Item item = active.get(partitionKey, sortKey);
+        if (item == null) {
+            Memtable frozenMemtable = frozen;
+            if (frozenMemtable != null) {
+                item = frozenMemtable.get(partitionKey, sortKey);
+            }
+        }
+        if (item != null) {
+            if (item == Memtable.TOMBSTONE) {
+                return Optional.empty();
+            }
+            metrics.memtableHits.increment();
+            return Optional.of(item);
+        }
+
+        List<Segment> acquired = acquireSegments();
+        try {
+            for (Segment segment : acquired) {
+                LsmEntry entry = segment.get(partitionKey, sortKey);
+                if (entry != null) {
+                    if (entry.isTombstone()) {
+                        return Optional.empty();
+                    }
+                    metrics.segmentHits.increment();
+                    return Optional.of(entry.item());
+                }
+            }
+            return Optional.empty();
+        } finally {
+            acquired.forEach(Segment::release);
+        }
+    }
+
+    @Override
+    public void put(String partitionKey, String sortKey, Item item) {
+        write(memtable -> memtable.put(partitionKey, sortKey, item));
+    }
+
+    @Override
+    public void delete(String partitionKey, String sortKey) {
+        write(memtable -> memtable.delete(partitionKey, sortKey));
+    }
+
+    private void write(Consumer<Memtable> change) {
+        memtableLock.readLock().lock();
+        try {
+            change.accept(active);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+
+        if (active.approximateBytes() >= memtableBytes && !closed && flushScheduled.compareAndSet(false, true)) {
+            try {
+                background.execute(() -> {
+                    try {
+                        flush();
+                    } catch (Exception e) {
+                        System.err.println("Background flush of table " + tableName + " failed: " + e.getMessage());
+                    } finally {
+                        flushScheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the engine is shutting down, the WAL still has these writes
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public ItemIterator query(String partitionKey, String startKey, String endKey) {
+        return merged(
+                memtable -> memtable.partition(partitionKey, startKey, endKey),
+                segment -> segment.partition(partitionKey, startKey, endKey));
+    }
+
+    @Override
+    public ItemIterator scan(Key exclusiveStartKey) {
+        return merged(memtable -> memtable.after(exclusiveStartKey), segment -> segment.after(exclusiveStartKey));
+    }
+
+    private ItemIterator merged(Function<Memtable, Iterator<LsmEntry>> fromMemtable,
+                                Function<Segment, Iterator<LsmEntry>> fromSegment) {
+        List<Iterator<LsmEntry>> sources = new ArrayList<>();
+        sources.add(fromMemtable.apply(active));
+        Memtable frozenMemtable = frozen;
+        if (frozenMemtable != null) {
+            sources.add(fromMemtable.apply(frozenMemtable));
+        }
+        List<Segment> acquired = acquireSegments();
+        acquired.forEach(segment -> sources.add(fromSegment.apply(segment)));
+
+        MergingIterator merge = new MergingIterator(sources);
+        return new ItemIterator() {
+            private boolean released;
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = merge.hasNext();
+                if (!hasNext) {
+                    close(); // read to the end, no need to wait for the caller
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Item next() {
+                return merge.next().item();
+            }
+
+            @Override
+            public void close() {
+                if (!released) {
+                    released = true;
+                    acquired.forEach(Segment::release);
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    // memtables plus segments; overwritten items and tombstones count until a compaction drops them
+    @Override
+    public long approximateItemCount() {
+        Memtable frozenNow = frozen;
+        long count = active.entryCount() + (frozenNow == null ? 0 : frozenNow.entryCount());
+        for (Segment segment : segments) {
+            count += segment.entryCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long approximateBytes() {
+        Memtable frozenNow = frozen;
+        long bytes = active.approximateBytes() + (frozenNow == null ? 0 : frozenNow.approximateBytes());
+        for (Segment segment : segments) {
+            bytes += segment.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Freezes the active memtable and writes it out as a new segment, then compacts if
+     * there are enough segments. Returns once the data is on disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        maintenanceLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (!active.isEmpty()) {
+                memtableLock.writeLock().lock();
+                try {
+                    frozen = active;
+                    active = new Memtable(dictionary);
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+                writeFrozenMemtable();
+            }
+            if (segments.size() >= compactionTrigger) {
+                compact();
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private void writeFrozenMemtable() throws IOException {
+        List<Segment> written = writeSegments(frozen.all());
+        List<Segment> updated = new ArrayList<>(written.size() + segments.size());
+        updated.addAll(written);
+        updated.addAll(segments);
+        install(updated);
+        frozen = null;
+        flushes.incrementAndGet();
+        metrics.flushes.increment();
+    }
+
+    // full compaction: everything merges into one run of segments, so tombstones can go too
+    private void compact() throws IOException {
+        List<Segment> inputs = segments;
+        List<Iterator<LsmEntry>> sources = new ArrayList<>(inputs.size());
+        inputs.forEach(segment -> sources.add(segment.all()));
+
+        install(writeSegments(new MergingIterator(sources)));
+        inputs.forEach(Segment::markObsolete);
+        compactions.incrementAndGet();
+        metrics.compactions.increment();
+    }
+
+    // usually one segment, more if the entries don't fit into one mapping
+    private List<Segment> writeSegments(Iterator<LsmEntry> entries) throws IOException {
+        SegmentWriter.PeekingIterator remaining = new SegmentWriter.PeekingIterator(entries);
+        List<Segment> written = new ArrayList<>(1);
+        try {
+            while (remaining.hasNext()) {
+                Path path = directory.resolve(SegmentFormat.fileName(nextSegmentId.getAndIncrement()));
+                if (segmentWriter.write(path, remaining, SegmentFormat.MAX_SEGMENT_BYTES) > 0) {
+                    written.add(Segment.open(path, metrics));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not in the manifest yet, so nobody can be reading these
+            written.forEach(Segment::markObsolete);
+            throw e;
+        }
+        return written;
+    }
+
+    // record the new segment list in the manifest first, then make it visible to readers
+    private void install(List<Segment> newestFirst) throws IOException {
+        List<String> oldestFirst = new ArrayList<>(newestFirst.size());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            oldestFirst.add(newestFirst.get(i).fileName());
+        }
+        Manifest.write(directory, oldestFirst);
+        segments = Collections.unmodifiableList(newestFirst);
+    }
+
+    // a reader can race with a compaction retiring a segment; just take the new list then
+    private List<Segment> acquireSegments() {
+        while (true) {
+            List<Segment> current = segments;
+            List<Segment> acquired = new ArrayList<>(current.size());
+            for (Segment segment : current) {
+                if (!segment.tryAcquire()) {
+                    break;
+                }
+                acquired.add(segment);
+            }
+            if (acquired.size() == current.size()) {
+                return acquired;
+            }
+            acquired.forEach(Segment::release);
+        }
+    }
+
+    private void deleteUnlistedFiles(List<String> live) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.equals(Manifest.FILE_NAME) || live.contains(name)) {
+                    continue;
+                }
+                // half written segments and leftovers of an interrupted compaction
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    @Override
+    public void close() {
+        maintenanceLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segments.forEach(Segment::release);
+            segments = List.of();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    @Override
+    public void drop() {
+        close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Could not delete the files of table " + tableName + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MANIFEST file lists the live segment files of a table, oldest first.
+ *
+ * A segment only counts once it is in the manifest, and the manifest is always replaced
+ * atomically, so a crash during a flush or compaction leaves either the old or the new
+ * set of segments - never a mix. Files that are not listed are leftovers and get deleted.
+ */
+final class Manifest {
+
+    static final String FILE_NAME = "MANIFEST";
+
+    private Manifest() {
+    }
+
+    static List<String> read(Path directory) throws IOException {
+        Path manifest = directory.resolve(FILE_NAME);
+        if (!Files.exists(manifest)) {
+            return new ArrayList<>();
+        }
+        List<String> segments = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                segments.add(line.trim());
+            }
+        }
+        return segments;
+    }
+
+    static void write(Path directory, List<String> oldestFirst) throws IOException {
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        StringBuilder content = new StringBuilder();
+        oldestFirst.forEach(name -> content.append(name).append('\n'));
+
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(StandardCharsets.UTF_8.encode(content.toString()));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
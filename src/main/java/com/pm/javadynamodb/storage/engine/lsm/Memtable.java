@@ -0,0 +1,160 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.AttributeDictionary;
+import com.pm.javadynamodb.storage.codec.PackedAttributes;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory top layer of an LSM table: the same partition -> sorted items layout
+ * the in-memory store uses, except partitions are sorted too so a flush can stream
+ * the memtable out in (partition key, sort key) order.
+ *
+ * Like the in-memory store, items are kept as packed attribute bytes (see
+ * PackedAttributes) against the table's dictionary, which also makes the size
+ * accounting for the flush threshold close to exact.
+ *
+ * Deletes are recorded as a tombstone, because an older segment on disk may
+ * still have the key.
+ */
+final class Memtable {
+
+    // what get() returns for a deleted key
+    static final Item TOMBSTONE = new Item();
+    private static final byte[] DELETED = new byte[0];
+
+    // rough per-entry overhead of the two skip list nodes, the byte[] and the key strings' headers
+    private static final int ENTRY_OVERHEAD = 112;
+
+    private final AttributeDictionary dictionary;
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, byte[]>> partitions = new ConcurrentSkipListMap<>();
+    private final AtomicLong approximateBytes = new AtomicLong();
+    private final AtomicLong entryCount = new AtomicLong();
+
+    Memtable(AttributeDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the stored item, TOMBSTONE if the key was deleted here, or null if this
+     * memtable knows nothing about the key
+     */
+    Item get(String partitionKey, String sortKey) {
+        NavigableMap<String, byte[]> partition = partitions.get(partitionKey);
+        byte[] packed = partition == null ? null : partition.get(sortKey);
+        if (packed == null) {
+            return null;
+        }
+        return packed == DELETED ? TOMBSTONE : unpack(partitionKey, sortKey, packed);
+    }
+
+    void put(String partitionKey, String sortKey, Item item) {
+        store(partitionKey, sortKey, PackedAttributes.pack(dictionary, item.getAttributes()));
+    }
+
+    void delete(String partitionKey, String sortKey) {
+        store(partitionKey, sortKey, DELETED);
+    }
+
+    private void store(String partitionKey, String sortKey, byte[] packed) {
+        if (partitions.computeIfAbsent(partitionKey, key -> new ConcurrentSkipListMap<>()).put(sortKey, packed) == null) {
+            entryCount.incrementAndGet();
+        }
+        approximateBytes.addAndGet(ENTRY_OVERHEAD + 2L * (partitionKey.length() + sortKey.length()) + packed.length);
+    }
+
+    long approximateBytes() {
+        return approximateBytes.get();
+    }
+
+    // distinct keys written here, tombstones included
+    long entryCount() {
+        return entryCount.get();
+    }
+
+    boolean isEmpty() {
+        return partitions.isEmpty();
+    }
+
+    Iterator<LsmEntry> partition(String partitionKey, String startKey, String endKey) {
+        NavigableMap<String, byte[]> partition = partitions.get(partitionKey);
+        if (partition == null) {
+            return Collections.emptyIterator();
+        }
+        if (startKey != null && endKey != null) {
+            partition = partition.subMap(startKey, true, endKey, false);
+        } else if (startKey != null) {
+            partition = partition.tailMap(startKey, true);
+        } else if (endKey != null) {
+            partition = partition.headMap(endKey, false);
+        }
+        return entries(partitionKey, partition);
+    }
+
+    Iterator<LsmEntry> all() {
+        return after(null);
+    }
+
+    // every entry that sorts after exclusiveStartKey (null = all of them)
+    Iterator<LsmEntry> after(Key exclusiveStartKey) {
+        NavigableMap<String, ConcurrentSkipListMap<String, byte[]>> remaining = exclusiveStartKey == null
+                ? partitions
+                : partitions.tailMap(exclusiveStartKey.getPartitionKey(), true);
+        Iterator<Map.Entry<String, ConcurrentSkipListMap<String, byte[]>>> partitionIterator = remaining.entrySet().iterator();
+
+        return new Iterator<>() {
+            private Iterator<LsmEntry> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && partitionIterator.hasNext()) {
+                    Map.Entry<String, ConcurrentSkipListMap<String, byte[]>> partition = partitionIterator.next();
+                    NavigableMap<String, byte[]> items = partition.getValue();
+                    if (exclusiveStartKey != null && partition.getKey().equals(exclusiveStartKey.getPartitionKey())) {
+                        items = items.tailMap(exclusiveStartKey.getSortKey(), false);
+                    }
+                    current = entries(partition.getKey(), items);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public LsmEntry next() {
+                hasNext();
+                return current.next();
+            }
+        };
+    }
+
+    private Iterator<LsmEntry> entries(String partitionKey, NavigableMap<String, byte[]> partition) {
+        Iterator<Map.Entry<String, byte[]>> items = partition.entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public LsmEntry next() {
+                Map.Entry<String, byte[]> entry = items.next();
+                byte[] packed = entry.getValue();
+                Item item = packed == DELETED ? null : unpack(partitionKey, entry.getKey(), packed);
+                return new LsmEntry(partitionKey, entry.getKey(), item);
+            }
+        };
+    }
+
+    private Item unpack(String partitionKey, String sortKey, byte[] packed) {
+        Item item = new Item();
+        item.setPrimaryKey(new Key(partitionKey, sortKey));
+        item.setAttributes(new PackedAttributes(dictionary, packed));
+        return item;
+    }
+}
@@ -0,0 +1,69 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of sorted LSM layers.
+ *
+ * The sources are given newest first. When several layers have the same key only the
+ * newest version survives, and a surviving tombstone hides the key completely, so what
+ * comes out is exactly the live items in key order.
+ */
+final class MergingIterator implements Iterator<LsmEntry> {
+
+    // the current head of one source; lower age = newer layer
+    private record Head(LsmEntry entry, int age, Iterator<LsmEntry> source) implements Comparable<Head> {
+        @Override
+        public int compareTo(Head other) {
+            int result = LsmEntry.KEY_ORDER.compare(entry, other.entry);
+            return result != 0 ? result : Integer.compare(age, other.age);
+        }
+    }
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+    private LsmEntry next;
+
+    MergingIterator(List<Iterator<LsmEntry>> newestFirst) {
+        for (int age = 0; age < newestFirst.size(); age++) {
+            advance(newestFirst.get(age), age);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !heads.isEmpty()) {
+            Head winner = heads.poll();
+            advance(winner.source(), winner.age());
+
+            // older versions of the same key lose
+            while (!heads.isEmpty() && LsmEntry.KEY_ORDER.compare(heads.peek().entry(), winner.entry()) == 0) {
+                Head loser = heads.poll();
+                advance(loser.source(), loser.age());
+            }
+
+            if (!winner.entry().isTombstone()) {
+                next = winner.entry();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public LsmEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LsmEntry result = next;
+        next = null;
+        return result;
+    }
+
+    private void advance(Iterator<LsmEntry> source, int age) {
+        if (source.hasNext()) {
+            heads.add(new Head(source.next(), age, source));
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An open, immutable segment file.
+ *
+ * The whole file is mapped read-only, so reads are plain memory accesses served from
+ * the page cache instead of a read() syscall each. The sparse index is loaded onto the
+ * heap at open; a lookup binary searches it for the one block that can hold the key
+ * and only decodes that block. The Bloom filter is checked in place in the mapping
+ * and lets point lookups and queries skip segments that don't have the partition.
+ * The mapping is a MappedByteBuffer rather than an FFM MemorySegment, which is still a
+ * preview API in Java 21 and would need --enable-preview; hence the 2GB limit per file.
+ *
+ * Segments are reference counted: the table holds one reference while the segment is
+ * live and every reader takes another for as long as it is iterating, so a compaction
+ * can retire a segment without deleting the file under a running query. The file is
+ * deleted, once it is obsolete, when the last reference goes away.
+ */
+final class Segment {
+
+    private final Path path;
+    private final MappedByteBuffer data;
+    private final LsmMetrics metrics;
+    private final String minPartitionKey;
+    private final String maxPartitionKey;
+    private final long entryCount;
+    private final int entriesEnd;
+    private final BloomFilter bloom;
+
+    // sparse index: first key and offset of every block
+    private final String[] blockPartitionKeys;
+    private final String[] blockSortKeys;
+    private final int[] blockOffsets;
+
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean obsolete;
+
+    private Segment(Path path, MappedByteBuffer data, LsmMetrics metrics) throws IOException {
+        this.path = path;
+        this.data = data;
+        this.metrics = metrics;
+
+        int size = data.capacity();
+        if (size < SegmentFormat.TRAILER_SIZE) {
+            throw new IOException(path + " is too short to be a segment");
+        }
+        int footerLength = data.getInt(size - SegmentFormat.TRAILER_SIZE);
+        if (data.getInt(size - Integer.BYTES) != SegmentFormat.MAGIC || footerLength <= 0 || footerLength > size) {
+            throw new IOException(path + " is not a JKeyDB segment");
+        }
+
+        ByteBuffer footer = data.slice(size - SegmentFormat.TRAILER_SIZE - footerLength, footerLength);
+        this.minPartitionKey = BinaryReader.getString(footer);
+        this.maxPartitionKey = BinaryReader.getString(footer);
+        this.entryCount = footer.getLong();
+        int indexOffset = (int) footer.getLong();
+        int blockCount = footer.getInt();
+        int bloomOffset = (int) footer.getLong();
+        int bloomBytes = footer.getInt();
+        int bloomHashes = footer.getInt();
+
+        this.entriesEnd = indexOffset;
+        this.bloom = BloomFilter.wrap(data.slice(bloomOffset, bloomBytes), bloomHashes);
+
+        ByteBuffer index = data.slice(indexOffset, bloomOffset - indexOffset);
+        this.blockPartitionKeys = new String[blockCount];
+        this.blockSortKeys = new String[blockCount];
+        this.blockOffsets = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockPartitionKeys[i] = BinaryReader.getString(index);
+            blockSortKeys[i] = BinaryReader.getString(index);
+            blockOffsets[i] = (int) BinaryReader.getVarLong(index);
+        }
+    }
+
+    static Segment open(Path path, LsmMetrics metrics) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be mapped");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                return new Segment(path, data, metrics);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt segment " + path, e);
+            }
+        }
+    }
+
+    String fileName() {
+        return path.getFileName().toString();
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    long sizeInBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * @return the entry for the key (possibly a tombstone), or null if this segment
+     * doesn't have it
+     */
+    LsmEntry get(String partitionKey, String sortKey) {
+        if (!mayContainPartition(partitionKey)) {
+            return null;
+        }
+        metrics.segmentsSearched.increment();
+
+        Cursor entries = new Cursor(blockOffsetFor(partitionKey, sortKey));
+        boolean partitionSeen = false;
+        LsmEntry result = null;
+        // compare keys first, only the matching entry gets its attributes decoded
+        while (entries.advance()) {
+            int comparison = LsmEntry.compareKeys(entries.partitionKey, entries.sortKey, partitionKey, sortKey);
+            partitionSeen |= entries.partitionKey.equals(partitionKey);
+            if (comparison >= 0) {
+                result = comparison == 0 ? entries.entry() : null;
+                break; // sorted, so it isn't further down either
+            }
+        }
+        if (!partitionSeen) {
+            metrics.bloomFalsePositives.increment();
+        }
+        return result;
+    }
+
+    /** Entries of one partition with startKey <= sort key < endKey (either bound may be null). */
+    Iterator<LsmEntry> partition(String partitionKey, String startKey, String endKey) {
+        if (!mayContainPartition(partitionKey)) {
+            return Collections.emptyIterator();
+        }
+        metrics.segmentsSearched.increment();
+        Cursor entries = new Cursor(blockOffsetFor(partitionKey, startKey == null ? "" : startKey));
+
+        return new Iterator<>() {
+            private LsmEntry next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !done && entries.advance()) {
+                    int partitionOrder = entries.partitionKey.compareTo(partitionKey);
+                    if (partitionOrder < 0 || (partitionOrder == 0 && startKey != null && entries.sortKey.compareTo(startKey) < 0)) {
+                        continue; // not there yet, at most one block to skip through
+                    }
+                    if (partitionOrder > 0 || (endKey != null && entries.sortKey.compareTo(endKey) >= 0)) {
+                        done = true; // past the range
+                    } else {
+                        next = entries.entry();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public LsmEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LsmEntry result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    Iterator<LsmEntry> all() {
+        return new Cursor(0);
+    }
+
+    // every entry that sorts after exclusiveStartKey (null = all of them)
+    Iterator<LsmEntry> after(Key exclusiveStartKey) {
+        if (exclusiveStartKey == null) {
+            return all();
+        }
+        String partitionKey = exclusiveStartKey.getPartitionKey();
+        String sortKey = exclusiveStartKey.getSortKey();
+        if (partitionKey.compareTo(maxPartitionKey) > 0) {
+            return Collections.emptyIterator();
+        }
+        Cursor entries = new Cursor(blockOffsetFor(partitionKey, sortKey));
+
+        return new Iterator<>() {
+            private LsmEntry next;
+            private boolean started;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && entries.advance()) {
+                    // only the start block has entries at or before the key
+                    if (started || LsmEntry.compareKeys(entries.partitionKey, entries.sortKey, partitionKey, sortKey) > 0) {
+                        started = true;
+                        next = entries.entry();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public LsmEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LsmEntry result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    // key range from the footer first, then the Bloom filter
+    private boolean mayContainPartition(String partitionKey) {
+        if (partitionKey.compareTo(minPartitionKey) < 0 || partitionKey.compareTo(maxPartitionKey) > 0) {
+            return false;
+        }
+        metrics.bloomChecks.increment();
+        if (!bloom.mightContain(partitionKey)) {
+            metrics.bloomNegatives.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // offset of the last block whose first key is <= the key, the start of the file if none is
+    private int blockOffsetFor(String partitionKey, String sortKey) {
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (LsmEntry.compareKeys(blockPartitionKeys[middle], blockSortKeys[middle], partitionKey, sortKey) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return blockOffsets.length == 0 ? 0 : blockOffsets[found];
+    }
+
+    /** Takes a read reference; false if the segment was already released for good. */
+    boolean tryAcquire() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0 && obsolete) {
+            try {
+                // the mapping itself goes away when the buffer is garbage collected
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Could not delete segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Drops the table's own reference and deletes the file once no reader is left. */
+    void markObsolete() {
+        obsolete = true;
+        release();
+    }
+
+    /** Decodes entries straight out of the mapping, starting at a block boundary. */
+    private final class Cursor implements Iterator<LsmEntry> {
+
+        private final ByteBuffer view = data.duplicate();
+        private ByteBuffer payload;
+        String partitionKey;
+        String sortKey;
+
+        Cursor(int offset) {
+            view.position(offset).limit(entriesEnd);
+        }
+
+        // moves to the next entry and decodes only its keys
+        boolean advance() {
+            if (!view.hasRemaining()) {
+                return false;
+            }
+            int length = view.getInt();
+            payload = view.slice(view.position(), length);
+            view.position(view.position() + length);
+            partitionKey = BinaryReader.getString(payload);
+            sortKey = BinaryReader.getString(payload);
+            return true;
+        }
+
+        // the rest of the current entry
+        LsmEntry entry() {
+            if (payload.get() == SegmentFormat.TOMBSTONE) {
+                return new LsmEntry(partitionKey, sortKey, null);
+            }
+            Item item = new Item();
+            item.setAttributes(AttributeCodec.readAttributes(payload));
+            item.setPrimaryKey(new Key(partitionKey, sortKey));
+            return new LsmEntry(partitionKey, sortKey, item);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return view.hasRemaining();
+        }
+
+        @Override
+        public LsmEntry next() {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            return entry();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+/**
+ * Layout of an immutable, sorted segment file.
+ *
+ * <pre>
+ * entries (repeated, sorted by partition key then sort key)
+ *   int    length          of the rest of the entry
+ *   string partition key
+ *   string sort key
+ *   byte   kind            PUT or TOMBSTONE
+ *   attributes             only for PUT, same encoding as the WAL
+ *
+ * sparse index (one per block of roughly indexInterval bytes of entries)
+ *   string first partition key of the block
+ *   string first sort key of the block
+ *   varlong offset of the block's first entry
+ *
+ * bloom filter over the partition keys
+ *   long[] bits
+ *
+ * footer
+ *   string min partition key
+ *   string max partition key
+ *   long   entry count
+ *   long   index offset
+ *   int    index block count
+ *   long   bloom offset
+ *   int    bloom size in bytes
+ *   int    bloom hash count
+ *   int    footer length   (everything above, from min partition key on)
+ *   int    magic           "JKSG"
+ * </pre>
+ *
+ * Segments are written to a .tmp file, fsynced and renamed, and only become part of a
+ * table once the MANIFEST lists them. A segment is mapped into memory as a whole, so
+ * SegmentWriter keeps each file below MAX_SEGMENT_BYTES.
+ */
+final class SegmentFormat {
+
+    static final int MAGIC = 0x4A4B5347; // "JKSG"
+
+    static final byte PUT = 0;
+    static final byte TOMBSTONE = 1;
+
+    static final int TRAILER_SIZE = 8;
+
+    // one MappedByteBuffer can't go past 2GB; leave room for the index and filter
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    static final String FILE_PREFIX = "segment-";
+    static final String FILE_SUFFIX = ".sst";
+
+    private SegmentFormat() {
+    }
+
+    static String fileName(long id) {
+        return FILE_PREFIX + String.format("%010d", id) + FILE_SUFFIX;
+    }
+
+    // -1 if the name isn't a segment file
+    static long idOf(String fileName) {
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Streams already sorted entries into a new segment file (see SegmentFormat), building
+ * the sparse index and the partition key Bloom filter on the way.
+ * Used both to flush a frozen memtable and to write the output of a compaction.
+ */
+final class SegmentWriter {
+
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+
+    private final int indexIntervalBytes;
+    private final int bloomBitsPerKey;
+
+    SegmentWriter(int indexIntervalBytes, int bloomBitsPerKey) {
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.bloomBitsPerKey = bloomBitsPerKey;
+    }
+
+    /**
+     * Writes entries to target via a temp file, fsyncs it and moves it into place.
+     * Stops once the file reaches maxBytes and leaves the rest of the iterator for the
+     * next segment (the pieces have disjoint key ranges, so their order doesn't matter).
+     * Nothing is written when there are no entries.
+     *
+     * @return the number of entries written
+     */
+    long write(Path target, PeekingIterator entries, long maxBytes) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        BinaryWriter out = new BinaryWriter(FLUSH_THRESHOLD + 64 * 1024);
+        BinaryWriter index = new BinaryWriter(64 * 1024);
+        long[] partitionHashes = new long[1024];
+        int partitionCount = 0;
+
+        long count = 0;
+        long flushed = 0; // bytes already handed to the channel
+        long blockStart = Long.MIN_VALUE;
+        int blockCount = 0;
+        String minPartitionKey = null;
+        String maxPartitionKey = null;
+
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (entries.hasNext()) {
+                LsmEntry entry = entries.peek();
+                long offset = flushed + out.position();
+                if (offset >= maxBytes) {
+                    break; // the rest goes into the next segment
+                }
+                entries.next();
+
+                boolean newPartition = !entry.partitionKey().equals(maxPartitionKey);
+                if (newPartition) {
+                    if (minPartitionKey == null) {
+                        minPartitionKey = entry.partitionKey();
+                    }
+                    maxPartitionKey = entry.partitionKey();
+                    if (partitionCount == partitionHashes.length) {
+                        partitionHashes = Arrays.copyOf(partitionHashes, partitionCount * 2);
+                    }
+                    partitionHashes[partitionCount++] = BloomFilter.hash(entry.partitionKey());
+                }
+
+                if (offset - blockStart >= indexIntervalBytes) {
+                    index.putString(entry.partitionKey());
+                    index.putString(entry.sortKey());
+                    index.putVarLong(offset);
+                    blockStart = offset;
+                    blockCount++;
+                }
+
+                int start = out.position();
+                out.putInt(0); // length, patched below
+                out.putString(entry.partitionKey());
+                out.putString(entry.sortKey());
+                if (entry.isTombstone()) {
+                    out.putByte(SegmentFormat.TOMBSTONE);
+                } else {
+                    out.putByte(SegmentFormat.PUT);
+                    AttributeCodec.writeAttributes(out, entry.item().getAttributes());
+                }
+                out.putIntAt(start, out.position() - start - Integer.BYTES);
+                count++;
+
+                if (out.position() >= FLUSH_THRESHOLD) {
+                    flushed += writeOut(channel, out);
+                }
+            }
+
+            if (count == 0) {
+                channel.close();
+                Files.deleteIfExists(temp);
+                return 0;
+            }
+
+            long indexOffset = flushed + out.position();
+            index.flip();
+            out.putRaw(index.buffer());
+
+            BloomFilter bloom = BloomFilter.create(partitionCount, bloomBitsPerKey);
+            for (int i = 0; i < partitionCount; i++) {
+                bloom.add(partitionHashes[i]);
+            }
+            long bloomOffset = flushed + out.position();
+            out.putRaw(bloom.bits());
+
+            int footerStart = out.position();
+            out.putString(minPartitionKey);
+            out.putString(maxPartitionKey);
+            out.putLong(count);
+            out.putLong(indexOffset);
+            out.putInt(blockCount);
+            out.putLong(bloomOffset);
+            out.putInt(bloom.sizeInBytes());
+            out.putInt(bloom.hashes());
+            out.putInt(out.position() - footerStart);
+            out.putInt(SegmentFormat.MAGIC);
+            writeOut(channel, out);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    private static long writeOut(FileChannel channel, BinaryWriter out) throws IOException {
+        out.flip();
+        long written = 0;
+        while (out.buffer().hasRemaining()) {
+            written += channel.write(out.buffer());
+        }
+        out.clear();
+        return written;
+    }
+
+    /** An iterator that can look at the next entry without taking it. */
+    static final class PeekingIterator implements Iterator<LsmEntry> {
+
+        private final Iterator<LsmEntry> source;
+        private LsmEntry peeked;
+
+        PeekingIterator(Iterator<LsmEntry> source) {
+            this.source = source;
+        }
+
+        LsmEntry peek() {
+            if (peeked == null) {
+                peeked = source.next();
+            }
+            return peeked;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return peeked != null || source.hasNext();
+        }
+
+        @Override
+        public LsmEntry next() {
+            LsmEntry result = peek();
+            peeked = null;
+            return result;
+        }
+    }
+}
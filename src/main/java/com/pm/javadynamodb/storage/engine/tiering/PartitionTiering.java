@@ -0,0 +1,284 @@
+package com.pm.javadynamodb.storage.engine.tiering;
+
+import com.pm.javadynamodb.storage.engine.InMemoryTableStore;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the in-memory engine's items under a heap budget by moving cold partitions to disk.
+ *
+ * Every partition counts how often it is read or written, and the count is halved once
+ * per aging period, so what was hot yesterday can go cold. Once the items of a table go
+ * over tableMaxHeapBytes, or those of all tables over maxHeapBytes, a background thread
+ * writes the least used partitions to the table's SpillFile and leaves a stub in their
+ * place, until the table (or the database) is back under 90% of its budget. The next
+ * get, query or write of a spilled partition faults it back in.
+ *
+ * Sizes are the stores' approximate item bytes, so a budget is for the items, not for
+ * everything else on the JVM heap.
+ */
+public final class PartitionTiering implements AutoCloseable {
+
+    // frequencies saturate here; also the number of buckets an eviction pass sorts partitions into
+    public static final int MAX_FREQUENCY = 255;
+    // spill files with more dead bytes than live ones are compacted once they are at least this big
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path spillDir;
+    private final long maxHeapBytes;
+    private final long tableMaxHeapBytes;
+    private final long checkIntervalNanos;
+    private final long agingPeriodNanos;
+    private final long startNanos = System.nanoTime();
+
+    private final Set<InMemoryTableStore> stores = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger spillFileIds = new AtomicInteger();
+    // resident item bytes of all tables, kept up to date by the stores so a write notices it went over
+    private final LongAdder residentBytes = new LongAdder();
+    // aging periods since startup; written by the background thread, read on every access
+    private volatile int epoch;
+
+    private final LatencyHistogram faultLatency = new LatencyHistogram();
+    private final LatencyHistogram evictionLatency = new LatencyHistogram();
+    private final LongAdder faultedBytes = new LongAdder();
+    private final LongAdder evictedPartitions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param maxHeapBytes        budget for the items of all tables together, 0 for none
+     * @param tableMaxHeapBytes   budget for the items of every single table, 0 for none
+     * @param checkIntervalMillis how often the background thread checks the budgets (writes that
+     *                            go over one wake it up early)
+     * @param agingPeriodMillis   how often access counts are halved
+     */
+    public PartitionTiering(Path spillDir, long maxHeapBytes, long tableMaxHeapBytes,
+                            long checkIntervalMillis, long agingPeriodMillis) {
+        this.spillDir = spillDir;
+        this.maxHeapBytes = maxHeapBytes;
+        this.tableMaxHeapBytes = tableMaxHeapBytes;
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+        this.agingPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, agingPeriodMillis));
+        try {
+            Files.createDirectories(spillDir);
+            deleteOldSpillFiles();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to prepare the spill directory " + spillDir, e);
+        }
+
+        this.thread = new Thread(this::run, "partition-tiering");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // spill files of an earlier run are of no use, the tables were rebuilt from snapshot and WAL
+    private void deleteOldSpillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            for (Path file : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".spill"))::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, checkIntervalNanos);
+            if (!running) {
+                break;
+            }
+            try {
+                enforceBudgets();
+            } catch (RuntimeException e) {
+                // a full disk, for instance; the partitions just stay on the heap until the next pass
+                System.err.println("Partition tiering failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One pass of the background thread: spills partitions until every table and the
+     * database are under budget again, then compacts spill files that are mostly dead.
+     * Public so tests don't have to wait for the thread.
+     */
+    public synchronized void enforceBudgets() {
+        epoch = (int) ((System.nanoTime() - startNanos) / agingPeriodNanos);
+        long start = System.nanoTime();
+        boolean evicted = false;
+
+        if (tableMaxHeapBytes > 0) {
+            for (InMemoryTableStore store : stores) {
+                long resident = store.residentBytes();
+                if (resident > tableMaxHeapBytes) {
+                    evictDown(List.of(store), resident - lowWaterMark(tableMaxHeapBytes));
+                    evicted = true;
+                }
+            }
+        }
+        if (maxHeapBytes > 0) {
+            long resident = residentBytes.sum();
+            if (resident > maxHeapBytes) {
+                evictDown(stores, resident - lowWaterMark(maxHeapBytes));
+                evicted = true;
+            }
+        }
+        if (evicted) {
+            evictionLatency.recordSince(start);
+        }
+
+        for (InMemoryTableStore store : stores) {
+            if (store.compactSpillFile(MIN_COMPACTION_BYTES)) {
+                compactions.increment();
+            }
+        }
+    }
+
+    // going back to 90% leaves writes some room before the next pass
+    private static long lowWaterMark(long budget) {
+        return budget - budget / 10;
+    }
+
+    /**
+     * Frees at least bytesToFree by spilling the least used partitions first. Instead of
+     * sorting every partition, one walk adds up the resident bytes per access count, which
+     * gives the count below which everything has to go; a second walk spills those, and
+     * partitions at that count only until enough is freed.
+     */
+    private void evictDown(Collection<InMemoryTableStore> candidates, long bytesToFree) {
+        int now = epoch;
+        long[] bytesByFrequency = new long[MAX_FREQUENCY + 1];
+        for (InMemoryTableStore store : candidates) {
+            store.addResidentBytesByFrequency(now, bytesByFrequency);
+        }
+        int threshold = 0;
+        long below = 0;
+        while (threshold < MAX_FREQUENCY && below + bytesByFrequency[threshold] < bytesToFree) {
+            below += bytesByFrequency[threshold++];
+        }
+
+        long freed = 0;
+        if (threshold > 0) {
+            for (InMemoryTableStore store : candidates) {
+                freed += store.evict(now, threshold - 1, Long.MAX_VALUE);
+            }
+        }
+        for (InMemoryTableStore store : candidates) {
+            if (freed >= bytesToFree) {
+                break;
+            }
+            freed += store.evict(now, threshold, bytesToFree - freed);
+        }
+    }
+
+    // called by the stores
+
+    public void register(InMemoryTableStore store) {
+        stores.add(store);
+    }
+
+    // waits for a running pass, so the store can be dropped safely afterwards
+    public synchronized void unregister(InMemoryTableStore store) {
+        stores.remove(store);
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    // every table store gets its own files, so a table created again doesn't share the old one's
+    public SpillFile newSpillFile(String tableName) throws IOException {
+        String name = URLEncoder.encode(tableName, StandardCharsets.UTF_8) + "-" + spillFileIds.incrementAndGet() + ".spill";
+        return new SpillFile(spillDir.resolve(name));
+    }
+
+    // wakes the background thread early when a write takes a table or the database over budget
+    public void residentBytesChanged(InMemoryTableStore store, long delta) {
+        residentBytes.add(delta);
+        if (delta > 0 && ((tableMaxHeapBytes > 0 && store.residentBytes() > tableMaxHeapBytes)
+                || (maxHeapBytes > 0 && residentBytes.sum() > maxHeapBytes))) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void recordFault(long startNanos, int bytes) {
+        faultLatency.recordSince(startNanos);
+        faultedBytes.add(bytes);
+    }
+
+    public void recordEviction(int bytes) {
+        evictedPartitions.increment();
+        evictedBytes.add(bytes);
+    }
+
+    // stats
+
+    public LatencySnapshot getFaultLatency() {
+        return faultLatency.snapshot();
+    }
+
+    public LatencySnapshot getEvictionLatency() {
+        return evictionLatency.snapshot();
+    }
+
+    public TieringStats getStats() {
+        long partitions = 0;
+        long spilledPartitions = 0;
+        long resident = 0;
+        long total = 0;
+        long spillFileBytes = 0;
+        for (InMemoryTableStore store : stores) {
+            partitions += store.partitionCount();
+            spilledPartitions += store.spilledPartitionCount();
+            resident += store.residentBytes();
+            total += store.approximateBytes();
+            spillFileBytes += store.spillFileBytes();
+        }
+        LatencySnapshot faults = faultLatency.snapshot();
+        LatencySnapshot passes = evictionLatency.snapshot();
+
+        return new TieringStats(
+                maxHeapBytes,
+                tableMaxHeapBytes,
+                partitions - spilledPartitions,
+                spilledPartitions,
+                resident,
+                total - resident,
+                faults.count(),
+                faultedBytes.sum(),
+                faults.count() == 0 ? 0 : faults.totalNanos() / 1000.0 / faults.count(),
+                passes.count(),
+                evictedPartitions.sum(),
+                evictedBytes.sum(),
+                TimeUnit.NANOSECONDS.toMillis(passes.totalNanos()),
+                spillFileBytes,
+                compactions.sum());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
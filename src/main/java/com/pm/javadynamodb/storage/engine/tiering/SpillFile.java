@@ -0,0 +1,94 @@
+package com.pm.javadynamodb.storage.engine.tiering;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where one table's cold partitions go while they are off the heap: an append-only file
+ * of serialized partitions, each read back with a single positional read.
+ *
+ * It is only an extension of the heap, never read after a restart (the WAL and snapshots
+ * have every item), so nothing is fsynced and the file is deleted when closed.
+ * A partition that is faulted back in leaves a dead region behind; once most of the
+ * file is dead the store copies the live regions into a new file (see
+ * InMemoryTableStore.compactSpillFile).
+ */
+public final class SpillFile implements Closeable {
+
+    /**
+     * One spilled partition: a region of a spill file. It names its file, so a partition
+     * moved by a compaction and one that wasn't yet are both found.
+     */
+    public record Location(SpillFile file, long offset, int length) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    // end of the file, where the next partition goes; guarded by this
+    private long end;
+    // bytes of the regions still in use
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    SpillFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // writes the payload (position to limit) at the end of the file
+    public synchronized Location append(ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        long offset = end;
+        while (payload.hasRemaining()) {
+            channel.write(payload, offset + length - payload.remaining());
+        }
+        end += length;
+        liveBytes.addAndGet(length);
+        return new Location(this, offset, length);
+    }
+
+    // no lock needed: positional reads don't move the channel, and a region never changes once written
+    public ByteBuffer read(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, location.offset() + buffer.position()) < 0) {
+                throw new EOFException("Spill file " + path + " ends inside a partition at " + location.offset());
+            }
+        }
+        return buffer.flip();
+    }
+
+    // the region is not needed any more, its partition is back on the heap or was moved
+    public void free(Location location) {
+        liveBytes.addAndGet(-location.length());
+    }
+
+    public synchronized long size() {
+        return end;
+    }
+
+    public long liveBytes() {
+        return liveBytes.get();
+    }
+
+    public long deadBytes() {
+        return size() - liveBytes();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete spill file " + path + ": " + e.getMessage());
+        }
+    }
+}
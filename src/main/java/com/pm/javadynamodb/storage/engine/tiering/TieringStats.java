@@ -0,0 +1,43 @@
+package com.pm.javadynamodb.storage.engine.tiering;
+
+/**
+ * A point-in-time copy of the partition tiering counters, summed over all tables.
+ *
+ * Budget sizing: if faults keep climbing while most evicted partitions come straight back
+ * (faults close to evictedPartitions), the budget is below the working set; raise it
+ * until faults only trickle in.
+ *
+ * @param maxHeapBytes       budget for the items of all tables, 0 = none
+ * @param tableMaxHeapBytes  budget for the items of each table, 0 = none
+ * @param residentPartitions partitions on the heap
+ * @param spilledPartitions  partitions in spill files, with only a stub on the heap
+ * @param residentBytes      approximate bytes of the items on the heap
+ * @param spilledBytes       approximate bytes of the items in spill files
+ * @param faults             spilled partitions read back onto the heap by a get, query or write
+ * @param faultedBytes       spill file bytes read by those faults
+ * @param averageFaultMicros mean time of a fault
+ * @param evictionPasses     times the background thread had to bring a table or the database under budget
+ * @param evictedPartitions  partitions written to spill files
+ * @param evictedBytes       spill file bytes written for them
+ * @param evictionMillis     total time spent in eviction passes
+ * @param spillFileBytes     size of all spill files, dead regions included
+ * @param compactions        spill files rewritten to drop their dead regions
+ */
+public record TieringStats(
+        long maxHeapBytes,
+        long tableMaxHeapBytes,
+        long residentPartitions,
+        long spilledPartitions,
+        long residentBytes,
+        long spilledBytes,
+        long faults,
+        long faultedBytes,
+        double averageFaultMicros,
+        long evictionPasses,
+        long evictedPartitions,
+        long evictedBytes,
+        long evictionMillis,
+        long spillFileBytes,
+        long compactions
+) {
+}
@@ -0,0 +1,578 @@
+package com.pm.javadynamodb.storage.expression;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Recursive descent parser for filter expressions, producing a tree of lambdas that is
+ * evaluated straight against an item's attribute map. Only the attributes an expression
+ * names are ever read, so packed items decode nothing else.
+ *
+ * <pre>
+ * expression := and ( OR and )*
+ * and        := not ( AND not )*
+ * not        := NOT not | '(' expression ')' | function | comparison
+ * function   := attribute_exists(path) | attribute_not_exists(path)
+ *             | begins_with(path, operand) | contains(path, operand)
+ * comparison := operand ( = | <> | < | <= | > | >= ) operand
+ *             | operand BETWEEN operand AND operand
+ *             | operand IN ( operand, ... )
+ * operand    := path | 'string' | number | true | false
+ * path       := name ( . name )*        nested maps
+ * </pre>
+ *
+ * Keywords are case-insensitive. Like DynamoDB, a comparison with a missing attribute or
+ * with values of different types is false (and <> is true).
+ *
+ * Update expressions (see UpdateExpression) share the tokens and operands:
+ *
+ * <pre>
+ * update     := ( SET set_action ( , set_action )*
+ *               | REMOVE name ( , name )*
+ *               | ADD name value ( , name value )* )+
+ * set_action := name = value
+ * value      := term ( ( + | - ) term )?
+ * term       := if_not_exists(path, value) | list_append(value, value) | list | operand
+ * list       := '[' ( operand ( , operand )* )? ']'
+ * name       := a top-level attribute name
+ * </pre>
+ *
+ * Every value is computed from the item as it was before the update.
+ */
+final class ExpressionParser {
+
+    private final String text;
+    private final List<String> tokens;
+    private int position;
+
+    private ExpressionParser(String text) {
+        this.text = text;
+        this.tokens = tokenize(text);
+    }
+
+    static Predicate<Map<String, Object>> parseFilter(String text) {
+        ExpressionParser parser = new ExpressionParser(text);
+        Predicate<Map<String, Object>> predicate = parser.expression();
+        if (parser.position != parser.tokens.size()) {
+            throw parser.error("unexpected '" + parser.tokens.get(parser.position) + "'");
+        }
+        return predicate;
+    }
+
+    static UpdateExpression.Actions parseUpdate(String text) {
+        ExpressionParser parser = new ExpressionParser(text);
+        UpdateExpression.Actions actions = parser.update();
+        if (parser.position != parser.tokens.size()) {
+            throw parser.error("unexpected '" + parser.tokens.get(parser.position) + "'");
+        }
+        return actions;
+    }
+
+    // ---------------------------------------------------------------- grammar
+
+    private Predicate<Map<String, Object>> expression() {
+        Predicate<Map<String, Object>> left = and();
+        while (acceptKeyword("OR")) {
+            left = left.or(and());
+        }
+        return left;
+    }
+
+    private Predicate<Map<String, Object>> and() {
+        Predicate<Map<String, Object>> left = not();
+        while (acceptKeyword("AND")) {
+            left = left.and(not());
+        }
+        return left;
+    }
+
+    private Predicate<Map<String, Object>> not() {
+        if (acceptKeyword("NOT")) {
+            return not().negate();
+        }
+        if (accept("(")) {
+            Predicate<Map<String, Object>> inner = expression();
+            expect(")");
+            return inner;
+        }
+        String function = peek() == null ? "" : peek().toLowerCase(Locale.ROOT);
+        if (position + 1 < tokens.size() && tokens.get(position + 1).equals("(")) {
+            switch (function) {
+                case "attribute_exists", "attribute_not_exists", "begins_with", "contains" -> {
+                    return function();
+                }
+                default -> throw error("unknown function " + peek());
+            }
+        }
+        return comparison();
+    }
+
+    private Predicate<Map<String, Object>> function() {
+        String name = next().toLowerCase(Locale.ROOT);
+        expect("(");
+        Function<Map<String, Object>, Object> path = path();
+        Predicate<Map<String, Object>> predicate = switch (name) {
+            case "attribute_exists" -> attributes -> path.apply(attributes) != null;
+            case "attribute_not_exists" -> attributes -> path.apply(attributes) == null;
+            case "begins_with" -> {
+                expect(",");
+                Function<Map<String, Object>, Object> prefix = operand();
+                yield attributes -> path.apply(attributes) instanceof String value
+                        && prefix.apply(attributes) instanceof String start
+                        && value.startsWith(start);
+            }
+            default -> { // contains
+                expect(",");
+                Function<Map<String, Object>, Object> operand = operand();
+                yield attributes -> contains(path.apply(attributes), operand.apply(attributes));
+            }
+        };
+        expect(")");
+        return predicate;
+    }
+
+    private Predicate<Map<String, Object>> comparison() {
+        Function<Map<String, Object>, Object> left = operand();
+
+        if (acceptKeyword("BETWEEN")) {
+            Function<Map<String, Object>, Object> low = operand();
+            if (!acceptKeyword("AND")) {
+                throw error("BETWEEN needs AND");
+            }
+            Function<Map<String, Object>, Object> high = operand();
+            return attributes -> {
+                Object value = left.apply(attributes);
+                Integer fromLow = compare(value, low.apply(attributes));
+                Integer toHigh = compare(value, high.apply(attributes));
+                return fromLow != null && toHigh != null && fromLow >= 0 && toHigh <= 0;
+            };
+        }
+        if (acceptKeyword("IN")) {
+            expect("(");
+            List<Function<Map<String, Object>, Object>> candidates = new ArrayList<>();
+            do {
+                candidates.add(operand());
+            } while (accept(","));
+            expect(")");
+            return attributes -> {
+                Object value = left.apply(attributes);
+                for (Function<Map<String, Object>, Object> candidate : candidates) {
+                    if (equal(value, candidate.apply(attributes))) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        String operator = next();
+        Function<Map<String, Object>, Object> right = operand();
+        return switch (operator == null ? "" : operator) {
+            case "=" -> attributes -> equal(left.apply(attributes), right.apply(attributes));
+            case "<>" -> attributes -> !equal(left.apply(attributes), right.apply(attributes));
+            case "<" -> ordered(left, right, c -> c < 0);
+            case "<=" -> ordered(left, right, c -> c <= 0);
+            case ">" -> ordered(left, right, c -> c > 0);
+            case ">=" -> ordered(left, right, c -> c >= 0);
+            default -> throw error("expected a comparison, got " + (operator == null ? "the end" : "'" + operator + "'"));
+        };
+    }
+
+    private Function<Map<String, Object>, Object> operand() {
+        String token = peek();
+        if (token == null) {
+            throw error("expected a value or attribute name");
+        }
+        if (token.startsWith("'")) {
+            position++;
+            String value = token.substring(1, token.length() - 1).replace("''", "'");
+            return attributes -> value;
+        }
+        if (Character.isDigit(token.charAt(0)) || (token.startsWith("-") && token.length() > 1)) {
+            position++;
+            BigDecimal value = new BigDecimal(token);
+            return attributes -> value;
+        }
+        if (token.equalsIgnoreCase("true") || token.equalsIgnoreCase("false")) {
+            position++;
+            Boolean value = Boolean.valueOf(token.toLowerCase(Locale.ROOT));
+            return attributes -> value;
+        }
+        return path();
+    }
+
+    private Function<Map<String, Object>, Object> path() {
+        String token = next();
+        if (token == null || !isName(token)) {
+            throw error("expected an attribute name");
+        }
+        String[] names = token.split("\\.");
+        if (names.length == 1) {
+            return attributes -> attributes.get(token);
+        }
+        return attributes -> {
+            Object value = attributes;
+            for (String name : names) {
+                if (!(value instanceof Map<?, ?> map)) {
+                    return null;
+                }
+                value = map.get(name);
+            }
+            return value;
+        };
+    }
+
+    // ---------------------------------------------------------------- update grammar
+
+    private UpdateExpression.Actions update() {
+        Map<String, Function<Map<String, Object>, Object>> set = new LinkedHashMap<>();
+        List<String> remove = new ArrayList<>();
+        Map<String, Function<Map<String, Object>, Object>> add = new LinkedHashMap<>();
+        Set<String> targets = new HashSet<>();
+
+        if (peek() == null) {
+            throw error("expected SET, REMOVE or ADD");
+        }
+        while (peek() != null) {
+            if (acceptKeyword("SET")) {
+                do {
+                    String name = target(targets);
+                    expect("=");
+                    set.put(name, value());
+                } while (accept(","));
+            } else if (acceptKeyword("REMOVE")) {
+                do {
+                    remove.add(target(targets));
+                } while (accept(","));
+            } else if (acceptKeyword("ADD")) {
+                do {
+                    String name = target(targets);
+                    add.put(name, value());
+                } while (accept(","));
+            } else {
+                throw error("expected SET, REMOVE or ADD, got '" + peek() + "'");
+            }
+        }
+        return new UpdateExpression.Actions(set, remove, add);
+    }
+
+    // the attribute an action changes; each one may only be changed once per update
+    private String target(Set<String> targets) {
+        String name = next();
+        if (name == null || !isName(name)) {
+            throw error("expected an attribute name");
+        }
+        if (name.contains(".")) {
+            throw error("only top-level attributes can be updated, not " + name);
+        }
+        if (!targets.add(name)) {
+            throw error(name + " is updated more than once");
+        }
+        return name;
+    }
+
+    private Function<Map<String, Object>, Object> value() {
+        Function<Map<String, Object>, Object> left = term();
+        if (accept("+")) {
+            Function<Map<String, Object>, Object> right = term();
+            return attributes -> add(number(left.apply(attributes)), number(right.apply(attributes)));
+        }
+        if (accept("-")) {
+            Function<Map<String, Object>, Object> right = term();
+            return attributes -> add(number(left.apply(attributes)), negate(number(right.apply(attributes))));
+        }
+        return left;
+    }
+
+    private Function<Map<String, Object>, Object> term() {
+        String function = peek() == null ? "" : peek().toLowerCase(Locale.ROOT);
+        if (position + 1 < tokens.size() && tokens.get(position + 1).equals("(")) {
+            position += 2;
+            switch (function) {
+                case "if_not_exists" -> {
+                    Function<Map<String, Object>, Object> path = path();
+                    expect(",");
+                    Function<Map<String, Object>, Object> fallback = value();
+                    expect(")");
+                    return attributes -> {
+                        Object existing = path.apply(attributes);
+                        return existing != null ? existing : fallback.apply(attributes);
+                    };
+                }
+                case "list_append" -> {
+                    Function<Map<String, Object>, Object> first = value();
+                    expect(",");
+                    Function<Map<String, Object>, Object> second = value();
+                    expect(")");
+                    return attributes -> {
+                        List<Object> appended = new ArrayList<>(list(first.apply(attributes)));
+                        appended.addAll(list(second.apply(attributes)));
+                        return appended;
+                    };
+                }
+                default -> throw error("unknown function " + tokens.get(position - 2));
+            }
+        }
+        if (accept("[")) {
+            List<Function<Map<String, Object>, Object>> elements = new ArrayList<>();
+            if (!accept("]")) {
+                do {
+                    elements.add(operand());
+                } while (accept(","));
+                expect("]");
+            }
+            return attributes -> {
+                List<Object> values = new ArrayList<>(elements.size());
+                elements.forEach(element -> values.add(element.apply(attributes)));
+                return values;
+            };
+        }
+        return operand();
+    }
+
+    // ---------------------------------------------------------------- update values
+
+    /**
+     * ADD of an update: numbers are summed, lists get the elements they don't have yet,
+     * and a missing attribute simply becomes the value.
+     */
+    static Object addTo(Object current, Object value) {
+        if (current == null && (value instanceof Number || value instanceof Collection<?>)) {
+            return value;
+        }
+        if (current instanceof Number a && value instanceof Number b) {
+            return add(a, b);
+        }
+        if (current instanceof Collection<?> existing && value instanceof Collection<?> added) {
+            List<Object> union = new ArrayList<>(existing);
+            for (Object element : added) {
+                if (!contains(union, element)) {
+                    union.add(element);
+                }
+            }
+            return union;
+        }
+        throw new IllegalArgumentException("ADD needs a number or a list matching the attribute's type");
+    }
+
+    private static Number number(Object value) {
+        if (value instanceof Number number) {
+            return number;
+        }
+        throw new IllegalArgumentException(value == null
+                ? "an operand of + or - doesn't exist"
+                : "+ and - need numbers, got " + value);
+    }
+
+    private static List<?> list(Object value) {
+        if (value instanceof List<?> list) {
+            return list;
+        }
+        throw new IllegalArgumentException(value == null
+                ? "an operand of list_append doesn't exist"
+                : "list_append needs lists, got " + value);
+    }
+
+    // exact for whole numbers that fit a long, BigDecimal arithmetic for everything else
+    private static Number add(Number a, Number b) {
+        if (isWhole(a) && isWhole(b)) {
+            try {
+                return Math.addExact(a.longValue(), b.longValue());
+            } catch (ArithmeticException overflow) {
+                // falls through to BigDecimal
+            }
+        }
+        return normalize(toBigDecimal(a).add(toBigDecimal(b)));
+    }
+
+    private static Number negate(Number number) {
+        return isWhole(number) ? normalize(BigDecimal.valueOf(number.longValue()).negate()) : toBigDecimal(number).negate();
+    }
+
+    private static boolean isWhole(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * What an update stores: number literals are BigDecimals, a whole one that fits is
+     * stored as a long like a JSON integer would be (also inside lists).
+     */
+    static Object normalize(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return normalize(decimal);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> normalized = new ArrayList<>(list.size());
+            list.forEach(element -> normalized.add(normalize(element)));
+            return normalized;
+        }
+        return value;
+    }
+
+    private static Number normalize(BigDecimal value) {
+        if (value.signum() == 0) {
+            return 0L;
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.precision() - stripped.scale() <= 18) {
+            return stripped.longValueExact();
+        }
+        return value;
+    }
+
+    // ---------------------------------------------------------------- values
+
+    private static Predicate<Map<String, Object>> ordered(Function<Map<String, Object>, Object> left,
+                                                          Function<Map<String, Object>, Object> right,
+                                                          java.util.function.IntPredicate test) {
+        return attributes -> {
+            Integer comparison = compare(left.apply(attributes), right.apply(attributes));
+            return comparison != null && test.test(comparison);
+        };
+    }
+
+    // null if the two can't be ordered (missing, different types, not orderable)
+    private static Integer compare(Object left, Object right) {
+        if (left instanceof Number a && right instanceof Number b) {
+            return toBigDecimal(a).compareTo(toBigDecimal(b));
+        }
+        if (left instanceof String a && right instanceof String b) {
+            return a.compareTo(b);
+        }
+        return null;
+    }
+
+    private static boolean equal(Object left, Object right) {
+        if (left == null || right == null) {
+            return false;
+        }
+        Integer comparison = compare(left, right);
+        return comparison != null ? comparison == 0 : Objects.equals(left, right);
+    }
+
+    private static boolean contains(Object container, Object value) {
+        if (container instanceof String string && value instanceof String part) {
+            return string.contains(part);
+        }
+        if (container instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                if (equal(element, value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal decimal) {
+            return decimal;
+        } else if (number instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        } else if (number instanceof Double || number instanceof Float) {
+            return BigDecimal.valueOf(number.doubleValue());
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    // ---------------------------------------------------------------- tokens
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (true) {
+                    if (end >= text.length()) {
+                        throw new IllegalArgumentException("Unterminated string in expression: " + text);
+                    }
+                    if (text.charAt(end) == '\'') {
+                        if (end + 1 < text.length() && text.charAt(end + 1) == '\'') {
+                            end += 2; // '' is an escaped quote
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '<' || c == '>') {
+                boolean twoChars = i + 1 < text.length() && (text.charAt(i + 1) == '=' || (c == '<' && text.charAt(i + 1) == '>'));
+                tokens.add(text.substring(i, twoChars ? i + 2 : i + 1));
+                i += twoChars ? 2 : 1;
+            } else if (c == '=' || c == '(' || c == ')' || c == ',' || c == '+' || c == '[' || c == ']') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int end = i + 1;
+                while (end < text.length() && isNameOrNumberChar(text.charAt(end))) {
+                    end++;
+                }
+                if (!isNameOrNumberChar(c) && c != '-') {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' in expression: " + text);
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isNameOrNumberChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+    }
+
+    private static boolean isName(String token) {
+        return Character.isLetter(token.charAt(0)) || token.charAt(0) == '_';
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        return position < tokens.size() ? tokens.get(position++) : null;
+    }
+
+    private boolean accept(String token) {
+        if (token.equals(peek())) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (peek() != null && peek().equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("expected '" + token + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid expression '" + text + "': " + message);
+    }
+}
@@ -0,0 +1,62 @@
+package com.pm.javadynamodb.storage.expression;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A compiled filter expression such as {@code status = 'active' AND begins_with(title, 'A')}.
+ * Expressions are parsed once per distinct text and cached, so hot queries only pay for
+ * evaluating the predicate. See {@link ExpressionParser} for the grammar.
+ */
+public final class FilterExpression {
+
+    // hot queries send the same expression text over and over
+    private static final int MAX_CACHED = 1024;
+    private static final Map<String, FilterExpression> CACHE = new ConcurrentHashMap<>();
+
+    private final String text;
+    private final Predicate<Map<String, Object>> predicate;
+
+    private FilterExpression(String text, Predicate<Map<String, Object>> predicate) {
+        this.text = text;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Parses (or fetches from the cache) a filter expression.
+     * Returns null for a null or blank expression, meaning "no filter".
+     * Throws IllegalArgumentException if the expression is malformed.
+     */
+    public static FilterExpression parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        FilterExpression cached = CACHE.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        FilterExpression compiled = new FilterExpression(text, ExpressionParser.parseFilter(text));
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear(); // crude, but the working set of expressions is normally tiny
+        }
+        CACHE.put(text, compiled);
+        return compiled;
+    }
+
+    public boolean matches(Item item) {
+        return predicate.test(item.getAttributes());
+    }
+
+    /** The filter as a predicate, for ItemIterator.filtered. */
+    public Predicate<Item> asPredicate() {
+        return this::matches;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,72 @@
+package com.pm.javadynamodb.storage.expression;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled projection: a comma-separated list of top-level attribute names,
+ * e.g. {@code title, artist}. Applying it keeps only those attributes, and since it
+ * reads them one at a time a packed item never decodes the attributes that are dropped.
+ */
+public final class ProjectionExpression {
+
+    private static final int MAX_CACHED = 1024;
+    private static final Map<String, ProjectionExpression> CACHE = new ConcurrentHashMap<>();
+
+    private final String text;
+    private final String[] attributeNames;
+
+    private ProjectionExpression(String text, String[] attributeNames) {
+        this.text = text;
+        this.attributeNames = attributeNames;
+    }
+
+    /**
+     * Parses (or fetches from the cache) a projection.
+     * Returns null for a null or blank projection, meaning "every attribute".
+     */
+    public static ProjectionExpression parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        ProjectionExpression cached = CACHE.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        String[] names = text.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+            if (names[i].isEmpty()) {
+                throw new IllegalArgumentException("Invalid projection '" + text + "': empty attribute name");
+            }
+        }
+        ProjectionExpression compiled = new ProjectionExpression(text, names);
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        CACHE.put(text, compiled);
+        return compiled;
+    }
+
+    /** Replaces the item's attributes with just the projected ones and returns the item. */
+    public Item apply(Item item) {
+        Map<String, Object> source = item.getAttributes();
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (String name : attributeNames) {
+            Object value = source.get(name);
+            if (value != null || source.containsKey(name)) {
+                projected.put(name, value);
+            }
+        }
+        item.setAttributes(projected);
+        return item;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,108 @@
+package com.pm.javadynamodb.storage.expression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A compiled update expression such as {@code SET title = 'New', plays = plays + 1 REMOVE draft}
+ * or {@code ADD views 1, tags ['new']}. See {@link ExpressionParser} for the grammar.
+ *
+ * apply() doesn't change anything itself: it works out the new values of the attributes the
+ * expression touches (the post-image of just those attributes) plus the ones it removes.
+ * That pair is what UpdateItem writes to the WAL, so a replay never evaluates the
+ * expression again; it only sets values, and "plays + 1" can't be counted twice.
+ */
+public final class UpdateExpression {
+
+    private static final int MAX_CACHED = 1024;
+    private static final Map<String, UpdateExpression> CACHE = new ConcurrentHashMap<>();
+
+    // what the parser produces: the actions of each clause, keyed by the attribute they change
+    record Actions(Map<String, Function<Map<String, Object>, Object>> set,
+                   List<String> remove,
+                   Map<String, Function<Map<String, Object>, Object>> add) {
+    }
+
+    /**
+     * The effect of an update on one item: new values for these attributes, and these
+     * attributes removed. Never both for the same attribute.
+     */
+    public record Changes(Map<String, Object> set, List<String> removed) {
+    }
+
+    private final String text;
+    private final Actions actions;
+    private final Set<String> targets;
+
+    private UpdateExpression(String text, Actions actions) {
+        this.text = text;
+        this.actions = actions;
+        Set<String> names = new LinkedHashSet<>(actions.set().keySet());
+        names.addAll(actions.remove());
+        names.addAll(actions.add().keySet());
+        this.targets = Set.copyOf(names);
+    }
+
+    /**
+     * Parses (or fetches from the cache) an update expression.
+     * Throws IllegalArgumentException if it is missing or malformed.
+     */
+    public static UpdateExpression parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("An update expression is required");
+        }
+        UpdateExpression cached = CACHE.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        UpdateExpression compiled = new UpdateExpression(text, ExpressionParser.parseUpdate(text));
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        CACHE.put(text, compiled);
+        return compiled;
+    }
+
+    // every attribute the expression sets, adds to or removes
+    public Set<String> targets() {
+        return targets;
+    }
+
+    /**
+     * Works out the changes against the current attributes (empty for a new item).
+     * Throws IllegalArgumentException if a value can't be computed, e.g. "+" on a string.
+     */
+    public Changes apply(Map<String, Object> current) {
+        Map<String, Object> set = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+
+        // every value comes from the item as it was, not from an earlier action of this update
+        actions.set().forEach((name, value) -> {
+            Object result = value.apply(current);
+            if (result == null) {
+                throw new IllegalArgumentException("Invalid update '" + text + "': the value for " + name
+                        + " refers to an attribute that doesn't exist");
+            }
+            set.put(name, ExpressionParser.normalize(result));
+        });
+        actions.add().forEach((name, value) ->
+                set.put(name, ExpressionParser.normalize(ExpressionParser.addTo(current.get(name), value.apply(current)))));
+        for (String name : actions.remove()) {
+            if (current.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        return new Changes(set, removed);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pm.javadynamodb.storage.index;
+
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
+import com.pm.javadynamodb.core.model.ProjectionType;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of a table's index definitions, shared by the WAL CREATE_TABLE record and
+ * the snapshot TABLE block. It is written at the very end of those payloads, so a
+ * payload from before indexes existed simply has nothing left to read.
+ *
+ * <pre>
+ * varint count, then per index:
+ *   string indexName, string partitionKeyName, nullable string sortKeyName,
+ *   byte projection ordinal, varint attribute count, strings nonKeyAttributes
+ * </pre>
+ */
+public final class IndexDefinitionCodec {
+
+    private IndexDefinitionCodec() {
+    }
+
+    public static void write(BinaryWriter out, List<GlobalSecondaryIndex> indexes) {
+        out.putVarInt(indexes.size());
+        for (GlobalSecondaryIndex index : indexes) {
+            out.putString(index.getIndexName());
+            out.putString(index.getPartitionKeyName());
+            out.putNullableString(index.getSortKeyName());
+            ProjectionType projection = index.getProjectionType() == null ? ProjectionType.ALL : index.getProjectionType();
+            out.putByte(projection.ordinal());
+            List<String> attributes = index.getNonKeyAttributes() == null ? List.of() : index.getNonKeyAttributes();
+            out.putVarInt(attributes.size());
+            attributes.forEach(out::putString);
+        }
+    }
+
+    // reads what write() wrote, or an empty list if the payload ends here
+    public static List<GlobalSecondaryIndex> read(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return List.of();
+        }
+        int count = BinaryReader.getVarInt(payload);
+        List<GlobalSecondaryIndex> indexes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String indexName = BinaryReader.getString(payload);
+            String partitionKeyName = BinaryReader.getString(payload);
+            String sortKeyName = BinaryReader.getNullableString(payload);
+            ProjectionType projection = ProjectionType.values()[payload.get()];
+            int attributeCount = BinaryReader.getVarInt(payload);
+            List<String> attributes = new ArrayList<>(attributeCount);
+            for (int a = 0; a < attributeCount; a++) {
+                attributes.add(BinaryReader.getString(payload));
+            }
+            indexes.add(new GlobalSecondaryIndex(indexName, partitionKeyName, sortKeyName, projection, attributes));
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.pm.javadynamodb.storage.index;
+
+import com.pm.javadynamodb.core.model.Item;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the secondary indexes of a table in step with its items.
+ *
+ * A write to an indexed table reads the old item, writes the new one and updates the
+ * indexes while holding the lock stripe of the item's key, so two writers racing on the
+ * same item can't leave both of their versions in an index.
+ *
+ * StorageService holds the same stripe from logging a write until it is applied, for every
+ * table, so the WAL order of the writes to one item is also the order they were applied in.
+ *
+ * Synchronous mode updates the indexes before the write returns. Asynchronous mode hands
+ * the update to a single background thread (queued while the stripe is held, so updates
+ * for one item stay in order) and the write returns straight away; index queries are
+ * then eventually consistent, like DynamoDB's GSIs.
+ */
+public class IndexMaintainer implements AutoCloseable {
+
+    private static final int STRIPES = 256;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // null in synchronous mode
+    private final ExecutorService executor;
+
+    public IndexMaintainer(boolean async) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.executor = async ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "index-maintainer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    // the lock to hold around read old item / write new item / update(), per (table, pk, sk)
+    public ReentrantLock lockFor(String tableName, String partitionKey, String sortKey) {
+        return stripes[stripeFor(tableName, partitionKey, sortKey)];
+    }
+
+    // position of an item's stripe; a writer that needs several takes them in this order
+    public int stripeFor(String tableName, String partitionKey, String sortKey) {
+        int hash = (tableName.hashCode() * 31 + partitionKey.hashCode()) * 31 + sortKey.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), STRIPES);
+    }
+
+    public ReentrantLock stripe(int index) {
+        return stripes[index];
+    }
+
+    /**
+     * Applies one item change to all the given indexes, now or on the background thread.
+     * Must be called while holding the item's stripe.
+     */
+    public void update(Collection<SecondaryIndex> indexes, Item before, Item after) {
+        if (executor == null) {
+            indexes.forEach(index -> index.update(before, after));
+            return;
+        }
+        // the caller owns after's attribute map and may reuse it once the write returned
+        Item copy = after == null ? null : copyOf(after);
+        executor.execute(() -> indexes.forEach(index -> {
+            try {
+                index.update(before, copy);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to update index " + index.getIndexName() + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    private static Item copyOf(Item item) {
+        Item copy = new Item();
+        copy.setPrimaryKey(item.getPrimaryKey());
+        copy.setAttributes(new HashMap<>(item.getAttributes()));
+        return copy;
+    }
+
+    /**
+     * Waits until every update queued so far has reached the indexes (no-op when synchronous).
+     */
+    public void awaitPending() {
+        if (executor != null) {
+            CompletableFuture.runAsync(() -> { }, executor).join();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.pm.javadynamodb.storage.index;
+
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.ProjectionType;
+import com.pm.javadynamodb.storage.codec.AttributeDictionary;
+import com.pm.javadynamodb.storage.codec.PackedAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The data of one global secondary index, kept on the heap.
+ *
+ * Same layout as InMemoryTableStore, but keyed by the index's own partition key, and
+ * within a partition by index sort key + the table's primary key (several items can
+ * share an index key). Values are the projected attributes, packed.
+ *
+ * The index itself doesn't know about concurrent writers: StorageService makes sure
+ * the updates for one item reach update() in the order they were applied to the table.
+ */
+public class SecondaryIndex {
+
+    // separates the parts of an entry key; sorts before every other char, so entries
+    // are ordered by index sort key first, exactly as the sort key strings compare
+    private static final char SEPARATOR = '\0';
+
+    private final GlobalSecondaryIndex definition;
+    private final String tablePartitionKeyName;
+    private final String tableSortKeyName;
+    // null = project everything
+    private final Set<String> projectedAttributes;
+
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Entry>> partitions = new ConcurrentSkipListMap<>();
+    private final AttributeDictionary dictionary = new AttributeDictionary();
+
+    // the table key comes back with every entry, so a hit can be followed up with a GetItem
+    private record Entry(String partitionKey, String sortKey, byte[] attributes) {
+    }
+
+    public SecondaryIndex(GlobalSecondaryIndex definition, String tablePartitionKeyName, String tableSortKeyName) {
+        this.definition = definition;
+        this.tablePartitionKeyName = tablePartitionKeyName;
+        this.tableSortKeyName = tableSortKeyName;
+
+        ProjectionType projection = definition.getProjectionType() == null ? ProjectionType.ALL : definition.getProjectionType();
+        if (projection == ProjectionType.ALL) {
+            this.projectedAttributes = null;
+        } else {
+            Set<String> attributes = new HashSet<>();
+            attributes.add(tablePartitionKeyName);
+            if (tableSortKeyName != null) {
+                attributes.add(tableSortKeyName);
+            }
+            attributes.add(definition.getPartitionKeyName());
+            if (definition.getSortKeyName() != null) {
+                attributes.add(definition.getSortKeyName());
+            }
+            if (projection == ProjectionType.INCLUDE && definition.getNonKeyAttributes() != null) {
+                attributes.addAll(definition.getNonKeyAttributes());
+            }
+            this.projectedAttributes = Set.copyOf(attributes);
+        }
+    }
+
+    public GlobalSecondaryIndex getDefinition() {
+        return definition;
+    }
+
+    public String getIndexName() {
+        return definition.getIndexName();
+    }
+
+    /**
+     * Moves one item from its old index position to its new one. before is the item as it
+     * was in the table (null if it didn't exist), after is the new version (null for a delete).
+     */
+    public void update(Item before, Item after) {
+        if (before != null) {
+            remove(before);
+        }
+        if (after != null) {
+            add(after);
+        }
+    }
+
+    /**
+     * Items with the given index partition key, in index sort key order.
+     *
+     * @param startKey first index sort key to include, null for the start of the partition
+     * @param endKey   first index sort key to exclude, null for the end of the partition
+     */
+    public List<Item> query(String partitionKey, String startKey, String endKey) {
+        NavigableMap<String, Entry> partition = partitions.get(partitionKey);
+        if (partition == null) {
+            return List.of();
+        }
+        // entry keys start with the sort key, so the plain sort key bounds work on them too
+        if (startKey != null && endKey != null) {
+            partition = partition.subMap(startKey, true, endKey, false);
+        } else if (startKey != null) {
+            partition = partition.tailMap(startKey, true);
+        } else if (endKey != null) {
+            partition = partition.headMap(endKey, false);
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (Entry entry : partition.values()) {
+            Item item = new Item();
+            item.setPrimaryKey(new Key(entry.partitionKey(), entry.sortKey()));
+            item.setAttributes(new PackedAttributes(dictionary, entry.attributes()));
+            items.add(item);
+        }
+        return items;
+    }
+
+    // number of items in the index, walks every partition
+    public long size() {
+        return partitions.values().stream().mapToLong(Map::size).sum();
+    }
+
+    private void add(Item item) {
+        String partitionKey = indexPartitionKey(item);
+        String entryKey = entryKey(item);
+        if (partitionKey == null || entryKey == null) {
+            return; // sparse: the item doesn't have this index's key attributes
+        }
+        Key tableKey = item.getPrimaryKey();
+        Entry entry = new Entry(tableKey.getPartitionKey(), tableKey.getSortKey(),
+                PackedAttributes.pack(dictionary, project(item.getAttributes())));
+        partitions.compute(partitionKey, (key, partition) -> {
+            if (partition == null) {
+                partition = new ConcurrentSkipListMap<>();
+            }
+            partition.put(entryKey, entry);
+            return partition;
+        });
+    }
+
+    private void remove(Item item) {
+        String partitionKey = indexPartitionKey(item);
+        String entryKey = entryKey(item);
+        if (partitionKey == null || entryKey == null) {
+            return;
+        }
+        partitions.computeIfPresent(partitionKey, (key, partition) -> {
+            partition.remove(entryKey);
+            return partition.isEmpty() ? null : partition;
+        });
+    }
+
+    private String indexPartitionKey(Item item) {
+        Object value = item.getAttributes().get(definition.getPartitionKeyName());
+        return value == null ? null : value.toString();
+    }
+
+    // index sort key + table key, null if the index has a sort key the item lacks
+    private String entryKey(Item item) {
+        String sortKey = "";
+        if (definition.getSortKeyName() != null) {
+            Object value = item.getAttributes().get(definition.getSortKeyName());
+            if (value == null) {
+                return null;
+            }
+            sortKey = value.toString();
+        }
+        Key tableKey = item.getPrimaryKey();
+        return sortKey + SEPARATOR + tableKey.getPartitionKey() + SEPARATOR + tableKey.getSortKey();
+    }
+
+    private Map<String, Object> project(Map<String, Object> attributes) {
+        if (projectedAttributes == null) {
+            return attributes;
+        }
+        Map<String, Object> projected = new HashMap<>();
+        for (String name : projectedAttributes) {
+            Object value = attributes.get(name);
+            if (value != null) {
+                projected.put(name, value);
+            }
+        }
+        return projected;
+    }
+}
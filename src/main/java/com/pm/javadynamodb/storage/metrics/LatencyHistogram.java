@@ -0,0 +1,100 @@
+package com.pm.javadynamodb.storage.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free latency histogram in the spirit of HdrHistogram.
+ *
+ * Values (nanoseconds) below 64 get a bucket each; above that every power of two is
+ * split into 32 buckets, so a reported percentile is within about 3% of the real value
+ * all the way up to Long.MAX_VALUE. All buckets are allocated up front and record()
+ * only bumps counters, so timing a hot path allocates nothing.
+ *
+ * Counts are cumulative since startup, which is what a Prometheus summary expects.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // every value below this has a bucket of its own
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        totalNanos.add(value);
+        // only contended when a new maximum is seen, which gets rare quickly
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    // records the time since startNanos (a System.nanoTime() value)
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Count, sum, max and the usual percentiles. Taken while other threads keep recording,
+     * so the numbers are each accurate but not necessarily from the exact same instant.
+     */
+    public LatencySnapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long max = maxNanos.get();
+        return new LatencySnapshot(count, totalNanos.sum(), max,
+                valueAt(copy, count, 0.5, max),
+                valueAt(copy, count, 0.9, max),
+                valueAt(copy, count, 0.99, max),
+                valueAt(copy, count, 0.999, max));
+    }
+
+    // the highest value of the bucket the quantile falls into, never above the real maximum
+    private static long valueAt(long[] buckets, long count, double quantile, long max) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long highest = i + 1 < BUCKETS ? lowerBoundOf(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(highest, max);
+            }
+        }
+        return max;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int offset = bucket - LINEAR_LIMIT;
+        int exponent = offset / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = offset % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
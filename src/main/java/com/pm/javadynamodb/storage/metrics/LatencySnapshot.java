@@ -0,0 +1,15 @@
+package com.pm.javadynamodb.storage.metrics;
+
+/**
+ * A point-in-time copy of a LatencyHistogram, all values in nanoseconds.
+ */
+public record LatencySnapshot(
+        long count,
+        long totalNanos,
+        long maxNanos,
+        long p50Nanos,
+        long p90Nanos,
+        long p99Nanos,
+        long p999Nanos
+) {
+}
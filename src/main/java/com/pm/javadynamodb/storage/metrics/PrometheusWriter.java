@@ -0,0 +1,97 @@
+package com.pm.javadynamodb.storage.metrics;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Builds a page in the Prometheus text exposition format (version 0.0.4), the format
+ * a Prometheus server or any compatible agent scrapes. Latencies are written as
+ * summaries in seconds, the unit Prometheus expects.
+ */
+public final class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder out = new StringBuilder(4096);
+    // HELP / TYPE go out once per metric, before its first sample
+    private final Set<String> described = new HashSet<>();
+
+    public PrometheusWriter counter(String name, String help, double value, String... labels) {
+        return sample(name, "counter", help, value, labels);
+    }
+
+    public PrometheusWriter gauge(String name, String help, double value, String... labels) {
+        return sample(name, "gauge", help, value, labels);
+    }
+
+    /**
+     * A latency summary: name{quantile="..."} for p50/p90/p99/p99.9 plus _count, _sum and _max.
+     * labels are name/value pairs.
+     */
+    public PrometheusWriter summary(String name, String help, LatencySnapshot latency, String... labels) {
+        describe(name, "summary", help);
+        quantile(name, "0.5", latency.p50Nanos(), labels);
+        quantile(name, "0.9", latency.p90Nanos(), labels);
+        quantile(name, "0.99", latency.p99Nanos(), labels);
+        quantile(name, "0.999", latency.p999Nanos(), labels);
+        line(name + "_count", labels, null, latency.count());
+        line(name + "_sum", labels, null, seconds(latency.totalNanos()));
+        line(name + "_max", labels, null, seconds(latency.maxNanos()));
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private PrometheusWriter sample(String name, String type, String help, double value, String... labels) {
+        describe(name, type, help);
+        line(name, labels, null, value);
+        return this;
+    }
+
+    private void quantile(String name, String quantile, long nanos, String[] labels) {
+        line(name, labels, quantile, seconds(nanos));
+    }
+
+    private void describe(String name, String type, String help) {
+        if (described.add(name)) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+    }
+
+    private void line(String name, String[] labels, String quantile, double value) {
+        out.append(name);
+        if (labels.length > 0 || quantile != null) {
+            out.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            if (quantile != null) {
+                out.append(labels.length > 0 ? "," : "").append("quantile=\"").append(quantile).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9g", value));
+        }
+        out.append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.javadynamodb.storage.metrics;
+
+/**
+ * The StorageService operations that get a latency histogram each.
+ */
+public enum StorageOperation {
+    PUT_ITEM,
+    GET_ITEM,
+    DELETE_ITEM,
+    UPDATE_ITEM,
+    QUERY,
+    SCAN,
+    QUERY_INDEX,
+    BATCH_WRITE,
+    BATCH_GET,
+    EXPIRE_ITEMS,
+    TRANSACT_WRITE,
+    TRANSACT_GET
+}
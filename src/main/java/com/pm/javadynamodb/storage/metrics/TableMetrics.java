@@ -0,0 +1,14 @@
+package com.pm.javadynamodb.storage.metrics;
+
+/**
+ * Size of one table as far as its store can tell cheaply. The LSM store counts every
+ * version it still holds (overwrites and tombstones until a compaction), so for it the
+ * item count is an upper bound.
+ */
+public record TableMetrics(
+        String tableName,
+        long approximateItemCount,
+        long approximateBytes,
+        int indexCount
+) {
+}
@@ -0,0 +1,163 @@
+package com.pm.javadynamodb.storage.recovery;
+
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Replays WAL records on several threads at once.
+ *
+ * The thread that reads the log calls submit() for every record. Item records are routed
+ * to one of N worker queues by the hash of (table, partition key), so all changes to one
+ * partition are applied by the same worker in log order, while different partitions are
+ * applied in parallel.
+ *
+ * Table changes (CREATE_TABLE, DELETE_TABLE, UPDATE_TIME_TO_LIVE) and transactions, which
+ * can touch several partitions, are barriers: the reading thread waits until every worker
+ * has applied everything queued before it, applies the record itself, and only then
+ * continues routing.
+ */
+public final class ParallelReplayer implements AutoCloseable {
+
+    // what travels through a worker queue: a record to apply, a barrier, or the stop signal
+    private record Task(WALEntry entry, long sequence, CountDownLatch barrier) {
+    }
+
+    private static final Task STOP = new Task(null, -1, null);
+
+    private final Function<WALEntry, String> partitionKeyOf;
+    private final Consumer<WALEntry> apply;
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong applied = new AtomicLong();
+    private boolean finished;
+
+    /**
+     * @param threads        number of worker threads
+     * @param queueCapacity  records each worker may have waiting, bounds memory use during replay
+     * @param partitionKeyOf partition key of an item record (called on the reading thread)
+     * @param apply          applies one entry to the in-memory state
+     */
+    public ParallelReplayer(int threads, int queueCapacity,
+                            Function<WALEntry, String> partitionKeyOf,
+                            Consumer<WALEntry> apply) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel replay needs at least one worker");
+        }
+        this.partitionKeyOf = partitionKeyOf;
+        this.apply = apply;
+
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread worker = new Thread(() -> runWorker(queue), "wal-replay-" + i);
+            worker.setDaemon(true);
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public void submit(WALRecord record) {
+        WALEntry entry = record.entry();
+        if (entry.operationType().isBarrier()) {
+            awaitWorkers();
+            applyQuietly(entry, record.sequence());
+            return;
+        }
+
+        String partitionKey;
+        try {
+            partitionKey = partitionKeyOf.apply(entry);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to route WAL record #" + record.sequence() + ": " + e.getMessage());
+            return;
+        }
+        int hash = 31 * entry.tableName().hashCode() + (partitionKey == null ? 0 : partitionKey.hashCode());
+        put(queues.get(Math.floorMod(hash, queues.size())), new Task(entry, record.sequence(), null));
+    }
+
+    /**
+     * Waits for every queued record to be applied and stops the workers.
+     *
+     * @return how many records were applied without an error
+     */
+    public long finish() {
+        if (!finished) {
+            finished = true;
+            queues.forEach(queue -> put(queue, STOP));
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for WAL replay", e);
+                }
+            }
+        }
+        return applied.get();
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    // put a barrier in every queue and wait until all workers have reached it
+    private void awaitWorkers() {
+        CountDownLatch barrier = new CountDownLatch(queues.size());
+        Task task = new Task(null, -1, barrier);
+        queues.forEach(queue -> put(queue, task));
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for WAL replay", e);
+        }
+    }
+
+    private void runWorker(BlockingQueue<Task> queue) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP) {
+                return;
+            }
+            if (task.barrier() != null) {
+                task.barrier().countDown();
+                continue;
+            }
+            applyQuietly(task.entry(), task.sequence());
+        }
+    }
+
+    private void applyQuietly(WALEntry entry, long sequence) {
+        try {
+            apply.accept(entry);
+            applied.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Failed to replay WAL record #" + sequence);
+            e.printStackTrace();
+        }
+    }
+
+    private static void put(BlockingQueue<Task> queue, Task task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while routing WAL records", e);
+        }
+    }
+}
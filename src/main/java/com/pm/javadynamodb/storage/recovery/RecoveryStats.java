@@ -0,0 +1,14 @@
+package com.pm.javadynamodb.storage.recovery;
+
+/**
+ * How the last startup went: which snapshot was loaded and how long each phase took.
+ * snapshotSequence is 0 when there was no usable snapshot and the whole WAL was replayed.
+ */
+public record RecoveryStats(
+        long snapshotSequence,
+        long snapshotLoadMillis,
+        long walRecordsReplayed,
+        long walReplayMillis,
+        long totalMillis
+) {
+}
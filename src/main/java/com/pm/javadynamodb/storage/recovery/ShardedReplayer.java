@@ -0,0 +1,266 @@
+package com.pm.javadynamodb.storage.recovery;
+
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Replays a sharded WAL with one thread per shard.
+ *
+ * Every partition lives in exactly one shard, so the item records of different shards
+ * can be applied at the same time without any routing. Table changes were written to
+ * every shard and transactions to the shards they are marked with, always in the same
+ * order relative to each other; a shard thread that reaches one waits for the other
+ * shards it was written to, the last one to arrive applies it once, and then they go on.
+ * That way no shard applies an item to a table that another shard hasn't created yet
+ * (or has already dropped), and a transaction lands between the same writes of each of
+ * its partitions as it did when it was logged. Shards a transaction doesn't touch don't
+ * wait for it, and one that only touches a single shard is applied like any other record.
+ *
+ * Copies of a record are matched up by content, they are numbered differently in every
+ * shard. Two equal transactions pair up either way round, which makes no difference.
+ *
+ * A record is only applied if every shard it was written to has its copy; the writer of
+ * one whose copy failed in some shard (or that a crash cut short) was never told it
+ * committed, so it is dropped. A copy is known to be missing once that shard's file ends
+ * without it, or once every shard still reading waits at a record: records sharing a
+ * shard were written one after the other, so of those waiting, the one with the lowest
+ * sequence number would have come first in the shards it waits for, and they are past it.
+ */
+public final class ShardedReplayer {
+
+    private final int shards;
+    private final Consumer<WALEntry> apply;
+    private final AtomicLong applied = new AtomicLong();
+
+    // barrier state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    private final boolean[] reading;
+    private int stillReading;
+    // shard threads waiting at a record for the others
+    private int blocked;
+    // records some shards have reached and others not yet; equal ones oldest first
+    private final Map<WALEntry, List<Barrier>> pending = new HashMap<>();
+
+    /**
+     * @param shards number of shards, one thread each
+     * @param apply  applies one entry to the in-memory state
+     */
+    public ShardedReplayer(int shards, Consumer<WALEntry> apply) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Sharded replay needs at least one shard");
+        }
+        this.shards = shards;
+        this.apply = apply;
+        this.reading = new boolean[shards];
+    }
+
+    /**
+     * Reads all shards at once and blocks until every one of them is done.
+     *
+     * @param readShard called once per shard on that shard's thread; reads the shard and
+     *                  hands each record to the consumer, in log order
+     * @return how many records were applied without an error
+     */
+    public long replay(BiConsumer<Integer, Consumer<WALRecord>> readShard) {
+        Arrays.fill(reading, true);
+        stillReading = shards;
+        List<Thread> threads = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            int shard = i;
+            Thread thread = new Thread(() -> replayShard(shard, readShard), "wal-replay-shard-" + shard);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for WAL replay", e);
+            }
+        }
+        return applied.get();
+    }
+
+    private void replayShard(int shard, BiConsumer<Integer, Consumer<WALRecord>> readShard) {
+        try {
+            readShard.accept(shard, record -> {
+                if (record.entry().operationType().isBarrier()) {
+                    arriveAt(shard, record.entry(), record.sequence());
+                } else {
+                    applyQuietly(record.entry(), record.sequence());
+                }
+            });
+        } catch (RuntimeException e) {
+            System.err.println("WAL replay of shard " + shard + " failed: " + e.getMessage());
+        } finally {
+            leave(shard);
+        }
+    }
+
+    // waits until every other shard the record was written to has reached it too, it is applied by the last one
+    private void arriveAt(int shard, WALEntry entry, long sequence) {
+        List<Integer> writtenTo = entry.shards();
+        if (writtenTo != null && writtenTo.size() == 1) {
+            applyQuietly(entry, sequence);
+            return;
+        }
+        lock.lock();
+        try {
+            Barrier barrier = pendingFor(shard, entry);
+            if (barrier == null) {
+                barrier = new Barrier(entry, sequence);
+                for (int other = 0; other < shards; other++) {
+                    if (other != shard && (writtenTo == null || writtenTo.contains(other))) {
+                        if (reading[other]) {
+                            barrier.waitingFor.add(other);
+                        } else {
+                            // that shard's file ended without it
+                            barrier.missing.add(other);
+                        }
+                    }
+                }
+                pending.computeIfAbsent(entry, key -> new ArrayList<>()).add(barrier);
+            } else {
+                barrier.waitingFor.remove(shard);
+            }
+            if (barrier.waitingFor.isEmpty()) {
+                finish(barrier);
+                return;
+            }
+            if (!barrier.missing.isEmpty()) {
+                // it won't be applied, so there is nothing to wait for
+                return;
+            }
+            barrier.waiters++;
+            blocked++;
+            breakDeadlock();
+            while (!barrier.released) {
+                advanced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Barrier pendingFor(int shard, WALEntry entry) {
+        for (Barrier barrier : pending.getOrDefault(entry, List.of())) {
+            if (barrier.waitingFor.contains(shard)) {
+                return barrier;
+            }
+        }
+        return null;
+    }
+
+    private void leave(int shard) {
+        lock.lock();
+        try {
+            reading[shard] = false;
+            stillReading--;
+            List<Barrier> waitingForThis = new ArrayList<>();
+            pending.values().forEach(barriers -> barriers.stream()
+                    .filter(barrier -> barrier.waitingFor.contains(shard))
+                    .forEach(waitingForThis::add));
+            for (Barrier barrier : waitingForThis) {
+                barrier.waitingFor.remove(shard);
+                barrier.missing.add(shard);
+                if (barrier.waitingFor.isEmpty()) {
+                    finish(barrier);
+                } else {
+                    release(barrier);
+                }
+            }
+            breakDeadlock();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held; when nobody can go on, the oldest record waited at lacks the copies it waits for
+    private void breakDeadlock() {
+        while (stillReading > 0 && blocked == stillReading) {
+            Barrier oldest = null;
+            for (List<Barrier> barriers : pending.values()) {
+                for (Barrier barrier : barriers) {
+                    if (!barrier.released && barrier.waiters > 0 && (oldest == null || barrier.sequence < oldest.sequence)) {
+                        oldest = barrier;
+                    }
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            oldest.missing.addAll(oldest.waitingFor);
+            oldest.waitingFor.clear();
+            finish(oldest);
+        }
+    }
+
+    // called with the lock held, once no more shards can arrive at the barrier
+    private void finish(Barrier barrier) {
+        List<Barrier> barriers = pending.get(barrier.entry);
+        barriers.remove(barrier);
+        if (barriers.isEmpty()) {
+            pending.remove(barrier.entry);
+        }
+        if (barrier.missing.isEmpty()) {
+            applyQuietly(barrier.entry, barrier.sequence);
+        } else {
+            System.err.println("WAL record #" + barrier.sequence + " is missing from shard(s) " + barrier.missing
+                    + ", it was never committed and is not replayed");
+        }
+        release(barrier);
+    }
+
+    // called with the lock held; lets the shards waiting at the barrier go on
+    private void release(Barrier barrier) {
+        if (!barrier.released) {
+            barrier.released = true;
+            blocked -= barrier.waiters;
+            advanced.signalAll();
+        }
+    }
+
+    private void applyQuietly(WALEntry entry, long sequence) {
+        try {
+            apply.accept(entry);
+            applied.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Failed to replay WAL record #" + sequence);
+            e.printStackTrace();
+        }
+    }
+
+    // a record some of its shards have reached, guarded by lock
+    private static final class Barrier {
+        final WALEntry entry;
+        final long sequence;
+        // shards still reading that haven't reached it yet
+        final Set<Integer> waitingFor = new HashSet<>();
+        // shards known not to have it
+        final Set<Integer> missing = new TreeSet<>();
+        int waiters;
+        boolean released;
+
+        Barrier(WALEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+}
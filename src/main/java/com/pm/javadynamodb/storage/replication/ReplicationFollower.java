@@ -0,0 +1,258 @@
+package com.pm.javadynamodb.storage.replication;
+
+import com.pm.javadynamodb.api.exception.ReplicaLagException;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The follower side of replication (jkeydb.replication.role=follower): a read-only copy
+ * of the leader at jkeydb.replication.leader.
+ * <p>
+ * One thread stays connected to the leader and applies the records it ships, the same
+ * way the startup replay applies the WAL. The API keeps serving reads while that happens,
+ * every write through it fails. The follower doesn't log what it applies, so after a
+ * restart it starts over with a snapshot from the leader; while it is connected but
+ * behind it only asks for the records after what it has.
+ * <p>
+ * The lag it reports is how long ago it last had everything the leader had when the
+ * leader sent it something; an idle leader sends heartbeats, so an idle follower that is
+ * connected stays close to 0. Reads are refused once the lag passes
+ * jkeydb.replication.max-lag-millis (see ReplicaReadGuard).
+ */
+@Service
+public class ReplicationFollower {
+
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final StorageService storageService;
+    private final boolean enabled;
+    private final String leaderHost;
+    private final int leaderPort;
+    private final long maxLagMillis;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    // what has been applied up to, NO_POSITION before the first snapshot is complete
+    private volatile long appliedSequence = ReplicationProtocol.NO_POSITION;
+    private volatile long leaderSequence = ReplicationProtocol.NO_POSITION;
+    // when the follower last had everything the leader had, -1 if it never had
+    private volatile long inSyncAtMillis = -1;
+    private final AtomicLong snapshotsLoaded = new AtomicLong();
+
+    @Autowired
+    public ReplicationFollower(StorageService storageService,
+                               @Value("${jkeydb.replication.role:none}") String role,
+                               @Value("${jkeydb.replication.leader:127.0.0.1:7171}") String leader,
+                               @Value("${jkeydb.replication.max-lag-millis:5000}") long maxLagMillis) {
+        this.storageService = storageService;
+        this.enabled = ReplicationRole.parse(role) == ReplicationRole.FOLLOWER;
+        int colon = leader.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("jkeydb.replication.leader must be host:port, got " + leader);
+        }
+        this.leaderHost = leader.substring(0, colon);
+        this.leaderPort = Integer.parseInt(leader.substring(colon + 1));
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    // for tests: always a follower
+    public ReplicationFollower(StorageService storageService, int leaderPort, long maxLagMillis) {
+        this(storageService, "follower", "127.0.0.1:" + leaderPort, maxLagMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        storageService.setReplica(true);
+        running = true;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Replicating from leader " + leaderHost + ":" + leaderPort + ", this node is read-only.");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // shutting down anyway
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /** Milliseconds since the follower last had everything the leader had, -1 if it never had. */
+    public long getLagMillis() {
+        long inSyncAt = inSyncAtMillis;
+        return inSyncAt < 0 ? -1 : Math.max(0, System.currentTimeMillis() - inSyncAt);
+    }
+
+    // whether reads are still recent enough to serve
+    public boolean isWithinMaxLag() {
+        long lag = getLagMillis();
+        return lag >= 0 && lag <= maxLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * Refuses a read with ReplicaLagException while this follower is further behind its leader
+     * than maxLagMillis (or hasn't caught up yet). Does nothing on nodes that aren't followers.
+     */
+    public void checkReadLag() {
+        if (!enabled || isWithinMaxLag()) {
+            return;
+        }
+        long lag = getLagMillis();
+        throw new ReplicaLagException(lag < 0
+                ? "This read replica hasn't caught up with its leader yet"
+                : "This read replica is " + lag + " ms behind its leader, more than the allowed "
+                + maxLagMillis + " ms");
+    }
+
+    public ReplicationStatus getStatus() {
+        return new ReplicationStatus(ReplicationRole.FOLLOWER, appliedSequence, leaderSequence, getLagMillis(),
+                connected, 0, 0, snapshotsLoaded.get());
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(leaderHost, leaderPort), CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connected = true;
+                follow(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024)),
+                        new DataOutputStream(new BufferedOutputStream(connection.getOutputStream())));
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    System.out.println("Replication from " + leaderHost + ":" + leaderPort + " interrupted ("
+                            + e.getMessage() + "), reconnecting.");
+                }
+            } finally {
+                connected = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void follow(DataInputStream in, DataOutputStream out) throws IOException {
+        ReplicationProtocol.writeHello(out, appliedSequence);
+        // names interned by the records of this connection so far
+        List<String> tableNames = new ArrayList<>();
+        boolean loadingSnapshot = false;
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case ReplicationProtocol.RECORDS -> {
+                    long position = in.readLong();
+                    long leaderAt = in.readLong();
+                    int length = in.readInt();
+                    if (length < 0 || length > ReplicationProtocol.MAX_RECORDS_BYTES) {
+                        throw new IOException("Replication frame of " + length + " bytes");
+                    }
+                    byte[] records = new byte[length];
+                    in.readFully(records);
+                    apply(records, tableNames);
+                    if (!loadingSnapshot) {
+                        advance(position, leaderAt);
+                    }
+                }
+                case ReplicationProtocol.HEARTBEAT -> {
+                    long position = in.readLong();
+                    advance(position, position);
+                }
+                case ReplicationProtocol.SNAPSHOT_START -> {
+                    long sequence = in.readLong();
+                    System.out.println("Loading a replication snapshot at sequence " + sequence + ".");
+                    loadingSnapshot = true;
+                    // a connection lost half way through has to start over
+                    appliedSequence = ReplicationProtocol.NO_POSITION;
+                    storageService.dropAllTablesForReplication();
+                }
+                case ReplicationProtocol.SNAPSHOT_END -> {
+                    appliedSequence = in.readLong();
+                    loadingSnapshot = false;
+                    snapshotsLoaded.incrementAndGet();
+                }
+                default -> throw new IOException("Unknown replication frame type " + type);
+            }
+        }
+    }
+
+    private void apply(byte[] records, List<String> tableNames) throws IOException {
+        try (WALReader reader = WALReader.forRecords(ByteBuffer.wrap(records), tableNames)) {
+            WALRecord record;
+            while ((record = reader.next()) != null) {
+                try {
+                    storageService.applyReplicated(record.entry());
+                } catch (RuntimeException e) {
+                    // same as the startup replay: report it and go on with the rest
+                    System.err.println("Failed to apply replicated WAL record #" + record.sequence() + ": " + e.getMessage());
+                }
+            }
+            if (reader.hitCorruptTail()) {
+                throw new IOException("Corrupt replication frame");
+            }
+        }
+    }
+
+    private void advance(long position, long leaderAt) {
+        appliedSequence = position;
+        leaderSequence = leaderAt;
+        if (position >= leaderAt) {
+            inSyncAtMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.pm.javadynamodb.storage.replication;
+
+import com.pm.javadynamodb.api.exception.TrimmedChangesException;
+import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import com.pm.javadynamodb.storage.wal.WALRecordEncoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The leader side of replication (jkeydb.replication.role=leader): ships every record
+ * appended to the WAL to the followers connected on jkeydb.replication.port.
+ * <p>
+ * Each follower gets its own thread, which sends the records after the follower's
+ * position as soon as they are committed, from the in-memory ReplicationLog. A follower
+ * that is further behind than the log reaches gets them from the WAL files instead, and
+ * one that is behind the last checkpoint too (or has nothing yet) gets a snapshot: every
+ * table as it is right now, followed by the records logged since. The tables change
+ * while they are being sent, but every record after the snapshot's position is sent
+ * again afterwards, and applying a record a second time leaves the same result.
+ */
+@Service
+public class ReplicationLeader {
+
+    // most records in one RECORDS frame, and read from the log or the WAL files at a time
+    private static final int MAX_RECORDS_PER_FRAME = 1024;
+    // an idle follower still hears from the leader this often, which is how it knows it isn't behind
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final StorageService storageService;
+    private final WALService walService;
+    private final boolean enabled;
+    private final String host;
+    private final int port;
+    private final int backlogSize;
+
+    private ReplicationLog replicationLog;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+
+    @Autowired
+    public ReplicationLeader(StorageService storageService, WALService walService,
+                             @Value("${jkeydb.replication.role:none}") String role,
+                             @Value("${jkeydb.replication.host:127.0.0.1}") String host,
+                             @Value("${jkeydb.replication.port:7171}") int port,
+                             @Value("${jkeydb.replication.backlog:16384}") int backlogSize) {
+        this.storageService = storageService;
+        this.walService = walService;
+        this.enabled = ReplicationRole.parse(role) == ReplicationRole.LEADER;
+        this.host = host;
+        this.port = port;
+        this.backlogSize = backlogSize;
+    }
+
+    // for tests: always a leader, port 0 picks a free one (see getPort())
+    public ReplicationLeader(StorageService storageService, WALService walService, int port, int backlogSize) {
+        this(storageService, walService, "leader", "127.0.0.1", port, backlogSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        replicationLog = new ReplicationLog(backlogSize, walService::getLastSequence);
+        walService.setReplicationLog(replicationLog);
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            walService.setReplicationLog(null);
+            throw new RuntimeException("Could not start the replication leader on port " + port, e);
+        }
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "replication-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("Replication leader listening on port " + getPort());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        walService.setReplicationLog(null);
+        closeQuietly(serverSocket);
+        followers.forEach(ReplicationLeader::closeQuietly);
+        try {
+            acceptThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** The port actually bound, or -1 when the leader isn't running. */
+    public int getPort() {
+        return serverSocket == null || serverSocket.isClosed() ? -1 : serverSocket.getLocalPort();
+    }
+
+    public ReplicationStatus getStatus() {
+        long sequence = walService.getLastSequence();
+        return new ReplicationStatus(ReplicationRole.LEADER, sequence, sequence, 0,
+                !followers.isEmpty(), followers.size(), snapshotsSent.get(), 0);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread session = new Thread(() -> serve(socket), "replication-follower-" + socket.getPort());
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Replication leader failed to accept a follower: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            long position = ReplicationProtocol.readHello(in);
+            System.out.println("Replication follower " + socket.getRemoteSocketAddress() + " connected at sequence " + position);
+            ship(position, out);
+        } catch (IOException e) {
+            if (running) {
+                System.out.println("Replication follower " + socket.getRemoteSocketAddress() + " disconnected: " + e.getMessage());
+            }
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    // sends everything after position, then keeps sending new records until the connection goes
+    private void ship(long position, DataOutputStream out) throws IOException {
+        // table names are interned once per connection, like once per WAL file
+        WALRecordEncoder encoder = new WALRecordEncoder();
+        BinaryWriter buffer = new BinaryWriter(64 * 1024);
+        if (position == ReplicationProtocol.NO_POSITION || position > walService.getLastSequence()) {
+            // nothing yet, or records this leader never had
+            position = sendSnapshot(out, encoder, buffer);
+        }
+
+        long lastFrame = System.nanoTime();
+        while (running) {
+            long upTo = replicationLog.watermark();
+            List<WALRecord> records = nextRecords(position, upTo);
+            if (records == null) {
+                position = sendSnapshot(out, encoder, buffer);
+                lastFrame = System.nanoTime();
+                continue;
+            }
+            // a full frame goes on after its last record, anything shorter covered everything up to the watermark
+            long next = Math.max(position, records.size() == MAX_RECORDS_PER_FRAME
+                    ? records.get(MAX_RECORDS_PER_FRAME - 1).sequence() : upTo);
+            long now = System.nanoTime();
+            if (!records.isEmpty()) {
+                ReplicationProtocol.writeRecords(out, next, Math.max(next, upTo), encode(records, encoder, buffer));
+            } else if (now - lastFrame >= HEARTBEAT_NANOS) {
+                ReplicationProtocol.writeMarker(out, ReplicationProtocol.HEARTBEAT, next);
+            } else {
+                replicationLog.awaitAppend(lastFrame + HEARTBEAT_NANOS);
+                position = next;
+                continue;
+            }
+            out.flush();
+            lastFrame = now;
+            position = next;
+        }
+    }
+
+    // the records after position, null if neither the log nor the WAL files have all of them any more
+    private List<WALRecord> nextRecords(long position, long upTo) {
+        List<WALRecord> records = replicationLog.read(position, upTo, MAX_RECORDS_PER_FRAME);
+        if (position >= replicationLog.floor()) {
+            return records;
+        }
+        try {
+            return storageService.readWal(position, upTo, MAX_RECORDS_PER_FRAME);
+        } catch (TrimmedChangesException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends every table as it is now and returns the sequence the follower continues from.
+     */
+    private long sendSnapshot(DataOutputStream out, WALRecordEncoder encoder, BinaryWriter buffer) throws IOException {
+        long sequence = storageService.appliedSequence();
+        ReplicationProtocol.writeMarker(out, ReplicationProtocol.SNAPSHOT_START, sequence);
+        long items = 0;
+        for (Table table : storageService.getTables()) {
+            String tableName = table.getTableName();
+            List<WALRecord> records = new ArrayList<>();
+            records.add(new WALRecord(sequence, WALEntry.forTable(tableName, table.getPartitionKeyName(),
+                    table.getPartitionKeyType(), table.getSortKeyName(), table.getSortKeyType(), table.getIndexDefinitions())));
+            if (table.getTimeToLiveAttribute() != null) {
+                records.add(new WALRecord(sequence, WALEntry.forTimeToLive(tableName, table.getTimeToLiveAttribute())));
+            }
+            try (ItemIterator iterator = table.getStore().scan()) {
+                while (iterator.hasNext()) {
+                    records.add(new WALRecord(sequence, WALEntry.forItem(OperationType.PUT_ITEM, tableName, iterator.next())));
+                    items++;
+                    if (records.size() == MAX_RECORDS_PER_FRAME) {
+                        ReplicationProtocol.writeRecords(out, sequence, sequence, encode(records, encoder, buffer));
+                        records.clear();
+                    }
+                }
+            }
+            if (!records.isEmpty()) {
+                ReplicationProtocol.writeRecords(out, sequence, sequence, encode(records, encoder, buffer));
+            }
+        }
+        ReplicationProtocol.writeMarker(out, ReplicationProtocol.SNAPSHOT_END, sequence);
+        out.flush();
+        snapshotsSent.incrementAndGet();
+        System.out.println("Sent a replication snapshot at sequence " + sequence + " (" + items + " items).");
+        return sequence;
+    }
+
+    private static byte[] encode(List<WALRecord> records, WALRecordEncoder encoder, BinaryWriter buffer) {
+        buffer.clear();
+        for (WALRecord record : records) {
+            encoder.encode(record.sequence(), record.entry(), buffer);
+        }
+        ByteBuffer encoded = buffer.flip();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // shutting down anyway
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pm.javadynamodb.storage.replication;
+
+import com.pm.javadynamodb.storage.stream.SequenceRingBuffer;
+import com.pm.javadynamodb.storage.stream.WriteWatermark;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The leader's backlog of recently appended WAL records, which the follower sessions
+ * ship from. WALService hands every record it commits to appended(), so shipping never
+ * has to read the WAL files while followers keep up.
+ *
+ * Like the change streams it is a SequenceRingBuffer behind a WriteWatermark: a session
+ * only ships up to the watermark, so it never skips a record that got its sequence
+ * number but wasn't in the backlog yet. A follower that falls further behind than the
+ * backlog reaches is caught up from the WAL files or a snapshot instead.
+ */
+public final class ReplicationLog {
+
+    private final WriteWatermark watermark;
+    private final SequenceRingBuffer<WALRecord> backlog;
+
+    /**
+     * @param capacity     number of records kept for followers that are a little behind
+     * @param lastSequence sequence number of the last committed WAL record
+     */
+    public ReplicationLog(int capacity, LongSupplier lastSequence) {
+        this.watermark = new WriteWatermark(lastSequence);
+        this.backlog = new SequenceRingBuffer<>(capacity, watermark.watermark(), WALRecord::sequence);
+    }
+
+    /**
+     * Called by the WAL before it appends. Returns an id for endAppend.
+     */
+    public long beginAppend() {
+        return watermark.begin();
+    }
+
+    public void appended(long sequence, WALEntry entry) {
+        backlog.publish(new WALRecord(sequence, entry));
+    }
+
+    public void endAppend(long id) {
+        watermark.end(id);
+    }
+
+    // every record with a sequence up to this one is in the backlog (or already evicted from it)
+    public long watermark() {
+        return watermark.watermark();
+    }
+
+    // everything after this sequence is still in the backlog, read it after read()
+    public long floor() {
+        return backlog.floor();
+    }
+
+    public List<WALRecord> read(long after, long upTo, int limit) {
+        return backlog.read(after, upTo, limit);
+    }
+
+    // parks until an append finishes or the deadline passes
+    public void awaitAppend(long deadlineNanos) {
+        watermark.awaitWrite(deadlineNanos);
+    }
+}
@@ -0,0 +1,70 @@
+package com.pm.javadynamodb.storage.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * What a replication leader and its followers say to each other over one TCP connection.
+ * <p>
+ * The follower opens it with [int MAGIC][long position]: the sequence number it has
+ * applied everything up to, or -1 if it has nothing and needs the whole state. After that
+ * only the leader talks, in frames starting with a type byte:
+ * <ul>
+ *   <li>RECORDS [long position][long leaderSequence][int length][WAL records]: framed WAL
+ *   records as in WALFormat (without a file header), table names interned per connection.
+ *   Once they are applied the follower is at position, the leader was at leaderSequence.</li>
+ *   <li>HEARTBEAT [long position]: nothing new, the follower is at position, as is the leader.</li>
+ *   <li>SNAPSHOT_START [long sequence]: drop every table, the leader's tables follow as
+ *   RECORDS (a CREATE_TABLE, then a PUT_ITEM per item).</li>
+ *   <li>SNAPSHOT_END [long sequence]: the snapshot is complete, the follower is at sequence.</li>
+ * </ul>
+ */
+public final class ReplicationProtocol {
+
+    public static final int MAGIC = 0x4A4B5250; // "JKRP"
+
+    public static final byte RECORDS = 1;
+    public static final byte HEARTBEAT = 2;
+    public static final byte SNAPSHOT_START = 3;
+    public static final byte SNAPSHOT_END = 4;
+
+    // the follower's position when it has nothing yet
+    public static final long NO_POSITION = -1;
+
+    // a RECORDS frame longer than this is treated as garbage and the connection is closed
+    public static final int MAX_RECORDS_BYTES = 64 * 1024 * 1024;
+
+    private ReplicationProtocol() {
+    }
+
+    public static void writeHello(DataOutputStream out, long position) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(position);
+        out.flush();
+    }
+
+    /** Reads the follower's hello and returns its position. */
+    public static long readHello(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a JKeyDB replication follower");
+        }
+        return in.readLong();
+    }
+
+    public static void writeRecords(DataOutputStream out, long position, long leaderSequence, byte[] records)
+            throws IOException {
+        out.writeByte(RECORDS);
+        out.writeLong(position);
+        out.writeLong(leaderSequence);
+        out.writeInt(records.length);
+        out.write(records);
+    }
+
+    // HEARTBEAT, SNAPSHOT_START and SNAPSHOT_END only carry a sequence number
+    public static void writeMarker(DataOutputStream out, byte type, long sequence) throws IOException {
+        out.writeByte(type);
+        out.writeLong(sequence);
+    }
+}
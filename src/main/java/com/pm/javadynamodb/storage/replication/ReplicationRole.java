@@ -0,0 +1,27 @@
+package com.pm.javadynamodb.storage.replication;
+
+import java.util.Locale;
+
+/**
+ * What a node does in replication, from jkeydb.replication.role.
+ */
+public enum ReplicationRole {
+    // no replication at all, the default
+    NONE,
+    // takes writes and ships its WAL to followers
+    LEADER,
+    // read-only copy of a leader
+    FOLLOWER;
+
+    public static ReplicationRole parse(String role) {
+        if (role == null || role.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(role.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown jkeydb.replication.role '" + role
+                    + "', expected none, leader or follower");
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.pm.javadynamodb.storage.replication;
+
+/**
+ * What GET /admin/replication reports.
+ *
+ * @param role             this node's role
+ * @param sequence         a leader's last WAL sequence, or what a follower has applied up to (-1 before its first sync)
+ * @param leaderSequence   on a follower, the leader's last sequence as of the last frame it got
+ * @param lagMillis        on a follower, how long ago it last had everything the leader had (-1 if it never had)
+ * @param connected        on a follower whether it is connected to its leader, on a leader whether any follower is
+ * @param followers        on a leader, the number of connected followers
+ * @param snapshotsSent    on a leader, how many followers had to be caught up from a snapshot
+ * @param snapshotsLoaded  on a follower, how many snapshots it loaded from its leader
+ */
+public record ReplicationStatus(
+        ReplicationRole role,
+        long sequence,
+        long leaderSequence,
+        long lagMillis,
+        boolean connected,
+        int followers,
+        long snapshotsSent,
+        long snapshotsLoaded
+) {
+}
@@ -0,0 +1,68 @@
+package com.pm.javadynamodb.storage.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs StorageService.checkpoint() in the background every few seconds, as long as
+ * enough new WAL records have piled up to make a fresh snapshot worth it.
+ */
+@Service
+public class CheckpointScheduler {
+
+    private final StorageService storageService;
+    private final WALService walService;
+    private final long intervalSeconds;
+    private final long minWalRecords;
+    private ScheduledExecutorService executor;
+
+    public CheckpointScheduler(StorageService storageService,
+                               WALService walService,
+                               @Value("${jkeydb.checkpoint.interval-seconds:60}") long intervalSeconds,
+                               @Value("${jkeydb.checkpoint.min-wal-records:1000}") long minWalRecords) {
+        this.storageService = storageService;
+        this.walService = walService;
+        this.intervalSeconds = intervalSeconds;
+        this.minWalRecords = minWalRecords;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalSeconds <= 0) {
+            System.out.println("Background checkpoints are disabled.");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpointIfNeeded, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void checkpointIfNeeded() {
+        long pending = walService.getLastSequence() - storageService.getLastCheckpointSequence();
+        if (pending < minWalRecords) {
+            return;
+        }
+        try {
+            storageService.checkpoint();
+        } catch (Exception e) {
+            // a failed checkpoint only costs startup time, the WAL still has everything
+            System.err.println("Background checkpoint failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.storage.cache.ResponseCache;
+import com.pm.javadynamodb.storage.cache.ResponseCacheStats;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.engine.StorageEngine;
+import com.pm.javadynamodb.storage.engine.tiering.PartitionTiering;
+import com.pm.javadynamodb.storage.engine.tiering.TieringStats;
+import com.pm.javadynamodb.storage.metrics.PrometheusWriter;
+import com.pm.javadynamodb.storage.metrics.StorageOperation;
+import com.pm.javadynamodb.storage.metrics.TableMetrics;
+import com.pm.javadynamodb.storage.recovery.RecoveryStats;
+import com.pm.javadynamodb.storage.wal.WALStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+
+/**
+ * Collects the latency histograms and counters kept by StorageService and WALService (and by
+ * the response cache and partition tiering, when they are on) into one Prometheus scrape page.
+ * All the numbers are gathered when the page is asked for; the services themselves only
+ * bump counters on their hot paths.
+ */
+@Service
+public class MetricsService {
+
+    private final StorageService storageService;
+    private final WALService walService;
+    private final ResponseCache responseCache;
+    private final StorageEngine storageEngine;
+
+    public MetricsService(StorageService storageService, WALService walService) {
+        this(storageService, walService, new ResponseCache(0, 0), new InMemoryStorageEngine());
+    }
+
+    @Autowired
+    public MetricsService(StorageService storageService, WALService walService, ResponseCache responseCache,
+                          StorageEngine storageEngine) {
+        this.storageService = storageService;
+        this.walService = walService;
+        this.responseCache = responseCache;
+        this.storageEngine = storageEngine;
+    }
+
+    public String scrape() {
+        PrometheusWriter out = new PrometheusWriter();
+
+        // operation latency
+        for (StorageOperation operation : StorageOperation.values()) {
+            out.summary("jkeydb_storage_operation_seconds", "Latency of StorageService operations.",
+                    storageService.getOperationLatency(operation), "operation", operation.name().toLowerCase(Locale.ROOT));
+        }
+        out.summary("jkeydb_checkpoint_lock_wait_seconds", "Time writers waited for the checkpoint lock.",
+                storageService.getCheckpointLockWait());
+
+        // write-ahead log
+        WALStats wal = walService.getStats();
+        out.summary("jkeydb_wal_commit_seconds", "Time from enqueueing a WAL write until its batch was committed.",
+                walService.getCommitLatency());
+        out.summary("jkeydb_wal_write_seconds", "Time per batch spent writing to the WAL file.", walService.getWriteLatency());
+        out.summary("jkeydb_wal_fsync_seconds", "Time per WAL fsync.", walService.getFsyncLatency());
+        out.counter("jkeydb_wal_entries_total", "WAL entries written.", wal.entriesWritten());
+        out.counter("jkeydb_wal_batches_total", "WAL group-commit batches written.", wal.batchesWritten());
+        out.counter("jkeydb_wal_fsyncs_total", "WAL fsyncs.", wal.fsyncs());
+        out.counter("jkeydb_wal_bytes_total", "Bytes written to the WAL.", wal.bytesWritten());
+        out.gauge("jkeydb_wal_queue_depth", "WAL writes waiting for the flusher.", walService.getQueueDepth());
+        out.gauge("jkeydb_wal_last_sequence", "Sequence number of the last committed WAL entry.", walService.getLastSequence());
+        out.gauge("jkeydb_checkpoint_last_sequence", "WAL sequence covered by the last checkpoint.",
+                storageService.getLastCheckpointSequence());
+
+        // tables
+        for (TableMetrics table : storageService.getTableMetrics()) {
+            out.gauge("jkeydb_table_items", "Approximate number of items in a table.",
+                    table.approximateItemCount(), "table", table.tableName());
+            out.gauge("jkeydb_table_bytes", "Approximate size of a table's items in bytes.",
+                    table.approximateBytes(), "table", table.tableName());
+            out.gauge("jkeydb_table_indexes", "Global secondary indexes of a table.",
+                    table.indexCount(), "table", table.tableName());
+        }
+
+        // response cache
+        if (responseCache.isEnabled()) {
+            ResponseCacheStats cache = responseCache.getStats();
+            out.counter("jkeydb_response_cache_hits_total", "Reads answered from the response cache.", cache.hits());
+            out.counter("jkeydb_response_cache_misses_total", "Reads the response cache couldn't answer.", cache.misses());
+            out.counter("jkeydb_response_cache_evictions_total", "Responses evicted to keep the cache under its size.", cache.evictions());
+            out.counter("jkeydb_response_cache_invalidations_total", "Responses dropped because a write changed their partition.",
+                    cache.invalidations());
+            out.gauge("jkeydb_response_cache_entries", "Responses in the cache.", cache.entries());
+            out.gauge("jkeydb_response_cache_bytes", "Approximate memory used by the response cache.", cache.bytes());
+        }
+
+        // partition tiering of the in-memory engine
+        if (storageEngine instanceof InMemoryStorageEngine memory && memory.getTiering() != null) {
+            PartitionTiering tiering = memory.getTiering();
+            TieringStats stats = tiering.getStats();
+            out.gauge("jkeydb_tiering_partitions", "Partitions on the heap and in spill files.",
+                    stats.residentPartitions(), "state", "resident");
+            out.gauge("jkeydb_tiering_partitions", "Partitions on the heap and in spill files.",
+                    stats.spilledPartitions(), "state", "spilled");
+            out.gauge("jkeydb_tiering_bytes", "Approximate item bytes on the heap and in spill files.",
+                    stats.residentBytes(), "state", "resident");
+            out.gauge("jkeydb_tiering_bytes", "Approximate item bytes on the heap and in spill files.",
+                    stats.spilledBytes(), "state", "spilled");
+            out.gauge("jkeydb_tiering_spill_file_bytes", "Size of all spill files, dead regions included.",
+                    stats.spillFileBytes());
+            out.summary("jkeydb_tiering_fault_seconds", "Time to read a spilled partition back onto the heap.",
+                    tiering.getFaultLatency());
+            out.counter("jkeydb_tiering_faulted_bytes_total", "Spill file bytes read by faults.", stats.faultedBytes());
+            out.summary("jkeydb_tiering_eviction_pass_seconds", "Time per pass that brought a table or the database under budget.",
+                    tiering.getEvictionLatency());
+            out.counter("jkeydb_tiering_evicted_partitions_total", "Partitions written to spill files.", stats.evictedPartitions());
+            out.counter("jkeydb_tiering_evicted_bytes_total", "Spill file bytes written by evictions.", stats.evictedBytes());
+            out.counter("jkeydb_tiering_compactions_total", "Spill files rewritten to drop dead regions.", stats.compactions());
+        }
+
+        // recovery
+        out.gauge("jkeydb_recovery_in_progress", "1 while the startup replay is running.", storageService.isRecovering() ? 1 : 0);
+        out.gauge("jkeydb_recovery_wal_records_read", "WAL records read by the startup replay.",
+                storageService.getWalRecordsReplayed());
+        RecoveryStats recovery = storageService.getRecoveryStats();
+        if (recovery != null) {
+            out.gauge("jkeydb_recovery_duration_seconds", "Duration of the phases of the last startup.",
+                    recovery.snapshotLoadMillis() / 1000.0, "phase", "snapshot");
+            out.gauge("jkeydb_recovery_duration_seconds", "Duration of the phases of the last startup.",
+                    recovery.walReplayMillis() / 1000.0, "phase", "wal");
+            out.gauge("jkeydb_recovery_duration_seconds", "Duration of the phases of the last startup.",
+                    recovery.totalMillis() / 1000.0, "phase", "total");
+        }
+
+        // JVM heap, the in-memory tables live there
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        out.gauge("jkeydb_jvm_heap_used_bytes", "Used JVM heap.", heap.getUsed());
+        out.gauge("jkeydb_jvm_heap_max_bytes", "Maximum JVM heap.", heap.getMax());
+        return out.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.ParallelScanPage;
+import com.pm.javadynamodb.core.model.ScanSegment;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Server-side parallel scan. The table is cut into hash segments (see ScanSegment) and a
+ * ForkJoinPool scans them at the same time, each segment with its own share of the limit;
+ * the pieces are put back together in segment order.
+ *
+ * Every segment pages independently, so the token handed back holds one position per
+ * segment: not started, the last key it returned, or finished.
+ */
+@Service
+public class ParallelScanService {
+
+    // per segment position in a token
+    private static final byte FRESH = 0;
+    private static final byte RESUME = 1;
+    private static final byte DONE = 2;
+    // every segment walks the partition keys of the whole table, so keep their number sane
+    private static final int MAX_SEGMENTS = 1024;
+
+    private final StorageService storageService;
+    private final ForkJoinPool pool;
+
+    public ParallelScanService(StorageService storageService,
+                               @Value("${jkeydb.scan.parallelism:0}") int parallelism) {
+        this.storageService = storageService;
+        // 0 = one worker per core
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * One page of at most limit items. Without a token a new scan over totalSegments segments
+     * starts; with one, the scan it came from continues and totalSegments is taken from it.
+     */
+    public ParallelScanPage scan(String tableName, int limit, int totalSegments, String nextToken) {
+        return scan(tableName, limit, totalSegments, nextToken, null, null);
+    }
+
+    /**
+     * A page with the filter and projection applied by every segment; limit counts the
+     * items evaluated, so a page may come back short while the scan still goes on.
+     */
+    public ParallelScanPage scan(String tableName, int limit, int totalSegments, String nextToken,
+                                 FilterExpression filter, ProjectionExpression projection) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive, got " + limit);
+        }
+        storageService.getTable(tableName); // 404 before any work is forked
+
+        Position[] positions = nextToken == null ? freshPositions(totalSegments) : decodeToken(nextToken);
+        List<Integer> active = new ArrayList<>();
+        for (int segment = 0; segment < positions.length; segment++) {
+            if (!positions[segment].done()) {
+                active.add(segment);
+            }
+        }
+        if (active.isEmpty()) {
+            return new ParallelScanPage(List.of(), null);
+        }
+
+        // split the limit, the first segments get the remainder; a segment with no share waits for the next page
+        int[] quotas = new int[positions.length];
+        for (int i = 0; i < active.size(); i++) {
+            quotas[active.get(i)] = limit / active.size() + (i < limit % active.size() ? 1 : 0);
+        }
+        List<Integer> scanned = active.stream().filter(segment -> quotas[segment] > 0).toList();
+
+        ItemPage[] pages = pool.invoke(new SegmentScan(tableName, positions, quotas, scanned, 0, scanned.size(), filter, projection));
+
+        List<Item> items = new ArrayList<>(limit);
+        Position[] next = Arrays.copyOf(positions, positions.length);
+        for (int segment : scanned) {
+            ItemPage page = pages[segment];
+            items.addAll(page.items());
+            next[segment] = page.lastEvaluatedKey() == null ? Position.FINISHED : new Position(page.lastEvaluatedKey(), false);
+        }
+        boolean finished = Arrays.stream(next).allMatch(Position::done);
+        return new ParallelScanPage(items, finished ? null : encodeToken(next));
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdown();
+    }
+
+    // where one segment stands: key == null && !done means not started yet
+    private record Position(Key key, boolean done) {
+        static final Position START = new Position(null, false);
+        static final Position FINISHED = new Position(null, true);
+    }
+
+    /**
+     * Splits the segments in halves until one is left, which is scanned with the plain
+     * segmented StorageService.scan. Results land in an array indexed by segment.
+     */
+    private class SegmentScan extends RecursiveTask<ItemPage[]> {
+        private final String tableName;
+        private final Position[] positions;
+        private final int[] quotas;
+        private final List<Integer> segments;
+        private final int from;
+        private final int to;
+        private final FilterExpression filter;
+        private final ProjectionExpression projection;
+
+        SegmentScan(String tableName, Position[] positions, int[] quotas, List<Integer> segments, int from, int to,
+                    FilterExpression filter, ProjectionExpression projection) {
+            this.tableName = tableName;
+            this.positions = positions;
+            this.quotas = quotas;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.projection = projection;
+        }
+
+        @Override
+        protected ItemPage[] compute() {
+            if (to - from == 1) {
+                int segment = segments.get(from);
+                ItemPage[] result = new ItemPage[positions.length];
+                result[segment] = storageService.scan(tableName, quotas[segment], positions[segment].key(),
+                        new ScanSegment(segment, positions.length), filter, projection);
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            SegmentScan left = new SegmentScan(tableName, positions, quotas, segments, from, middle, filter, projection);
+            left.fork();
+            ItemPage[] right = new SegmentScan(tableName, positions, quotas, segments, middle, to, filter, projection).compute();
+            ItemPage[] merged = left.join();
+            for (int i = 0; i < merged.length; i++) {
+                if (merged[i] == null) {
+                    merged[i] = right[i];
+                }
+            }
+            return merged;
+        }
+    }
+
+    private static Position[] freshPositions(int totalSegments) {
+        if (totalSegments < 1 || totalSegments > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("totalSegments must be in [1, " + MAX_SEGMENTS + "], got " + totalSegments);
+        }
+        Position[] positions = new Position[totalSegments];
+        Arrays.fill(positions, Position.START);
+        return positions;
+    }
+
+    // varint segments, then per segment a state byte and, for RESUME, the key
+    private static String encodeToken(Position[] positions) {
+        BinaryWriter out = new BinaryWriter(64);
+        out.putVarInt(positions.length);
+        for (Position position : positions) {
+            if (position.done()) {
+                out.putByte(DONE);
+            } else if (position.key() == null) {
+                out.putByte(FRESH);
+            } else {
+                out.putByte(RESUME);
+                out.putString(position.key().getPartitionKey());
+                out.putString(position.key().getSortKey());
+            }
+        }
+        ByteBuffer bytes = out.flip();
+        byte[] token = new byte[bytes.remaining()];
+        bytes.get(token);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    private static Position[] decodeToken(String token) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            Position[] positions = freshPositions(BinaryReader.getVarInt(in));
+            for (int i = 0; i < positions.length; i++) {
+                byte state = in.get();
+                positions[i] = switch (state) {
+                    case FRESH -> Position.START;
+                    case DONE -> Position.FINISHED;
+                    case RESUME -> new Position(new Key(BinaryReader.getString(in), BinaryReader.getString(in)), false);
+                    default -> throw new IllegalArgumentException("bad segment state " + state);
+                };
+            }
+            return positions;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid scan token", e);
+        }
+    }
+}
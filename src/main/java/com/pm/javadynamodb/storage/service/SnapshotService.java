@@ -0,0 +1,108 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.storage.engine.TableStore;
+import com.pm.javadynamodb.storage.snapshot.Snapshot;
+import com.pm.javadynamodb.storage.snapshot.SnapshotReader;
+import com.pm.javadynamodb.storage.snapshot.SnapshotWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Owns the snapshot directory: writing new snapshots atomically, finding the newest
+ * one that is still readable, and throwing away old ones.
+ *
+ * Snapshot files are named "snapshot-<sequence>.snap" so the newest one sorts last.
+ */
+@Service
+public class SnapshotService {
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final Path directory;
+    private final int retain;
+
+    public SnapshotService() {
+        this("snapshots", 2);
+    }
+
+    @Autowired
+    public SnapshotService(@Value("${jkeydb.snapshot.dir:snapshots}") String directory,
+                           @Value("${jkeydb.snapshot.retain:2}") int retain) {
+        if (retain < 1) {
+            throw new IllegalArgumentException("At least one snapshot has to be retained");
+        }
+        this.directory = Paths.get(directory);
+        this.retain = retain;
+    }
+
+    /**
+     * Writes the tables to a new snapshot tagged with sequence. The file is written under
+     * a temporary name and only renamed into place once it is complete and synced, so a
+     * crash half way through never leaves a snapshot that looks valid.
+     */
+    public Path write(long sequence, Collection<Table> tables) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        long bytes = SnapshotWriter.write(temp, sequence, tables);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Snapshot at sequence " + sequence + " written (" + bytes + " bytes).");
+
+        deleteOldSnapshots();
+        return target;
+    }
+
+    /**
+     * Loads the newest snapshot that passes its checksum, trying older ones if needed.
+     * storeOpener supplies the TableStore for every table found in it.
+     */
+    public Optional<Snapshot> loadLatest(Function<String, TableStore> storeOpener) throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            try {
+                return Optional.of(SnapshotReader.read(path, storeOpener));
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable snapshot " + path + ": " + e.getMessage());
+            }
+        }
+        return Optional.empty();
+    }
+
+    // oldest first
+    public List<Path> listSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(snapshots::add);
+        }
+        snapshots.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return snapshots;
+    }
+
+    private void deleteOldSnapshots() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = 0; i < snapshots.size() - retain; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+}
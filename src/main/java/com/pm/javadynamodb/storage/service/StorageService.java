@@ -1,27 +1,82 @@
 package com.pm.javadynamodb.storage.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.javadynamodb.api.exception.ReadOnlyReplicaException;
 import com.pm.javadynamodb.api.exception.TableNotFoundException;
+import com.pm.javadynamodb.api.exception.TransactionCanceledException;
+import com.pm.javadynamodb.api.exception.TrimmedChangesException;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchItemError;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.core.model.ChangePage;
+import com.pm.javadynamodb.core.model.ChangeRecord;
+import com.pm.javadynamodb.core.model.ChangeType;
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
 import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
 import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.core.model.ProjectionType;
+import com.pm.javadynamodb.core.model.ScanSegment;
 import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.core.model.TransactGetItem;
+import com.pm.javadynamodb.core.model.TransactGetResult;
+import com.pm.javadynamodb.core.model.TransactWriteItem;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.cache.ResponseCache;
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import com.pm.javadynamodb.storage.engine.StorageEngine;
+import com.pm.javadynamodb.storage.engine.TableStore;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
+import com.pm.javadynamodb.storage.index.IndexMaintainer;
+import com.pm.javadynamodb.storage.index.SecondaryIndex;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.metrics.LatencySnapshot;
+import com.pm.javadynamodb.storage.metrics.StorageOperation;
+import com.pm.javadynamodb.storage.metrics.TableMetrics;
+import com.pm.javadynamodb.storage.recovery.ParallelReplayer;
+import com.pm.javadynamodb.storage.recovery.ShardedReplayer;
+import com.pm.javadynamodb.storage.recovery.RecoveryStats;
+import com.pm.javadynamodb.storage.snapshot.Snapshot;
+import com.pm.javadynamodb.storage.stream.SequenceRingBuffer;
+import com.pm.javadynamodb.storage.stream.ChangeStreams;
 import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALBatchResult;
 import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 @Service
 public class StorageService {
 
-    private static final String WAL_FILE_NAME = "wal.log";
+    // sort key used for items of tables that only have a partition key
+    private static final String SINGLE_KEY_ITEM = "SINGLE_KEY_ITEM";
+    private static final int REPLAY_QUEUE_CAPACITY = 8192;
+    // changes kept in memory per table for the change stream
+    private static final int DEFAULT_CHANGE_BUFFER_SIZE = 4096;
+    // the replay progress counter is published every this many records (a power of two), logged every million
+    private static final int REPLAY_PROGRESS_PUBLISH_EVERY = 1024;
+    private static final int REPLAY_PROGRESS_LOG_EVERY = 1_000_000;
     // a thread safe map to hold all our tables. Key for this map is the table name
     // this is the entire db
     private final Map<String, Table> tables = new ConcurrentHashMap<>();
@@ -38,37 +93,309 @@ public class StorageService {
     */
 
     private final WALService walService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SnapshotService snapshotService;
+    // creates the TableStore that actually holds the items of each table
+    private final StorageEngine storageEngine;
 
-    public StorageService(WALService walService) {
+    // Writers hold the read lock while they log + apply, so they never block each other.
+    // A checkpoint takes the write lock for a moment to get a WAL position that every
+    // in-flight write has already been applied up to.
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private volatile long lastCheckpointSequence;
+    private volatile RecoveryStats recoveryStats;
+
+    // latency of every public operation; fixed-size histograms, so timing a call allocates nothing
+    private final Map<StorageOperation, LatencyHistogram> operationLatency = new EnumMap<>(StorageOperation.class);
+    // how long writers waited for the checkpoint lock, i.e. how much a checkpoint's WAL rotation held them up
+    private final LatencyHistogram checkpointLockWait = new LatencyHistogram();
+    // startup replay progress, readable from other threads while it runs
+    private volatile boolean recovering;
+    // records read by all replay threads together, see reportReplayProgress
+    private final AtomicLong walRecordsRead = new AtomicLong();
+
+    // 1 = replay the WAL on the startup thread, more = ParallelReplayer with that many workers
+    // (a sharded WAL is always replayed with one thread per shard instead)
+    private final int replayThreads;
+    // keeps secondary indexes in step with writes, synchronously or on a background thread
+    private final IndexMaintainer indexMaintainer;
+    // recent changes of every table for stream consumers, fed by the write paths below
+    private final ChangeStreams changeStreams;
+    // a replication follower only takes writes from its leader, see applyReplicated
+    private volatile boolean replica;
+    // serialized responses of hot reads, told about every change to a partition; null when it is off
+    private volatile ResponseCache responseCache;
+
+    public StorageService(WALService walService, SnapshotService snapshotService) {
+        this(walService, snapshotService, 1);
+    }
+
+    public StorageService(WALService walService, SnapshotService snapshotService, int replayThreads) {
+        this(walService, snapshotService, new InMemoryStorageEngine(), replayThreads);
+    }
+
+    public StorageService(WALService walService, SnapshotService snapshotService,
+                          StorageEngine storageEngine, int replayThreads) {
+        this(walService, snapshotService, storageEngine, replayThreads, false);
+    }
+
+    public StorageService(WALService walService, SnapshotService snapshotService,
+                          StorageEngine storageEngine, int replayThreads, boolean asyncIndexMaintenance) {
+        this(walService, snapshotService, storageEngine, replayThreads, asyncIndexMaintenance, DEFAULT_CHANGE_BUFFER_SIZE);
+    }
+
+    @Autowired
+    public StorageService(WALService walService,
+                          SnapshotService snapshotService,
+                          StorageEngine storageEngine,
+                          @Value("${jkeydb.recovery.replay-threads:1}") int replayThreads,
+                          @Value("${jkeydb.index.async-maintenance:false}") boolean asyncIndexMaintenance,
+                          @Value("${jkeydb.streams.buffer-size:4096}") int changeBufferSize) {
         this.walService = walService;
+        this.snapshotService = snapshotService;
+        this.storageEngine = storageEngine;
+        this.replayThreads = replayThreads;
+        this.indexMaintainer = new IndexMaintainer(asyncIndexMaintenance);
+        this.changeStreams = new ChangeStreams(changeBufferSize, walService::getLastSequence);
+        for (StorageOperation operation : StorageOperation.values()) {
+            operationLatency.put(operation, new LatencyHistogram());
+        }
+        // a sharded WAL puts every partition into the file of its shard
+        walService.setPartitionKeyFunction(this::partitionKeyOf);
     }
 
     /**
      * This method is automatically called by Spring after the service is created.
-     * This is where we'll replay the WAL to recover our state.
+     * This is where we'll recover our state: load the newest valid snapshot, then
+     * replay only the WAL records that came after it.
      */
     @PostConstruct
     public void replayWalOnStartup() {
+        long startNanos = System.nanoTime();
+        recovering = true;
+        walRecordsRead.set(0);
+
+        // Phase 1: snapshot
+        long snapshotSequence = 0;
+        try {
+            Optional<Snapshot> snapshot = snapshotService.loadLatest(storageEngine::openTableStore);
+            if (snapshot.isPresent()) {
+                snapshotSequence = snapshot.get().sequence();
+                tables.putAll(snapshot.get().tables());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load snapshot, replaying the full WAL: " + e.getMessage());
+        }
+        // indexes aren't part of the snapshot, only their definitions; the WAL tail keeps them current from here
+        tables.values().forEach(this::rebuildIndexes);
+        lastCheckpointSequence = snapshotSequence;
+        long snapshotNanos = System.nanoTime();
+        System.out.printf("Snapshot phase took %d ms (sequence %d, %d tables).%n",
+                TimeUnit.NANOSECONDS.toMillis(snapshotNanos - startNanos), snapshotSequence, tables.size());
+
+        // Phase 2: WAL tail
         System.out.println("Starting WAL replay...");
+        long replayed = replayWalAfter(snapshotSequence);
+        long endNanos = System.nanoTime();
+
+        recoveryStats = new RecoveryStats(
+                snapshotSequence,
+                TimeUnit.NANOSECONDS.toMillis(snapshotNanos - startNanos),
+                replayed,
+                TimeUnit.NANOSECONDS.toMillis(endNanos - snapshotNanos),
+                TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+        System.out.printf("WAL replay finished, %d entries applied in %d ms (startup total %d ms).%n",
+                replayed, recoveryStats.walReplayMillis(), recoveryStats.totalMillis());
+        recovering = false;
+    }
 
-        try(Stream<String> lines = Files.lines(Paths.get(WAL_FILE_NAME))) {
-            lines.forEach(line -> {
+    private long replayWalAfter(long snapshotSequence) {
+        if (walService.getShardCount() > 1) {
+            // shards hold disjoint partitions, so each one is replayed on its own thread
+            return new ShardedReplayer(walService.getShardCount(), this::applyLogEntry)
+                    .replay((shard, consumer) -> forEachWalRecordAfter(shard, snapshotSequence, consumer));
+        }
+
+        if (replayThreads <= 1) {
+            AtomicLong replayed = new AtomicLong();
+            forEachWalRecordAfter(0, snapshotSequence, record -> {
                 try {
-                    WALEntry entry = objectMapper.readValue(line, WALEntry.class);
                     // replay the operation without writing to WAL again
-                    applyLogEntry(entry);
+                    applyLogEntry(record.entry());
+                    replayed.incrementAndGet();
                 } catch (Exception e) {
-                    System.err.println("Failed to replay WAL entry: " + line);
+                    System.err.println("Failed to replay WAL record #" + record.sequence());
                     e.printStackTrace();
                 }
             });
+            return replayed.get();
+        }
+
+        try (ParallelReplayer replayer = new ParallelReplayer(
+                replayThreads, REPLAY_QUEUE_CAPACITY, this::partitionKeyOf, this::applyLogEntry)) {
+            forEachWalRecordAfter(0, snapshotSequence, replayer::submit);
+            return replayer.finish();
+        }
+    }
+
+    /**
+     * Reads every WAL segment of one shard in order and hands each record newer than
+     * snapshotSequence to the consumer, on the calling thread.
+     */
+    private void forEachWalRecordAfter(int shard, long snapshotSequence, Consumer<WALRecord> consumer) {
+        List<Path> segments;
+        try {
+            segments = walService.getSegments(shard);
         } catch (IOException e) {
             // This is expected if the file doesn't exist on first startup.
             System.out.println("WAL file not found, starting with a clean state.");
+            return;
+        }
+
+        boolean checkForGap = true;
+        long read = 0;
+        for (Path segment : segments) {
+            long segmentLastSequence = walService.sealedSegmentLastSequence(segment);
+            if (segmentLastSequence >= 0 && segmentLastSequence <= snapshotSequence) {
+                continue; // fully covered by the snapshot
+            }
+
+            try (WALReader reader = WALReader.open(segment)) {
+                if (checkForGap && reader.baseSequence() > snapshotSequence) {
+                    // only happens if the newest snapshot was unreadable and we fell back to an older one
+                    System.err.println("WAL records " + (snapshotSequence + 1) + ".." + reader.baseSequence()
+                            + " are missing, recovered state may be incomplete");
+                }
+                checkForGap = false;
+
+                WALRecord record;
+                while ((record = reader.next()) != null) {
+                    if (record.sequence() > snapshotSequence) {
+                        consumer.accept(record);
+                        if ((++read & (REPLAY_PROGRESS_PUBLISH_EVERY - 1)) == 0) {
+                            reportReplayProgress(REPLAY_PROGRESS_PUBLISH_EVERY);
+                        }
+                    }
+                }
+                if (reader.hitCorruptTail()) {
+                    System.err.println("WAL replay of " + segment + " stopped at a corrupt record at byte " + reader.validLength());
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read WAL segment " + segment + ": " + e.getMessage());
+            }
+        }
+        reportReplayProgress(read & (REPLAY_PROGRESS_PUBLISH_EVERY - 1));
+    }
+
+    // a volatile write per record would cost more than the counter is worth, so readers
+    // add up their records in blocks; with a sharded WAL several threads report at once
+    private void reportReplayProgress(long records) {
+        long before = walRecordsRead.getAndAdd(records);
+        long read = before + records;
+        if (read / REPLAY_PROGRESS_LOG_EVERY > before / REPLAY_PROGRESS_LOG_EVERY) {
+            System.out.printf("WAL replay: %,d records read so far...%n", read);
+        }
+    }
+
+    // used by the parallel replay to route item records, null if the table is gone
+    private String partitionKeyOf(WALEntry entry) {
+        if (entry.operationType() == OperationType.DELETE_ITEM || entry.operationType() == OperationType.UPDATE_ITEM) {
+            Key key = entry.item().getPrimaryKey();
+            return key == null ? null : key.getPartitionKey();
+        }
+        Table table = tables.get(entry.tableName());
+        if (table == null) {
+            return null;
+        }
+        Object partitionKey = entry.item().getAttributes().get(table.getPartitionKeyName());
+        // same form as the key of a DELETE_ITEM, so both land on the same worker
+        return partitionKey == null ? null : table.encodePartitionKey(partitionKey);
+    }
+
+    /**
+     * Writes a snapshot of every table and drops the WAL segments it makes redundant.
+     * Writes keep going while the snapshot is being written; only the WAL rotation at
+     * the start happens behind the checkpoint lock.
+     *
+     * @return the WAL sequence number the new snapshot covers
+     */
+    public long checkpoint() throws IOException {
+        long sequence;
+        checkpointLock.writeLock().lock();
+        try {
+            // every record up to here is applied, every later one goes to a new segment
+            sequence = walService.rotate();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        if (sequence == lastCheckpointSequence) {
+            return sequence; // nothing happened since the last checkpoint
+        }
+
+        long start = System.nanoTime();
+        List<Table> snapshotTables = new ArrayList<>(tables.values());
+        // durable stores must have everything up to the sequence in their files before
+        // the WAL segments holding it can go
+        for (Table table : snapshotTables) {
+            table.getStore().flush();
+        }
+        snapshotService.write(sequence, snapshotTables);
+        int deleted = walService.deleteSegmentsUpTo(sequence);
+        lastCheckpointSequence = sequence;
+        System.out.printf("Checkpoint at sequence %d took %d ms, %d WAL segment(s) removed.%n",
+                sequence, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), deleted);
+        return sequence;
+    }
+
+    public long getLastCheckpointSequence() {
+        return lastCheckpointSequence;
+    }
+
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    // -------------------- Metrics ------------------------------------
+
+    public LatencySnapshot getOperationLatency(StorageOperation operation) {
+        return operationLatency.get(operation).snapshot();
+    }
+
+    public LatencySnapshot getCheckpointLockWait() {
+        return checkpointLockWait.snapshot();
+    }
+
+    public boolean isRecovering() {
+        return recovering;
+    }
+
+    // WAL records the startup replay has read so far (or in total, once it finished)
+    public long getWalRecordsReplayed() {
+        return walRecordsRead.get();
+    }
+
+    // item count and approximate size of every table, as cheap as the stores can make it
+    public List<TableMetrics> getTableMetrics() {
+        List<TableMetrics> metrics = new ArrayList<>(tables.size());
+        for (Table table : tables.values()) {
+            metrics.add(new TableMetrics(table.getTableName(), table.getStore().approximateItemCount(),
+                    table.getStore().approximateBytes(), table.getIndexes().size()));
         }
+        return metrics;
+    }
 
-        System.out.println("WAL replay finished.");
+    private void recordLatency(StorageOperation operation, long startNanos) {
+        operationLatency.get(operation).recordSince(startNanos);
+    }
+
+    // writers take the checkpoint read lock through here so the time spent waiting shows up in the metrics
+    private void lockForWrite() {
+        if (replica) {
+            throw new ReadOnlyReplicaException("This node is a read replica, send writes to the replication leader");
+        }
+        long start = System.nanoTime();
+        checkpointLock.readLock().lock();
+        checkpointLockWait.recordSince(start);
     }
 
     /**
@@ -79,24 +406,84 @@ public class StorageService {
         switch (entry.operationType()) {
             case CREATE_TABLE -> {
                 // Call the "Librarian" directly to avoid re-logging.
-                performCreateTable(entry.tableName(), entry.partitionKeyName(), entry.sortKeyName());
+                performCreateTable(entry);
+            }
+            case PUT_ITEM -> {
+                // the table may have been dropped later on and be missing from the snapshot
+                if (tables.containsKey(entry.tableName())) {
+                    performPut(entry.tableName(), entry.item());
+                }
             }
-            case PUT_ITEM -> performPut(entry.tableName(), entry.item());
             case DELETE_ITEM -> {
                 Key key = entry.item().getPrimaryKey();
-                if (key != null) {
+                if (key != null && tables.containsKey(entry.tableName())) {
                     performDelete(entry.tableName(), key.getPartitionKey(), key.getSortKey());
                 }
             }
+            case UPDATE_ITEM -> {
+                if (tables.containsKey(entry.tableName())) {
+                    performUpdate(entry.tableName(), entry.item().getPrimaryKey(),
+                            entry.item().getAttributes(), entry.removedAttributes());
+                }
+            }
             case DELETE_TABLE -> performDeleteTable(entry.tableName());
+            case UPDATE_TIME_TO_LIVE -> {
+                Table table = tables.get(entry.tableName());
+                if (table != null) {
+                    table.setTimeToLiveAttribute(entry.timeToLiveAttribute());
+                    invalidateCachedTable(entry.tableName());
+                }
+            }
+            case TRANSACTION -> {
+                // a follower serves reads while it applies, so TransactGetItems there must not see half of it
+                List<ReentrantLock> locks = lockStripes(entry.operations().stream()
+                        .filter(operation -> tables.containsKey(operation.tableName()))
+                        .map(this::stripeOf).toList());
+                try {
+                    entry.operations().forEach(this::applyLogEntry);
+                } finally {
+                    unlockAll(locks);
+                }
+            }
         }
     }
 
     // -------------------- Tables ------------------------------------
 
-    private void performCreateTable(String tableName, String partitionKeyName, String sortKeyName) {
-        tables.put(tableName, new Table(tableName, partitionKeyName, sortKeyName));
-        System.out.println("Table '" + tableName + "' replayed/created successfully.");
+    private void performCreateTable(WALEntry create) {
+        // a replayed create replaces whatever the table looked like before
+        Table previous = tables.remove(create.tableName());
+        if (previous != null) {
+            previous.getStore().drop();
+        }
+        tables.put(create.tableName(), newTable(create));
+        invalidateCachedTable(create.tableName());
+        System.out.println("Table '" + create.tableName() + "' replayed/created successfully.");
+    }
+
+    // the table a CREATE_TABLE entry describes, with a fresh store
+    private Table newTable(WALEntry create) {
+        return new Table(create.tableName(),
+                create.partitionKeyName(), create.partitionKeyType(),
+                create.sortKeyName(), create.sortKeyType(),
+                storageEngine.createTableStore(create.tableName()),
+                create.indexes() == null ? List.of() : create.indexes());
+    }
+
+    // fills the indexes of a table that was loaded with its items already in the store
+    private void rebuildIndexes(Table table) {
+        if (table.getIndexes().isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (ItemIterator items = table.getStore().scan()) {
+            while (items.hasNext()) {
+                Item item = items.next();
+                table.getIndexes().values().forEach(index -> index.update(null, item));
+            }
+        }
+        System.out.printf("Rebuilt %d index(es) of table '%s' in %d ms.%n", table.getIndexes().size(),
+                table.getTableName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     public Table getTable(String tableName) {
@@ -109,15 +496,62 @@ public class StorageService {
         return table;
     }
 
+    // convenience overload for tables that only have a partition key
+    public void createTable(String tableName, String partitionKeyName) {
+        createTable(tableName, partitionKeyName, null);
+    }
+
     public void createTable(String tableName, String partitionKeyName, String sortKeyName) {
+        createTable(tableName, partitionKeyName, sortKeyName, List.of());
+    }
+
+    /**
+     * Creates a table together with its global secondary indexes. Indexes can only be
+     * declared here, like DynamoDB's CreateTable, and are kept up to date on every write.
+     */
+    public void createTable(String tableName, String partitionKeyName, String sortKeyName,
+                            List<GlobalSecondaryIndex> indexes) {
+        createTable(tableName, partitionKeyName, KeyType.STRING, sortKeyName, KeyType.STRING, indexes);
+    }
+
+    /**
+     * Creates a table with typed keys: NUMBER keys order numerically, BINARY keys byte by
+     * byte (see KeyEncoding). Clients keep reading and writing the plain values.
+     */
+    public void createTable(String tableName, String partitionKeyName, KeyType partitionKeyType,
+                            String sortKeyName, KeyType sortKeyType, List<GlobalSecondaryIndex> indexes) {
+        validateIndexes(indexes);
+        WALEntry create = WALEntry.forTable(tableName, partitionKeyName, partitionKeyType, sortKeyName, sortKeyType, indexes);
         // Log the operation BEFORE changing the in-memory state.
         // We only log if the table doesn't already exist to avoid a cluttered log.
-        if (!tables.containsKey(tableName)) {
-            walService.log(WALEntry.forTable(tableName, partitionKeyName, sortKeyName));
-            tables.put(tableName, new Table(tableName, partitionKeyName, sortKeyName));
-            System.out.println("Table '" + tableName + "' created successfully.");
-        } else {
-            System.out.println("Table '" + tableName + "' already exists.");
+        lockForWrite();
+        try {
+            if (!tables.containsKey(tableName)) {
+                walService.log(create);
+                tables.put(tableName, newTable(create));
+                System.out.println("Table '" + tableName + "' created successfully.");
+            } else {
+                System.out.println("Table '" + tableName + "' already exists.");
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private static void validateIndexes(List<GlobalSecondaryIndex> indexes) {
+        Set<String> names = new HashSet<>();
+        for (GlobalSecondaryIndex index : indexes) {
+            if (index.getIndexName() == null || index.getPartitionKeyName() == null) {
+                throw new IllegalArgumentException("An index needs an indexName and a partitionKeyName");
+            }
+            if (!names.add(index.getIndexName())) {
+                throw new IllegalArgumentException("Duplicate index name " + index.getIndexName());
+            }
+            if (index.getNonKeyAttributes() != null && !index.getNonKeyAttributes().isEmpty()
+                    && index.getProjectionType() != ProjectionType.INCLUDE) {
+                throw new IllegalArgumentException("nonKeyAttributes of index " + index.getIndexName()
+                        + " need projectionType INCLUDE");
+            }
         }
     }
 
@@ -126,49 +560,534 @@ public class StorageService {
             System.out.printf("Table %s does not exist!\n", tableName);
             return;
         }
-        walService.log(WALEntry.forTableDeletion(tableName));
-        performDeleteTable(tableName);
+        lockForWrite();
+        try {
+            walService.log(WALEntry.forTableDeletion(tableName));
+            performDeleteTable(tableName);
+            changeStreams.dropTable(tableName);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
         System.out.printf("Table '%s' deleted successfully\n", tableName);
     }
 
+    /**
+     * UpdateTimeToLive: from now on an item whose attributeName holds an epoch-seconds time
+     * at or before the current time is hidden from every read, and the TimeToLiveSweeper
+     * deletes it in the background. Null turns expiry off again.
+     */
+    public void updateTimeToLive(String tableName, String attributeName) {
+        Table table = getTable(tableName);
+        if (attributeName != null && (attributeName.isBlank()
+                || attributeName.equals(table.getPartitionKeyName()) || attributeName.equals(table.getSortKeyName()))) {
+            throw new IllegalArgumentException("Invalid TTL attribute '" + attributeName + "' for table " + tableName);
+        }
+        lockForWrite();
+        try {
+            walService.log(WALEntry.forTimeToLive(tableName, attributeName));
+            table.setTimeToLiveAttribute(attributeName);
+            invalidateCachedTable(tableName);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        System.out.printf("TTL of table '%s' is now %s%n", tableName, attributeName == null ? "off" : attributeName);
+    }
+
+    // the tables that currently have a TTL attribute, for the sweeper
+    public List<Table> getTimeToLiveTables() {
+        return tables.values().stream().filter(table -> table.getTimeToLiveAttribute() != null).toList();
+    }
+
     private void performDeleteTable(String tableName) {
-        tables.remove(tableName);
+        Table table = tables.remove(tableName);
+        if (table != null) {
+            table.getStore().drop();
+        }
+        invalidateCachedTable(tableName);
     }
 
     // -------------------- Items ------------------------------------
 
     public Item putItem(String tableName, Item item) {
-        Table table = getTable(tableName);
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            validateKeys(table, item);
+
+            Key key = storedKeyOf(table, item);
+            lockForWrite();
+            // held from logging to applying, so the WAL has the writes to one item in the order they were applied
+            ReentrantLock lock = indexMaintainer.lockFor(tableName, key.getPartitionKey(), key.getSortKey());
+            lock.lock();
+            long write = changeStreams.beginWrite();
+            try {
+                Item before = currentForStream(table, key);
+                long sequence = walService.log(WALEntry.forItem(OperationType.PUT_ITEM, tableName, item));
+                Item stored = performPut(tableName, item);
+                publishChange(table, sequence, ChangeType.PUT, key, before, stored);
+                return withClientKey(table, stored);
+            } finally {
+                changeStreams.endWrite(write);
+                lock.unlock();
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            recordLatency(StorageOperation.PUT_ITEM, start);
+        }
+    }
+
+    private static void validateKeys(Table table, Item item) {
         String pkName = table.getPartitionKeyName();
 
-        if(item.getAttributes().get(pkName) == null) {
+        if(item.getAttributes() == null || item.getAttributes().get(pkName) == null) {
             throw new IllegalArgumentException("Item is missing partition key " + pkName);
         }
+        // typed keys must parse before anything is logged
+        table.encodePartitionKey(item.getAttributes().get(pkName));
 
         String skName = table.getSortKeyName();
         if(skName != null && item.getAttributes().get(skName) == null) {
             throw new IllegalArgumentException("Item is missing sort key " + skName);
         }
+        if (skName != null) {
+            table.encodeSortKey(item.getAttributes().get(skName));
+        }
+    }
+
+    /**
+     * The key a client sent (plain values) in the form the store keeps it. Tables without
+     * a sort key use a fixed placeholder, whatever sortKey says.
+     */
+    private static Key storedKey(Table table, String partitionKey, String sortKey) {
+        String storedSortKey = table.getSortKeyName() == null || sortKey == null
+                ? SINGLE_KEY_ITEM
+                : table.encodeSortKey(sortKey);
+        return new Key(table.encodePartitionKey(partitionKey), storedSortKey);
+    }
+
+    // a sort key bound of a query in stored form, null stays null (open range)
+    private static String storedSortKey(Table table, String sortKey) {
+        return sortKey == null ? null : table.encodeSortKey(sortKey);
+    }
+
+    // items leave the service with their key the way the client wrote it
+    private static Item withClientKey(Table table, Item item) {
+        if (table.hasTypedKeys() && item.getPrimaryKey() != null) {
+            item.setPrimaryKey(table.displayKey(item.getPrimaryKey()));
+        }
+        return item;
+    }
+
+    private static ItemPage withClientKeys(Table table, ItemPage page) {
+        if (!table.hasTypedKeys()) {
+            return page;
+        }
+        page.items().forEach(item -> withClientKey(table, item));
+        Key lastEvaluatedKey = page.lastEvaluatedKey() == null ? null : table.displayKey(page.lastEvaluatedKey());
+        return new ItemPage(page.items(), lastEvaluatedKey);
+    }
+
+    private static ItemIterator withClientKeys(Table table, ItemIterator iterator) {
+        if (!table.hasTypedKeys()) {
+            return iterator;
+        }
+        return new ItemIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                return withClientKey(table, iterator.next());
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    /**
+     * BatchWriteItem: puts and deletes across any number of tables. Every write that passes
+     * validation goes to the WAL in a single append (one write, one fsync) and is then
+     * applied; the ones that don't are reported back and don't hold up the rest.
+     */
+    public BatchWriteResult batchWriteItems(Map<String, List<WriteRequest>> requestItems) {
+        long start = System.nanoTime();
+        try {
+            List<BatchItemError> errors = new ArrayList<>();
+            List<PreparedWrite> writes = new ArrayList<>();
+
+            requestItems.forEach((tableName, requests) -> {
+                Table table = tables.get(tableName);
+                for (int i = 0; i < requests.size(); i++) {
+                    try {
+                        if (table == null) {
+                            throw new TableNotFoundException("Table " + tableName + " not found");
+                        }
+                        writes.add(prepareWrite(table, i, requests.get(i)));
+                    } catch (RuntimeException e) {
+                        errors.add(new BatchItemError(tableName, i, e.getMessage()));
+                    }
+                }
+            });
+
+            int processed = 0;
+            if (!writes.isEmpty()) {
+                // from what prepareWrite resolved: the table may be deleted any time now, and nothing
+                // may throw between taking the checkpoint lock and the try that releases it
+                List<Integer> stripes = writes.stream()
+                        .map(write -> indexMaintainer.stripeFor(write.table().getTableName(),
+                                write.key().getPartitionKey(), write.key().getSortKey()))
+                        .toList();
+                lockForWrite();
+                List<ReentrantLock> locks = lockStripes(stripes);
+                long streamWrite = changeStreams.beginWrite();
+                try {
+                    WALBatchResult logged = walService.logBatch(writes.stream().map(PreparedWrite::entry).toList());
+                    for (int i = 0; i < writes.size(); i++) {
+                        PreparedWrite write = writes.get(i);
+                        if (!logged.committed(i)) {
+                            // with a sharded WAL the other shards' writes are committed, so they are applied
+                            errors.add(new BatchItemError(write.entry().tableName(), write.index(), logged.failure(i).getMessage()));
+                            continue;
+                        }
+                        try {
+                            WALEntry entry = write.entry();
+                            Table table = getTable(entry.tableName());
+                            Key key = write.key();
+                            if (entry.operationType() == OperationType.PUT_ITEM) {
+                                Item before = currentForStream(table, key);
+                                Item stored = performPut(entry.tableName(), entry.item());
+                                publishChange(table, logged.sequence(i), ChangeType.PUT, key, before, stored);
+                            } else {
+                                Item before = currentForStream(table, key);
+                                performDelete(entry.tableName(), key.getPartitionKey(), key.getSortKey());
+                                if (before != null) {
+                                    publishChange(table, logged.sequence(i), ChangeType.DELETE, key, before, null);
+                                }
+                            }
+                            processed++;
+                        } catch (RuntimeException e) {
+                            // e.g. the table was deleted while the batch was being logged
+                            errors.add(new BatchItemError(write.entry().tableName(), write.index(), e.getMessage()));
+                        }
+                    }
+                } finally {
+                    changeStreams.endWrite(streamWrite);
+                    unlockAll(locks);
+                    checkpointLock.readLock().unlock();
+                }
+            }
+            return new BatchWriteResult(processed, errors);
+        } finally {
+            recordLatency(StorageOperation.BATCH_WRITE, start);
+        }
+    }
+
+    // a validated batch write, index is its position in the caller's list for the table, key the stored key
+    private record PreparedWrite(int index, Table table, Key key, WALEntry entry) {
+    }
+
+    // the lock stripe of the item a replayed transaction write puts, updates or deletes
+    private int stripeOf(WALEntry entry) {
+        Key key = entry.operationType() == OperationType.PUT_ITEM
+                ? storedKeyOf(getTable(entry.tableName()), entry.item())
+                : entry.item().getPrimaryKey();
+        return indexMaintainer.stripeFor(entry.tableName(), key.getPartitionKey(), key.getSortKey());
+    }
+
+    /**
+     * Locks the item stripes a multi-item write touches, always in ascending order so that
+     * two of them (or one and a single-item write) can't deadlock. The locks are reentrant,
+     * so the perform* methods taking their stripe again is fine.
+     */
+    private List<ReentrantLock> lockStripes(Collection<Integer> stripes) {
+        List<ReentrantLock> locked = new ArrayList<>();
+        for (int stripe : new TreeSet<>(stripes)) {
+            ReentrantLock lock = indexMaintainer.stripe(stripe);
+            lock.lock();
+            locked.add(lock);
+        }
+        return locked;
+    }
 
-        walService.log(WALEntry.forItem(OperationType.PUT_ITEM, tableName, item));
-        return performPut(tableName, item);
+    private static void unlockAll(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private static PreparedWrite prepareWrite(Table table, int index, WriteRequest request) {
+        if (request == null || (request.put() == null) == (request.delete() == null)) {
+            throw new IllegalArgumentException("Each write needs exactly one of put or delete");
+        }
+
+        Item item = new Item();
+        if (request.put() != null) {
+            item.setAttributes(request.put());
+            validateKeys(table, item);
+            return new PreparedWrite(index, table, storedKeyOf(table, item),
+                    WALEntry.forItem(OperationType.PUT_ITEM, table.getTableName(), item));
+        }
+
+        Key key = request.delete();
+        if (key.getPartitionKey() == null) {
+            throw new IllegalArgumentException("Delete is missing the partition key");
+        }
+        if (table.getSortKeyName() != null && key.getSortKey() == null) {
+            throw new IllegalArgumentException("Delete is missing the sort key");
+        }
+        // DELETE_ITEM records carry the stored key, like the ones deleteItem() writes
+        item.setPrimaryKey(storedKey(table, key.getPartitionKey(), key.getSortKey()));
+        return new PreparedWrite(index, table, item.getPrimaryKey(),
+                WALEntry.forItem(OperationType.DELETE_ITEM, table.getTableName(), item));
+    }
+
+    /**
+     * Deletes the items at storedKeys that are still expired, all with one WAL append; used by
+     * the TimeToLiveSweeper. Each item is checked again right before it is logged, so one that was
+     * rewritten with a later expiry since the sweeper saw it stays. Returns how many were deleted.
+     * If a WAL shard fails, the deletes other shards committed are applied before this throws.
+     */
+    public int expireItems(String tableName, List<Key> storedKeys) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            long now = nowEpochSeconds();
+            lockForWrite();
+            List<ReentrantLock> locks = lockStripes(storedKeys.stream()
+                    .map(key -> indexMaintainer.stripeFor(tableName, key.getPartitionKey(), key.getSortKey())).toList());
+            long write = changeStreams.beginWrite();
+            try {
+                List<WALEntry> deletes = new ArrayList<>();
+                List<Item> expired = new ArrayList<>();
+                for (Key key : storedKeys) {
+                    Optional<Item> item = table.getStore().get(key.getPartitionKey(), key.getSortKey());
+                    if (item.isPresent() && table.isExpired(item.get(), now)) {
+                        Item keyOnly = new Item();
+                        keyOnly.setPrimaryKey(key);
+                        deletes.add(WALEntry.forItem(OperationType.DELETE_ITEM, tableName, keyOnly));
+                        expired.add(item.get());
+                    }
+                }
+                if (deletes.isEmpty()) {
+                    return 0;
+                }
+                WALBatchResult logged = walService.logBatch(deletes);
+                int deleted = 0;
+                for (int i = 0; i < deletes.size(); i++) {
+                    if (!logged.committed(i)) {
+                        // its shard failed; the item is still expired, so the next sweep tries again
+                        continue;
+                    }
+                    Key key = deletes.get(i).item().getPrimaryKey();
+                    performDelete(tableName, key.getPartitionKey(), key.getSortKey());
+                    publishChange(table, logged.sequence(i), ChangeType.DELETE, key, expired.get(i), null);
+                    deleted++;
+                }
+                if (logged.firstFailure() != null) {
+                    throw logged.firstFailure();
+                }
+                return deleted;
+            } finally {
+                changeStreams.endWrite(write);
+                unlockAll(locks);
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            recordLatency(StorageOperation.EXPIRE_ITEMS, start);
+        }
+    }
+
+    /**
+     * BatchGetItem: looks up many keys across tables. Keys with no item are simply left
+     * out of the result, keys for a missing table (or without a partition key) come back as errors.
+     */
+    public BatchGetResult batchGetItems(Map<String, List<Key>> requestItems) {
+        long start = System.nanoTime();
+        try {
+            Map<String, List<Item>> responses = new LinkedHashMap<>();
+            List<BatchItemError> errors = new ArrayList<>();
+            long now = nowEpochSeconds();
+
+            requestItems.forEach((tableName, keys) -> {
+                Table table = tables.get(tableName);
+                List<Item> found = new ArrayList<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    Key key = keys.get(i);
+                    if (table == null) {
+                        errors.add(new BatchItemError(tableName, i, "Table " + tableName + " not found"));
+                    } else if (key == null || key.getPartitionKey() == null) {
+                        errors.add(new BatchItemError(tableName, i, "Key is missing the partition key"));
+                    } else {
+                        try {
+                            Key stored = storedKey(table, key.getPartitionKey(), key.getSortKey());
+                            table.getStore().get(stored.getPartitionKey(), stored.getSortKey())
+                                    .filter(item -> !table.isExpired(item, now))
+                                    .ifPresent(item -> found.add(withClientKey(table, item)));
+                        } catch (IllegalArgumentException e) {
+                            errors.add(new BatchItemError(tableName, i, e.getMessage()));
+                        }
+                    }
+                }
+                if (table != null) {
+                    responses.put(tableName, found);
+                }
+            });
+            return new BatchGetResult(responses, errors);
+        } finally {
+            recordLatency(StorageOperation.BATCH_GET, start);
+        }
+    }
+
+    // for tables without a sort key; on a table with one nothing matches
+    public Optional<Item> getItem(String tableName, String partitionKey) {
+        return getItem(tableName, partitionKey, null);
     }
 
     public Optional<Item> getItem(String tableName, String partitionKey, String sortKey) {
-        Table table = getTable(tableName);
-        SortedMap<String, Item> partition = table.getItems().get(partitionKey);
-        if (partition == null) {
-            return Optional.empty();
+        return getItem(tableName, partitionKey, sortKey, null);
+    }
+
+    /**
+     * GetItem returning only the attributes of the projection (all of them if it is null).
+     */
+    public Optional<Item> getItem(String tableName, String partitionKey, String sortKey,
+                                  ProjectionExpression projection) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            Key key = storedKey(table, partitionKey, sortKey);
+            return table.getStore().get(key.getPartitionKey(), key.getSortKey())
+                    .filter(item -> !table.isExpired(item, nowEpochSeconds()))
+                    .map(item -> withClientKey(table, projection == null ? item : projection.apply(item)));
+        } finally {
+            recordLatency(StorageOperation.GET_ITEM, start);
         }
-        return Optional.ofNullable(partition.get(sortKey));
+    }
+
+    // for tables without a sort key; on a table with one nothing matches, so nothing is deleted
+    public void deleteItem(String tableName, String partitionKey) {
+        deleteItem(tableName, partitionKey, null);
     }
 
     public void deleteItem(String tableName, String partitionKey, String sortKey) {
-        Optional<Item> itemToDelete = getItem(tableName, partitionKey, sortKey);
-        itemToDelete.ifPresent(item -> {
-            walService.log(WALEntry.forItem(OperationType.DELETE_ITEM, tableName, item));
-            performDelete(tableName, partitionKey, sortKey);
-        });
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            Key key = storedKey(table, partitionKey, sortKey);
+            if (table.getStore().get(key.getPartitionKey(), key.getSortKey()).isEmpty()) {
+                return;
+            }
+            lockForWrite();
+            ReentrantLock lock = indexMaintainer.lockFor(tableName, key.getPartitionKey(), key.getSortKey());
+            lock.lock();
+            long write = changeStreams.beginWrite();
+            try {
+                // look again now that nobody else can write it
+                Optional<Item> itemToDelete = table.getStore().get(key.getPartitionKey(), key.getSortKey());
+                if (itemToDelete.isPresent()) {
+                    long sequence = walService.log(WALEntry.forItem(OperationType.DELETE_ITEM, tableName, itemToDelete.get()));
+                    performDelete(tableName, key.getPartitionKey(), key.getSortKey());
+                    publishChange(table, sequence, ChangeType.DELETE, key, itemToDelete.get(), null);
+                }
+            } finally {
+                changeStreams.endWrite(write);
+                lock.unlock();
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            recordLatency(StorageOperation.DELETE_ITEM, start);
+        }
+    }
+
+    // for tables without a sort key
+    public Item updateItem(String tableName, String partitionKey, UpdateExpression update) {
+        return updateItem(tableName, partitionKey, null, update);
+    }
+
+    /**
+     * UpdateItem: changes some attributes of one item in place, creating it if it doesn't
+     * exist, and returns the item as it is afterwards. Reading the current version, working
+     * out the new values and applying them happens under the item's lock, so concurrent
+     * updates (e.g. two "ADD views 1") never lose each other's change. Only the changed
+     * attributes go to the WAL, not the whole item.
+     */
+    public Item updateItem(String tableName, String partitionKey, String sortKey, UpdateExpression update) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            checkUpdatable(table, update);
+            if (table.getSortKeyName() != null && sortKey == null) {
+                // it would create an item without one
+                throw new IllegalArgumentException("Update is missing the sort key " + table.getSortKeyName());
+            }
+            Key key = storedKey(table, partitionKey, sortKey);
+
+            lockForWrite();
+            ReentrantLock lock = indexMaintainer.lockFor(tableName, key.getPartitionKey(), key.getSortKey());
+            lock.lock();
+            long write = changeStreams.beginWrite();
+            try {
+                Optional<Item> current = table.getStore().get(key.getPartitionKey(), key.getSortKey());
+                WALEntry entry = updateEntry(table, key, current, update);
+                long sequence = walService.log(entry);
+                Item updated = performUpdate(tableName, key, entry.item().getAttributes(), entry.removedAttributes());
+                publishChange(table, sequence, ChangeType.UPDATE, key, current.orElse(null), updated);
+                return withClientKey(table, updated);
+            } finally {
+                changeStreams.endWrite(write);
+                lock.unlock();
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            recordLatency(StorageOperation.UPDATE_ITEM, start);
+        }
+    }
+
+    private static void checkUpdatable(Table table, UpdateExpression update) {
+        if (update.targets().contains(table.getPartitionKeyName())
+                || (table.getSortKeyName() != null && update.targets().contains(table.getSortKeyName()))) {
+            throw new IllegalArgumentException("Key attributes can't be updated, put a new item instead");
+        }
+    }
+
+    // the UPDATE_ITEM entry of an update to the current version of an item, called with the item's lock held
+    private static WALEntry updateEntry(Table table, Key key, Optional<Item> current, UpdateExpression update) {
+        UpdateExpression.Changes changes = update.apply(current.map(Item::getAttributes).orElse(Map.of()));
+        Map<String, Object> set = changes.set();
+        if (current.isEmpty()) {
+            // a new item also needs its key attributes
+            set = new LinkedHashMap<>(keyAttributes(table, key));
+            set.putAll(changes.set());
+        }
+        return WALEntry.forUpdate(table.getTableName(), key, set, changes.removed());
+    }
+
+    // the key attributes of an item created by an update, typed like a put would have them
+    private static Map<String, Object> keyAttributes(Table table, Key stored) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put(table.getPartitionKeyName(), keyValue(table.getPartitionKeyType(), stored.getPartitionKey()));
+        if (table.getSortKeyName() != null) {
+            attributes.put(table.getSortKeyName(), keyValue(table.getSortKeyType(), stored.getSortKey()));
+        }
+        return attributes;
+    }
+
+    private static Object keyValue(KeyType type, String stored) {
+        String value = KeyEncoding.decode(type, stored);
+        if (type != KeyType.NUMBER) {
+            return value;
+        }
+        BigDecimal number = new BigDecimal(value);
+        try {
+            return number.longValueExact();
+        } catch (ArithmeticException notWhole) {
+            return number;
+        }
     }
 
     /**
@@ -177,63 +1096,838 @@ public class StorageService {
      */
     private Item performPut(String tableName, Item item) {
         Table table = getTable(tableName);
-        String pkName = table.getPartitionKeyName();
-        String skName = table.getSortKeyName();
+        Key key = storedKeyOf(table, item);
+        String partitionKey = key.getPartitionKey();
+        String sortKey = key.getSortKey();
 
-        String partitionKey = item.getAttributes().get(pkName).toString();
-        String sortKey = "SINGLE_KEY_ITEM";
+        item.setPrimaryKey(key);
 
-        if(skName != null) {
-            sortKey = item.getAttributes().get(skName).toString();
+        if (table.getIndexes().isEmpty()) {
+            table.getStore().put(partitionKey, sortKey, item);
+            invalidateCached(tableName, partitionKey);
+            return item;
         }
+        // the indexes need the old version to drop its entries, see IndexMaintainer
+        ReentrantLock lock = indexMaintainer.lockFor(tableName, partitionKey, sortKey);
+        lock.lock();
+        try {
+            Item before = table.getStore().get(partitionKey, sortKey).orElse(null);
+            table.getStore().put(partitionKey, sortKey, item);
+            indexMaintainer.update(table.getIndexes().values(), before, item);
+        } finally {
+            lock.unlock();
+        }
+        invalidateCached(tableName, partitionKey);
+        return item;
+    }
 
-        item.setPrimaryKey(new Key(partitionKey, sortKey));
+    // the stored key of an item that is about to be put
+    private static Key storedKeyOf(Table table, Item item) {
+        // typed keys are stored in their order-preserving form, plain strings as they are
+        String partitionKey = table.encodePartitionKey(item.getAttributes().get(table.getPartitionKeyName()));
+        String sortKey = SINGLE_KEY_ITEM;
 
-        SortedMap<String, Item> partition = table.getItems()
-                .computeIfAbsent(partitionKey, k -> new ConcurrentSkipListMap<>());
+        if (table.getSortKeyName() != null) {
+            sortKey = table.encodeSortKey(item.getAttributes().get(table.getSortKeyName()));
+        }
+        return new Key(partitionKey, sortKey);
+    }
 
-        partition.put(sortKey, item);
-        return item;
+    /**
+     * Applies the changes of an UpdateItem (live or from the WAL): the item's other attributes
+     * stay, removed ones go, set ones get their new value. Creates the item if it doesn't exist.
+     * The key is in stored form.
+     */
+    private Item performUpdate(String tableName, Key key, Map<String, Object> set, List<String> removed) {
+        Table table = getTable(tableName);
+        ReentrantLock lock = indexMaintainer.lockFor(tableName, key.getPartitionKey(), key.getSortKey());
+        lock.lock();
+        try {
+            Item before = table.getStore().get(key.getPartitionKey(), key.getSortKey()).orElse(null);
+            // a stored item's attributes may be a read-only packed map, so the new version gets a copy
+            Map<String, Object> attributes = before == null ? new LinkedHashMap<>() : new LinkedHashMap<>(before.getAttributes());
+            removed.forEach(attributes::remove);
+            attributes.putAll(set);
+
+            Item after = new Item();
+            after.setPrimaryKey(key);
+            after.setAttributes(attributes);
+            table.getStore().put(key.getPartitionKey(), key.getSortKey(), after);
+            if (!table.getIndexes().isEmpty()) {
+                indexMaintainer.update(table.getIndexes().values(), before, after);
+            }
+            invalidateCached(tableName, key.getPartitionKey());
+            return after;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Private helper method that contains the actual logic for deleting an item.
+     * The key is in stored form.
      */
     private void performDelete(String tableName, String partitionKey, String sortKey) {
         Table table = getTable(tableName);
-        SortedMap<String, Item> partition = table.getItems().get(partitionKey);
+        if (table.getIndexes().isEmpty()) {
+            table.getStore().delete(partitionKey, sortKey);
+            invalidateCached(tableName, partitionKey);
+            return;
+        }
+        ReentrantLock lock = indexMaintainer.lockFor(tableName, partitionKey, sortKey);
+        lock.lock();
+        try {
+            Optional<Item> before = table.getStore().get(partitionKey, sortKey);
+            table.getStore().delete(partitionKey, sortKey);
+            before.ifPresent(item -> indexMaintainer.update(table.getIndexes().values(), item, null));
+        } finally {
+            lock.unlock();
+        }
+        invalidateCached(tableName, partitionKey);
+    }
+
+    // -------------------- Transactions ------------------------------------
+
+    /**
+     * TransactWriteItems: puts, updates and deletes across any number of tables that happen
+     * all together or not at all, guarded by conditions on the items as they are before.
+     *
+     * The lock stripes of every item are taken up front, in ascending order like a batch
+     * write takes them, so two transactions can't deadlock and writes to other items go on
+     * untouched. With the stripes held all conditions are checked and the new versions worked
+     * out; if any condition fails TransactionCanceledException says which and nothing is
+     * written. Otherwise the writes go to the WAL as one TRANSACTION record, which replay
+     * applies whole or (if it never made it to disk) not at all, and then to the tables.
+     */
+    public void transactWriteItems(List<TransactWriteItem> items) {
+        long start = System.nanoTime();
+        try {
+            if (items == null || items.isEmpty()) {
+                throw new IllegalArgumentException("A transaction needs at least one item");
+            }
+            List<PreparedTransactItem> prepared = new ArrayList<>(items.size());
+            Set<List<String>> touched = new HashSet<>();
+            for (int i = 0; i < items.size(); i++) {
+                PreparedTransactItem item = prepareTransactItem(i, items.get(i));
+                Key key = item.key();
+                if (!touched.add(List.of(item.table().getTableName(), key.getPartitionKey(), key.getSortKey()))) {
+                    throw new IllegalArgumentException("Item " + i + " of the transaction is for an item an earlier one already is");
+                }
+                prepared.add(item);
+            }
+
+            lockForWrite();
+            List<ReentrantLock> locks = lockStripes(prepared.stream()
+                    .map(item -> indexMaintainer.stripeFor(item.table().getTableName(),
+                            item.key().getPartitionKey(), item.key().getSortKey()))
+                    .toList());
+            long streamWrite = changeStreams.beginWrite();
+            try {
+                // nobody else can write these items now, so what the conditions see is what the writes replace
+                List<String> reasons = new ArrayList<>(prepared.size());
+                List<Item> before = new ArrayList<>(prepared.size());
+                boolean canceled = false;
+                for (PreparedTransactItem item : prepared) {
+                    Optional<Item> current = item.table().getStore().get(item.key().getPartitionKey(), item.key().getSortKey());
+                    before.add(current.orElse(null));
+                    boolean holds = item.condition() == null || item.condition().matches(current.orElseGet(StorageService::emptyItem));
+                    reasons.add(holds ? null : "ConditionalCheckFailed");
+                    canceled |= !holds;
+                }
+                if (canceled) {
+                    List<Integer> failed = new ArrayList<>();
+                    for (int i = 0; i < reasons.size(); i++) {
+                        if (reasons.get(i) != null) {
+                            failed.add(i);
+                        }
+                    }
+                    throw new TransactionCanceledException("Transaction canceled, the condition of item(s) "
+                            + failed + " does not hold", reasons);
+                }
+
+                List<WALEntry> writes = new ArrayList<>(prepared.size());
+                List<Item> writtenOver = new ArrayList<>(prepared.size());
+                for (int i = 0; i < prepared.size(); i++) {
+                    PreparedTransactItem item = prepared.get(i);
+                    Item current = before.get(i);
+                    WALEntry write = switch (item.action()) {
+                        case PUT -> WALEntry.forItem(OperationType.PUT_ITEM, item.table().getTableName(), item.put());
+                        case UPDATE -> updateEntry(item.table(), item.key(), Optional.ofNullable(current), item.update());
+                        // deleting an item that isn't there changes nothing
+                        case DELETE -> current == null ? null : WALEntry.forItem(OperationType.DELETE_ITEM,
+                                item.table().getTableName(), keyOnlyItem(item.key()));
+                        case CONDITION_CHECK -> null;
+                    };
+                    if (write != null) {
+                        writes.add(write);
+                        writtenOver.add(current);
+                    }
+                }
+                if (writes.isEmpty()) {
+                    return;
+                }
+
+                // one record, so a crash can't leave part of it in the log; every write has its own number
+                long last = walService.log(WALEntry.forTransaction(writes));
+                long first = last - writes.size() + 1;
+                for (int i = 0; i < writes.size(); i++) {
+                    applyTransactionWrite(writes.get(i), first + i, writtenOver.get(i));
+                }
+            } finally {
+                changeStreams.endWrite(streamWrite);
+                unlockAll(locks);
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            recordLatency(StorageOperation.TRANSACT_WRITE, start);
+        }
+    }
+
+    private enum TransactAction { PUT, UPDATE, DELETE, CONDITION_CHECK }
+
+    // a validated transaction item: the stored key of its item, and what to do with it
+    private record PreparedTransactItem(Table table, TransactAction action, Key key, Item put,
+                                        UpdateExpression update, FilterExpression condition) {
+    }
+
+    private PreparedTransactItem prepareTransactItem(int index, TransactWriteItem request) {
+        if (request == null || request.tableName() == null) {
+            throw new IllegalArgumentException("Item " + index + " of the transaction has no tableName");
+        }
+        int actions = (request.put() == null ? 0 : 1) + (request.update() == null ? 0 : 1)
+                + (request.delete() == null ? 0 : 1) + (request.conditionCheck() == null ? 0 : 1);
+        if (actions != 1) {
+            throw new IllegalArgumentException("Item " + index
+                    + " of the transaction needs exactly one of put, update, delete or conditionCheck");
+        }
+        Table table = getTable(request.tableName());
+        FilterExpression condition = FilterExpression.parse(request.conditionExpression());
+
+        if (request.put() != null) {
+            Item item = new Item();
+            item.setAttributes(request.put());
+            validateKeys(table, item);
+            return new PreparedTransactItem(table, TransactAction.PUT, storedKeyOf(table, item), item, null, condition);
+        }
+        if (request.update() != null) {
+            if (request.updateExpression() == null || request.updateExpression().isBlank()) {
+                throw new IllegalArgumentException("Item " + index + " of the transaction is an update without an updateExpression");
+            }
+            UpdateExpression update = UpdateExpression.parse(request.updateExpression());
+            checkUpdatable(table, update);
+            return new PreparedTransactItem(table, TransactAction.UPDATE, transactKey(table, index, request.update()),
+                    null, update, condition);
+        }
+        if (request.delete() != null) {
+            return new PreparedTransactItem(table, TransactAction.DELETE, transactKey(table, index, request.delete()),
+                    null, null, condition);
+        }
+        if (condition == null) {
+            throw new IllegalArgumentException("Item " + index + " of the transaction is a conditionCheck without a conditionExpression");
+        }
+        return new PreparedTransactItem(table, TransactAction.CONDITION_CHECK,
+                transactKey(table, index, request.conditionCheck()), null, null, condition);
+    }
+
+    // the stored form of a key a transaction names
+    private static Key transactKey(Table table, int index, Key key) {
+        if (key.getPartitionKey() == null) {
+            throw new IllegalArgumentException("Item " + index + " of the transaction is missing the partition key");
+        }
+        if (table.getSortKeyName() != null && key.getSortKey() == null) {
+            throw new IllegalArgumentException("Item " + index + " of the transaction is missing the sort key");
+        }
+        return storedKey(table, key.getPartitionKey(), key.getSortKey());
+    }
+
+    // applies one logged write of a transaction and hands it to the change stream
+    private void applyTransactionWrite(WALEntry write, long sequence, Item before) {
+        Table table = tables.get(write.tableName());
+        if (table == null) {
+            // dropped while the transaction was being logged, replay skips the write the same way
+            return;
+        }
+        switch (write.operationType()) {
+            case PUT_ITEM -> {
+                Item stored = performPut(write.tableName(), write.item());
+                publishChange(table, sequence, ChangeType.PUT, stored.getPrimaryKey(), before, stored);
+            }
+            case UPDATE_ITEM -> {
+                Key key = write.item().getPrimaryKey();
+                Item updated = performUpdate(write.tableName(), key, write.item().getAttributes(), write.removedAttributes());
+                publishChange(table, sequence, ChangeType.UPDATE, key, before, updated);
+            }
+            case DELETE_ITEM -> {
+                Key key = write.item().getPrimaryKey();
+                performDelete(write.tableName(), key.getPartitionKey(), key.getSortKey());
+                publishChange(table, sequence, ChangeType.DELETE, key, before, null);
+            }
+            default -> throw new IllegalStateException("Not a transaction write: " + write.operationType());
+        }
+    }
+
+    /**
+     * TransactGetItems: reads several items, across tables, at one point in time. It holds
+     * the lock stripes of all of them while it reads, so it sees each transaction either
+     * completely or not at all. Items that aren't there come back as null.
+     */
+    public TransactGetResult transactGetItems(List<TransactGetItem> items) {
+        long start = System.nanoTime();
+        try {
+            if (items == null || items.isEmpty()) {
+                throw new IllegalArgumentException("A transaction needs at least one item");
+            }
+            List<Table> itemTables = new ArrayList<>(items.size());
+            List<Key> keys = new ArrayList<>(items.size());
+            List<Integer> stripes = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                TransactGetItem item = items.get(i);
+                if (item == null || item.tableName() == null || item.key() == null) {
+                    throw new IllegalArgumentException("Item " + i + " of the transaction needs a tableName and a key");
+                }
+                Table table = getTable(item.tableName());
+                Key key = transactKey(table, i, item.key());
+                itemTables.add(table);
+                keys.add(key);
+                stripes.add(indexMaintainer.stripeFor(table.getTableName(), key.getPartitionKey(), key.getSortKey()));
+            }
+
+            List<ReentrantLock> locks = lockStripes(stripes);
+            List<Item> responses = new ArrayList<>(items.size());
+            try {
+                long now = nowEpochSeconds();
+                for (int i = 0; i < keys.size(); i++) {
+                    Table table = itemTables.get(i);
+                    Key key = keys.get(i);
+                    responses.add(table.getStore().get(key.getPartitionKey(), key.getSortKey())
+                            .filter(item -> !table.isExpired(item, now))
+                            .orElse(null));
+                }
+            } finally {
+                unlockAll(locks);
+            }
+            // converting the keys back can wait until the locks are released
+            for (int i = 0; i < responses.size(); i++) {
+                if (responses.get(i) != null) {
+                    withClientKey(itemTables.get(i), responses.get(i));
+                }
+            }
+            return new TransactGetResult(responses);
+        } finally {
+            recordLatency(StorageOperation.TRANSACT_GET, start);
+        }
+    }
+
+    private static Item emptyItem() {
+        Item item = new Item();
+        item.setAttributes(Map.of());
+        return item;
+    }
+
+    private static Item keyOnlyItem(Key storedKey) {
+        Item item = new Item();
+        item.setPrimaryKey(storedKey);
+        return item;
+    }
+
+    // -------------------- Response cache ------------------------------------
+
+    // turns on invalidation for the given cache, see ResponseCache
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    // the partition key as writes report it to the response cache: its stored form
+    public String cachePartitionKey(String tableName, String partitionKey) {
+        return getTable(tableName).encodePartitionKey(partitionKey);
+    }
 
-        if(partition != null) {
-            partition.remove(sortKey);
+    /**
+     * Whether responses of this table may be cached. Not with a TTL: its items disappear
+     * when they expire, without a write that would invalidate them. Turning a TTL on
+     * invalidates the table, so check this after taking the cache stamp.
+     */
+    public boolean isResponseCacheable(String tableName) {
+        return getTable(tableName).getTimeToLiveAttribute() == null;
+    }
 
-            // Optional: if partition is now empty remove it to save memory
-            if(partition.isEmpty()) {
-                table.getItems().remove(partitionKey);
+    private void invalidateCached(String tableName, String partitionKey) {
+        ResponseCache cache = responseCache;
+        if (cache != null) {
+            cache.invalidate(tableName, partitionKey);
+        }
+    }
+
+    private void invalidateCachedTable(String tableName) {
+        ResponseCache cache = responseCache;
+        if (cache != null) {
+            cache.invalidateTable(tableName);
+        }
+    }
+
+    // -------------------- Change streams ------------------------------------
+
+    /**
+     * Reads a table's change stream: the changes after checkpoint (a WAL sequence number,
+     * null to start from now), oldest first, at most limit of them. If there are none yet
+     * it waits up to waitMillis for one, so consumers can long-poll instead of re-reading
+     * the table.
+     *
+     * Recent changes come from the table's in-memory buffer. A consumer that fell further
+     * behind than the buffer reaches is served from the WAL files instead, so a slow
+     * consumer never holds writers up. If a checkpoint has already removed the WAL records
+     * it needs, TrimmedChangesException tells it to read the table again.
+     */
+    public ChangePage readChanges(String tableName, Long checkpoint, int limit, long waitMillis) {
+        if (!changeStreams.isEnabled()) {
+            throw new IllegalArgumentException("Change streams are turned off (jkeydb.streams.buffer-size=0)");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        getTable(tableName);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis));
+        long after = checkpoint == null ? changeStreams.watermark() : checkpoint;
+
+        while (true) {
+            Table table = getTable(tableName);
+            // nothing up to here is still on its way into the buffer
+            long upTo = changeStreams.watermark();
+            SequenceRingBuffer<ChangeRecord> buffer = changeStreams.buffer(tableName);
+            List<ChangeRecord> records = buffer.read(after, upTo, limit);
+            boolean fromWal = false;
+            if (after < buffer.floor()) {
+                // some of the changes it needs were already overwritten
+                records = readChangesFromWal(table, after, upTo, limit);
+                fromWal = true;
             }
+
+            if (!records.isEmpty() || System.nanoTime() - deadline >= 0) {
+                // a full page continues after its last record, anything shorter covered everything up to the watermark
+                long next = records.size() == limit ? records.get(limit - 1).sequence() : upTo;
+                return new ChangePage(records, Math.max(after, next), fromWal);
+            }
+            changeStreams.awaitWrite(deadline);
+        }
+    }
+
+    // the state of an item before a write, only looked up when someone may read it from the stream
+    private Item currentForStream(Table table, Key storedKey) {
+        if (!changeStreams.isEnabled()) {
+            return null;
+        }
+        return table.getStore().get(storedKey.getPartitionKey(), storedKey.getSortKey()).orElse(null);
+    }
+
+    // hands a write that made it into the WAL to the table's change stream
+    private void publishChange(Table table, long sequence, ChangeType type, Key storedKey, Item before, Item after) {
+        if (changeStreams.isEnabled()) {
+            changeStreams.publish(new ChangeRecord(sequence, table.getTableName(), type, table.displayKey(storedKey),
+                    before == null ? null : before.getAttributes(),
+                    after == null ? null : after.getAttributes(),
+                    System.currentTimeMillis()));
         }
     }
 
+    // the changes of a table with after < sequence <= upTo, read back from the WAL files
+    private List<ChangeRecord> readChangesFromWal(Table table, long after, long upTo, int limit) {
+        List<List<ChangeRecord>> changes = readWalRecords(after, upTo, limit, (shard, record) -> {
+            // a transaction may be in several shards, it is read from the first like its writes were numbered
+            if (!isFirstCopy(shard, record.entry())) {
+                return null;
+            }
+            List<ChangeRecord> recordChanges = changesFromWal(table, record);
+            return recordChanges.isEmpty() ? null : recordChanges;
+        });
+        List<ChangeRecord> records = new ArrayList<>();
+        changes.forEach(records::addAll);
+        // a page may have ended in the middle of a transaction's writes
+        records.removeIf(record -> record.sequence() <= after);
+        records.sort(Comparator.comparingLong(ChangeRecord::sequence));
+        return records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
+    }
+
+    // a record written to several shards counts in the first of them (shard 0 if it went to all)
+    private static boolean isFirstCopy(int shard, WALEntry entry) {
+        if (!entry.operationType().isBarrier()) {
+            return true;
+        }
+        return shard == (entry.shards() == null ? 0 : entry.shards().get(0));
+    }
+
+    // the changes of the table a record holds: none, one, or one per write of a transaction on it
+    private static List<ChangeRecord> changesFromWal(Table table, WALRecord record) {
+        WALEntry entry = record.entry();
+        if (entry.operationType() != OperationType.TRANSACTION) {
+            ChangeRecord change = changeFromWal(table, record.sequence(), entry);
+            return change == null ? List.of() : List.of(change);
+        }
+        List<ChangeRecord> changes = new ArrayList<>();
+        long first = record.sequence() - entry.operations().size() + 1;
+        for (int i = 0; i < entry.operations().size(); i++) {
+            ChangeRecord change = changeFromWal(table, first + i, entry.operations().get(i));
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Reads the WAL files of every shard for the records with after < sequence <= upTo and
+     * converts them (given the shard and the record), skipping those convert returns null
+     * for. Only the first limit records of each shard are converted, in no particular
+     * order across shards.
+     */
+    private <T> List<T> readWalRecords(long after, long upTo, int limit, BiFunction<Integer, WALRecord, T> convert) {
+        if (after < lastCheckpointSequence) {
+            throw trimmedChanges(after);
+        }
+        List<T> records = new ArrayList<>();
+        for (int shard = 0; shard < walService.getShardCount(); shard++) {
+            List<T> shardRecords = new ArrayList<>();
+            try {
+                for (Path segment : walService.getSegments(shard)) {
+                    long segmentLastSequence = walService.sealedSegmentLastSequence(segment);
+                    if (segmentLastSequence >= 0 && segmentLastSequence <= after) {
+                        continue;
+                    }
+                    try (WALReader reader = WALReader.open(segment)) {
+                        WALRecord record;
+                        // a shard's records are in sequence order, so it can stop early
+                        while (shardRecords.size() < limit && (record = reader.next()) != null
+                                && record.sequence() <= upTo) {
+                            if (record.sequence() > after) {
+                                T converted = convert.apply(shard, record);
+                                if (converted != null) {
+                                    shardRecords.add(converted);
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // a checkpoint removed the segment while it was being read
+                throw trimmedChanges(after);
+            }
+            records.addAll(shardRecords);
+        }
+        return records;
+    }
+
+    // a change record rebuilt from what the WAL has, null for entries that aren't changes to items of the table
+    private static ChangeRecord changeFromWal(Table table, long sequence, WALEntry entry) {
+        if (!entry.tableName().equals(table.getTableName())) {
+            return null;
+        }
+        try {
+            return switch (entry.operationType()) {
+                case PUT_ITEM -> new ChangeRecord(sequence, entry.tableName(), ChangeType.PUT,
+                        table.displayKey(storedKeyOf(table, entry.item())), null, entry.item().getAttributes(), 0);
+                case UPDATE_ITEM -> new ChangeRecord(sequence, entry.tableName(), ChangeType.UPDATE,
+                        table.displayKey(entry.item().getPrimaryKey()), null, entry.item().getAttributes(), 0);
+                case DELETE_ITEM -> new ChangeRecord(sequence, entry.tableName(), ChangeType.DELETE,
+                        table.displayKey(entry.item().getPrimaryKey()), null, null, 0);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            // written for an earlier table of the same name with other key types
+            return null;
+        }
+    }
+
+    private TrimmedChangesException trimmedChanges(long after) {
+        return new TrimmedChangesException("Changes after sequence " + after
+                + " are no longer kept, read the table again and continue from sequence " + changeStreams.watermark());
+    }
+
+    // -------------------- Replication ------------------------------
+
+    /**
+     * Turns this node into a read replica: every write through the API fails with
+     * ReadOnlyReplicaException, only applyReplicated changes the tables.
+     */
+    public void setReplica(boolean replica) {
+        this.replica = replica;
+    }
+
+    public boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * Applies a record shipped from the replication leader, the same way the startup
+     * replay applies it. Nothing is logged locally.
+     */
+    public void applyReplicated(WALEntry entry) {
+        applyLogEntry(entry);
+        if (entry.operationType() == OperationType.DELETE_TABLE) {
+            changeStreams.dropTable(entry.tableName());
+        }
+    }
+
+    /**
+     * Drops every table without logging anything. A follower does this before it loads
+     * a snapshot of its leader's tables.
+     */
+    public void dropAllTablesForReplication() {
+        for (String tableName : new ArrayList<>(tables.keySet())) {
+            performDeleteTable(tableName);
+            changeStreams.dropTable(tableName);
+        }
+    }
+
+    public List<Table> getTables() {
+        return new ArrayList<>(tables.values());
+    }
+
+    /**
+     * A WAL position every write up to has been applied to the tables. A follower that
+     * loads the tables as they are now and then applies the records after this position
+     * ends up with what the leader has, because applying a record twice changes nothing.
+     */
+    public long appliedSequence() {
+        checkpointLock.writeLock().lock();
+        try {
+            return walService.getLastSequence();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The WAL records with after < sequence <= upTo, read back from the WAL files, oldest
+     * first, at most limit of them. A table change is in every shard's file and a transaction
+     * may be in several, each is only returned once. Throws TrimmedChangesException if a checkpoint already removed some.
+     */
+    public List<WALRecord> readWal(long after, long upTo, int limit) {
+        List<WALRecord> records = readWalRecords(after, upTo, limit, (shard, record) ->
+                isFirstCopy(shard, record.entry()) ? record : null);
+        records.sort(Comparator.comparingLong(WALRecord::sequence));
+        return records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
+    }
+
+    /**
+     * Query on a global secondary index: the items whose index partition key is partitionKey,
+     * in index sort key order, limited to [startKey, endKey) when given. With asynchronous
+     * index maintenance the very latest writes may not show up yet.
+     */
+    public List<Item> queryIndex(String tableName, String indexName, String partitionKey, String startKey, String endKey) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            SecondaryIndex index = table.getIndexes().get(indexName);
+            if (index == null) {
+                throw new IllegalArgumentException("Table " + tableName + " has no index " + indexName);
+            }
+            List<Item> items = index.query(partitionKey, startKey, endKey);
+            // only works if the index projects the TTL attribute, other entries go once the sweeper deletes their item
+            long now = nowEpochSeconds();
+            items.removeIf(item -> table.isExpired(item, now));
+            items.forEach(item -> withClientKey(table, item));
+            return items;
+        } finally {
+            recordLatency(StorageOperation.QUERY_INDEX, start);
+        }
+    }
+
+    // blocks until every index update queued so far is visible (only matters for async maintenance)
+    public void awaitIndexMaintenance() {
+        indexMaintainer.awaitPending();
+    }
+
     public Collection<Item> query(String tableName, String partitionKey, String startKey, String endKey) {
+        // the store walks the range in sort key order; collect it so no files stay open
+        List<Item> items = new ArrayList<>();
+        try (ItemIterator iterator = openQuery(tableName, partitionKey, startKey, endKey)) {
+            iterator.forEachRemaining(items::add);
+        }
+        return items;
+    }
+
+    /**
+     * One page of a query: at most limit items of the range, starting right after the
+     * sort key exclusiveStartSortKey (null for the first page).
+     */
+    public ItemPage query(String tableName, String partitionKey, String startKey, String endKey,
+                          int limit, String exclusiveStartSortKey) {
+        return query(tableName, partitionKey, startKey, endKey, limit, exclusiveStartSortKey, null, null);
+    }
+
+    /**
+     * One page of a query with a filter and a projection applied inside the service, so
+     * dropped items and attributes never reach serialization. As in DynamoDB, limit counts
+     * the items evaluated, not the ones that matched: a page can hold fewer than limit items
+     * (even none) and still have a lastEvaluatedKey to continue from.
+     */
+    public ItemPage query(String tableName, String partitionKey, String startKey, String endKey,
+                          int limit, String exclusiveStartSortKey,
+                          FilterExpression filter, ProjectionExpression projection) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            String storedPartitionKey = table.encodePartitionKey(partitionKey);
+            String exclusive = storedSortKey(table, exclusiveStartSortKey);
+
+            // resuming = the range starts at the exclusive key, which itself is skipped below;
+            // compared in stored form, which is the order the store walks in
+            String from = storedSortKey(table, startKey);
+            if (exclusive != null && (from == null || exclusive.compareTo(from) > 0)) {
+                from = exclusive;
+            }
+            try (ItemIterator iterator = live(table, table.getStore().query(storedPartitionKey, from, storedSortKey(table, endKey)))) {
+                return withClientKeys(table,
+                        page(iterator, limit, exclusive == null ? null : new Key(storedPartitionKey, exclusive),
+                                filter, projection));
+            }
+        } finally {
+            recordLatency(StorageOperation.QUERY, start);
+        }
+    }
+
+    /**
+     * A query as an open iterator, for callers that stream the items out instead of
+     * collecting them. Must be closed.
+     */
+    public ItemIterator openQuery(String tableName, String partitionKey, String startKey, String endKey) {
+        return openQuery(tableName, partitionKey, startKey, endKey, null, null);
+    }
+
+    public ItemIterator openQuery(String tableName, String partitionKey, String startKey, String endKey,
+                                  FilterExpression filter, ProjectionExpression projection) {
         Table table = getTable(tableName);
+        return withClientKeys(table, refine(live(table, table.getStore().query(
+                table.encodePartitionKey(partitionKey), storedSortKey(table, startKey), storedSortKey(table, endKey))),
+                filter, projection));
+    }
+
+    /**
+     * Every item of a table, in (partition key, sort key) order.
+     */
+    public List<Item> scan(String tableName) {
+        List<Item> items = new ArrayList<>();
+        try (ItemIterator iterator = openScan(tableName, null)) {
+            iterator.forEachRemaining(items::add);
+        }
+        return items;
+    }
 
-        SortedMap<String, Item> partition = table.getItems().get(partitionKey);
+    /**
+     * One page of a table scan: at most limit items after exclusiveStartKey (null for the first page).
+     */
+    public ItemPage scan(String tableName, int limit, Key exclusiveStartKey) {
+        return scan(tableName, limit, exclusiveStartKey, null);
+    }
 
-        if(partition == null) {
-            // if partition doesnt exist, there are no items
-            return new ArrayList<>(); // return an empty list
+    /**
+     * One page of one segment of a table (DynamoDB's Segment / TotalSegments), so several
+     * clients can each scan a disjoint part at the same time. A null segment is the whole table.
+     */
+    public ItemPage scan(String tableName, int limit, Key exclusiveStartKey, ScanSegment segment) {
+        return scan(tableName, limit, exclusiveStartKey, segment, null, null);
+    }
+
+    // a scan page with a filter and a projection, limit counts evaluated items (see query)
+    public ItemPage scan(String tableName, int limit, Key exclusiveStartKey, ScanSegment segment,
+                         FilterExpression filter, ProjectionExpression projection) {
+        long start = System.nanoTime();
+        try {
+            Table table = getTable(tableName);
+            Key exclusive = exclusiveStartKey == null
+                    ? null
+                    : storedKey(table, exclusiveStartKey.getPartitionKey(), exclusiveStartKey.getSortKey());
+            try (ItemIterator iterator = live(table, segment == null
+                    ? table.getStore().scan(exclusive)
+                    : table.getStore().scan(exclusive, segment::contains))) {
+                return withClientKeys(table, page(iterator, limit, exclusive, filter, projection));
+            }
+        } finally {
+            recordLatency(StorageOperation.SCAN, start);
+        }
+    }
+
+    // a scan as an open iterator, see openQuery
+    public ItemIterator openScan(String tableName, Key exclusiveStartKey) {
+        return openScan(tableName, exclusiveStartKey, null, null);
+    }
+
+    public ItemIterator openScan(String tableName, Key exclusiveStartKey,
+                                 FilterExpression filter, ProjectionExpression projection) {
+        Table table = getTable(tableName);
+        Key exclusive = exclusiveStartKey == null
+                ? null
+                : storedKey(table, exclusiveStartKey.getPartitionKey(), exclusiveStartKey.getSortKey());
+        return withClientKeys(table, refine(live(table, table.getStore().scan(exclusive)), filter, projection));
+    }
+
+    private static ItemPage page(ItemIterator iterator, int limit, Key exclusiveStartKey,
+                                 FilterExpression filter, ProjectionExpression projection) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive, got " + limit);
+        }
+        List<Item> items = new ArrayList<>(Math.min(limit, 128));
+        int evaluated = 0;
+        Key lastEvaluated = null;
+        while (evaluated < limit && iterator.hasNext()) {
+            Item item = iterator.next();
+            if (exclusiveStartKey != null && exclusiveStartKey.equals(item.getPrimaryKey())) {
+                continue; // the last item of the previous page
+            }
+            evaluated++;
+            lastEvaluated = item.getPrimaryKey();
+            if (filter != null && !filter.matches(item)) {
+                continue;
+            }
+            items.add(projection == null ? item : projection.apply(item));
         }
+        // only hand out a key if there actually is something after it
+        Key lastEvaluatedKey = lastEvaluated != null && iterator.hasNext() ? lastEvaluated : null;
+        return new ItemPage(items, lastEvaluatedKey);
+    }
 
-        // if no range is specified return all items in partition
-        if(startKey == null && endKey == null) {
-            return partition.values();
+    // hides expired items of a table with a TTL; they stay in the store until the sweeper gets to them
+    private static ItemIterator live(Table table, ItemIterator iterator) {
+        if (table.getTimeToLiveAttribute() == null) {
+            return iterator;
         }
+        long now = nowEpochSeconds();
+        return ItemIterator.filtered(iterator, item -> !table.isExpired(item, now));
+    }
 
-        // If a range is specified, use the highly efficient subMap method.
-        // subMap returns a "view" of the original map, not a copy, which is very fast.
-        if(endKey == null) {
-            return partition.tailMap(startKey).values();
+    private static long nowEpochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    // filter first, then project, so the filter can still see every attribute
+    private static ItemIterator refine(ItemIterator iterator, FilterExpression filter, ProjectionExpression projection) {
+        ItemIterator filtered = filter == null ? iterator : ItemIterator.filtered(iterator, filter.asPredicate());
+        if (projection == null) {
+            return filtered;
         }
+        return new ItemIterator() {
+            @Override
+            public boolean hasNext() {
+                return filtered.hasNext();
+            }
 
-        return partition.subMap(startKey, endKey).values();
+            @Override
+            public Item next() {
+                return projection.apply(filtered.next());
+            }
+
+            @Override
+            public void close() {
+                filtered.close();
+            }
+        };
+    }
+
+    /**
+     * Called by Spring on shutdown, releases the files held by durable table stores.
+     */
+    @PreDestroy
+    public void close() {
+        indexMaintainer.close();
+        tables.values().forEach(table -> table.getStore().close());
     }
 }
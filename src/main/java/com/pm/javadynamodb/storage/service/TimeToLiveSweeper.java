@@ -0,0 +1,154 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes expired items of the tables that have a TTL attribute, a little at a time.
+ *
+ * Every round walks each such table for at most sliceMillis (or until batchSize expired
+ * items are found), remembers where it stopped and continues from there next round, so
+ * there is never a pass over a whole table in one go. The expired items found in a slice
+ * are deleted with StorageService.expireItems, i.e. one WAL append per slice.
+ * Reads hide expired items on their own, the sweeper only reclaims the space.
+ */
+@Service
+public class TimeToLiveSweeper {
+
+    // check the clock only every this many items, System.nanoTime() isn't free either
+    private static final int CLOCK_CHECK_EVERY = 64;
+
+    private final StorageService storageService;
+    private final long intervalMillis;
+    private final long sliceNanos;
+    private final int batchSize;
+    // where each table's sweep continues, only touched by the sweeper thread
+    private final Map<String, Key> cursors = new HashMap<>();
+    private final AtomicLong itemsExpired = new AtomicLong();
+    private final AtomicLong fullPasses = new AtomicLong();
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public TimeToLiveSweeper(StorageService storageService,
+                             @Value("${jkeydb.ttl.sweep-interval-ms:1000}") long intervalMillis,
+                             @Value("${jkeydb.ttl.slice-millis:5}") long sliceMillis,
+                             @Value("${jkeydb.ttl.batch-size:256}") int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("jkeydb.ttl.batch-size must be at least 1");
+        }
+        this.storageService = storageService;
+        this.intervalMillis = intervalMillis;
+        this.sliceNanos = TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalMillis <= 0) {
+            System.out.println("TTL sweeper is disabled.");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ttl-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // items deleted because they expired, since startup
+    public long getItemsExpired() {
+        return itemsExpired.get();
+    }
+
+    // how many times a sweep got to the end of a table
+    public long getFullPasses() {
+        return fullPasses.get();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweepOnce();
+        } catch (Exception e) {
+            // nothing is lost, the next round tries again from the same place
+            System.err.println("TTL sweep failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One round: a slice of every table with a TTL. Returns how many items were deleted.
+     * Runs on the sweeper thread, tests call it directly.
+     */
+    public synchronized int sweepOnce() {
+        if (storageService.isReplica()) {
+            return 0; // the leader expires items, its deletes arrive through replication
+        }
+        List<Table> ttlTables = storageService.getTimeToLiveTables();
+        // forget tables that were dropped or had their TTL turned off
+        cursors.keySet().removeIf(name -> ttlTables.stream().noneMatch(table -> table.getTableName().equals(name)));
+
+        int deleted = 0;
+        for (Table table : ttlTables) {
+            deleted += sweepSlice(table);
+        }
+        itemsExpired.addAndGet(deleted);
+        return deleted;
+    }
+
+    private int sweepSlice(Table table) {
+        String tableName = table.getTableName();
+        long deadline = System.nanoTime() + sliceNanos;
+        long now = System.currentTimeMillis() / 1000;
+        Key cursor = cursors.get(tableName);
+        List<Key> expired = new ArrayList<>();
+        boolean reachedEnd = true;
+
+        // only collect while the iterator is open, the deletes happen after it is closed
+        try (ItemIterator items = table.getStore().scan(cursor)) {
+            int visited = 0;
+            while (items.hasNext()) {
+                Item item = items.next();
+                cursor = item.getPrimaryKey();
+                if (table.isExpired(item, now)) {
+                    expired.add(cursor);
+                }
+                if (expired.size() >= batchSize
+                        || (++visited % CLOCK_CHECK_EVERY == 0 && System.nanoTime() >= deadline)) {
+                    reachedEnd = !items.hasNext();
+                    break;
+                }
+            }
+        }
+
+        if (reachedEnd) {
+            cursors.remove(tableName);
+            fullPasses.incrementAndGet();
+        } else {
+            cursors.put(tableName, cursor);
+        }
+        return expired.isEmpty() ? 0 : storageService.expireItems(tableName, expired);
+    }
+}
@@ -1,47 +1,592 @@
 package com.pm.javadynamodb.storage.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.metrics.LatencySnapshot;
+import com.pm.javadynamodb.storage.replication.ReplicationLog;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALBatchResult;
 import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALStats;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+/**
+ * Group-commit write-ahead log.
+ *
+ * Writers don't touch the file themselves. log() puts the entry on a queue and waits,
+ * while a single flusher thread drains whatever has piled up, writes the whole
+ * batch with one FileChannel.write and (depending on the DurabilityMode) one
+ * FileChannel.force, and then wakes every writer in that batch up at once.
+ * Under concurrent load many puts share the cost of a single disk sync.
+ * Writers only ever wait on the queue and their future (java.util.concurrent, no
+ * synchronized monitors), so a writer on a virtual thread unmounts while it waits
+ * instead of pinning its carrier thread.
+ *
+ * Records are written in the binary format described in WALFormat and every record
+ * gets the next sequence number, which log() hands back to the caller.
+ *
+ * With jkeydb.wal.shards > 1 the log is split into that many files ("wal.log",
+ * "wal-1.log", ...), each with its own queue and flusher, so writes to different
+ * shards are written and synced in parallel instead of queueing behind one thread.
+ * Item records go to the shard of their (table, partition key), so every change to
+ * one partition is in one file, in order. Table changes are written to every shard and
+ * a transaction to every shard one of its writes goes to, marked with those shards;
+ * per-shard locks, taken in shard order, make the shards a record is written to see it
+ * in the same order relative to every other such record. That gives the replay a
+ * common point to line up the shards a record spans, while transactions on disjoint
+ * shards don't wait for each other and a transaction within one shard is an ordinary record.
+ * Sequence numbers are shared by all shards, so a checkpoint still covers "everything
+ * up to sequence N" in every file. The shard count of an existing data set can only
+ * be changed once a checkpoint has emptied the log.
+ *
+ * Each file is split into segments. "wal.log" is the active one; rotate() seals it as
+ * "wal.log.<last sequence>" and starts a new active file, so that once a checkpoint
+ * covers a sealed segment it can simply be deleted.
+ */
 @Service
 public class WALService {
-    private static final String WAL_FILE_NAME = "wal.log";
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private BufferedWriter writer;
+    private static final String DEFAULT_WAL_FILE_NAME = "wal.log";
+
+    private final Path walPath;
+    private final DurabilityMode durabilityMode;
+    private final long fsyncIntervalMillis;
+    private final int maxBatchSize;
+    private final int shardCount;
+
+    private final List<WALShard> shards = new ArrayList<>();
+    // the next sequence number is one more than this, whichever shard takes it
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    // held while a record goes to several shards, so they all see such records in the same order
+    private final ReentrantLock[] shardLocks;
+    // routes item entries, see setPartitionKeyFunction
+    private volatile Function<WALEntry, String> partitionKeyOf = entry -> null;
+    // how the shards open their files, see setChannelOpener
+    private WALShard.ChannelOpener channelOpener = FileChannel::open;
+    // set on a replication leader, gets every committed record for the followers
+    private volatile ReplicationLog replicationLog;
+
+    // enqueue until acknowledged per writer, and the time each batch spent in write() and force()
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+
+    public WALService() {
+        this(DEFAULT_WAL_FILE_NAME, DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+    }
+
+    public WALService(String walPath, DurabilityMode durabilityMode, long fsyncIntervalMillis, int maxBatchSize) {
+        this(walPath, durabilityMode, fsyncIntervalMillis, maxBatchSize, 1);
+    }
+
+    @Autowired
+    public WALService(@Value("${jkeydb.wal.path:wal.log}") String walPath,
+                      @Value("${jkeydb.wal.durability:FSYNC_PER_BATCH}") DurabilityMode durabilityMode,
+                      @Value("${jkeydb.wal.fsync-interval-ms:10}") long fsyncIntervalMillis,
+                      @Value("${jkeydb.wal.max-batch-size:1024}") int maxBatchSize,
+                      @Value("${jkeydb.wal.shards:1}") int shardCount) {
+        if (fsyncIntervalMillis <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("WAL fsync interval and max batch size must be positive");
+        }
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("jkeydb.wal.shards must be at least 1");
+        }
+        this.walPath = Paths.get(walPath);
+        this.durabilityMode = durabilityMode;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.shardCount = shardCount;
+        this.shardLocks = new ReentrantLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardLocks[i] = new ReentrantLock();
+        }
+    }
 
     @PostConstruct
     public void init() {
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(newShard(i));
+        }
         try {
-            // Open the WAL file in append mode. Create it if it doesn't exist.
-            this.writer = Files.newBufferedWriter(
-                    Paths.get(WAL_FILE_NAME),
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND
-            );
+            checkShardLayout();
         } catch (IOException e) {
-            // If we can't write to the log, it's a critical failure.
             throw new RuntimeException("Failed to initialise WAL writer", e);
         }
+
+        // every shard has to know where its numbering stopped before any of them takes a new number
+        long lastSequence = 0;
+        for (WALShard shard : shards) {
+            shard.open();
+            lastSequence = Math.max(lastSequence, shard.getLastSequence());
+        }
+        sequenceCounter.set(lastSequence);
+        shards.forEach(WALShard::start);
+        if (shardCount > 1) {
+            System.out.println("WAL is split into " + shardCount + " shards.");
+        }
+    }
+
+    private WALShard newShard(int shard) {
+        return new WALShard(shardPath(shard), durabilityMode, fsyncIntervalMillis, maxBatchSize, sequenceCounter,
+                shardCount == 1 ? "wal-flusher" : "wal-flusher-" + shard, channelOpener,
+                commitLatency, writeLatency, fsyncLatency);
+    }
+
+    // tests hand in channels that fail on purpose; must be called before init()
+    void setChannelOpener(WALShard.ChannelOpener channelOpener) {
+        this.channelOpener = channelOpener;
+    }
+
+    // shard 0 keeps the configured name, so a single-shard log looks exactly like it always did
+    private Path shardPath(int shard) {
+        if (shard == 0) {
+            return walPath;
+        }
+        String name = walPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String shardName = dot <= 0
+                ? name + "-" + shard
+                : name.substring(0, dot) + "-" + shard + name.substring(dot);
+        return walPath.resolveSibling(shardName);
+    }
+
+    /**
+     * Records of one partition must all be in the file of its shard, otherwise replaying
+     * the shards side by side could apply them out of order. That only holds if the files
+     * on disk were written with the shard count we have now, or if they hold no records.
+     */
+    private void checkShardLayout() throws IOException {
+        boolean hasRecords = false;
+        boolean layoutChanged = false;
+
+        for (WALShard shard : shards) {
+            if (shard.getSegments().isEmpty()) {
+                layoutChanged = true;
+            }
+            hasRecords |= shard.hasRecords();
+        }
+        // files of shards we no longer have; shards are always numbered without gaps
+        for (int i = shardCount; ; i++) {
+            WALShard extra = newShard(i);
+            if (extra.getSegments().isEmpty()) {
+                break;
+            }
+            layoutChanged = true;
+            hasRecords |= extra.hasRecords();
+        }
+
+        if (layoutChanged && hasRecords) {
+            throw new IllegalStateException("The WAL next to " + walPath + " has records written with a different"
+                    + " jkeydb.wal.shards. Start with the previous setting and take a checkpoint before changing it.");
+        }
     }
 
-    public synchronized void log(WALEntry entry) {
+    /**
+     * Tells the log how to find the partition key of an item entry, which decides its shard.
+     * StorageService sets this; without it every table goes to one shard as a whole.
+     */
+    public void setPartitionKeyFunction(Function<WALEntry, String> partitionKeyOf) {
+        this.partitionKeyOf = partitionKeyOf;
+    }
+
+    /**
+     * Hands every record committed from now on to the given log as well, which is how a
+     * replication leader ships the WAL to its followers. A table change written to every
+     * shard is handed over once, with its last sequence number.
+     */
+    public void setReplicationLog(ReplicationLog replicationLog) {
+        this.replicationLog = replicationLog;
+    }
+
+    /**
+     * Appends an entry and blocks until the flusher has committed the batch it ended up in.
+     * When this returns the entry is in the file (and on disk for FSYNC_PER_BATCH).
+     *
+     * A transaction takes one sequence number per write, the returned one is that of its last.
+     *
+     * @return the sequence number the entry was written with
+     */
+    public long log(WALEntry entry) {
+        ReplicationLog replication = replicationLog;
+        if (replication == null) {
+            return append(entry);
+        }
+        long append = replication.beginAppend();
         try {
-            // Convert the WALEntry object to a JSON string
-            String jsonLog = objectMapper.writeValueAsString(entry);
-            writer.write(jsonLog);
-            writer.newLine(); // Add a newline to separate entries
-            writer.flush();   // Ensure the data is written to the disk immediately
-        } catch (IOException e) {
-            // In a real system, you'd have more robust error handling/retry logic.
-            throw new RuntimeException("Failed to write to WAL", e);
+            long sequence = append(entry);
+            replication.appended(sequence, entry);
+            return sequence;
+        } finally {
+            replication.endAppend(append);
+        }
+    }
+
+    private long append(WALEntry entry) {
+        if (shardCount > 1 && entry.operationType() == OperationType.TRANSACTION) {
+            return logTransaction(entry);
+        }
+        if (shardCount > 1 && entry.operationType().isTableChange()) {
+            return logToShards(entry, allShards());
+        }
+        return await(shards.get(shardOf(entry)).append(List.of(entry)));
+    }
+
+    /**
+     * Appends several entries as one unit: they get consecutive sequence numbers and go
+     * into the file with a single write (and a single fsync for FSYNC_PER_BATCH). If any
+     * of them can't be encoded none of them is written.
+     *
+     * With several shards this holds per shard: the entries are split by shard and every
+     * shard writes its part as one unit, all shards at the same time. If one part fails
+     * this throws, but the parts of the other shards may be written; use logBatch to
+     * find out which.
+     *
+     * @return the sequence number of the last entry
+     */
+    public long logAll(List<WALEntry> entries) {
+        if (entries.isEmpty()) {
+            return getLastSequence();
+        }
+        WALBatchResult result = logBatch(entries);
+        if (result.firstFailure() != null) {
+            throw result.firstFailure();
+        }
+        long last = 0;
+        for (long sequence : result.sequences()) {
+            last = Math.max(last, sequence);
+        }
+        return last;
+    }
+
+    /**
+     * Like logAll, but tells for every entry, in the order of the list, the sequence number
+     * it was written with (the change streams need each one) or why it wasn't written.
+     * Throws if none of them was written, which with one shard is the only way it fails.
+     */
+    public WALBatchResult logBatch(List<WALEntry> entries) {
+        ReplicationLog replication = replicationLog;
+        if (replication == null || entries.isEmpty()) {
+            return appendBatch(entries);
+        }
+        long append = replication.beginAppend();
+        try {
+            WALBatchResult result = appendBatch(entries);
+            for (int i = 0; i < result.size(); i++) {
+                if (result.committed(i)) {
+                    replication.appended(result.sequence(i), entries.get(i));
+                }
+            }
+            return result;
+        } finally {
+            replication.endAppend(append);
+        }
+    }
+
+    private WALBatchResult appendBatch(List<WALEntry> entries) {
+        long[] sequences = new long[entries.size()];
+        RuntimeException[] failures = new RuntimeException[entries.size()];
+        if (entries.isEmpty()) {
+            return new WALBatchResult(sequences, failures);
+        }
+        for (WALEntry entry : entries) {
+            if (entry.operationType() == OperationType.TRANSACTION) {
+                // it takes several sequence numbers, the ones below assume one per entry
+                throw new IllegalArgumentException("A transaction is logged on its own, not as part of a WAL batch");
+            }
+        }
+        if (shardCount == 1) {
+            // a batch gets consecutive numbers ending at the returned one
+            long last = await(shards.get(0).append(List.copyOf(entries)));
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = last - sequences.length + 1 + i;
+            }
+            return new WALBatchResult(sequences, failures);
+        }
+
+        // positions in the caller's list, per shard
+        Map<Integer, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            WALEntry entry = entries.get(i);
+            if (entry.operationType().isTableChange()) {
+                throw new IllegalArgumentException("Table changes can't be part of a WAL batch");
+            }
+            byShard.computeIfAbsent(shardOf(entry), shard -> new ArrayList<>()).add(i);
+        }
+        Map<Integer, CompletableFuture<Long>> appends = new LinkedHashMap<>();
+        byShard.forEach((shard, positions) ->
+                appends.put(shard, shards.get(shard).append(positions.stream().map(entries::get).toList())));
+        // a shard that failed wrote none of its part, the others may well have written theirs
+        RuntimeException firstFailure = null;
+        boolean committed = false;
+        for (Map.Entry<Integer, CompletableFuture<Long>> append : appends.entrySet()) {
+            List<Integer> positions = byShard.get(append.getKey());
+            try {
+                long last = await(append.getValue());
+                for (int i = 0; i < positions.size(); i++) {
+                    sequences[positions.get(i)] = last - positions.size() + 1 + i;
+                }
+                committed = true;
+            } catch (RuntimeException e) {
+                positions.forEach(position -> failures[position] = e);
+                firstFailure = firstFailure == null ? e : firstFailure;
+            }
+        }
+        if (!committed) {
+            throw firstFailure;
+        }
+        return new WALBatchResult(sequences, failures);
+    }
+
+    // a transaction goes to the shards of its writes only, and is marked with them for the replay
+    private long logTransaction(WALEntry entry) {
+        // (a follower gets the leader's entry, which may be marked for a different shard count)
+        List<Integer> involved = entry.operations().stream().map(this::shardOf).distinct().sorted().toList();
+        WALEntry routed = entry.withShards(involved);
+        if (involved.size() == 1) {
+            return await(shards.get(involved.get(0)).append(List.of(routed)));
+        }
+        return logToShards(routed, involved);
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> all = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    /**
+     * Writes one record to several shards. Their locks are taken in shard order (so two
+     * records that share shards can't deadlock) and held until every copy is written, so
+     * all of those shards see it in the same order relative to the other records written
+     * this way. The writes of a transaction are numbered like its copy in the first of them,
+     * the one that is read back when the WAL is served to change streams and followers.
+     */
+    private long logToShards(WALEntry entry, List<Integer> targets) {
+        for (int shard : targets) {
+            shardLocks[shard].lock();
+        }
+        try {
+            List<CompletableFuture<Long>> appends = new ArrayList<>(targets.size());
+            for (int shard : targets) {
+                appends.add(shards.get(shard).append(List.of(entry)));
+            }
+            long last = awaitAll(appends);
+            return entry.operationType() == OperationType.TRANSACTION ? appends.get(0).join() : last;
+        } finally {
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                shardLocks[targets.get(i)].unlock();
+            }
+        }
+    }
+
+    private int shardOf(WALEntry entry) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        String partitionKey;
+        try {
+            partitionKey = partitionKeyOf.apply(entry);
+        } catch (RuntimeException e) {
+            // the table is gone or the key doesn't parse, the whole table's shard is as good as any
+            partitionKey = null;
+        }
+        int hash = 31 * entry.tableName().hashCode() + (partitionKey == null ? 0 : partitionKey.hashCode());
+        return Math.floorMod(hash, shardCount);
+    }
+
+    /**
+     * Seals the active segment of every shard and starts new ones. Everything logged before
+     * this call ends up in sealed segments, everything after it in the new active segments.
+     * Shards whose active segment has no records yet are left alone.
+     *
+     * @return the sequence number of the last record in the sealed segments
+     */
+    public long rotate() {
+        if (shardCount == 1) {
+            return await(shards.get(0).rotate());
+        }
+        List<CompletableFuture<Long>> rotations = new ArrayList<>(shardCount);
+        for (WALShard shard : shards) {
+            rotations.add(shard.rotate());
+        }
+        awaitAll(rotations);
+        // not the counter: a number taken by a write that failed was never written anywhere
+        return getLastSequence();
+    }
+
+    private static long await(CompletableFuture<Long> done) {
+        try {
+            return done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to write to WAL", e.getCause());
+        }
+    }
+
+    // waits for every future, even after one failed, then reports the first failure
+    private static long awaitAll(List<CompletableFuture<Long>> futures) {
+        long last = 0;
+        RuntimeException failure = null;
+        for (CompletableFuture<Long> future : futures) {
+            try {
+                last = Math.max(last, await(future));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return last;
+    }
+
+    public Path getWalPath() {
+        return walPath;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    // sequence number of the last entry that was committed
+    public long getLastSequence() {
+        long last = 0;
+        for (WALShard shard : shards) {
+            last = Math.max(last, shard.getLastSequence());
+        }
+        return last;
+    }
+
+    /**
+     * All segments of all shards: per shard the sealed ones oldest first, then the active file.
+     * Only a replay order for a single shard, use getSegments(shard) otherwise.
+     */
+    public List<Path> getSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (WALShard shard : shards) {
+            segments.addAll(shard.getSegments());
+        }
+        return segments;
+    }
+
+    /**
+     * The segments of one shard in replay order: sealed ones oldest first, then the active file.
+     */
+    public List<Path> getSegments(int shard) throws IOException {
+        return shards.get(shard).getSegments();
+    }
+
+    /**
+     * Deletes sealed segments whose records are all at or below the given sequence,
+     * i.e. the ones a checkpoint at that sequence has made redundant.
+     */
+    public int deleteSegmentsUpTo(long sequence) throws IOException {
+        int deleted = 0;
+        for (WALShard shard : shards) {
+            deleted += shard.deleteSegmentsUpTo(sequence);
+        }
+        return deleted;
+    }
+
+    /**
+     * Last sequence number stored in a sealed segment, taken from its file name,
+     * or -1 for the active segment.
+     */
+    public long sealedSegmentLastSequence(Path segment) {
+        for (WALShard shard : shards) {
+            long sequence = shard.sealedSegmentLastSequence(segment);
+            if (sequence >= 0) {
+                return sequence;
+            }
         }
+        return -1;
+    }
+
+    public WALStats getStats() {
+        if (shardCount == 1) {
+            return shards.get(0).getStats();
+        }
+        long entries = 0;
+        long batches = 0;
+        long fsyncs = 0;
+        long bytes = 0;
+        int largestBatch = 0;
+        double totalCommitMicros = 0;
+        long maxCommitMicros = 0;
+        for (WALShard shard : shards) {
+            WALStats stats = shard.getStats();
+            entries += stats.entriesWritten();
+            batches += stats.batchesWritten();
+            fsyncs += stats.fsyncs();
+            bytes += stats.bytesWritten();
+            largestBatch = Math.max(largestBatch, stats.maxBatchSize());
+            totalCommitMicros += stats.averageCommitLatencyMicros() * stats.entriesWritten();
+            maxCommitMicros = Math.max(maxCommitMicros, stats.maxCommitLatencyMicros());
+        }
+        return new WALStats(
+                durabilityMode,
+                entries,
+                batches,
+                fsyncs,
+                bytes,
+                batches == 0 ? 0 : (double) entries / batches,
+                largestBatch,
+                entries == 0 ? 0 : totalCommitMicros / entries,
+                maxCommitMicros
+        );
+    }
+
+    // how long writers waited in log()/logAll() for their batch to be committed
+    public LatencySnapshot getCommitLatency() {
+        return commitLatency.snapshot();
+    }
+
+    // time per batch spent in FileChannel.write
+    public LatencySnapshot getWriteLatency() {
+        return writeLatency.snapshot();
+    }
+
+    public LatencySnapshot getFsyncLatency() {
+        return fsyncLatency.snapshot();
+    }
+
+    // entries enqueued but not yet picked up by a flusher
+    public int getQueueDepth() {
+        int depth = 0;
+        for (WALShard shard : shards) {
+            depth += shard.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Stops accepting new entries, lets the flushers drain their queues, and syncs what is left.
+     */
+    @PreDestroy
+    public void close() {
+        shards.forEach(WALShard::close);
     }
 }
@@ -0,0 +1,583 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.JsonWALConverter;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecordEncoder;
+import com.pm.javadynamodb.storage.wal.WALStats;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One group-commit log file with its own flusher thread, see WALService.
+ *
+ * Writers don't touch the file themselves. They put their entries on a queue and wait,
+ * while the flusher drains whatever has piled up, writes the whole batch with one
+ * FileChannel.write and (depending on the DurabilityMode) one FileChannel.force, and then
+ * wakes every writer in that batch up at once.
+ *
+ * Sequence numbers come from a counter the shards of one WALService share, so they are
+ * unique across all files and still increase within each file (only this shard's flusher
+ * takes numbers for it). With a single shard the counter is this shard's alone.
+ *
+ * The file is split into segments. "wal.log" is the active one; a rotation seals it as
+ * "wal.log.<last sequence>" and starts a new active file, so that once a checkpoint
+ * covers a sealed segment it can simply be deleted.
+ */
+final class WALShard {
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final String SEGMENT_NUMBER_FORMAT = "%020d";
+
+    private final Path walPath;
+    private final DurabilityMode durabilityMode;
+    private final long fsyncIntervalMillis;
+    private final int maxBatchSize;
+    private final AtomicLong sequenceCounter;
+    private final String flusherName;
+    private final ChannelOpener channelOpener;
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private FileChannel channel;
+
+    // flusher-owned: the encoder remembers which table names this file has interned
+    private WALRecordEncoder encoder;
+    private final BinaryWriter batchBuffer = new BinaryWriter(64 * 1024);
+    private volatile long lastSequence;
+    private boolean activeSegmentHasRecords;
+    // set when a failed batch couldn't be cut off again; nothing may be appended behind it
+    private boolean broken;
+    private Thread flusher;
+    private volatile boolean running;
+
+    // only the flusher thread writes these, readers just take a snapshot through getStats()
+    private final AtomicLong entriesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private volatile int largestBatch;
+    // shared with the other shards, LatencyHistogram takes concurrent recorders
+    private final LatencyHistogram commitLatency;
+    private final LatencyHistogram writeLatency;
+    private final LatencyHistogram fsyncLatency;
+
+    // flusher-local bookkeeping for FSYNC_INTERVAL
+    private long lastForceNanos;
+    private boolean unforcedWrites;
+
+    // Entries waiting for the flusher, plus the future their writer is blocked on. Usually one
+    // entry; a batch write hands over all of its entries together so they share one write.
+    // A PendingWrite with rotate = true carries no entries and asks the flusher to seal the segment.
+    private record PendingWrite(List<WALEntry> entries, CompletableFuture<Long> done, long enqueuedNanos, boolean rotate) {
+    }
+
+    // opens the segment files; FileChannel::open, except in tests that need a failing disk
+    @FunctionalInterface
+    interface ChannelOpener {
+        FileChannel open(Path path, OpenOption... options) throws IOException;
+    }
+
+    WALShard(Path walPath, DurabilityMode durabilityMode, long fsyncIntervalMillis, int maxBatchSize,
+             AtomicLong sequenceCounter, String flusherName, ChannelOpener channelOpener,
+             LatencyHistogram commitLatency, LatencyHistogram writeLatency, LatencyHistogram fsyncLatency) {
+        this.walPath = walPath;
+        this.durabilityMode = durabilityMode;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.sequenceCounter = sequenceCounter;
+        this.flusherName = flusherName;
+        this.channelOpener = channelOpener;
+        this.commitLatency = commitLatency;
+        this.writeLatency = writeLatency;
+        this.fsyncLatency = fsyncLatency;
+    }
+
+    /**
+     * Converts a legacy JSON log, cuts off a torn tail and opens the file. Afterwards
+     * getLastSequence() tells where this file's numbering stopped; the flusher only
+     * runs once start() is called.
+     */
+    void open() {
+        try {
+            convertLegacyJsonLog();
+            openForAppend();
+        } catch (IOException e) {
+            // If we can't write to the log, it's a critical failure.
+            throw new RuntimeException("Failed to initialise WAL writer", e);
+        }
+    }
+
+    void start() {
+        running = true;
+        lastForceNanos = System.nanoTime();
+        flusher = new Thread(this::runFlusher, flusherName);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // hands the entries to the flusher, the future completes with the sequence of the last one
+    CompletableFuture<Long> append(List<WALEntry> entries) {
+        return enqueue(new PendingWrite(entries, new CompletableFuture<>(), System.nanoTime(), false));
+    }
+
+    // future completes with the last sequence in the sealed segments, see WALService.rotate()
+    CompletableFuture<Long> rotate() {
+        return enqueue(new PendingWrite(null, new CompletableFuture<>(), System.nanoTime(), true));
+    }
+
+    private CompletableFuture<Long> enqueue(PendingWrite pending) {
+        if (!running) {
+            throw new IllegalStateException("WAL is not running");
+        }
+        queue.add(pending);
+        // close() may have run in between, and once the flusher has done its last drain nobody
+        // would complete the entry. If the flusher took it after all, it commits or fails it.
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("WAL is not running");
+        }
+        return pending.done();
+    }
+
+    Path getWalPath() {
+        return walPath;
+    }
+
+    // sequence number of the last entry this file committed
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * All segments in replay order: sealed ones oldest first, then the active file.
+     */
+    List<Path> getSegments() throws IOException {
+        List<Path> segments = new ArrayList<>(listSealedSegments());
+        if (Files.exists(walPath)) {
+            segments.add(walPath);
+        }
+        return segments;
+    }
+
+    int deleteSegmentsUpTo(long sequence) throws IOException {
+        int deleted = 0;
+        for (Path segment : listSealedSegments()) {
+            if (sealedSegmentLastSequence(segment) <= sequence) {
+                Files.deleteIfExists(segment);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // last sequence of a sealed segment of this file, -1 for anything else
+    long sealedSegmentLastSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        String prefix = walPath.getFileName() + ".";
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private List<Path> listSealedSegments() throws IOException {
+        Path directory = walPath.toAbsolutePath().getParent();
+        String prefix = walPath.getFileName() + ".";
+        List<Path> sealed = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                if (sealedSegmentLastSequence(file) >= 0) {
+                    sealed.add(file);
+                }
+            }
+        }
+        sealed.sort(Comparator.comparingLong(this::sealedSegmentLastSequence));
+        return sealed;
+    }
+
+    /**
+     * True if the file holds records that no checkpoint has made redundant yet:
+     * a sealed segment (those are only ever created with records in them) or
+     * records in the active file. Doesn't open anything for writing.
+     */
+    boolean hasRecords() throws IOException {
+        if (!listSealedSegments().isEmpty()) {
+            return true;
+        }
+        if (!Files.exists(walPath)) {
+            return false;
+        }
+        if (JsonWALConverter.isJsonLog(walPath)) {
+            return Files.size(walPath) > 0;
+        }
+        try (WALReader reader = WALReader.open(walPath)) {
+            reader.skipToEnd();
+            return reader.validLength() > 0 && reader.lastSequence() > reader.baseSequence();
+        }
+    }
+
+    WALStats getStats() {
+        long batches = batchesWritten.get();
+        long entries = entriesWritten.get();
+        return new WALStats(
+                durabilityMode,
+                entries,
+                batches,
+                fsyncs.get(),
+                bytesWritten.get(),
+                batches == 0 ? 0 : (double) entries / batches,
+                largestBatch,
+                entries == 0 ? 0 : totalCommitNanos.get() / 1_000.0 / entries,
+                TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get())
+        );
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting new entries, lets the flusher drain the queue, and syncs what is left.
+     */
+    void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (durabilityMode != DurabilityMode.OS_BUFFERED) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close WAL cleanly: " + e.getMessage());
+        }
+    }
+
+    // -------------------- Startup ------------------------------------
+
+    /**
+     * If the log on disk is still in the old JSON-lines format, convert it once and keep
+     * the original next to it as a backup.
+     */
+    private void convertLegacyJsonLog() throws IOException {
+        if (!JsonWALConverter.isJsonLog(walPath)) {
+            return;
+        }
+        Path converted = walPath.resolveSibling(walPath.getFileName() + ".converting");
+        Path backup = walPath.resolveSibling(walPath.getFileName() + ".json.bak");
+
+        long entries = JsonWALConverter.convert(walPath, converted);
+        Files.move(walPath, backup, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(converted, walPath, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Converted JSON WAL to binary format (" + entries + " entries), backup at " + backup);
+    }
+
+    /**
+     * Checks the existing log, cuts off a torn tail left by a crash so new records
+     * don't end up behind garbage, and opens the file for appending.
+     */
+    private void openForAppend() throws IOException {
+        long validLength = 0;
+        List<String> tableNames = List.of();
+
+        // If we crashed half way through a rotation the active file may be missing,
+        // the sealed segments still tell us where the numbering has to continue.
+        List<Path> sealed = listSealedSegments();
+        long baseSequence = sealed.isEmpty() ? 0 : sealedSegmentLastSequence(sealed.get(sealed.size() - 1));
+        lastSequence = baseSequence;
+
+        if (Files.exists(walPath)) {
+            try (WALReader reader = WALReader.open(walPath)) {
+                reader.skipToEnd();
+                validLength = reader.validLength();
+                if (validLength > 0) {
+                    baseSequence = reader.baseSequence();
+                    lastSequence = reader.lastSequence();
+                    tableNames = reader.tableNames();
+                }
+                if (reader.hitCorruptTail()) {
+                    System.err.println("WAL has a torn tail, truncating it at byte " + validLength);
+                }
+            }
+        }
+
+        // Open the WAL file for writing. Create it if it doesn't exist.
+        channel = channelOpener.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        encoder = new WALRecordEncoder(tableNames);
+        activeSegmentHasRecords = lastSequence > baseSequence;
+
+        if (validLength == 0) {
+            writeSegmentHeader(baseSequence);
+        }
+    }
+
+    private void writeSegmentHeader(long baseSequence) throws IOException {
+        batchBuffer.clear();
+        WALRecordEncoder.writeFileHeader(batchBuffer, baseSequence);
+        writeBatchBuffer();
+        channel.force(true);
+    }
+
+    // -------------------- Flusher thread ------------------------------------
+
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        long pollMillis = durabilityMode == DurabilityMode.FSYNC_INTERVAL ? fsyncIntervalMillis : IDLE_POLL_MILLIS;
+
+        while (running || !queue.isEmpty()) {
+            PendingWrite first;
+            try {
+                first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // nobody interrupts us on purpose, just re-check the running flag
+                continue;
+            }
+
+            if (first == null) {
+                forceIfIntervalElapsed();
+                continue;
+            }
+
+            // take everything that queued up behind the first entry, up to one batch
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            commit(batch);
+            batch.clear();
+        }
+
+        // anything that raced in after close() can no longer be written
+        PendingWrite late;
+        while ((late = queue.poll()) != null) {
+            late.done().completeExceptionally(new IllegalStateException("WAL is not running"));
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        // rotation requests split the batch: everything before one goes into the old segment
+        List<PendingWrite> run = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            if (!pending.rotate()) {
+                run.add(pending);
+                continue;
+            }
+            commitRun(run);
+            run.clear();
+            rotateSegment(pending);
+        }
+        commitRun(run);
+    }
+
+    private void rotateSegment(PendingWrite request) {
+        if (!activeSegmentHasRecords) {
+            request.done().complete(lastSequence);
+            return;
+        }
+
+        try {
+            force();
+            channel.close();
+
+            Path sealed = walPath.resolveSibling(walPath.getFileName() + "." + String.format(SEGMENT_NUMBER_FORMAT, lastSequence));
+            Files.move(walPath, sealed, StandardCopyOption.ATOMIC_MOVE);
+
+            channel = channelOpener.open(walPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            writeSegmentHeader(lastSequence);
+            encoder = new WALRecordEncoder();
+            activeSegmentHasRecords = false;
+            request.done().complete(lastSequence);
+        } catch (IOException e) {
+            // without an open segment nothing else can be written, so stop accepting entries
+            running = false;
+            request.done().completeExceptionally(new RuntimeException("Failed to rotate WAL segment", e));
+        }
+    }
+
+    private void commitRun(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (broken) {
+            RuntimeException failure = new IllegalStateException("WAL is not running");
+            batch.forEach(pending -> pending.done().completeExceptionally(failure));
+            return;
+        }
+        batchBuffer.clear();
+        // where the file and the encoder's interned tables stood before this run, to go back to if it fails
+        long batchStart;
+        try {
+            batchStart = channel.position();
+        } catch (IOException e) {
+            RuntimeException failure = new RuntimeException("Failed to write to WAL", e);
+            batch.forEach(pending -> pending.done().completeExceptionally(failure));
+            return;
+        }
+        int internedAtBatchStart = encoder.internedTableCount();
+        List<PendingWrite> written = new ArrayList<>(batch.size());
+        List<Long> sequences = new ArrayList<>(batch.size());
+        int entryCount = 0;
+        // the numbers the written entries took, to give them back if the write fails
+        long firstTaken = 0;
+        long numbersTaken = 0;
+
+        for (PendingWrite pending : batch) {
+            int start = batchBuffer.position();
+            int internedTables = encoder.internedTableCount();
+            // a transaction takes a number per write, see WALEntry.sequenceSpan
+            int count = 0;
+            for (WALEntry entry : pending.entries()) {
+                count += entry.sequenceSpan();
+            }
+            // a block of numbers per writer, so its entries stay consecutive even next to other shards
+            long first = sequenceCounter.getAndAdd(count) + 1;
+            try {
+                long next = first;
+                for (WALEntry entry : pending.entries()) {
+                    next += entry.sequenceSpan();
+                    encoder.encode(next - 1, entry, batchBuffer);
+                }
+                written.add(pending);
+                sequences.add(first + count - 1);
+                firstTaken = written.size() == 1 ? first : firstTaken;
+                numbersTaken += count;
+                entryCount += pending.entries().size();
+            } catch (RuntimeException e) {
+                // one bad writer must not fail the rest of the batch; its entries go all or nothing
+                batchBuffer.position(start);
+                encoder.forgetTablesFrom(internedTables);
+                // give the numbers back unless another shard has taken some since (then it's just a gap)
+                sequenceCounter.compareAndSet(first + count - 1, first - 1);
+                pending.done().completeExceptionally(new RuntimeException("Failed to encode WAL entry", e));
+            }
+        }
+
+        if (written.isEmpty()) {
+            return;
+        }
+        long sequence = sequences.get(sequences.size() - 1);
+
+        try {
+            int size = batchBuffer.position();
+            long writeStart = System.nanoTime();
+            writeBatchBuffer();
+            writeLatency.recordSince(writeStart);
+            bytesWritten.addAndGet(size);
+            unforcedWrites = true;
+
+            if (durabilityMode == DurabilityMode.FSYNC_PER_BATCH) {
+                force();
+            } else {
+                forceIfIntervalElapsed();
+            }
+        } catch (IOException e) {
+            // None of the batch may survive: its writers are told it failed, and a half-written
+            // record left at the end would stop the replay there, losing every later write.
+            // Later records must not refer to tables only this batch defined either.
+            discardFailedBatch(batchStart, internedAtBatchStart);
+            // give the numbers back if nobody else took any since or in between (other shards share the
+            // counter, going back to this shard's lastSequence could hand out their numbers again)
+            if (sequence - firstTaken + 1 == numbersTaken) {
+                sequenceCounter.compareAndSet(sequence, firstTaken - 1);
+            }
+            RuntimeException failure = new RuntimeException("Failed to write to WAL", e);
+            written.forEach(pending -> pending.done().completeExceptionally(failure));
+            return;
+        }
+
+        lastSequence = sequence;
+        activeSegmentHasRecords = true;
+        // counters first, so a writer that reads the stats after its log() returns sees its batch
+        entriesWritten.addAndGet(entryCount);
+        batchesWritten.incrementAndGet();
+        if (entryCount > largestBatch) {
+            largestBatch = entryCount;
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < written.size(); i++) {
+            PendingWrite pending = written.get(i);
+            long latency = now - pending.enqueuedNanos();
+            totalCommitNanos.addAndGet(latency * pending.entries().size());
+            maxCommitNanos.accumulateAndGet(latency, Math::max);
+            commitLatency.record(latency);
+            pending.done().complete(sequences.get(i));
+        }
+    }
+
+    private void discardFailedBatch(long batchStart, int internedTables) {
+        encoder.forgetTablesFrom(internedTables);
+        try {
+            channel.truncate(batchStart);
+            channel.position(batchStart);
+        } catch (IOException e) {
+            // we can't tell what is at the end of the file, so stop accepting entries (like a failed rotation)
+            running = false;
+            broken = true;
+            System.err.println("Failed to cut a failed batch off the WAL, it stops accepting writes: " + e.getMessage());
+        }
+    }
+
+    private void writeBatchBuffer() throws IOException {
+        batchBuffer.flip();
+        while (batchBuffer.buffer().hasRemaining()) {
+            channel.write(batchBuffer.buffer());
+        }
+    }
+
+    private void forceIfIntervalElapsed() {
+        if (durabilityMode != DurabilityMode.FSYNC_INTERVAL || !unforcedWrites) {
+            return;
+        }
+        if (System.nanoTime() - lastForceNanos < TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis)) {
+            return;
+        }
+        try {
+            force();
+        } catch (IOException e) {
+            // the writers were already acknowledged in this mode, all we can do is report it
+            System.err.println("Background WAL fsync failed: " + e.getMessage());
+        }
+    }
+
+    private void force() throws IOException {
+        // false = we only need the file contents synced, not its metadata (timestamps)
+        long start = System.nanoTime();
+        channel.force(false);
+        fsyncs.incrementAndGet();
+        lastForceNanos = System.nanoTime();
+        fsyncLatency.record(lastForceNanos - start);
+        unforcedWrites = false;
+    }
+}
@@ -0,0 +1,12 @@
+package com.pm.javadynamodb.storage.snapshot;
+
+import com.pm.javadynamodb.core.model.Table;
+
+import java.util.Map;
+
+/**
+ * The contents of a snapshot file once it has been read and verified.
+ * sequence is the last WAL record whose effects are guaranteed to be included.
+ */
+public record Snapshot(long sequence, long createdAtMillis, Map<String, Table> tables) {
+}
@@ -0,0 +1,42 @@
+package com.pm.javadynamodb.storage.snapshot;
+
+/**
+ * Layout of a snapshot file.
+ *
+ * <pre>
+ * header
+ *   int   magic         "JKSN"
+ *   short version
+ *   short reserved
+ *   long  sequence      WAL sequence number the snapshot covers
+ *   long  createdAt     epoch millis
+ *
+ * blocks (repeated), each one: byte kind, int payloadLength, payload
+ *   TABLE      table name, partition key name, sort key name (nullable), [index definitions], [key types]
+ *   PARTITION  partition key           (items that follow belong to it)
+ *   ITEM       sort key, attributes
+ *   END        no payload
+ *
+ * trailer
+ *   int   crc32c of everything before the trailer
+ *   int   magic again
+ * </pre>
+ *
+ * A snapshot without a matching trailer was never finished (or got damaged)
+ * and is ignored on startup.
+ */
+public final class SnapshotFormat {
+
+    public static final int MAGIC = 0x4A4B534E; // "JKSN"
+    public static final short VERSION = 1;
+
+    public static final byte BLOCK_TABLE = 1;
+    public static final byte BLOCK_PARTITION = 2;
+    public static final byte BLOCK_ITEM = 3;
+    public static final byte BLOCK_END = 4;
+
+    public static final int BLOCK_HEADER_SIZE = 5;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,161 @@
+package com.pm.javadynamodb.storage.snapshot;
+
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.engine.TableStore;
+import com.pm.javadynamodb.storage.index.IndexDefinitionCodec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a snapshot file back into fresh Table objects.
+ *
+ * The store behind each table comes from storeOpener. Items found in the snapshot are
+ * put into it; tables of a durable engine have none and bring their own data along.
+ *
+ * The file is streamed through a small buffer instead of being mapped, so snapshots
+ * can be larger than 2GB. Nothing is handed back unless the trailer checksum matches,
+ * a damaged snapshot throws an IOException and the caller falls back to an older one.
+ */
+public final class SnapshotReader {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+
+    private SnapshotReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static Snapshot read(Path path, Function<String, TableStore> storeOpener) throws IOException {
+        Map<String, Table> tables = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SnapshotReader(channel).readAll(path, storeOpener, tables);
+        } catch (IOException | RuntimeException e) {
+            // don't leak the stores of a snapshot we are about to give up on
+            tables.values().forEach(table -> table.getStore().close());
+            throw e;
+        }
+    }
+
+    private Snapshot readAll(Path path, Function<String, TableStore> storeOpener, Map<String, Table> tables) throws IOException {
+        ByteBuffer header = take(24);
+        if (header.getInt() != SnapshotFormat.MAGIC) {
+            throw new IOException(path + " is not a JKeyDB snapshot");
+        }
+        short version = header.getShort();
+        if (version != SnapshotFormat.VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + path);
+        }
+        header.getShort(); // reserved
+        long sequence = header.getLong();
+        long createdAt = header.getLong();
+
+        Table table = null;
+        String partitionKey = null;
+
+        try {
+            while (true) {
+                ByteBuffer blockHeader = take(SnapshotFormat.BLOCK_HEADER_SIZE);
+                byte kind = blockHeader.get();
+                int length = blockHeader.getInt();
+                if (length < 0) {
+                    throw new IOException("Corrupt block length in " + path);
+                }
+                ByteBuffer payload = take(length);
+
+                if (kind == SnapshotFormat.BLOCK_END) {
+                    break;
+                }
+                switch (kind) {
+                    case SnapshotFormat.BLOCK_TABLE -> {
+                        String tableName = BinaryReader.getString(payload);
+                        String partitionKeyName = BinaryReader.getString(payload);
+                        String sortKeyName = BinaryReader.getNullableString(payload);
+                        List<GlobalSecondaryIndex> indexes = IndexDefinitionCodec.read(payload);
+                        KeyType[] keyTypes = KeyEncoding.readKeyTypes(payload);
+                        table = new Table(tableName, partitionKeyName, keyTypes[0], sortKeyName, keyTypes[1],
+                                storeOpener.apply(tableName), indexes);
+                        if (payload.hasRemaining()) {
+                            table.setTimeToLiveAttribute(BinaryReader.getString(payload));
+                        }
+                        tables.put(table.getTableName(), table);
+                        partitionKey = null;
+                    }
+                    case SnapshotFormat.BLOCK_PARTITION -> partitionKey = BinaryReader.getString(payload);
+                    case SnapshotFormat.BLOCK_ITEM -> {
+                        if (table == null || partitionKey == null) {
+                            throw new IOException("Item outside of a partition in " + path);
+                        }
+                        String sortKey = BinaryReader.getString(payload);
+                        Item item = new Item();
+                        item.setAttributes(AttributeCodec.readAttributes(payload));
+                        item.setPrimaryKey(new Key(partitionKey, sortKey));
+                        table.getStore().put(partitionKey, sortKey, item);
+                    }
+                    default -> throw new IOException("Unknown block kind " + kind + " in " + path);
+                }
+            }
+        } catch (RuntimeException e) {
+            // decoding garbage shows up as underflows or bad tags
+            throw new IOException("Corrupt snapshot " + path, e);
+        }
+
+        int expectedCrc = (int) crc.getValue();
+        ByteBuffer trailer = takeUnchecked(8);
+        if (trailer.getInt() != expectedCrc || trailer.getInt() != SnapshotFormat.MAGIC) {
+            throw new IOException("Snapshot " + path + " failed its checksum");
+        }
+        return new Snapshot(sequence, createdAt, tables);
+    }
+
+    // the next n bytes as a slice, counted towards the checksum
+    private ByteBuffer take(int n) throws IOException {
+        ByteBuffer slice = takeUnchecked(n);
+        crc.update(slice.duplicate());
+        return slice;
+    }
+
+    private ByteBuffer takeUnchecked(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            fill(n);
+        }
+        ByteBuffer slice = buffer.slice(buffer.position(), n);
+        buffer.position(buffer.position() + n);
+        return slice;
+    }
+
+    private void fill(int n) throws IOException {
+        if (buffer.capacity() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(n);
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot ends early");
+            }
+        }
+        buffer.flip();
+    }
+}
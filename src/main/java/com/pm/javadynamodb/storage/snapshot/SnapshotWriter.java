@@ -0,0 +1,153 @@
+package com.pm.javadynamodb.storage.snapshot;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Table;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import com.pm.javadynamodb.storage.index.IndexDefinitionCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32C;
+
+/**
+ * Streams the tables map into a snapshot file (see SnapshotFormat), one table and one
+ * partition at a time. The maps are read while writers keep going, which is fine:
+ * replaying the WAL after the snapshot's sequence puts every key that changed during
+ * the scan back into its latest state.
+ *
+ * Tables whose store is durable (LSM) only get their TABLE block; their items are
+ * already in the store's own files, flushed by the checkpoint before we got here.
+ */
+public final class SnapshotWriter {
+
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final BinaryWriter out = new BinaryWriter(FLUSH_THRESHOLD + 64 * 1024);
+    private final CRC32C crc = new CRC32C();
+    private long bytesWritten;
+
+    private SnapshotWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a complete, fsynced snapshot to target.
+     *
+     * @return the size of the file in bytes
+     */
+    public static long write(Path target, long sequence, Collection<Table> tables) throws IOException {
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SnapshotWriter writer = new SnapshotWriter(channel);
+            writer.writeHeader(sequence);
+            for (Table table : tables) {
+                writer.writeTable(table);
+            }
+            writer.finish();
+            channel.force(true);
+            return writer.bytesWritten;
+        }
+    }
+
+    private void writeHeader(long sequence) throws IOException {
+        out.putInt(SnapshotFormat.MAGIC);
+        out.putByte(SnapshotFormat.VERSION >> 8);
+        out.putByte(SnapshotFormat.VERSION);
+        out.putByte(0);
+        out.putByte(0);
+        out.putLong(sequence);
+        out.putLong(System.currentTimeMillis());
+    }
+
+    private void writeTable(Table table) throws IOException {
+        int start = beginBlock(SnapshotFormat.BLOCK_TABLE);
+        out.putString(table.getTableName());
+        out.putString(table.getPartitionKeyName());
+        out.putNullableString(table.getSortKeyName());
+        // optional tail [indexes][key types][TTL attribute], the first two as in the WAL CREATE_TABLE record;
+        // each part is only there if it or one after it is needed
+        String timeToLive = table.getTimeToLiveAttribute();
+        if (!table.getIndexes().isEmpty() || table.hasTypedKeys() || timeToLive != null) {
+            IndexDefinitionCodec.write(out, table.getIndexDefinitions());
+        }
+        if (table.hasTypedKeys() || timeToLive != null) {
+            KeyEncoding.writeKeyTypes(out, table.getPartitionKeyType(), table.getSortKeyType());
+        }
+        if (timeToLive != null) {
+            out.putString(timeToLive);
+        }
+        endBlock(start);
+
+        if (table.getStore().isDurable()) {
+            return;
+        }
+
+        // scan() hands out items grouped by partition, a PARTITION block starts each group
+        String currentPartition = null;
+        try (ItemIterator items = table.getStore().scan()) {
+            while (items.hasNext()) {
+                Item item = items.next();
+                String partitionKey = item.getPrimaryKey().getPartitionKey();
+                if (!partitionKey.equals(currentPartition)) {
+                    start = beginBlock(SnapshotFormat.BLOCK_PARTITION);
+                    out.putString(partitionKey);
+                    endBlock(start);
+                    currentPartition = partitionKey;
+                }
+
+                start = beginBlock(SnapshotFormat.BLOCK_ITEM);
+                out.putString(item.getPrimaryKey().getSortKey());
+                AttributeCodec.writeAttributes(out, item.getAttributes());
+                endBlock(start);
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        endBlock(beginBlock(SnapshotFormat.BLOCK_END));
+        drain();
+
+        out.clear();
+        out.putInt((int) crc.getValue());
+        out.putInt(SnapshotFormat.MAGIC);
+        writeOut();
+    }
+
+    private int beginBlock(byte kind) {
+        out.putByte(kind);
+        int start = out.position();
+        out.putInt(0); // payload length, patched in endBlock
+        return start;
+    }
+
+    private void endBlock(int lengthPosition) throws IOException {
+        out.putIntAt(lengthPosition, out.position() - lengthPosition - Integer.BYTES);
+        if (out.position() >= FLUSH_THRESHOLD) {
+            drain();
+        }
+    }
+
+    // push the buffered blocks to the file, folding them into the running checksum
+    private void drain() throws IOException {
+        ByteBuffer pending = out.buffer().duplicate();
+        pending.flip();
+        crc.update(pending);
+        writeOut();
+    }
+
+    private void writeOut() throws IOException {
+        out.flip();
+        while (out.buffer().hasRemaining()) {
+            bytesWritten += channel.write(out.buffer());
+        }
+        out.clear();
+    }
+}
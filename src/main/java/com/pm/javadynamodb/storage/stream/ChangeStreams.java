@@ -0,0 +1,75 @@
+package com.pm.javadynamodb.storage.stream;
+
+import com.pm.javadynamodb.core.model.ChangeRecord;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The change stream of every table: one ring buffer of ChangeRecords per table, plus the
+ * WriteWatermark that tells readers which sequence numbers are safe to hand out.
+ */
+public final class ChangeStreams {
+
+    private final int bufferSize;
+    private final WriteWatermark watermark;
+    private final Map<String, SequenceRingBuffer<ChangeRecord>> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * @param bufferSize   records kept per table; 0 turns change streams off
+     * @param lastSequence sequence number of the last committed WAL record
+     */
+    public ChangeStreams(int bufferSize, LongSupplier lastSequence) {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("The change stream buffer size can't be negative");
+        }
+        this.bufferSize = bufferSize;
+        this.watermark = new WriteWatermark(lastSequence);
+    }
+
+    public boolean isEnabled() {
+        return bufferSize > 0;
+    }
+
+    /**
+     * Called by a writer before it logs anything. Returns an id for endWrite, which has to
+     * be called once the write's changes are published (or the write failed).
+     */
+    public long beginWrite() {
+        return isEnabled() ? watermark.begin() : -1;
+    }
+
+    public void publish(ChangeRecord record) {
+        if (isEnabled()) {
+            buffer(record.tableName()).publish(record);
+        }
+    }
+
+    public void endWrite(long id) {
+        if (id >= 0) {
+            watermark.end(id);
+        }
+    }
+
+    // every change with a sequence up to this one has been published
+    public long watermark() {
+        return watermark.watermark();
+    }
+
+    // the buffer of a table; a new one only holds changes after the current watermark
+    public SequenceRingBuffer<ChangeRecord> buffer(String tableName) {
+        return buffers.computeIfAbsent(tableName,
+                name -> new SequenceRingBuffer<>(bufferSize, watermark(), ChangeRecord::sequence));
+    }
+
+    // a deleted table's stream goes with it
+    public void dropTable(String tableName) {
+        buffers.remove(tableName);
+    }
+
+    // parks until some write finishes or the deadline passes, see WriteWatermark
+    public void awaitWrite(long deadlineNanos) {
+        watermark.awaitWrite(deadlineNanos);
+    }
+}
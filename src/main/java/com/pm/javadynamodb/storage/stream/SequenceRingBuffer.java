@@ -0,0 +1,86 @@
+package com.pm.javadynamodb.storage.stream;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * The most recent records of a feed (a table's changes, the WAL entries shipped to
+ * followers), each tagged with its WAL sequence number, in a fixed number of slots that
+ * writers fill round-robin without taking a lock. A writer never waits for a reader:
+ * once the buffer is full the oldest record is simply overwritten.
+ *
+ * Writers publish in the order they finish, which isn't quite sequence order (two writes
+ * to different items can overtake each other), so a read collects the matching records
+ * and sorts them. The floor remembers the highest sequence that was ever overwritten: a
+ * read from a position below it may have lost records and has to look elsewhere.
+ */
+public final class SequenceRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final ToLongFunction<T> sequenceOf;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong floor;
+
+    /**
+     * @param capacity   number of slots, rounded up to a power of two
+     * @param floor      sequence the buffer starts at, records up to it were never in here
+     * @param sequenceOf the WAL sequence number of a record
+     */
+    public SequenceRingBuffer(int capacity, long floor, ToLongFunction<T> sequenceOf) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A ring buffer needs at least one slot");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(Math.max(1, size));
+        this.mask = slots.length() - 1;
+        this.sequenceOf = sequenceOf;
+        this.floor = new AtomicLong(floor);
+    }
+
+    public void publish(T record) {
+        int slot = (int) (next.getAndIncrement() & mask);
+        T evicted;
+        do {
+            evicted = slots.get(slot);
+            if (evicted != null) {
+                // raised before the record is gone, so a reader that misses it also sees the new floor
+                floor.accumulateAndGet(sequenceOf.applyAsLong(evicted), Math::max);
+            }
+        } while (!slots.compareAndSet(slot, evicted, record));
+    }
+
+    /**
+     * Every record after this sequence is still in the buffer (or hasn't been written yet).
+     * Read it after collecting records, not before.
+     */
+    public long floor() {
+        return floor.get();
+    }
+
+    /**
+     * The records with after < sequence <= upTo, oldest first, at most limit of them.
+     */
+    public List<T> read(long after, long upTo, int limit) {
+        List<T> records = new ArrayList<>();
+        for (int i = 0; i < slots.length(); i++) {
+            T record = slots.get(i);
+            if (record != null) {
+                long sequence = sequenceOf.applyAsLong(record);
+                if (sequence > after && sequence <= upTo) {
+                    records.add(record);
+                }
+            }
+        }
+        records.sort(Comparator.comparingLong(sequenceOf));
+        return records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+}
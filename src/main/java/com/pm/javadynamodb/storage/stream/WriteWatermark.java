@@ -0,0 +1,86 @@
+package com.pm.javadynamodb.storage.stream;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks which WAL sequence numbers are safe to hand to a reader of a feed.
+ *
+ * A write gets its sequence number inside the WAL and is published to the feed
+ * afterwards, so for a moment a later sequence can be visible while an earlier one isn't
+ * yet. A reader that took the later one as its position would never see the earlier one.
+ * To prevent that, every write registers (with the WAL position before it logs) until it
+ * has been published, and readers only go up to the watermark: the highest sequence
+ * below which nothing is still in flight.
+ *
+ * Readers that found nothing can wait here for the next write to finish.
+ */
+public final class WriteWatermark {
+
+    // a waiting reader checks again at least this often, even if no write woke it
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // sequence number of the last committed WAL record
+    private final LongSupplier lastSequence;
+    // writes between registering and publishing: id -> WAL position before they logged
+    private final Map<Long, Long> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong writeIds = new AtomicLong();
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+    public WriteWatermark(LongSupplier lastSequence) {
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Called by a writer before it logs anything. Returns an id for end(), which has to
+     * be called once the write is published (or failed).
+     */
+    public long begin() {
+        long id = writeIds.incrementAndGet();
+        // read before the write takes its sequence number, so it is below that number
+        inFlight.put(id, lastSequence.getAsLong());
+        return id;
+    }
+
+    public void end(long id) {
+        inFlight.remove(id);
+        if (!waiters.isEmpty()) {
+            waiters.forEach(LockSupport::unpark);
+        }
+    }
+
+    /**
+     * Every write with a sequence up to this one has been published.
+     */
+    public long watermark() {
+        // the WAL position first: a write that registers after this read gets a larger number
+        long watermark = lastSequence.getAsLong();
+        for (long before : inFlight.values()) {
+            watermark = Math.min(watermark, before);
+        }
+        return watermark;
+    }
+
+    /**
+     * Parks the calling thread until some write finishes or the deadline passes, whichever
+     * comes first. Callers check again for records afterwards.
+     */
+    public void awaitWrite(long deadlineNanos) {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+        } finally {
+            waiters.remove(current);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.pm.javadynamodb.storage.wal;
+
+/**
+ * How hard the WAL flusher pushes a batch towards the disk before it
+ * tells the waiting writers that their entries are committed.
+ */
+public enum DurabilityMode {
+    // write the batch and fsync it before acknowledging anyone (safest, default)
+    FSYNC_PER_BATCH,
+
+    // acknowledge after the write; fsync at most once every N milliseconds in the background
+    FSYNC_INTERVAL,
+
+    // acknowledge after the write and let the OS page cache decide when it reaches the disk
+    OS_BUFFERED
+}
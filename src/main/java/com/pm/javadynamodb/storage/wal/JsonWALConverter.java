@@ -0,0 +1,104 @@
+package com.pm.javadynamodb.storage.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One-shot converter from the old JSON-lines wal.log to the binary WAL format.
+ *
+ * WALService runs it automatically when it finds a JSON log on startup, but it can
+ * also be used by hand:
+ *   java -cp app.jar com.pm.javadynamodb.storage.wal.JsonWALConverter wal.log wal.bin
+ */
+public final class JsonWALConverter {
+
+    private JsonWALConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: JsonWALConverter <json wal> <binary wal>");
+            System.exit(1);
+        }
+        long converted = convert(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Converted " + converted + " WAL entries.");
+    }
+
+    // the JSON log is one object per line, the binary log starts with the magic number
+    public static boolean isJsonLog(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (!Character.isWhitespace(b)) {
+                    return b == '{';
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes every readable entry of jsonLog into a fresh binary log at binaryLog,
+     * numbering them from 1. Lines that can't be parsed are reported and skipped,
+     * just like the JSON replay used to do.
+     */
+    public static long convert(Path jsonLog, Path binaryLog) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        WALRecordEncoder encoder = new WALRecordEncoder();
+        BinaryWriter out = new BinaryWriter(64 * 1024);
+        long sequence = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(jsonLog);
+             FileChannel channel = FileChannel.open(binaryLog,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            WALRecordEncoder.writeFileHeader(out, 0);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    WALEntry entry = objectMapper.readValue(line, WALEntry.class);
+                    if (entry.operationType() == OperationType.DELETE_ITEM
+                            && (entry.item() == null || entry.item().getPrimaryKey() == null)) {
+                        continue; // the JSON replay ignored these too
+                    }
+                    encoder.encode(sequence + 1, entry, out);
+                    sequence++;
+                } catch (Exception e) {
+                    System.err.println("Skipping unreadable WAL entry: " + line);
+                }
+
+                if (out.position() > 32 * 1024) {
+                    drain(out, channel);
+                }
+            }
+
+            drain(out, channel);
+            channel.force(true);
+        }
+        return sequence;
+    }
+
+    private static void drain(BinaryWriter out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.buffer().hasRemaining()) {
+            channel.write(out.buffer());
+        }
+        out.clear();
+    }
+}
@@ -4,5 +4,22 @@ public enum OperationType {
     CREATE_TABLE,
     PUT_ITEM,
     DELETE_ITEM,
-    DELETE_TABLE
+    DELETE_TABLE,
+    // sets (or clears) the attribute that holds an item's expiry time
+    UPDATE_TIME_TO_LIVE,
+    // new values of some attributes of one item (and attributes it lost), see UpdateExpression
+    UPDATE_ITEM,
+    // item writes of a TransactWriteItems, applied all together or not at all
+    TRANSACTION;
+
+    // changes to a whole table rather than to one item
+    public boolean isTableChange() {
+        return this == CREATE_TABLE || this == DELETE_TABLE || this == UPDATE_TIME_TO_LIVE;
+    }
+
+    // records that can't be routed to one partition: every WAL shard gets them (a transaction only the
+    // shards it writes to) and replay treats them as barriers
+    public boolean isBarrier() {
+        return isTableChange() || this == TRANSACTION;
+    }
 }
@@ -0,0 +1,38 @@
+package com.pm.javadynamodb.storage.wal;
+
+/**
+ * What WALService.logBatch did with each entry of a batch, in the order of the list: the
+ * sequence number it was written with, or why it wasn't written. With several WAL shards
+ * every shard writes its part of a batch as one unit, so one part can fail while the
+ * others are committed (and will be replayed); only the committed entries may be applied.
+ */
+public record WALBatchResult(long[] sequences, RuntimeException[] failures) {
+
+    public int size() {
+        return sequences.length;
+    }
+
+    public boolean committed(int index) {
+        return failures[index] == null;
+    }
+
+    // only meaningful for a committed entry
+    public long sequence(int index) {
+        return sequences[index];
+    }
+
+    // null if the entry was written
+    public RuntimeException failure(int index) {
+        return failures[index];
+    }
+
+    // null if every entry was written
+    public RuntimeException firstFailure() {
+        for (RuntimeException failure : failures) {
+            if (failure != null) {
+                return failure;
+            }
+        }
+        return null;
+    }
+}
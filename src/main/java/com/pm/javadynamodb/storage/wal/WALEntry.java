@@ -1,7 +1,13 @@
 package com.pm.javadynamodb.storage.wal;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
 import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+
+import java.util.List;
+import java.util.Map;
 
 // This annotation tells Jackson to not include fields that are null in the JSON output.
 // This will keep log file clean.
@@ -13,22 +19,103 @@ public record WALEntry(
         // field for CREATE_TABLE
         String partitionKeyName,
         String sortKeyName,
+        // key types of a CREATE_TABLE, null means STRING
+        KeyType partitionKeyType,
+        KeyType sortKeyType,
+
+        // field for PUT/DELETE; for UPDATE_ITEM the stored key plus the new values of the changed attributes
+        Item item,
+
+        // global secondary indexes of a CREATE_TABLE, null if there are none
+        List<GlobalSecondaryIndex> indexes,
+
+        // field for UPDATE_TIME_TO_LIVE, null turns expiry off
+        String timeToLiveAttribute,
+
+        // attributes an UPDATE_ITEM removed, null for every other entry
+        List<String> removedAttributes,
 
-        // field for PUT/DELETE
-        Item item
+        // the PUT/DELETE/UPDATE_ITEM entries of a TRANSACTION, null for every other entry
+        List<WALEntry> operations,
+
+        // the WAL shards a TRANSACTION was written to, in ascending order; null means every
+        // shard (a WAL with one shard, or a record written before transactions were routed)
+        List<Integer> shards
 ) {
     // constructor for PUT/DELETE
     public static WALEntry forItem(OperationType op, String table, Item item) {
-        return new WALEntry(op, table, null, null, item);
+        return new WALEntry(op, table, null, null, null, null, item, null, null, null, null, null);
     }
 
     // Constructor for CREATE_TABLE
     public static WALEntry forTable(String table, String pkName, String skName) {
-        return new WALEntry(OperationType.CREATE_TABLE, table, pkName, skName, null);
+        return forTable(table, pkName, skName, null);
+    }
+
+    // CREATE_TABLE of a table with secondary indexes
+    public static WALEntry forTable(String table, String pkName, String skName, List<GlobalSecondaryIndex> indexes) {
+        return forTable(table, pkName, null, skName, null, indexes);
+    }
+
+    // CREATE_TABLE with typed keys; STRING is stored as null so old and new entries compare equal
+    public static WALEntry forTable(String table, String pkName, KeyType pkType, String skName, KeyType skType,
+                                    List<GlobalSecondaryIndex> indexes) {
+        return new WALEntry(OperationType.CREATE_TABLE, table, pkName, skName,
+                pkType == KeyType.STRING ? null : pkType,
+                skType == KeyType.STRING ? null : skType,
+                null,
+                indexes == null || indexes.isEmpty() ? null : List.copyOf(indexes),
+                null, null, null, null);
     }
 
     public static WALEntry forTableDeletion(String table) {
         return new WALEntry(OperationType.DELETE_TABLE, table,
-                null, null, null);
+                null, null, null, null, null, null, null, null, null, null);
+    }
+
+    // UPDATE_ITEM: only what changed, the rest of the item stays as it is
+    public static WALEntry forUpdate(String table, Key storedKey, Map<String, Object> set, List<String> removed) {
+        Item changes = new Item();
+        changes.setPrimaryKey(storedKey);
+        changes.setAttributes(set);
+        return new WALEntry(OperationType.UPDATE_ITEM, table,
+                null, null, null, null, changes, null, null, List.copyOf(removed), null, null);
+    }
+
+    public static WALEntry forTimeToLive(String table, String attributeName) {
+        return new WALEntry(OperationType.UPDATE_TIME_TO_LIVE, table,
+                null, null, null, null, null, null, attributeName, null, null, null);
+    }
+
+    /**
+     * TRANSACTION: item writes that replay applies all together or not at all, since they are
+     * one record. It carries the table of its first write, so its record starts like any other.
+     */
+    public static WALEntry forTransaction(List<WALEntry> operations) {
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("A transaction needs at least one write");
+        }
+        for (WALEntry operation : operations) {
+            if (operation.operationType().isBarrier()) {
+                throw new IllegalArgumentException("A transaction can only hold item writes, not " + operation.operationType());
+            }
+        }
+        return new WALEntry(OperationType.TRANSACTION, operations.get(0).tableName(),
+                null, null, null, null, null, null, null, null, List.copyOf(operations), null);
+    }
+
+    // the same transaction, marked with the shards it goes to (see WALService)
+    public WALEntry withShards(List<Integer> shards) {
+        return new WALEntry(operationType, tableName, partitionKeyName, sortKeyName, partitionKeyType, sortKeyType,
+                item, indexes, timeToLiveAttribute, removedAttributes, operations, List.copyOf(shards));
+    }
+
+    /**
+     * How many sequence numbers the entry takes: one, except for a transaction, which takes
+     * one per write (the record itself has the last of them), so every write of it can be
+     * told apart in a change stream.
+     */
+    public int sequenceSpan() {
+        return operations == null ? 1 : operations.size();
     }
 }
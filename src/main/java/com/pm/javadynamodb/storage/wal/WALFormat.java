@@ -0,0 +1,77 @@
+package com.pm.javadynamodb.storage.wal;
+
+/**
+ * Layout of the binary write-ahead log.
+ *
+ * <pre>
+ * file header (16 bytes)
+ *   int   magic          "JKWL"
+ *   short version
+ *   short reserved
+ *   long  baseSequence   sequence number of the record just before this file starts
+ *
+ * record (repeated)
+ *   int   payloadLength
+ *   int   crc32c(payload)
+ *   payload:
+ *     byte    op code                  (see below)
+ *     varlong sequence number
+ *     varint  table id                 (interned, see WALRecordEncoder)
+ *     [string table name]              (only the first time an id appears in the file)
+ *     ... op specific fields
+ *
+ * transaction fields
+ *   varint  number of writes
+ *   per write: byte op code, varint table id [string table name], ... op specific fields
+ *   [varint number of shards, varint shard...]   (only with several WAL shards: the ones it was written to)
+ * </pre>
+ *
+ * A record is only trusted if its length fits in the file and its CRC matches,
+ * so a write that was torn by a crash shows up as a bad tail and nothing more.
+ */
+public final class WALFormat {
+
+    public static final int MAGIC = 0x4A4B574C; // "JKWL"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    // anything bigger than this is a garbage length field, not a real record
+    public static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    public static final byte OP_CREATE_TABLE = 1;
+    public static final byte OP_PUT_ITEM = 2;
+    public static final byte OP_DELETE_ITEM = 3;
+    public static final byte OP_DELETE_TABLE = 4;
+    public static final byte OP_UPDATE_TIME_TO_LIVE = 5;
+    public static final byte OP_UPDATE_ITEM = 6;
+    public static final byte OP_TRANSACTION = 7;
+
+    private WALFormat() {
+    }
+
+    public static byte opCode(OperationType type) {
+        return switch (type) {
+            case CREATE_TABLE -> OP_CREATE_TABLE;
+            case PUT_ITEM -> OP_PUT_ITEM;
+            case DELETE_ITEM -> OP_DELETE_ITEM;
+            case DELETE_TABLE -> OP_DELETE_TABLE;
+            case UPDATE_TIME_TO_LIVE -> OP_UPDATE_TIME_TO_LIVE;
+            case UPDATE_ITEM -> OP_UPDATE_ITEM;
+            case TRANSACTION -> OP_TRANSACTION;
+        };
+    }
+
+    public static OperationType operationType(byte opCode) {
+        return switch (opCode) {
+            case OP_CREATE_TABLE -> OperationType.CREATE_TABLE;
+            case OP_PUT_ITEM -> OperationType.PUT_ITEM;
+            case OP_DELETE_ITEM -> OperationType.DELETE_ITEM;
+            case OP_DELETE_TABLE -> OperationType.DELETE_TABLE;
+            case OP_UPDATE_TIME_TO_LIVE -> OperationType.UPDATE_TIME_TO_LIVE;
+            case OP_UPDATE_ITEM -> OperationType.UPDATE_ITEM;
+            case OP_TRANSACTION -> OperationType.TRANSACTION;
+            default -> throw new IllegalStateException("Unknown WAL op code: " + opCode);
+        };
+    }
+}
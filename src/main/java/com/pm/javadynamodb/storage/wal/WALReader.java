@@ -0,0 +1,267 @@
+package com.pm.javadynamodb.storage.wal;
+
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryReader;
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.index.IndexDefinitionCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a binary WAL file through a read-only memory mapping, so records are
+ * checked and decoded right out of the page cache without copying the file
+ * into heap buffers first.
+ *
+ * next() returns records in file order and null once it reaches the end of the
+ * file or the first record whose length or CRC doesn't check out. Everything
+ * from that point on is a torn tail: hitCorruptTail() tells you it happened
+ * and validLength() where the good part of the file ends.
+ */
+public final class WALReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long baseSequence;
+    private final List<String> tableNames;
+    private final CRC32C crc = new CRC32C();
+
+    private long lastSequence;
+    private boolean corruptTail;
+    private boolean finished;
+
+    private WALReader(FileChannel channel, ByteBuffer buffer, long baseSequence, List<String> tableNames) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.baseSequence = baseSequence;
+        this.lastSequence = baseSequence;
+        this.tableNames = tableNames;
+    }
+
+    /**
+     * Reads framed records that arrived some other way than in a file (replication ships
+     * them over a socket). tableNames are the names interned by earlier records of the same
+     * stream; names this batch interns are added to the list, so the next batch can go on
+     * with it.
+     */
+    public static WALReader forRecords(ByteBuffer records, List<String> tableNames) {
+        return new WALReader(null, records, 0, tableNames);
+    }
+
+    public static WALReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("WAL file " + path + " is larger than 2GB and cannot be mapped");
+            }
+
+            if (size < WALFormat.HEADER_SIZE) {
+                // empty, or the header itself never made it to disk
+                WALReader reader = new WALReader(channel, ByteBuffer.allocate(0), 0, new ArrayList<>());
+                reader.corruptTail = size > 0;
+                reader.finished = true;
+                return reader;
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int magic = mapped.getInt();
+            short version = mapped.getShort();
+            mapped.getShort(); // reserved
+            long baseSequence = mapped.getLong();
+
+            if (magic != WALFormat.MAGIC) {
+                throw new IOException("File " + path + " is not a JKeyDB binary WAL");
+            }
+            if (version != WALFormat.VERSION) {
+                throw new IOException("Unsupported WAL version " + version + " in " + path);
+            }
+            return new WALReader(channel, mapped, baseSequence, new ArrayList<>());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public WALRecord next() {
+        if (finished) {
+            return null;
+        }
+
+        ByteBuffer payload = nextPayload();
+        if (payload == null) {
+            return null;
+        }
+
+        byte opCode = payload.get();
+        long sequence = BinaryReader.getVarLong(payload);
+        String tableName = readTableName(payload);
+        WALEntry entry = readFields(WALFormat.operationType(opCode), tableName, payload);
+
+        lastSequence = sequence;
+        return new WALRecord(sequence, entry);
+    }
+
+    /**
+     * Walks the rest of the file checking framing and CRCs but only decoding the
+     * record prefix (sequence and table name). Used on startup to find where the
+     * good part of the log ends without paying for attribute decoding.
+     */
+    public void skipToEnd() {
+        ByteBuffer payload;
+        while ((payload = nextPayload()) != null) {
+            byte opCode = payload.get();
+            lastSequence = BinaryReader.getVarLong(payload);
+            String tableName = readTableName(payload);
+            if (opCode == WALFormat.OP_TRANSACTION) {
+                // its writes may intern table names of their own, which later records only refer to by id
+                readFields(OperationType.TRANSACTION, tableName, payload);
+            }
+        }
+    }
+
+    public long baseSequence() {
+        return baseSequence;
+    }
+
+    // sequence number of the last good record, or baseSequence if there were none
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public boolean hitCorruptTail() {
+        return corruptTail;
+    }
+
+    // byte offset just after the last good record
+    public long validLength() {
+        return buffer.capacity() == 0 ? 0 : buffer.position();
+    }
+
+    // interned table names seen so far, in id order
+    public List<String> tableNames() {
+        return tableNames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer nextPayload() {
+        if (finished) {
+            return null;
+        }
+
+        int remaining = buffer.remaining();
+        if (remaining == 0) {
+            finished = true;
+            return null;
+        }
+        if (remaining < WALFormat.RECORD_HEADER_SIZE) {
+            return stopAtCorruptTail();
+        }
+
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        int expectedCrc = buffer.getInt(start + Integer.BYTES);
+        int payloadStart = start + WALFormat.RECORD_HEADER_SIZE;
+
+        if (length <= 0 || length > WALFormat.MAX_RECORD_SIZE || length > buffer.limit() - payloadStart) {
+            return stopAtCorruptTail();
+        }
+
+        ByteBuffer payload = buffer.slice(payloadStart, length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return stopAtCorruptTail();
+        }
+
+        buffer.position(payloadStart + length);
+        return payload;
+    }
+
+    private ByteBuffer stopAtCorruptTail() {
+        corruptTail = true;
+        finished = true;
+        return null;
+    }
+
+    private WALEntry readFields(OperationType type, String tableName, ByteBuffer payload) {
+        return switch (type) {
+            case CREATE_TABLE -> {
+                String partitionKeyName = BinaryReader.getString(payload);
+                String sortKeyName = BinaryReader.getNullableString(payload);
+                List<GlobalSecondaryIndex> indexes = IndexDefinitionCodec.read(payload);
+                KeyType[] keyTypes = KeyEncoding.readKeyTypes(payload);
+                yield WALEntry.forTable(tableName, partitionKeyName, keyTypes[0], sortKeyName, keyTypes[1], indexes);
+            }
+            case PUT_ITEM -> {
+                Item item = new Item();
+                item.setAttributes(AttributeCodec.readAttributes(payload));
+                yield WALEntry.forItem(OperationType.PUT_ITEM, tableName, item);
+            }
+            case DELETE_ITEM -> {
+                Item item = new Item();
+                item.setPrimaryKey(new Key(BinaryReader.getString(payload), BinaryReader.getString(payload)));
+                yield WALEntry.forItem(OperationType.DELETE_ITEM, tableName, item);
+            }
+            case DELETE_TABLE -> WALEntry.forTableDeletion(tableName);
+            case UPDATE_TIME_TO_LIVE -> WALEntry.forTimeToLive(tableName, BinaryReader.getNullableString(payload));
+            case UPDATE_ITEM -> {
+                Key key = new Key(BinaryReader.getString(payload), BinaryReader.getString(payload));
+                Map<String, Object> set = AttributeCodec.readAttributes(payload);
+                int removedCount = BinaryReader.getVarInt(payload);
+                List<String> removed = new ArrayList<>(removedCount);
+                for (int i = 0; i < removedCount; i++) {
+                    removed.add(BinaryReader.getString(payload));
+                }
+                yield WALEntry.forUpdate(tableName, key, set, removed);
+            }
+            case TRANSACTION -> {
+                int count = BinaryReader.getVarInt(payload);
+                List<WALEntry> operations = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    OperationType operationType = WALFormat.operationType(payload.get());
+                    operations.add(readFields(operationType, readTableName(payload), payload));
+                }
+                if (!payload.hasRemaining()) {
+                    yield WALEntry.forTransaction(operations);
+                }
+                int shardCount = BinaryReader.getVarInt(payload);
+                List<Integer> shards = new ArrayList<>(shardCount);
+                for (int i = 0; i < shardCount; i++) {
+                    shards.add(BinaryReader.getVarInt(payload));
+                }
+                yield WALEntry.forTransaction(operations).withShards(shards);
+            }
+        };
+    }
+
+    private String readTableName(ByteBuffer payload) {
+        int tableId = BinaryReader.getVarInt(payload);
+        if (tableId == tableNames.size()) {
+            // first time this id shows up, so the name follows
+            tableNames.add(BinaryReader.getString(payload));
+        } else if (tableId > tableNames.size()) {
+            throw new IllegalStateException("WAL references unknown table id " + tableId);
+        }
+        return tableNames.get(tableId);
+    }
+}
@@ -0,0 +1,8 @@
+package com.pm.javadynamodb.storage.wal;
+
+/**
+ * A WALEntry as it was read back from the log, together with the sequence
+ * number the flusher gave it. Sequence numbers only ever go up.
+ */
+public record WALRecord(long sequence, WALEntry entry) {
+}
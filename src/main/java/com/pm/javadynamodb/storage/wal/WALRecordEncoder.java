@@ -0,0 +1,156 @@
+package com.pm.javadynamodb.storage.wal;
+
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.storage.codec.AttributeCodec;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.codec.KeyEncoding;
+import com.pm.javadynamodb.storage.index.IndexDefinitionCodec;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Turns WALEntries into framed binary records (see WALFormat).
+ *
+ * Table names are interned per file: the first record that mentions a table
+ * writes its name next to a fresh id, every later record only writes the id.
+ * Not thread safe, the WAL flusher is its only user.
+ */
+public final class WALRecordEncoder {
+
+    private final Map<String, Integer> tableIds = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+
+    public WALRecordEncoder() {
+    }
+
+    // continue a file that already has these names interned (in id order)
+    public WALRecordEncoder(List<String> knownTableNames) {
+        for (String tableName : knownTableNames) {
+            tableIds.put(tableName, tableIds.size());
+        }
+    }
+
+    // how many table names are interned so far; ids are handed out in this order
+    public int internedTableCount() {
+        return tableIds.size();
+    }
+
+    /**
+     * Forgets the names interned after internedTableCount() returned count. Used to undo a
+     * group of records that was encoded but then thrown away as a whole.
+     */
+    public void forgetTablesFrom(int count) {
+        tableIds.values().removeIf(id -> id >= count);
+    }
+
+    public static void writeFileHeader(BinaryWriter out, long baseSequence) {
+        out.putInt(WALFormat.MAGIC);
+        out.putByte(WALFormat.VERSION >> 8);
+        out.putByte(WALFormat.VERSION);
+        out.putByte(0);
+        out.putByte(0);
+        out.putLong(baseSequence);
+    }
+
+    /**
+     * Appends one framed record to out. If the entry can't be encoded the writer is
+     * rewound and nothing about this encoder changes.
+     */
+    public void encode(long sequence, WALEntry entry, BinaryWriter out) {
+        int recordStart = out.position();
+        int internedTables = tableIds.size();
+
+        try {
+            // reserve room for length + crc, we patch them once the payload is known
+            out.putInt(0);
+            out.putInt(0);
+            int payloadStart = out.position();
+
+            out.putByte(WALFormat.opCode(entry.operationType()));
+            out.putVarLong(sequence);
+            writeTableId(entry.tableName(), out);
+            writeFields(entry, out);
+
+            int payloadLength = out.position() - payloadStart;
+            ByteBuffer payload = out.buffer().duplicate();
+            payload.position(payloadStart).limit(payloadStart + payloadLength);
+            crc.reset();
+            crc.update(payload);
+
+            out.putIntAt(recordStart, payloadLength);
+            out.putIntAt(recordStart + Integer.BYTES, (int) crc.getValue());
+        } catch (RuntimeException e) {
+            out.position(recordStart);
+            forgetTablesFrom(internedTables);
+            throw e;
+        }
+    }
+
+    private void writeTableId(String tableName, BinaryWriter out) {
+        Integer tableId = tableIds.get(tableName);
+        if (tableId == null) {
+            tableId = tableIds.size();
+            tableIds.put(tableName, tableId);
+            out.putVarInt(tableId);
+            out.putString(tableName);
+        } else {
+            out.putVarInt(tableId);
+        }
+    }
+
+    private void writeFields(WALEntry entry, BinaryWriter out) {
+        switch (entry.operationType()) {
+            case CREATE_TABLE -> {
+                out.putString(entry.partitionKeyName());
+                out.putNullableString(entry.sortKeyName());
+                // optional tail [indexes][key types], records of plain tables look like they always did
+                boolean typedKeys = entry.partitionKeyType() != null || entry.sortKeyType() != null;
+                if (entry.indexes() != null || typedKeys) {
+                    IndexDefinitionCodec.write(out, entry.indexes() == null ? List.of() : entry.indexes());
+                }
+                if (typedKeys) {
+                    KeyEncoding.writeKeyTypes(out,
+                            entry.partitionKeyType() == null ? KeyType.STRING : entry.partitionKeyType(),
+                            entry.sortKeyType() == null ? KeyType.STRING : entry.sortKeyType());
+                }
+            }
+            case PUT_ITEM -> AttributeCodec.writeAttributes(out, entry.item().getAttributes());
+            case DELETE_ITEM -> {
+                Key key = entry.item().getPrimaryKey();
+                out.putString(key.getPartitionKey());
+                out.putString(key.getSortKey());
+            }
+            case DELETE_TABLE -> {
+                // the table id says it all
+            }
+            case UPDATE_TIME_TO_LIVE -> out.putNullableString(entry.timeToLiveAttribute());
+            case UPDATE_ITEM -> {
+                Key key = entry.item().getPrimaryKey();
+                out.putString(key.getPartitionKey());
+                out.putString(key.getSortKey());
+                AttributeCodec.writeAttributes(out, entry.item().getAttributes());
+                out.putVarInt(entry.removedAttributes().size());
+                entry.removedAttributes().forEach(out::putString);
+            }
+            case TRANSACTION -> {
+                // each write is framed like a record of its own, minus length, crc and sequence
+                out.putVarInt(entry.operations().size());
+                for (WALEntry operation : entry.operations()) {
+                    out.putByte(WALFormat.opCode(operation.operationType()));
+                    writeTableId(operation.tableName(), out);
+                    writeFields(operation, out);
+                }
+                // optional tail, only in a WAL with several shards
+                if (entry.shards() != null) {
+                    out.putVarInt(entry.shards().size());
+                    entry.shards().forEach(out::putVarInt);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.pm.javadynamodb.storage.wal;
+
+/**
+ * A point-in-time copy of the group-commit counters kept by the WALService.
+ * Batch size tells us how well writers are being grouped, commit latency is
+ * the time an entry waited from being enqueued until its batch was committed.
+ */
+public record WALStats(
+        DurabilityMode durabilityMode,
+        long entriesWritten,
+        long batchesWritten,
+        long fsyncs,
+        long bytesWritten,
+        double averageBatchSize,
+        int maxBatchSize,
+        double averageCommitLatencyMicros,
+        long maxCommitLatencyMicros
+) {
+}
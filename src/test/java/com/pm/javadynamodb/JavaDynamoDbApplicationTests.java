@@ -1,11 +1,29 @@
 package com.pm.javadynamodb;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
 
 @SpringBootTest
 class JavaDynamoDbApplicationTests {
 
+    // the context opens a WAL and writes snapshots; by default that would be the wal.log
+    // checked in at the repo root, which startup converts to the binary format in place
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void dataLocations(DynamicPropertyRegistry registry) {
+        registry.add("jkeydb.wal.path", () -> dataDir.resolve("wal.log").toString());
+        registry.add("jkeydb.snapshot.dir", () -> dataDir.resolve("snapshots").toString());
+        registry.add("jkeydb.lsm.dir", () -> dataDir.resolve("data").toString());
+        registry.add("jkeydb.tiering.dir", () -> dataDir.resolve("spill").toString());
+    }
+
     @Test
     void contextLoads() {
     }
@@ -0,0 +1,135 @@
+package com.pm.javadynamodb.api.wire;
+
+import com.pm.javadynamodb.client.JKeyDBClient;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.metrics.LatencySnapshot;
+import com.pm.javadynamodb.storage.service.StorageService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Same puts and gets, once through the REST endpoints (JSON over HTTP/1.1) and once
+ * through the binary wire protocol (one pipelined connection shared by all client threads),
+ * against one running application. Prints ops/sec and latency percentiles for each.
+ * The WAL runs in OS_BUFFERED mode so the numbers are about the protocol, not the fsync.
+ *
+ * Not part of the normal build, run it with: mvn test -Pbenchmarks -Dtest=WireProtocolBenchmarkTest
+ * Size it with -Djkeydb.bench.clients=64 -Djkeydb.bench.requests=5000.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "jkeydb.wire.enabled=true",
+        "jkeydb.wire.port=0",
+        "jkeydb.wal.path=target/wire-benchmark-wal.log",
+        "jkeydb.wal.durability=OS_BUFFERED",
+        "jkeydb.snapshot.dir=target/wire-benchmark-snapshots",
+        "jkeydb.checkpoint.interval-seconds=0"
+})
+class WireProtocolBenchmarkTest {
+
+    @LocalServerPort
+    int restPort;
+
+    @Autowired
+    WireServer wireServer;
+
+    @Autowired
+    StorageService storageService;
+
+    private interface Operation {
+        void run(int client, int request) throws Exception;
+    }
+
+    @Test
+    void restVersusWireProtocol() throws Exception {
+        int clients = Integer.getInteger("jkeydb.bench.clients", 64);
+        int requests = Integer.getInteger("jkeydb.bench.requests", 5000);
+        System.out.printf("%,d client threads x %,d requests each%n", clients, requests);
+
+        // the WAL under target/ survives between runs, so every run gets its own tables
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        String restTable = "BenchRest_" + run;
+        String wireTable = "BenchWire_" + run;
+        storageService.createTable(restTable, "client", "request");
+        storageService.createTable(wireTable, "client", "request");
+
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String base = "http://localhost:" + restPort + "/api/v1/tables/" + restTable + "/items";
+        Operation restPut = (client, request) -> {
+            String body = "{\"client\":\"c" + client + "\",\"request\":\"" + key(request) + "\",\"payload\":\"" + "x".repeat(64) + "\"}";
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(base))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+        };
+        Operation restGet = (client, request) -> {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(
+                    URI.create(base + "/c" + client + "/" + key(request))).GET().build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+        };
+
+        try (JKeyDBClient wire = JKeyDBClient.connect("127.0.0.1", wireServer.getPort())) {
+            Operation wirePut = (client, request) ->
+                    wire.putItem(wireTable, Map.of("client", "c" + client, "request", key(request), "payload", "x".repeat(64)));
+            Operation wireGet = (client, request) -> wire.getItem(wireTable, "c" + client, key(request)).orElseThrow();
+
+            // warm-up round so the JIT has compiled both paths
+            run("warm-up", restPut, clients, requests / 10);
+            run("warm-up", wirePut, clients, requests / 10);
+
+            run("REST put", restPut, clients, requests);
+            run("wire put", wirePut, clients, requests);
+            run("REST get", restGet, clients, requests);
+            run("wire get", wireGet, clients, requests);
+        }
+    }
+
+    private static void run(String name, Operation operation, int clients, int requests) throws Exception {
+        LatencyHistogram latency = new LatencyHistogram();
+        ExecutorService threads = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        List<Future<?>> done = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            done.add(threads.submit(() -> {
+                for (int r = 0; r < requests; r++) {
+                    long sent = System.nanoTime();
+                    operation.run(client, r);
+                    latency.recordSince(sent);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        threads.shutdown();
+
+        LatencySnapshot snapshot = latency.snapshot();
+        System.out.printf("%-9s %,10.0f ops/s   p50=%7.3f ms  p99=%7.3f ms  p99.9=%7.3f ms  max=%7.2f ms%n",
+                name, snapshot.count() / (elapsedNanos / 1e9),
+                snapshot.p50Nanos() / 1e6, snapshot.p99Nanos() / 1e6, snapshot.p999Nanos() / 1e6,
+                snapshot.maxNanos() / 1e6);
+    }
+
+    private static String key(int request) {
+        return String.format("r%06d", request);
+    }
+}
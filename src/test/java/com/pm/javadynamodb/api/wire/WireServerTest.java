@@ -0,0 +1,149 @@
+package com.pm.javadynamodb.api.wire;
+
+import com.pm.javadynamodb.api.exception.ReplicaLagException;
+import com.pm.javadynamodb.api.exception.TableNotFoundException;
+import com.pm.javadynamodb.client.JKeyDBClient;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.replication.ReplicationFollower;
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireServerTest {
+
+    private WALService walService;
+    private StorageService storageService;
+    private WireServer server;
+    private JKeyDBClient client;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        storageService = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2));
+        storageService.createTable("Users", "userId");
+        storageService.createTable("Orders", "customerId", "orderId");
+
+        // port 0 = any free port
+        server = new WireServer(storageService, 0);
+        server.start();
+        client = JKeyDBClient.connect("127.0.0.1", server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop();
+        walService.close();
+    }
+
+    @Test
+    void putGetQueryAndDelete_shouldGoThroughToTheStorageService() {
+        Item saved = client.putItem("Users", Map.of("userId", "u1", "name", "Alice", "age", 30L));
+        assertEquals("u1", saved.getPrimaryKey().getPartitionKey());
+
+        // written over the wire, visible to the service and back over the wire
+        assertEquals("Alice", storageService.getItem("Users", "u1").orElseThrow().getAttributes().get("name"));
+        Item fetched = client.getItem("Users", "u1").orElseThrow();
+        assertEquals("Alice", fetched.getAttributes().get("name"));
+        assertEquals(30, fetched.getAttributes().get("age"));
+
+        for (int i = 0; i < 5; i++) {
+            client.putItem("Orders", Map.of("customerId", "c1", "orderId", "o" + i, "total", i));
+        }
+        ItemPage first = client.query("Orders", "c1", null, null, 3, null);
+        assertEquals(3, first.items().size());
+        assertNotNull(first.lastEvaluatedKey());
+        ItemPage rest = client.query("Orders", "c1", null, null, 3, first.lastEvaluatedKey().getSortKey());
+        assertEquals(List.of("o3", "o4"), rest.items().stream().map(item -> item.getPrimaryKey().getSortKey()).toList());
+
+        client.deleteItem("Users", "u1", null);
+        assertEquals(Optional.empty(), client.getItem("Users", "u1"));
+    }
+
+    @Test
+    void batchesAndErrors_shouldMapLikeTheRestApi() {
+        BatchWriteResult written = client.batchWriteItems(Map.of("Orders", List.of(
+                WriteRequest.put(Map.of("customerId", "c2", "orderId", "a")),
+                WriteRequest.put(Map.of("customerId", "c2", "orderId", "b")),
+                WriteRequest.put(Map.of("orderId", "no partition key")))));
+        assertEquals(2, written.processed());
+        assertEquals(1, written.errors().size());
+        assertEquals(2, written.errors().get(0).index());
+
+        BatchGetResult fetched = client.batchGetItems(Map.of("Orders", List.of(
+                new Key("c2", "a"), new Key("c2", "b"), new Key("c2", "missing"))));
+        assertEquals(2, fetched.responses().get("Orders").size());
+
+        assertThrows(TableNotFoundException.class, () -> client.getItem("NoSuchTable", "x"));
+        assertThrows(IllegalArgumentException.class, () -> client.putItem("Users", Map.of("name", "no key")));
+        // the connection is still fine after an error
+        assertTrue(client.getItem("Orders", "c2", "a").isPresent());
+    }
+
+    @Test
+    void pipelinedRequests_shouldEachGetTheirOwnResponse() {
+        // thousands of requests in flight on one connection, more than the server's per-connection cap
+        List<CompletableFuture<Item>> puts = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            puts.add(client.putItemAsync("Orders", Map.of("customerId", "c3", "orderId", String.format("o%05d", i), "n", i)));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).join();
+
+        List<CompletableFuture<Optional<Item>>> gets = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            gets.add(client.getItemAsync("Orders", "c3", String.format("o%05d", i)));
+        }
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i, gets.get(i).join().orElseThrow().getAttributes().get("n"));
+        }
+
+        // a second client multiplexed next to the first one sees the same data
+        try (JKeyDBClient other = JKeyDBClient.connect("127.0.0.1", server.getPort())) {
+            // limit 0 = the server's max page size
+            ItemPage page = other.query("Orders", "c3", null, null, 0, null);
+            assertEquals(1000, page.items().size());
+            assertEquals("o00999", page.lastEvaluatedKey().getSortKey());
+        }
+    }
+
+    @Test
+    void readsOnAReplicaThatIsBehind_shouldBeRefusedWithReplicaLag() {
+        client.putItem("Users", Map.of("userId", "u1", "name", "Alice"));
+        // a follower that never reached its leader is behind by definition (it isn't started, so nothing connects)
+        ReplicationFollower follower = new ReplicationFollower(storageService, 1, 5000);
+        WireServer replica = new WireServer(storageService, follower, 0);
+        replica.start();
+        try (JKeyDBClient replicaClient = JKeyDBClient.connect("127.0.0.1", replica.getPort())) {
+            ReplicaLagException refused = assertThrows(ReplicaLagException.class, () -> replicaClient.getItem("Users", "u1"));
+            assertTrue(refused.getMessage().contains("hasn't caught up"), refused.getMessage());
+            assertThrows(ReplicaLagException.class, () -> replicaClient.query("Orders", "c1", null, null, 10, null));
+            assertThrows(ReplicaLagException.class,
+                    () -> replicaClient.batchGetItems(Map.of("Users", List.of(new Key("u1", null)))));
+        } finally {
+            replica.stop();
+        }
+    }
+}
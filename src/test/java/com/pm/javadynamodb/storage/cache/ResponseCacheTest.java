@@ -0,0 +1,153 @@
+package com.pm.javadynamodb.storage.cache;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private WALService walService;
+    private StorageService storageService;
+    private ResponseCache cache;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        storageService = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2));
+        storageService.replayWalOnStartup();
+        storageService.createTable("Songs", "artist", "title");
+        cache = new ResponseCache(1024 * 1024, 64 * 1024);
+        storageService.setResponseCache(cache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        walService.close();
+    }
+
+    @Test
+    void cachedResponse_shouldBeServedUntilItsPartitionIsWritten() {
+        // Arrange
+        put("Justice", "Genesis");
+        ResponseCache.Key daftPunk = key("Daft Punk", "item|Da Funk");
+        ResponseCache.Key justice = key("Justice", "item|Genesis");
+        cache.put(daftPunk, json("da funk"), cache.stamp("Songs", "Daft Punk"));
+        cache.put(justice, json("genesis"), cache.stamp("Songs", "Justice"));
+
+        // Act & Assert
+        assertArrayEquals(json("da funk"), cache.get(daftPunk));
+
+        put("Daft Punk", "Around the World");
+        assertNull(cache.get(daftPunk), "a put to the partition drops its responses");
+        assertArrayEquals(json("genesis"), cache.get(justice), "other partitions keep theirs");
+
+        cache.put(daftPunk, json("da funk"), cache.stamp("Songs", "Daft Punk"));
+        storageService.updateItem("Songs", "Daft Punk", "Around the World", UpdateExpression.parse("ADD plays 1"));
+        assertNull(cache.get(daftPunk), "so does an update");
+
+        cache.put(justice, json("genesis"), cache.stamp("Songs", "Justice"));
+        storageService.deleteItem("Songs", "Justice", "Genesis");
+        assertNull(cache.get(justice), "and a delete");
+
+        ResponseCacheStats stats = cache.getStats();
+        assertEquals(2, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(0.4, stats.hitRatio(), 1e-9);
+        assertEquals(3, stats.invalidations());
+        assertEquals(0, stats.entries());
+        assertEquals(0, stats.bytes());
+    }
+
+    @Test
+    void readThatRacedWithAWrite_shouldNotBeCached() {
+        ResponseCache.Key key = key("Daft Punk", "item|Da Funk");
+        long stamp = cache.stamp("Songs", "Daft Punk");
+        // the write lands after the read took its stamp and read the old item
+        put("Daft Punk", "Da Funk");
+
+        cache.put(key, json("old"), stamp);
+
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getStats().entries());
+    }
+
+    @Test
+    void tableChanges_shouldDropAllOfItsResponses() {
+        ResponseCache.Key key = key("Daft Punk", "query|");
+        cache.put(key, json("page"), cache.stamp("Songs", "Daft Punk"));
+
+        // a TTL makes items vanish without a write, so the table isn't cached from then on
+        storageService.updateTimeToLive("Songs", "expiresAt");
+        assertNull(cache.get(key));
+        assertFalse(storageService.isResponseCacheable("Songs"));
+
+        storageService.updateTimeToLive("Songs", null);
+        cache.put(key, json("page"), cache.stamp("Songs", "Daft Punk"));
+        storageService.deleteTable("Songs");
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void clock_shouldEvictEntriesThatWereNotReadSinceTheHandLastPassed() {
+        // room for four entries of 100 bytes (plus their overhead)
+        ResponseCache small = new ResponseCache(1200, 1000);
+        byte[] body = new byte[100];
+        for (int i = 0; i < 4; i++) {
+            small.put(key("p" + i, "r"), body, small.stamp("Songs", "p" + i));
+        }
+        // full: the hand finds p0 first, nobody read it
+        small.put(key("p4", "r"), body, small.stamp("Songs", "p4"));
+        assertNull(small.get(key("p0", "r")));
+        assertEquals(1, small.getStats().evictions());
+
+        // p1 and p3 are read, p2 and p4 aren't
+        small.get(key("p1", "r"));
+        small.get(key("p3", "r"));
+        small.put(key("p5", "r"), body, small.stamp("Songs", "p5"));
+        small.put(key("p6", "r"), body, small.stamp("Songs", "p6"));
+
+        assertNotNull(small.get(key("p1", "r")));
+        assertNotNull(small.get(key("p3", "r")));
+        assertNull(small.get(key("p2", "r")));
+        assertNull(small.get(key("p4", "r")));
+        assertNotNull(small.get(key("p6", "r")));
+        assertEquals(3, small.getStats().evictions());
+        assertEquals(4, small.getStats().entries());
+        assertTrue(small.getStats().bytes() <= small.getStats().maxBytes());
+
+        // too big for an entry of its own
+        small.put(key("p7", "r"), new byte[1001], small.stamp("Songs", "p7"));
+        assertNull(small.get(key("p7", "r")));
+    }
+
+    private static ResponseCache.Key key(String partitionKey, String request) {
+        return new ResponseCache.Key("Songs", partitionKey, request);
+    }
+
+    private static byte[] json(String value) {
+        return ("\"" + value + "\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void put(String artist, String title) {
+        Item item = new Item();
+        item.setAttributes(Map.of("artist", artist, "title", title));
+        storageService.putItem("Songs", item);
+    }
+}
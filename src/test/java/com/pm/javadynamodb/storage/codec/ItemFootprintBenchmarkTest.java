@@ -0,0 +1,85 @@
+package com.pm.javadynamodb.storage.codec;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Heap used per row by the old representation (Item + Key + HashMap of boxed values)
+ * against packed attribute bytes, at 1M and 10M rows. Sizes that would not fit into
+ * the heap are skipped with a note; run with e.g. -Xmx16g to get the 10M numbers.
+ *
+ * mvn test -Pbenchmarks -Dtest=ItemFootprintBenchmarkTest
+ */
+@Tag("benchmark")
+class ItemFootprintBenchmarkTest {
+
+    private static final int[] ROW_COUNTS = {1_000_000, 10_000_000};
+
+    @Test
+    void footprint_packedVersusMapItems() {
+        for (int rows : ROW_COUNTS) {
+            long mapBytes = measure(rows, false);
+            long packedBytes = measure(rows, true);
+            if (mapBytes < 0 || packedBytes < 0) {
+                System.out.printf("rows=%,d skipped, not enough heap (max %,d MB)%n",
+                        rows, Runtime.getRuntime().maxMemory() >> 20);
+                continue;
+            }
+            System.out.printf("rows=%,d  map items=%,d MB (%d B/row)  packed=%,d MB (%d B/row)  ratio=%.1fx%n",
+                    rows, mapBytes >> 20, mapBytes / rows, packedBytes >> 20, packedBytes / rows,
+                    (double) mapBytes / packedBytes);
+        }
+    }
+
+    // heap retained by rows items, -1 if they would not fit
+    private static long measure(int rows, boolean packed) {
+        // map items measured ~640 B/row, leave some headroom
+        if ((long) rows * 700 > Runtime.getRuntime().maxMemory() * 3 / 4) {
+            return -1;
+        }
+        AttributeDictionary dictionary = new AttributeDictionary();
+        long before = usedHeap();
+        Object[] retained = new Object[rows];
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> attributes = row(i);
+            if (packed) {
+                retained[i] = PackedAttributes.pack(dictionary, attributes);
+            } else {
+                Item item = new Item();
+                item.setPrimaryKey(new Key("user" + i, "profile"));
+                item.setAttributes(attributes);
+                retained[i] = item;
+            }
+        }
+        long used = usedHeap() - before;
+        if (retained[rows - 1] == null) {
+            throw new IllegalStateException(); // keeps the array reachable until here
+        }
+        return used;
+    }
+
+    // a typical user row: a few strings, a couple of numbers and a flag
+    private static Map<String, Object> row(int i) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("userId", "user" + i);
+        attributes.put("name", "Customer " + (i % 5000));
+        attributes.put("email", "customer" + i + "@example.com");
+        attributes.put("age", 18 + i % 60);
+        attributes.put("balance", (i % 100_000) / 100.0);
+        attributes.put("active", i % 3 != 0);
+        return attributes;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
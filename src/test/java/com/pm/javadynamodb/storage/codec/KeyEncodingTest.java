@@ -0,0 +1,62 @@
+package com.pm.javadynamodb.storage.codec;
+
+import com.pm.javadynamodb.core.model.KeyType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyEncodingTest {
+
+    @Test
+    void numberKeys_shouldSortByValueAndRoundTrip() {
+        // Arrange: a mix of signs, magnitudes and fractions, plus random ones
+        List<BigDecimal> numbers = new ArrayList<>(List.of(
+                new BigDecimal("0"), new BigDecimal("9"), new BigDecimal("10"), new BigDecimal("10.5"),
+                new BigDecimal("-1"), new BigDecimal("-10"), new BigDecimal("-0.5"), new BigDecimal("-0.51"),
+                new BigDecimal("0.001"), new BigDecimal("1E+20"), new BigDecimal("123456789012345678901234567890")));
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            numbers.add(BigDecimal.valueOf(random.nextLong(), random.nextInt(20) - 10));
+        }
+
+        // Act
+        List<String> encoded = numbers.stream().map(n -> KeyEncoding.encode(KeyType.NUMBER, n)).toList();
+
+        // Assert: string order of the encodings == numeric order, and every char fits in a byte
+        for (int i = 0; i < numbers.size(); i++) {
+            for (int j = i + 1; j < Math.min(numbers.size(), i + 50); j++) {
+                assertEquals(Integer.signum(numbers.get(i).compareTo(numbers.get(j))),
+                        Integer.signum(encoded.get(i).compareTo(encoded.get(j))),
+                        numbers.get(i) + " vs " + numbers.get(j));
+            }
+            assertTrue(encoded.get(i).chars().allMatch(c -> c <= 0xFF));
+            assertEquals(0, numbers.get(i).compareTo(new BigDecimal(KeyEncoding.decode(KeyType.NUMBER, encoded.get(i)))));
+        }
+        List<String> sorted = new ArrayList<>(encoded);
+        sorted.sort(Comparator.naturalOrder());
+        assertEquals(KeyEncoding.encode(KeyType.NUMBER, numbers.stream().min(Comparator.naturalOrder()).orElseThrow()),
+                sorted.get(0));
+
+        // the same number written differently is the same key
+        assertEquals(KeyEncoding.encode(KeyType.NUMBER, 10), KeyEncoding.encode(KeyType.NUMBER, "10.00"));
+        assertEquals("10", KeyEncoding.decode(KeyType.NUMBER, KeyEncoding.encode(KeyType.NUMBER, 10L)));
+        assertThrows(IllegalArgumentException.class, () -> KeyEncoding.encode(KeyType.NUMBER, "ten"));
+    }
+
+    @Test
+    void binaryKeys_shouldSortAsUnsignedBytes() {
+        String low = KeyEncoding.encode(KeyType.BINARY, new byte[]{0x01, (byte) 0xFF});
+        String high = KeyEncoding.encode(KeyType.BINARY, new byte[]{(byte) 0x80});
+        String prefix = KeyEncoding.encode(KeyType.BINARY, new byte[]{0x01});
+
+        assertTrue(low.compareTo(high) < 0, "0x80 must sort after 0x01 even though it is negative as a Java byte");
+        assertTrue(prefix.compareTo(low) < 0);
+        assertEquals("AYA=", KeyEncoding.decode(KeyType.BINARY, KeyEncoding.encode(KeyType.BINARY, "AYA=")));
+    }
+}
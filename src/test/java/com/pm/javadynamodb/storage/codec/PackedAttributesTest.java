@@ -0,0 +1,60 @@
+package com.pm.javadynamodb.storage.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedAttributesTest {
+
+    @Test
+    void pack_shouldRoundTripTypedValuesThroughTheDictionary() {
+        // Arrange
+        AttributeDictionary dictionary = new AttributeDictionary();
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("userId", "user123");
+        attributes.put("age", 42);
+        attributes.put("balance", 12_000_000_000L);
+        attributes.put("score", 9.5);
+        attributes.put("active", true);
+        attributes.put("tags", List.of("a", "b"));
+        attributes.put("address", Map.of("city", "Pune"));
+        attributes.put("nickname", null);
+
+        // Act
+        PackedAttributes packed = new PackedAttributes(dictionary, PackedAttributes.pack(dictionary, attributes));
+
+        // Assert: single lookups, full iteration and equality with the original map
+        assertEquals(8, packed.size());
+        assertEquals(42, packed.get("age"));
+        assertEquals(12_000_000_000L, packed.get("balance"));
+        assertEquals(Map.of("city", "Pune"), packed.get("address"));
+        assertTrue(packed.containsKey("nickname"));
+        assertNull(packed.get("missing"));
+        assertFalse(packed.containsKey("missing"));
+        assertEquals(attributes, packed);
+        assertEquals(List.copyOf(attributes.keySet()), List.copyOf(packed.keySet()));
+        assertThrows(UnsupportedOperationException.class, () -> packed.put("age", 43));
+    }
+
+    @Test
+    void pack_shouldStoreEachAttributeNameOnlyOncePerTable() {
+        // Arrange
+        AttributeDictionary dictionary = new AttributeDictionary();
+        Map<String, Object> first = Map.of("averyveryverylongattributename", 1);
+        Map<String, Object> second = Map.of("averyveryverylongattributename", 2);
+
+        // Act
+        byte[] firstBytes = PackedAttributes.pack(dictionary, first);
+        byte[] secondBytes = PackedAttributes.pack(dictionary, second);
+
+        // Assert: count + id + tag + value, no name in the row
+        assertEquals(1, dictionary.size());
+        assertEquals(4, secondBytes.length);
+        assertSame(secondBytes, PackedAttributes.pack(dictionary, new PackedAttributes(dictionary, secondBytes)));
+        assertEquals(first, new PackedAttributes(dictionary, firstBytes));
+    }
+}
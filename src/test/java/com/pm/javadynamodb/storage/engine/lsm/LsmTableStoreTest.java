@@ -0,0 +1,188 @@
+package com.pm.javadynamodb.storage.engine.lsm;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmTableStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService background;
+    private LsmMetrics metrics;
+    private LsmTableStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        background = Executors.newSingleThreadExecutor();
+        metrics = new LsmMetrics();
+        store = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+        background.shutdownNow();
+    }
+
+    @Test
+    void reads_shouldMergeMemtableAndSegmentsNewestFirst() throws Exception {
+        // Arrange: three generations of the same partition, each flushed to its own segment
+        for (int i = 0; i < 10; i++) {
+            put("p", "s" + i, "v1");
+        }
+        store.flush();
+        put("p", "s3", "v2");
+        store.delete("p", "s4");
+        store.flush();
+        put("p", "s5", "v3"); // still in the memtable
+
+        // Assert
+        assertEquals(2, store.getSegmentCount());
+        assertEquals("v2", value(store.get("p", "s3").orElseThrow()));
+        assertEquals("v3", value(store.get("p", "s5").orElseThrow()));
+        assertFalse(store.get("p", "s4").isPresent(), "tombstone must hide the older version");
+
+        List<String> range = new ArrayList<>();
+        try (ItemIterator items = store.query("p", "s2", "s7")) {
+            items.forEachRemaining(item -> range.add(item.getPrimaryKey().getSortKey() + "=" + value(item)));
+        }
+        assertEquals(List.of("s2=v1", "s3=v2", "s5=v3", "s6=v1"), range);
+    }
+
+    @Test
+    void scan_shouldResumeAfterAnExclusiveStartKeyAcrossLayers() throws Exception {
+        // Arrange: keys spread over a segment and the memtable
+        for (int i = 0; i < 40; i += 2) {
+            put(String.format("p%02d", i), "A", "seg");
+        }
+        store.flush();
+        for (int i = 1; i < 40; i += 2) {
+            put(String.format("p%02d", i), "A", "mem");
+        }
+
+        // Act
+        List<String> after = new ArrayList<>();
+        try (ItemIterator items = store.scan(new Key("p17", "A"))) {
+            items.forEachRemaining(item -> after.add(item.getPrimaryKey().getPartitionKey()));
+        }
+
+        // Assert
+        assertEquals(22, after.size());
+        assertEquals("p18", after.get(0));
+        assertEquals("p39", after.get(21));
+    }
+
+    @Test
+    void compaction_shouldMergeSegmentsAndDropTombstones() throws Exception {
+        // Arrange: enough flushes to hit the compaction trigger of 3
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50; i++) {
+                put("p" + (i % 5), "s" + i, "round" + round);
+            }
+            if (round == 2) {
+                store.delete("p0", "s0");
+            }
+            store.flush();
+        }
+
+        // Assert
+        assertEquals(1, store.getSegmentCount());
+        assertEquals(1, store.getCompactionCount());
+        assertEquals(49, count(store.scan()));
+        assertEquals("round2", value(store.get("p1", "s1").orElseThrow()));
+        assertFalse(store.get("p0", "s0").isPresent());
+    }
+
+    @Test
+    void reopen_shouldLoadSegmentsFromManifestAndDropLeftovers() throws Exception {
+        // Arrange
+        for (int i = 0; i < 20; i++) {
+            put("user" + i, "A", "v" + i);
+        }
+        store.flush();
+        Files.writeString(tempDir.resolve(SegmentFormat.fileName(99)), "half written");
+        store.close();
+
+        // Act
+        store = open();
+
+        // Assert
+        assertEquals(20, count(store.scan()));
+        assertEquals("v13", value(store.get("user13", "A").orElseThrow()));
+        assertFalse(Files.exists(tempDir.resolve(SegmentFormat.fileName(99))));
+    }
+
+    @Test
+    void pointLookups_shouldUseSparseIndexAndSkipSegmentsByBloomFilter() throws Exception {
+        // Arrange: two segments with disjoint sets of partitions spread over the same key range
+        for (int i = 0; i < 2000; i += 2) {
+            put("user" + i, "A", "even");
+        }
+        store.flush();
+        for (int i = 1; i < 2000; i += 2) {
+            put("user" + i, "A", "odd");
+        }
+        store.flush();
+
+        // Act + Assert: every key is found in the right segment
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i % 2 == 0 ? "even" : "odd", value(store.get("user" + i, "A").orElseThrow()));
+        }
+        assertFalse(store.get("user42", "B").isPresent());
+
+        // each lookup checks both filters; the segment without the partition should be skipped ~99% of the time
+        LsmStats stats = metrics.snapshot(10);
+        assertEquals(2001, stats.pointLookups());
+        assertEquals(2000, stats.segmentHits());
+        assertTrue(stats.bloomNegatives() > 900, "bloom filter skipped only " + stats.bloomNegatives());
+        assertTrue(stats.bloomFalsePositiveRate() < 0.05, "false positive rate " + stats.bloomFalsePositiveRate());
+    }
+
+    private LsmTableStore open() throws Exception {
+        // small index blocks so even these tests need the binary search
+        return new LsmTableStore("Test", tempDir, background, Long.MAX_VALUE, 3, new SegmentWriter(256, 10), metrics);
+    }
+
+    private void put(String partitionKey, String sortKey, String value) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("pk", partitionKey);
+        attributes.put("sk", sortKey);
+        attributes.put("value", value);
+        Item item = new Item();
+        item.setAttributes(attributes);
+        item.setPrimaryKey(new Key(partitionKey, sortKey));
+        store.put(partitionKey, sortKey, item);
+    }
+
+    private static Object value(Item item) {
+        return item.getAttributes().get("value");
+    }
+
+    private static int count(ItemIterator items) {
+        int count = 0;
+        try (items) {
+            while (items.hasNext()) {
+                items.next();
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,213 @@
+package com.pm.javadynamodb.storage.engine.tiering;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.engine.InMemoryTableStore;
+import com.pm.javadynamodb.storage.engine.ItemIterator;
+import com.pm.javadynamodb.storage.engine.TableStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionTieringTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PartitionTiering tiering;
+
+    @AfterEach
+    void tearDown() {
+        tiering.close();
+    }
+
+    @Test
+    void coldPartitions_shouldBeSpilledAndFaultedBackInOnRead() {
+        // Arrange: 100 partitions of 5 items, about 550 KB, against a 100 KB budget; p0-p9 are read a lot.
+        // The thread may already spill while they are written, a read of a spilled one just faults it in
+        tiering = start(100_000, 0);
+        InMemoryTableStore store = new InMemoryTableStore("Songs", tiering);
+        fill(store, 100, 5);
+        for (int round = 0; round < 3; round++) {
+            for (int p = 0; p < 10; p++) {
+                store.get("p" + p, "s0");
+            }
+        }
+
+        // Act
+        tiering.enforceBudgets();
+
+        // Assert: under budget, with the hot partitions still on the heap
+        TieringStats stats = tiering.getStats();
+        assertTrue(store.residentBytes() <= 100_000, "resident " + store.residentBytes());
+        assertTrue(stats.spilledPartitions() > 50);
+        assertEquals(100, stats.residentPartitions() + stats.spilledPartitions());
+        assertEquals(store.approximateBytes(), stats.residentBytes() + stats.spilledBytes());
+        // (writes that went over the budget may have woken the thread for a pass of its own already)
+        assertTrue(stats.evictedBytes() > 0 && stats.evictionPasses() >= 1);
+        long faults = stats.faults();
+        for (int p = 0; p < 10; p++) {
+            assertEquals(value(p, 0), value(store.get("p" + p, "s0").orElseThrow()));
+        }
+        assertEquals(faults, tiering.getStats().faults(), "hot partitions weren't evicted");
+
+        // a get or query of a cold partition reads it back
+        assertEquals(value(11, 3), value(store.get("p11", "s3").orElseThrow()));
+        assertEquals(List.of(value(12, 1), value(12, 2)), values(store.query("p12", "s1", "s3")));
+        assertEquals(faults + 2, tiering.getStats().faults());
+        assertEquals(store.residentBytes(), tiering.getStats().residentBytes());
+
+        // a scan sees everything, in order, without bringing anything back
+        long spilled = tiering.getStats().spilledPartitions();
+        List<String> scanned = values(store.scan());
+        assertEquals(500, scanned.size());
+        assertEquals(value(0, 0), scanned.get(0));
+        assertEquals(value(99, 4), scanned.get(499));
+        assertEquals(spilled, tiering.getStats().spilledPartitions());
+        assertEquals(500, store.approximateItemCount());
+    }
+
+    @Test
+    void writesToSpilledPartitions_shouldFaultThemInAndDeadSpaceShouldBeCompacted() throws Exception {
+        // Arrange: 2000 partitions of about 1 KB, everything spilled under a tiny budget
+        tiering = start(10_000, 0);
+        InMemoryTableStore store = new InMemoryTableStore("Songs", tiering);
+        fill(store, 2000, 1);
+        tiering.enforceBudgets();
+        long spillFileBytes = tiering.getStats().spillFileBytes();
+        assertTrue(spillFileBytes > 1 << 20);
+
+        // Act: a put adds to what was spilled, deletes empty 1900 partitions, which leaves their regions dead
+        store.put("p0", "s1", item(0, 1));
+        for (int p = 100; p < 2000; p++) {
+            store.delete("p" + p, "s0");
+        }
+        tiering.enforceBudgets();
+
+        // Assert
+        assertEquals(List.of(value(0, 0), value(0, 1)), values(store.query("p0", null, null)));
+        assertEquals(101, store.approximateItemCount());
+        assertEquals(100, tiering.getStats().residentPartitions() + tiering.getStats().spilledPartitions());
+        assertEquals(1, tiering.getStats().compactions());
+        assertTrue(tiering.getStats().spillFileBytes() < spillFileBytes / 5);
+        // what is still spilled is found in the new file
+        assertEquals(value(50, 0), value(store.get("p50", "s0").orElseThrow()));
+        assertEquals(101, values(store.scan()).size());
+
+        // dropping the table deletes its spill file
+        store.drop();
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void drop_whileSpilledPartitionsAreRead_shouldOnlyEverLookEmpty() throws Exception {
+        // Arrange: everything spilled, readers faulting partitions in and scanning the rest
+        tiering = start(10_000, 0);
+        InMemoryTableStore store = new InMemoryTableStore("Songs", tiering);
+        fill(store, 2000, 1);
+        tiering.enforceBudgets();
+        AtomicBoolean reading = new AtomicBoolean(true);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            int first = r * 500;
+            readers.add(new Thread(() -> {
+                try {
+                    for (int p = first; reading.get(); p = (p + 1) % 2000) {
+                        store.get("p" + p, "s0");
+                        if (p % 100 == 0) {
+                            values(store.scan());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        // Act
+        Thread.sleep(50);
+        store.drop();
+        Thread.sleep(50);
+        reading.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        // Assert: a read that raced the drop found the item or nothing, never a closed spill file
+        assertEquals(List.of(), failures);
+        assertTrue(store.get("p1", "s0").isEmpty());
+        assertEquals(List.of(), values(store.scan()));
+    }
+
+    @Test
+    void tableBudget_shouldOnlySpillTheTableThatIsOverIt() {
+        // Arrange: a budget per table, no overall one
+        tiering = start(0, 100_000);
+        InMemoryStorageEngine engine = new InMemoryStorageEngine(tiering);
+        TableStore big = engine.createTableStore("Big");
+        TableStore small = engine.createTableStore("Small");
+        fill(big, 100, 5);
+        fill(small, 10, 5);
+
+        // Act
+        tiering.enforceBudgets();
+
+        // Assert
+        assertTrue(((InMemoryTableStore) big).residentBytes() <= 100_000);
+        assertEquals(0, ((InMemoryTableStore) small).spilledPartitionCount());
+        assertTrue(((InMemoryTableStore) big).spilledPartitionCount() > 0);
+        // the admin endpoint shows the counters next to the engine name
+        Map<?, ?> stats = (Map<?, ?>) engine.getStats();
+        assertEquals("memory", stats.get("engine"));
+        assertEquals(tiering.getStats().spilledPartitions(), ((TieringStats) stats.get("tiering")).spilledPartitions());
+    }
+
+    // the check interval and aging period are long enough not to interfere
+    private PartitionTiering start(long maxHeapBytes, long tableMaxHeapBytes) {
+        return new PartitionTiering(tempDir, maxHeapBytes, tableMaxHeapBytes, 3_600_000, 3_600_000);
+    }
+
+    private static void fill(TableStore store, int partitions, int itemsPerPartition) {
+        for (int p = 0; p < partitions; p++) {
+            for (int s = 0; s < itemsPerPartition; s++) {
+                store.put("p" + p, "s" + s, item(p, s));
+            }
+        }
+    }
+
+    private static Item item(int partition, int sortKey) {
+        Item item = new Item();
+        item.setAttributes(Map.of("value", value(partition, sortKey)));
+        return item;
+    }
+
+    // about 1 KB, so a few items are enough to go over a budget
+    private static String value(int partition, int sortKey) {
+        return partition + "/" + sortKey + "/" + "x".repeat(1000);
+    }
+
+    private static String value(Item item) {
+        return (String) item.getAttributes().get("value");
+    }
+
+    private static List<String> values(ItemIterator items) {
+        List<String> values = new ArrayList<>();
+        items.forEachRemaining(item -> values.add(value(item)));
+        return values;
+    }
+}
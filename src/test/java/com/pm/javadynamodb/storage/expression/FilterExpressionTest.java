@@ -0,0 +1,77 @@
+package com.pm.javadynamodb.storage.expression;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterExpressionTest {
+
+    @Test
+    void filter_shouldEvaluateComparisonsFunctionsAndBooleanLogic() {
+        // Arrange
+        Item song = item(Map.of(
+                "title", "One More Time", "year", 2000, "rating", 4.5,
+                "tags", List.of("house", "french"), "label", Map.of("name", "Virgin")));
+
+        // Act + Assert
+        assertTrue(matches("year = 2000", song));
+        assertTrue(matches("year >= 1999.5 AND rating < 5", song));
+        assertTrue(matches("year BETWEEN 1990 AND 2000", song));
+        assertTrue(matches("begins_with(title, 'One') and not attribute_exists(genre)", song));
+        assertTrue(matches("attribute_not_exists(genre) OR year = 1", song));
+        assertTrue(matches("contains(tags, 'french') AND contains(title, 'More')", song));
+        assertTrue(matches("label.name = 'Virgin'", song));
+        assertTrue(matches("year IN (1999, 2000)", song));
+        assertTrue(matches("title <> 'Da Funk' AND (year = 1 OR rating > 4)", song));
+
+        assertFalse(matches("year > 2000", song));
+        assertFalse(matches("year = '2000'", song), "different types never compare");
+        assertFalse(matches("genre = 'House'", song), "a missing attribute never matches");
+        assertFalse(matches("NOT (year = 2000)", song));
+        assertFalse(matches("year = 2000 AND (rating > 5 OR begins_with(title, 'Da'))", song));
+        assertTrue(matches("title = 'It''s'", item(Map.of("title", "It's"))));
+    }
+
+    @Test
+    void parse_shouldRejectMalformedExpressionsAndCacheCompiledOnes() {
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("year >"));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("year = 1 AND"));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("(year = 1"));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("title = 'open"));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("size(title) > 1"));
+        assertThrows(IllegalArgumentException.class, () -> ProjectionExpression.parse("title,,year"));
+
+        assertNull(FilterExpression.parse(" "));
+        assertSame(FilterExpression.parse("year = 1"), FilterExpression.parse("year = 1"));
+    }
+
+    @Test
+    void projection_shouldKeepOnlyTheListedAttributes() {
+        // Arrange
+        Item song = item(Map.of("title", "Da Funk", "year", 1995, "genre", "House"));
+
+        // Act
+        ProjectionExpression.parse("title, year, missing").apply(song);
+
+        // Assert
+        assertEquals(Map.of("title", "Da Funk", "year", 1995), song.getAttributes());
+        assertEquals(new Key("p", "s"), song.getPrimaryKey());
+    }
+
+    private static boolean matches(String expression, Item item) {
+        return FilterExpression.parse(expression).matches(item);
+    }
+
+    private static Item item(Map<String, Object> attributes) {
+        Item item = new Item();
+        item.setPrimaryKey(new Key("p", "s"));
+        item.setAttributes(new HashMap<>(attributes));
+        return item;
+    }
+}
@@ -0,0 +1,59 @@
+package com.pm.javadynamodb.storage.expression;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateExpressionTest {
+
+    @Test
+    void apply_shouldComputeTheNewValuesFromTheItemAsItWas() {
+        // Arrange
+        Map<String, Object> song = Map.of("title", "Da Funk", "plays", 10, "tags", List.of("house"), "draft", true);
+
+        // Act
+        UpdateExpression.Changes changes = UpdateExpression.parse(
+                "SET title = 'Revolution 909', plays = plays + 5, tags = list_append(tags, ['french']),"
+                        + " rating = if_not_exists(rating, 3) REMOVE draft, missing ADD skips 1").apply(song);
+
+        // Assert
+        assertEquals(Map.of("title", "Revolution 909", "plays", 15L, "tags", List.of("house", "french"),
+                "rating", 3L, "skips", 1L), changes.set());
+        assertEquals(List.of("draft"), changes.removed(), "removing a missing attribute changes nothing");
+    }
+
+    @Test
+    void add_shouldSumNumbersAndUnionLists() {
+        Map<String, Object> item = Map.of("views", 41, "rating", new BigDecimal("4.5"), "tags", List.of("a", "b"));
+
+        assertEquals(42L, UpdateExpression.parse("ADD views 1").apply(item).set().get("views"));
+        assertEquals(new BigDecimal("4.75"), UpdateExpression.parse("ADD rating 0.25").apply(item).set().get("rating"));
+        assertEquals(40L, UpdateExpression.parse("SET views = views - 1").apply(item).set().get("views"));
+        assertEquals(List.of("a", "b", "c"), UpdateExpression.parse("ADD tags ['b', 'c']").apply(item).set().get("tags"));
+        // a long that would overflow keeps counting as a big number instead of wrapping around
+        assertEquals(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE),
+                UpdateExpression.parse("ADD big 1").apply(Map.of("big", Long.MAX_VALUE)).set().get("big"));
+    }
+
+    @Test
+    void parse_shouldRejectMalformedOrImpossibleUpdates() {
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse(" "));
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse("SET"));
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse("SET a = 1, a = 2"));
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse("SET a = 1 REMOVE a"));
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse("SET a.b = 1"));
+        assertThrows(IllegalArgumentException.class, () -> UpdateExpression.parse("ADD a"));
+
+        UpdateExpression plus = UpdateExpression.parse("SET a = a + 1");
+        assertThrows(IllegalArgumentException.class, () -> plus.apply(Map.of()), "a + 1 needs a to exist");
+        assertThrows(IllegalArgumentException.class, () -> plus.apply(Map.of("a", "text")));
+
+        assertEquals(Set.of("a", "b", "c"), UpdateExpression.parse("SET a = 1 REMOVE b ADD c 2").targets());
+        assertSame(plus, UpdateExpression.parse("SET a = a + 1"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.pm.javadynamodb.storage.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void snapshot_shouldReportPercentilesWithinThreePercent() {
+        // Arrange: 1..100_000 microseconds, so the true pN is N% of 100 ms
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        // Act
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        // Assert
+        assertEquals(100_000, snapshot.count());
+        assertEquals(100_000_000L, snapshot.maxNanos());
+        assertEquals(100_000L * 100_001 / 2 * 1_000, snapshot.totalNanos());
+        assertWithin(50_000_000, snapshot.p50Nanos());
+        assertWithin(90_000_000, snapshot.p90Nanos());
+        assertWithin(99_000_000, snapshot.p99Nanos());
+        assertWithin(99_900_000, snapshot.p999Nanos());
+        assertEquals(0, new LatencyHistogram().snapshot().p99Nanos());
+    }
+
+    @Test
+    void buckets_shouldCoverEveryValueInOrder() {
+        long previousBucket = -1;
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1_000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= previousBucket, "bucket of " + value);
+            assertTrue(LatencyHistogram.lowerBoundOf(bucket) <= value, "lower bound of " + value);
+            if (value < Long.MAX_VALUE) {
+                assertTrue(value < LatencyHistogram.lowerBoundOf(bucket + 1), "upper bound of " + value);
+            }
+            previousBucket = bucket;
+        }
+    }
+
+    @Test
+    void record_shouldNotAllocate() {
+        // Arrange
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.recordSince(System.nanoTime() - i); // warm up so the JIT compiled it
+        }
+
+        // Act
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Assert: some slack for the measuring call itself, nothing per record
+        assertTrue(allocated < 1_000, "allocated " + allocated + " bytes for 100k records");
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.03, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,108 @@
+package com.pm.javadynamodb.storage.recovery;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALRecordEncoder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares sequential WAL replay against ParallelReplayer on a generated log.
+ * Not part of the normal build, run it with: mvn test -Pbenchmarks
+ * Size it with -Djkeydb.bench.records=2000000 -Djkeydb.bench.partitions=50000
+ */
+@Tag("benchmark")
+class ReplayBenchmarkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sequentialVersusParallelReplay() throws IOException {
+        int records = Integer.getInteger("jkeydb.bench.records", 1_000_000);
+        int partitions = Integer.getInteger("jkeydb.bench.partitions", 20_000);
+        Path wal = tempDir.resolve("wal.log");
+        generateLog(wal, records, partitions);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("Replaying %,d records over %,d partitions (%d cores)%n", records, partitions, cores);
+
+        long sequentialItems = -1;
+        for (int threads : new int[]{1, 2, 4, cores}) {
+            // warm-up run first so the JIT has compiled the replay path
+            replay(wal, threads);
+            StorageService storage = replay(wal, threads);
+            long items = storage.scan("Bench").size();
+            if (sequentialItems < 0) {
+                sequentialItems = items;
+            }
+            assertEquals(sequentialItems, items);
+            System.out.printf("threads=%-3d replay=%,6d ms  items=%,d%n",
+                    threads, storage.getRecoveryStats().walReplayMillis(), items);
+        }
+    }
+
+    private StorageService replay(Path wal, int threads) {
+        WALService walService = new WALService(wal.toString(), DurabilityMode.OS_BUFFERED, 10, 1024);
+        walService.init();
+        try {
+            StorageService storage = new StorageService(walService,
+                    new SnapshotService(tempDir.resolve("snapshots").toString(), 1), threads);
+            storage.replayWalOnStartup();
+            return storage;
+        } finally {
+            walService.close();
+        }
+    }
+
+    // writes the log directly with the encoder, going through WALService would mostly measure fsync
+    private static void generateLog(Path wal, int records, int partitions) throws IOException {
+        WALRecordEncoder encoder = new WALRecordEncoder();
+        BinaryWriter out = new BinaryWriter(1024 * 1024);
+        long sequence = 0;
+
+        try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            WALRecordEncoder.writeFileHeader(out, 0);
+            encoder.encode(++sequence, WALEntry.forTable("Bench", "customer", "orderId"), out);
+
+            for (int i = 0; i < records; i++) {
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                attributes.put("customer", "c" + (i % partitions));
+                attributes.put("orderId", "o" + (i / partitions % 50));
+                attributes.put("amount", i % 1000);
+                attributes.put("status", i % 7 == 0 ? "SHIPPED" : "OPEN");
+                Item item = new Item();
+                item.setAttributes(attributes);
+                encoder.encode(++sequence, WALEntry.forItem(OperationType.PUT_ITEM, "Bench", item), out);
+
+                if (out.position() > 512 * 1024) {
+                    out.flip();
+                    while (out.buffer().hasRemaining()) {
+                        channel.write(out.buffer());
+                    }
+                    out.clear();
+                }
+            }
+            out.flip();
+            while (out.buffer().hasRemaining()) {
+                channel.write(out.buffer());
+            }
+        }
+    }
+}
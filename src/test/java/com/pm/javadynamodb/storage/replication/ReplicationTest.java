@@ -0,0 +1,264 @@
+package com.pm.javadynamodb.storage.replication;
+
+import com.pm.javadynamodb.api.exception.ReadOnlyReplicaException;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
+import com.pm.javadynamodb.storage.service.SnapshotService;
+import com.pm.javadynamodb.storage.service.StorageService;
+import com.pm.javadynamodb.storage.service.WALService;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest {
+
+    private final List<WALService> walServices = new ArrayList<>();
+    private final List<Runnable> stops = new ArrayList<>();
+    private StorageService leader;
+    private ReplicationLeader replicationLeader;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        leader = storage(tempDir.resolve("leader"));
+        // a tiny backlog so tests can get past it
+        replicationLeader = new ReplicationLeader(leader, walServices.get(0), 0, 8);
+        replicationLeader.start();
+        stops.add(replicationLeader::stop);
+        leader.createTable("Songs", "artist", "title");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stops.forEach(Runnable::run);
+        walServices.forEach(WALService::close);
+    }
+
+    @Test
+    void follower_shouldLoadASnapshotAndThenApplyLiveWrites() {
+        // Arrange: data that is there before the follower ever connects
+        leader.createTable("Scores", "player", KeyType.NUMBER, "round", KeyType.NUMBER, List.of());
+        leader.updateTimeToLive("Songs", "expiresAt");
+        for (int i = 0; i < 20; i++) {
+            put(leader, "Daft Punk", "song" + i, 2000 + i);
+        }
+        Item score = new Item();
+        score.setAttributes(Map.of("player", 7, "round", 2, "points", 90));
+        leader.putItem("Scores", score);
+
+        // Act
+        StorageService replica = storage(tempDir.resolve("follower"));
+        ReplicationFollower follower = follow(replica);
+        awaitCaughtUp(follower);
+
+        // Assert: the snapshot
+        assertEquals(20, replica.scan("Songs").size());
+        assertEquals(90, ((Number) replica.getItem("Scores", "7", "2").orElseThrow().getAttributes().get("points")).intValue());
+        assertEquals("expiresAt", replica.getTimeToLiveTables().get(0).getTimeToLiveAttribute());
+        assertEquals(1, follower.getStatus().snapshotsLoaded());
+
+        // and what is written afterwards
+        put(leader, "Justice", "Genesis", 2007);
+        leader.updateItem("Songs", "Daft Punk", "song1", UpdateExpression.parse("ADD plays 5"));
+        leader.deleteItem("Songs", "Daft Punk", "song2");
+        leader.createTable("Albums", "artist", "album");
+        awaitCaughtUp(follower);
+
+        assertEquals(2007, replica.getItem("Songs", "Justice", "Genesis").orElseThrow().getAttributes().get("year"));
+        assertEquals(5L, ((Number) replica.getItem("Songs", "Daft Punk", "song1").orElseThrow().getAttributes().get("plays")).longValue());
+        assertTrue(replica.getItem("Songs", "Daft Punk", "song2").isEmpty());
+        assertTrue(replica.getTables().stream().anyMatch(table -> table.getTableName().equals("Albums")));
+
+        ReplicationStatus status = follower.getStatus();
+        assertTrue(status.connected());
+        assertEquals(leader.appliedSequence(), status.sequence());
+        assertTrue(status.lagMillis() >= 0 && follower.isWithinMaxLag(), "an idle, connected follower is in sync");
+        assertEquals(1, replicationLeader.getStatus().followers());
+    }
+
+    @Test
+    void follower_shouldRefuseWrites() {
+        StorageService replica = storage(tempDir.resolve("follower"));
+        ReplicationFollower follower = follow(replica);
+        awaitCaughtUp(follower);
+
+        assertThrows(ReadOnlyReplicaException.class, () -> put(replica, "Daft Punk", "Da Funk", 1995));
+        assertThrows(ReadOnlyReplicaException.class, () -> replica.createTable("Albums", "artist", "album"));
+        assertThrows(ReadOnlyReplicaException.class, () -> replica.deleteTable("Songs"));
+        assertTrue(replica.scan("Songs").isEmpty());
+    }
+
+    @Test
+    void followerBehindTheBacklog_shouldGetTheWalFilesAndBehindTheCheckpointASnapshot() throws Exception {
+        long position = leader.appliedSequence();
+        // far more than the 8 records the backlog keeps
+        for (int i = 0; i < 30; i++) {
+            put(leader, "Daft Punk", "song" + i, 2000 + i);
+        }
+
+        // still in the WAL files: the records themselves
+        try (Socket socket = new Socket("127.0.0.1", replicationLeader.getPort())) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            ReplicationProtocol.writeHello(new DataOutputStream(socket.getOutputStream()), position);
+            List<String> tableNames = new ArrayList<>();
+            int puts = 0;
+            while (puts < 30) {
+                assertEquals(ReplicationProtocol.RECORDS, in.readByte());
+                in.readLong();
+                in.readLong();
+                byte[] records = new byte[in.readInt()];
+                in.readFully(records);
+                WALReader reader = WALReader.forRecords(ByteBuffer.wrap(records), tableNames);
+                WALRecord record;
+                while ((record = reader.next()) != null) {
+                    assertTrue(record.sequence() > position);
+                    puts++;
+                }
+            }
+            assertEquals(30, puts);
+        }
+
+        // a checkpoint removed them: a snapshot instead
+        leader.checkpoint();
+        try (Socket socket = new Socket("127.0.0.1", replicationLeader.getPort())) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            ReplicationProtocol.writeHello(new DataOutputStream(socket.getOutputStream()), position);
+            assertEquals(ReplicationProtocol.SNAPSHOT_START, in.readByte());
+        }
+        assertTrue(waitFor(() -> replicationLeader.getStatus().snapshotsSent() == 1));
+    }
+
+    @Test
+    void followerInAnotherJvm_shouldReplicateEverything() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            put(leader, "Daft Punk", "song" + i, 2000 + i);
+        }
+
+        // same classes, a fresh JVM, its own data directory
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                FollowerMain.class.getName(),
+                Integer.toString(replicationLeader.getPort()),
+                tempDir.resolve("other-jvm").toString(),
+                "150")
+                .redirectErrorStream(true)
+                .start();
+        stops.add(process::destroyForcibly);
+
+        // written while the other JVM starts up and follows
+        for (int i = 100; i < 150; i++) {
+            put(leader, "Daft Punk", "song" + i, 2000 + i);
+        }
+
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "the follower JVM didn't finish");
+        List<String> output = new BufferedReader(new InputStreamReader(process.getInputStream())).lines().toList();
+        assertEquals(0, process.exitValue(), String.join("\n", output));
+        assertTrue(output.contains("replicated 150 items"), String.join("\n", output));
+    }
+
+    /**
+     * The other JVM of followerInAnotherJvm: follows the leader on args[0] with its data
+     * in args[1] until it has args[2] songs, then reports and exits.
+     */
+    static final class FollowerMain {
+        public static void main(String[] args) throws Exception {
+            Files.createDirectories(Path.of(args[1]));
+            WALService walService = new WALService(Path.of(args[1], "wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+            walService.init();
+            StorageService storage = new StorageService(walService, new SnapshotService(Path.of(args[1], "snapshots").toString(), 1),
+                    new InMemoryStorageEngine(), 1, false, 16);
+            storage.replayWalOnStartup();
+            ReplicationFollower follower = new ReplicationFollower(storage, Integer.parseInt(args[0]), 5000);
+            follower.start();
+
+            int expected = Integer.parseInt(args[2]);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(50);
+            while (System.nanoTime() - deadline < 0) {
+                if (storage.getTables().size() == 1 && storage.scan("Songs").size() == expected && follower.isWithinMaxLag()) {
+                    System.out.println("replicated " + expected + " items");
+                    System.exit(0);
+                }
+                Thread.sleep(20);
+            }
+            System.out.println("gave up: " + follower.getStatus());
+            System.exit(1);
+        }
+    }
+
+    private ReplicationFollower follow(StorageService replica) {
+        ReplicationFollower follower = new ReplicationFollower(replica, replicationLeader.getPort(), 5000);
+        follower.start();
+        stops.add(0, follower::stop);
+        return follower;
+    }
+
+    private void awaitCaughtUp(ReplicationFollower follower) {
+        long target = leader.appliedSequence();
+        assertTrue(waitFor(() -> follower.getAppliedSequence() >= target && follower.isWithinMaxLag()),
+                "follower stuck at " + follower.getStatus() + ", leader at " + target);
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private StorageService storage(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        WALService walService = new WALService(directory.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        walServices.add(walService);
+        StorageService storage = new StorageService(walService, new SnapshotService(directory.resolve("snapshots").toString(), 2),
+                new InMemoryStorageEngine(), 1, false, 16);
+        storage.replayWalOnStartup();
+        return storage;
+    }
+
+    private static void put(StorageService storage, String artist, String title, int year) {
+        Item item = new Item();
+        item.setAttributes(Map.of("artist", artist, "title", title, "year", year));
+        storage.putItem("Songs", item);
+    }
+}
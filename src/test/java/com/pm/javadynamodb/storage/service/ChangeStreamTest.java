@@ -0,0 +1,176 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.api.exception.TrimmedChangesException;
+import com.pm.javadynamodb.core.model.ChangePage;
+import com.pm.javadynamodb.core.model.ChangeRecord;
+import com.pm.javadynamodb.core.model.ChangeType;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeStreamTest {
+
+    private WALService walService;
+    private StorageService storageService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        // a tiny buffer so tests can overflow it
+        storageService = start(8);
+        storageService.createTable("Songs", "artist", "title");
+    }
+
+    @AfterEach
+    void tearDown() {
+        walService.close();
+    }
+
+    @Test
+    void changes_shouldCarryKeysAndImagesInSequenceOrder() {
+        // Arrange
+        long start = storageService.readChanges("Songs", null, 10, 0).nextCheckpoint();
+
+        // Act
+        put("Daft Punk", "Da Funk", 1995);
+        put("Daft Punk", "Da Funk", 1996);
+        storageService.updateItem("Songs", "Daft Punk", "Da Funk", UpdateExpression.parse("ADD plays 1"));
+        storageService.deleteItem("Songs", "Daft Punk", "Da Funk");
+        ChangePage page = storageService.readChanges("Songs", start, 10, 0);
+
+        // Assert
+        List<ChangeRecord> records = page.records();
+        assertFalse(page.fromWal());
+        assertEquals(List.of(ChangeType.PUT, ChangeType.PUT, ChangeType.UPDATE, ChangeType.DELETE),
+                records.stream().map(ChangeRecord::eventName).toList());
+        assertEquals(new Key("Daft Punk", "Da Funk"), records.get(0).keys());
+        assertNull(records.get(0).oldImage(), "a new item has no old image");
+        assertEquals(1995, records.get(1).oldImage().get("year"));
+        assertEquals(1996, records.get(1).newImage().get("year"));
+        assertEquals(1L, ((Number) records.get(2).newImage().get("plays")).longValue());
+        assertEquals(1996, records.get(3).oldImage().get("year"));
+        assertNull(records.get(3).newImage());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i).sequence() > records.get(i - 1).sequence());
+        }
+
+        // paging: a full page continues after its last record, the rest after that
+        ChangePage first = storageService.readChanges("Songs", start, 3, 0);
+        assertEquals(first.records().get(2).sequence(), first.nextCheckpoint());
+        assertEquals(List.of(ChangeType.DELETE), storageService.readChanges("Songs", first.nextCheckpoint(), 3, 0)
+                .records().stream().map(ChangeRecord::eventName).toList());
+        assertTrue(storageService.readChanges("Songs", page.nextCheckpoint(), 10, 0).records().isEmpty());
+    }
+
+    @Test
+    void longPoll_shouldReturnAsSoonAsAChangeArrives() throws Exception {
+        long checkpoint = storageService.readChanges("Songs", null, 10, 0).nextCheckpoint();
+        CompletableFuture<ChangePage> poll = CompletableFuture.supplyAsync(
+                () -> storageService.readChanges("Songs", checkpoint, 10, 10_000));
+
+        Thread.sleep(100);
+        assertFalse(poll.isDone(), "nothing to return yet");
+        long start = System.nanoTime();
+        put("Justice", "Genesis", 2007);
+
+        ChangePage page = poll.get(5, TimeUnit.SECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        assertEquals(1, page.records().size());
+        assertEquals("Genesis", page.records().get(0).newImage().get("title"));
+    }
+
+    @Test
+    void slowConsumer_shouldFallBackToTheWalAndConcurrentWritesShouldAllArriveOnce() throws Exception {
+        long checkpoint = storageService.readChanges("Songs", null, 10, 0).nextCheckpoint();
+
+        // 4 writers put 50 songs each, far more than the 8 buffered changes
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            String artist = "artist" + w;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    put(artist, "song" + i, 2000 + i);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        // the consumer starts late, so it is behind the buffer at first, and then reads
+        // while the others are still writing; it sees every change exactly once
+        writers.get(0).join();
+        Set<Key> seen = new HashSet<>();
+        boolean fromWal = false;
+        while (seen.size() < 200) {
+            ChangePage page = storageService.readChanges("Songs", checkpoint, 16, 1_000);
+            for (ChangeRecord record : page.records()) {
+                assertTrue(seen.add(record.keys()), "delivered twice: " + record.keys());
+            }
+            fromWal |= page.fromWal();
+            checkpoint = page.nextCheckpoint();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertTrue(fromWal, "the first read came from the WAL");
+        assertTrue(storageService.readChanges("Songs", checkpoint, 16, 0).records().isEmpty());
+    }
+
+    @Test
+    void checkpoint_olderThanTheWal_shouldBeReportedAsTrimmed() throws Exception {
+        long checkpoint = storageService.readChanges("Songs", null, 10, 0).nextCheckpoint();
+        for (int i = 0; i < 20; i++) {
+            put("Daft Punk", "song" + i, 2000 + i);
+        }
+
+        // still in the WAL: served from there, with only what the WAL has
+        ChangePage fromWal = storageService.readChanges("Songs", checkpoint, 100, 0);
+        assertTrue(fromWal.fromWal());
+        assertEquals(20, fromWal.records().size());
+        assertNull(fromWal.records().get(0).oldImage());
+        assertEquals(new Key("Daft Punk", "song0"), fromWal.records().get(0).keys());
+
+        storageService.checkpoint();
+        assertThrows(TrimmedChangesException.class, () -> storageService.readChanges("Songs", checkpoint, 100, 0));
+        // the buffer still has the newest ones
+        assertEquals(8, storageService.readChanges("Songs", fromWal.records().get(11).sequence(), 100, 0).records().size());
+
+        // a stream can be turned off altogether
+        walService.close();
+        StorageService off = start(0);
+        assertThrows(IllegalArgumentException.class, () -> off.readChanges("Songs", null, 10, 0));
+    }
+
+    private void put(String artist, String title, int year) {
+        Item item = new Item();
+        item.setAttributes(Map.of("artist", artist, "title", title, "year", year));
+        storageService.putItem("Songs", item);
+    }
+
+    private StorageService start(int bufferSize) {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        StorageService started = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2),
+                new InMemoryStorageEngine(), 1, false, bufferSize);
+        started.replayWalOnStartup();
+        return started;
+    }
+}
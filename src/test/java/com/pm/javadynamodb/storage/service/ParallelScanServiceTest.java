@@ -0,0 +1,99 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.ParallelScanPage;
+import com.pm.javadynamodb.core.model.ScanSegment;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelScanServiceTest {
+
+    private static final int PARTITIONS = 200;
+    private static final int ITEMS_PER_PARTITION = 5;
+
+    @TempDir
+    Path tempDir;
+
+    private WALService walService;
+    private StorageService storageService;
+    private ParallelScanService parallelScanService;
+
+    @BeforeEach
+    void setUp() {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.OS_BUFFERED, 10, 1024);
+        walService.init();
+        storageService = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2));
+        storageService.createTable("Orders", "customer", "orderId");
+        for (int c = 0; c < PARTITIONS; c++) {
+            for (int o = 0; o < ITEMS_PER_PARTITION; o++) {
+                Item item = new Item();
+                item.setAttributes(Map.of("customer", "c" + c, "orderId", "o" + o));
+                storageService.putItem("Orders", item);
+            }
+        }
+        parallelScanService = new ParallelScanService(storageService, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelScanService.close();
+        walService.close();
+    }
+
+    @Test
+    void segments_shouldBeDisjointAndCoverTheTable() {
+        // Act: every segment paged through on its own, like separate clients would
+        Set<Key> seen = new HashSet<>();
+        int total = 0;
+        for (int segment = 0; segment < 4; segment++) {
+            Key start = null;
+            do {
+                ItemPage page = storageService.scan("Orders", 64, start, new ScanSegment(segment, 4));
+                for (Item item : page.items()) {
+                    assertTrue(seen.add(item.getPrimaryKey()), "item in two segments: " + item.getPrimaryKey());
+                    total++;
+                }
+                start = page.lastEvaluatedKey();
+            } while (start != null);
+        }
+
+        // Assert
+        assertEquals(PARTITIONS * ITEMS_PER_PARTITION, total);
+        assertThrows(IllegalArgumentException.class, () -> new ScanSegment(4, 4));
+    }
+
+    @Test
+    void parallelScan_shouldResumeWithTokensUntilEveryItemWasReturnedOnce() {
+        // Act
+        List<Item> items = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ParallelScanPage page = parallelScanService.scan("Orders", 97, 8, token);
+            assertTrue(page.items().size() <= 97);
+            items.addAll(page.items());
+            token = page.nextToken();
+            pages++;
+        } while (token != null);
+
+        // Assert
+        assertEquals(PARTITIONS * ITEMS_PER_PARTITION, items.size());
+        assertEquals(items.size(), items.stream().map(Item::getPrimaryKey).distinct().count());
+        assertTrue(pages >= items.size() / 97);
+        assertThrows(IllegalArgumentException.class, () -> parallelScanService.scan("Orders", 10, 8, "not-a-token!"));
+    }
+}
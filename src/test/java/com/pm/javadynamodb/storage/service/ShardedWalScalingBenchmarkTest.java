@@ -0,0 +1,114 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.WALStats;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Write throughput of putItem with 1 to 32 writer threads, once with a single WAL and
+ * once with the log split into shards, plus how long a restart takes to replay what was
+ * written. With one WAL every write queues for the same flusher and its fsync; with
+ * shards the flushers write and sync side by side, so throughput keeps growing with the
+ * writers for as long as the disk can take parallel syncs.
+ *
+ * Not part of the normal build, run it with: mvn test -Pbenchmarks -Dtest=ShardedWalScalingBenchmarkTest
+ * Size it with -Djkeydb.bench.puts=200000 -Djkeydb.bench.shards=8 -Djkeydb.bench.durability=FSYNC_PER_BATCH.
+ */
+@Tag("benchmark")
+class ShardedWalScalingBenchmarkTest {
+
+    private static final int[] WRITER_THREADS = {1, 2, 4, 8, 16, 32};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void singleWalVersusShardedWal() throws Exception {
+        int puts = Integer.getInteger("jkeydb.bench.puts", 200_000);
+        int shards = Integer.getInteger("jkeydb.bench.shards", Math.max(2, Runtime.getRuntime().availableProcessors()));
+        DurabilityMode durability = DurabilityMode.valueOf(System.getProperty("jkeydb.bench.durability", "FSYNC_PER_BATCH"));
+        System.out.printf("%,d puts per run, WAL in %s mode, %d cores%n", puts, durability, Runtime.getRuntime().availableProcessors());
+
+        // warm-up round so the JIT has compiled the write path
+        run("warm-up", 1, 4, puts / 10, durability);
+
+        for (int threads : WRITER_THREADS) {
+            run("1 shard", 1, threads, puts, durability);
+            run(shards + " shards", shards, threads, puts, durability);
+        }
+    }
+
+    private void run(String name, int shards, int threads, int puts, DurabilityMode durability) throws Exception {
+        Path directory = tempDir.resolve(name.replaceAll("\\W", "_") + "_" + threads);
+        StartedStorage started = start(directory, shards, durability);
+        started.storage().createTable("Load", "writer", "put");
+
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        int perWriter = puts / threads;
+        long start = System.nanoTime();
+        List<Future<?>> done = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            String writer = "writer" + w;
+            done.add(writers.submit(() -> {
+                for (int p = 0; p < perWriter; p++) {
+                    started.storage().putItem("Load", item(writer, p));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        writers.shutdown();
+        WALStats wal = started.wal().getStats();
+        started.wal().close();
+
+        // restart on the same files; a sharded log is replayed one thread per shard
+        StartedStorage restarted = start(directory, shards, durability);
+        long replayMillis = restarted.storage().getRecoveryStats().walReplayMillis();
+        assertEquals((long) perWriter * threads, restarted.storage().getTableMetrics().get(0).approximateItemCount());
+        restarted.wal().close();
+
+        System.out.printf("%-10s %2d writers %,10.0f puts/s   avg batch=%6.1f  fsyncs=%,8d  replay=%,6d ms%n",
+                name, threads, perWriter * threads / (elapsedNanos / 1e9), wal.averageBatchSize(), wal.fsyncs(), replayMillis);
+    }
+
+    private record StartedStorage(WALService wal, StorageService storage) {
+    }
+
+    private static StartedStorage start(Path directory, int shards, DurabilityMode durability) throws IOException {
+        Files.createDirectories(directory);
+        WALService walService = new WALService(directory.resolve("wal.log").toString(), durability, 10, 1024, shards);
+        walService.init();
+        StorageService storage = new StorageService(walService, new SnapshotService(directory.resolve("snapshots").toString(), 1));
+        storage.replayWalOnStartup();
+        return new StartedStorage(walService, storage);
+    }
+
+    private static Item item(String writer, int put) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("writer", writer);
+        attributes.put("put", String.format("p%07d", put));
+        attributes.put("payload", "x".repeat(64));
+        Item item = new Item();
+        item.setAttributes(attributes);
+        return item;
+    }
+}
@@ -1,11 +1,44 @@
 package com.pm.javadynamodb.storage.service;
 
 import com.pm.javadynamodb.api.exception.TableNotFoundException;
+import com.pm.javadynamodb.core.model.BatchGetResult;
+import com.pm.javadynamodb.core.model.BatchItemError;
+import com.pm.javadynamodb.core.model.BatchWriteResult;
+import com.pm.javadynamodb.core.model.GlobalSecondaryIndex;
 import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.ItemPage;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.KeyType;
+import com.pm.javadynamodb.core.model.ProjectionType;
+import com.pm.javadynamodb.core.model.WriteRequest;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.engine.lsm.LsmStorageEngine;
+import com.pm.javadynamodb.storage.expression.FilterExpression;
+import com.pm.javadynamodb.storage.expression.ProjectionExpression;
+import com.pm.javadynamodb.storage.expression.UpdateExpression;
+import com.pm.javadynamodb.storage.metrics.StorageOperation;
+import com.pm.javadynamodb.storage.metrics.TableMetrics;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -14,18 +47,26 @@ class StorageServiceTest {
     private StorageService storageService;
     private WALService walService;
 
+    @TempDir
+    Path tempDir;
+
     // This method runs before each test, ensuring a clean state
     @BeforeEach
     void setUp() {
-        // 1. Create the dependency first.
-        walService = new WALService();
+        // 1. Create the dependency first, logging into a throwaway directory.
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
         // 2. Manually call the PostConstruct method because Spring doesn't run in this test.
         walService.init();
         // 3. Provide the dependency to the StorageService constructor.
-        storageService = new StorageService(walService);
+        storageService = new StorageService(walService, newSnapshotService());
         storageService.createTable("Users", "userId");
     }
 
+    @AfterEach
+    void tearDown() {
+        walService.close();
+    }
+
     @Test
     void putAndGetItem_shouldSucceed() {
         // Arrange: Create a new item
@@ -85,4 +126,613 @@ class StorageServiceTest {
             storageService.deleteItem("NonExistentTable", "some_key");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void query_shouldPageThroughAPartitionWithExclusiveStartKey() {
+        // Arrange: 25 songs, sort keys s00..s24
+        storageService.createTable("Songs", "Artist", "SongTitle");
+        for (int i = 0; i < 25; i++) {
+            Item song = new Item();
+            song.setAttributes(Map.of("Artist", "Daft Punk", "SongTitle", String.format("s%02d", i)));
+            storageService.putItem("Songs", song);
+        }
+
+        // Act: pages of 10 until there is no lastEvaluatedKey
+        List<String> seen = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String exclusiveStart = null;
+        do {
+            ItemPage page = storageService.query("Songs", "Daft Punk", "s03", null, 10, exclusiveStart);
+            page.items().forEach(item -> seen.add(item.getPrimaryKey().getSortKey()));
+            pageSizes.add(page.items().size());
+            exclusiveStart = page.lastEvaluatedKey() == null ? null : page.lastEvaluatedKey().getSortKey();
+        } while (exclusiveStart != null);
+
+        // Assert: every item of the range exactly once, in order
+        assertEquals(List.of(10, 10, 2), pageSizes);
+        assertEquals(22, seen.size());
+        assertEquals("s03", seen.get(0));
+        assertEquals("s24", seen.get(21));
+    }
+
+    @Test
+    void scan_shouldPageThroughTheWholeTable() {
+        // Arrange
+        for (int i = 0; i < 30; i++) {
+            putUser("user" + i, "name" + i);
+        }
+
+        // Act
+        Set<String> seen = new HashSet<>();
+        Key exclusiveStart = null;
+        int pages = 0;
+        do {
+            ItemPage page = storageService.scan("Users", 7, exclusiveStart);
+            page.items().forEach(item -> assertTrue(seen.add(item.getPrimaryKey().getPartitionKey())));
+            exclusiveStart = page.lastEvaluatedKey();
+            pages++;
+        } while (exclusiveStart != null);
+
+        // Assert
+        assertEquals(30, seen.size());
+        assertEquals(5, pages);
+        assertThrows(IllegalArgumentException.class, () -> storageService.scan("Users", 0, null));
+    }
+
+    @Test
+    void queryAndScan_withFilterAndProjection_shouldTrimItemsInTheService() {
+        // Arrange: ten songs, years 1995..2004
+        storageService.createTable("Songs", "Artist", "SongTitle");
+        for (int i = 0; i < 10; i++) {
+            putSong("Daft Punk", String.format("s%02d", i), i % 2 == 0 ? "House" : "Disco", 1995 + i);
+        }
+        FilterExpression filter = FilterExpression.parse("Genre = 'House' AND Year >= 1998");
+        ProjectionExpression projection = ProjectionExpression.parse("SongTitle, Year");
+
+        // Act: pages of 4 evaluated items
+        List<Item> matched = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String exclusiveStart = null;
+        do {
+            ItemPage page = storageService.query("Songs", "Daft Punk", null, null, 4, exclusiveStart, filter, projection);
+            matched.addAll(page.items());
+            pageSizes.add(page.items().size());
+            exclusiveStart = page.lastEvaluatedKey() == null ? null : page.lastEvaluatedKey().getSortKey();
+        } while (exclusiveStart != null);
+
+        // Assert: limit counts evaluated items, so the first page (s00..s03) is empty but still
+        // hands out a key to continue from; attributes are trimmed to the projection
+        assertEquals(List.of(0, 2, 1), pageSizes);
+        assertEquals(List.of("s04", "s06", "s08"), titles(matched));
+        assertEquals(Map.of("SongTitle", "s04", "Year", 1999), matched.get(0).getAttributes());
+        assertEquals(3, storageService.scan("Songs", 100, null, null, filter, projection).items().size());
+        assertEquals(Map.of("Year", 1995),
+                storageService.getItem("Songs", "Daft Punk", "s00", ProjectionExpression.parse("Year")).get().getAttributes());
+    }
+
+    @Test
+    void metrics_shouldCountOperationsAndTrackTableSizes() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            putUser("user" + i, "name" + i);
+        }
+        putUser("user0", "renamed"); // an overwrite doesn't add an item
+        storageService.deleteItem("Users", "user9");
+        storageService.getItem("Users", "user1");
+
+        // Act
+        TableMetrics users = storageService.getTableMetrics().stream()
+                .filter(table -> table.tableName().equals("Users")).findFirst().orElseThrow();
+        String scrape = new MetricsService(storageService, walService).scrape();
+
+        // Assert
+        assertEquals(9, users.approximateItemCount());
+        assertTrue(users.approximateBytes() > 0);
+        assertEquals(11, storageService.getOperationLatency(StorageOperation.PUT_ITEM).count());
+        assertEquals(1, storageService.getOperationLatency(StorageOperation.DELETE_ITEM).count());
+        assertTrue(scrape.contains("jkeydb_table_items{table=\"Users\"} 9\n"), scrape);
+        assertTrue(scrape.contains("jkeydb_storage_operation_seconds_count{operation=\"put_item\"} 11\n"));
+        assertTrue(scrape.contains("# TYPE jkeydb_wal_fsync_seconds summary\n"));
+    }
+
+    @Test
+    void batchWrite_shouldApplyValidWritesAcrossTablesAndReportTheRest() {
+        // Arrange
+        storageService.createTable("Songs", "Artist", "SongTitle");
+        putUser("user1", "Alice");
+        long entriesBefore = walService.getStats().entriesWritten();
+        long batchesBefore = walService.getStats().batchesWritten();
+
+        // Act: puts and a delete over two tables, one unknown table and one item without its sort key
+        BatchWriteResult result = storageService.batchWriteItems(Map.of(
+                "Users", List.of(
+                        WriteRequest.put(Map.of("userId", "user2", "name", "Bob")),
+                        WriteRequest.delete("user1", null)),
+                "Songs", List.of(
+                        WriteRequest.put(Map.of("Artist", "Daft Punk", "SongTitle", "Aerodynamic")),
+                        WriteRequest.put(Map.of("Artist", "Daft Punk"))),
+                "Missing", List.of(WriteRequest.put(Map.of("id", "x")))));
+
+        // Assert: the valid writes went out as a single WAL append
+        assertEquals(3, result.processed());
+        assertEquals(2, result.errors().size());
+        assertTrue(result.errors().contains(new BatchItemError("Songs", 1, "Item is missing sort key SongTitle")));
+        assertTrue(result.errors().stream().anyMatch(e -> e.tableName().equals("Missing") && e.index() == 0));
+        assertEquals(entriesBefore + 3, walService.getStats().entriesWritten());
+        assertEquals(batchesBefore + 1, walService.getStats().batchesWritten());
+
+        BatchGetResult read = storageService.batchGetItems(Map.of(
+                "Users", List.of(new Key("user1", null), new Key("user2", null)),
+                "Songs", List.of(new Key("Daft Punk", "Aerodynamic"), new Key("Daft Punk", "Digital Love")),
+                "Missing", List.of(new Key("x", null))));
+        assertEquals(List.of("user2"), read.responses().get("Users").stream()
+                .map(item -> item.getAttributes().get("userId")).toList());
+        assertEquals(1, read.responses().get("Songs").size());
+        assertEquals(List.of(new BatchItemError("Missing", 0, "Table Missing not found")), read.errors());
+
+        // and a restart replays the batch like any other writes
+        walService.close();
+        StorageService restarted = restart();
+        assertFalse(restarted.getItem("Users", "user1").isPresent());
+        assertEquals("Bob", restarted.getItem("Users", "user2").orElseThrow().getAttributes().get("name"));
+        assertTrue(restarted.getItem("Songs", "Daft Punk", "Aerodynamic").isPresent());
+    }
+
+    @Test
+    void batchWrite_toATableDeletedMeanwhile_shouldReportItsWritesAndReleaseTheCheckpointLock() throws Exception {
+        // Arrange: Songs is deleted after its write was validated, before the batch locks anything
+        storageService.createTable("Songs", "Artist", "SongTitle");
+        Map<String, List<WriteRequest>> requests = new LinkedHashMap<>() {
+            @Override
+            public void forEach(BiConsumer<? super String, ? super List<WriteRequest>> action) {
+                super.forEach(action);
+                storageService.deleteTable("Songs");
+            }
+        };
+        requests.put("Users", List.of(WriteRequest.put(Map.of("userId", "user1", "name", "Alice"))));
+        requests.put("Songs", List.of(WriteRequest.put(Map.of("Artist", "Daft Punk", "SongTitle", "Aerodynamic"))));
+
+        // Act
+        BatchWriteResult result = storageService.batchWriteItems(requests);
+
+        // Assert: the other write still went through, and no lock was left behind
+        assertEquals(1, result.processed());
+        assertEquals(List.of("Songs"), result.errors().stream().map(BatchItemError::tableName).toList());
+        assertTrue(storageService.getItem("Users", "user1").isPresent());
+        // (appliedSequence takes the checkpoint lock for writing, like a checkpoint does)
+        Thread checkpointLock = new Thread(storageService::appliedSequence);
+        checkpointLock.start();
+        checkpointLock.join(10_000);
+        assertFalse(checkpointLock.isAlive(), "waiting for a read lock nobody holds any more");
+    }
+
+    @Test
+    void shardedBatchWrite_whenOneShardFails_shouldOnlyApplyWhatTheOtherShardCommitted() {
+        // Arrange: two WAL shards, the disk of the second one fails on its next write
+        walService.close();
+        Path wal = tempDir.resolve("sharded-wal.log");
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        storageService = startSharded(wal, 2, (path, options) -> path.getFileName().equals(wal.getFileName())
+                ? FileChannel.open(path, options)
+                : new WALServiceTest.FailingChannel(FileChannel.open(path, options), failNextWrite));
+        storageService.createTable("Users", "userId");
+        List<WriteRequest> puts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            puts.add(WriteRequest.put(Map.of("userId", "user" + i, "name", "User " + i)));
+        }
+
+        // Act
+        failNextWrite.set(true);
+        BatchWriteResult result = storageService.batchWriteItems(Map.of("Users", puts));
+
+        // Assert: the puts of the failed shard are reported, the other shard's are applied
+        Set<Integer> failed = new HashSet<>();
+        result.errors().forEach(error -> failed.add(error.index()));
+        assertFalse(failed.isEmpty());
+        assertEquals(20 - failed.size(), result.processed());
+        assertTrue(result.processed() > 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(!failed.contains(i), storageService.getItem("Users", "user" + i).isPresent(), "user" + i);
+        }
+
+        // and a restart replays exactly those
+        walService.close();
+        StorageService restarted = startSharded(wal, 2);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(!failed.contains(i), restarted.getItem("Users", "user" + i).isPresent(), "user" + i);
+        }
+    }
+
+    @Test
+    void globalSecondaryIndex_shouldFollowPutsAndDeletesAndSurviveRestart() throws Exception {
+        // Arrange: songs indexed by genre (sorted by year), projecting only the album
+        storageService.createTable("Songs", "Artist", "SongTitle", List.of(
+                new GlobalSecondaryIndex("GenreIndex", "Genre", "Year", ProjectionType.INCLUDE, List.of("Album"))));
+        putSong("Daft Punk", "One More Time", "House", 2000);
+        putSong("Daft Punk", "Aerodynamic", "House", 2001);
+        putSong("Justice", "Genesis", "Electro", 2007);
+
+        // Act: move one song to another genre, delete another one, and checkpoint in between
+        storageService.checkpoint();
+        putSong("Daft Punk", "Aerodynamic", "Electro", 2001);
+        storageService.deleteItem("Songs", "Justice", "Genesis");
+
+        // Assert: the index only has the current versions, with the projected attributes
+        List<Item> house = storageService.queryIndex("Songs", "GenreIndex", "House", null, null);
+        assertEquals(1, house.size());
+        assertEquals(new Key("Daft Punk", "One More Time"), house.get(0).getPrimaryKey());
+        assertEquals("Album of One More Time", house.get(0).getAttributes().get("Album"));
+        assertNull(house.get(0).getAttributes().get("Lyrics"), "Lyrics are not projected");
+        assertEquals(List.of("Aerodynamic"), titles(storageService.queryIndex("Songs", "GenreIndex", "Electro", null, null)));
+        assertEquals(1, storageService.queryIndex("Songs", "GenreIndex", "House", "1999", "2001").size());
+        assertThrows(IllegalArgumentException.class, () -> storageService.queryIndex("Songs", "Nope", "House", null, null));
+
+        // and a restart rebuilds it from snapshot + WAL tail
+        walService.close();
+        StorageService restarted = restart();
+        assertEquals(List.of("One More Time"), titles(restarted.queryIndex("Songs", "GenreIndex", "House", null, null)));
+        assertEquals(List.of("Aerodynamic"), titles(restarted.queryIndex("Songs", "GenreIndex", "Electro", null, null)));
+    }
+
+    @Test
+    void globalSecondaryIndex_withAsyncMaintenance_shouldCatchUp() {
+        StorageService async = new StorageService(walService, newSnapshotService(), new InMemoryStorageEngine(), 1, true);
+        async.createTable("Users", "userId", null, List.of(
+                new GlobalSecondaryIndex("ByCity", "city", null, ProjectionType.KEYS_ONLY, null)));
+        for (int i = 0; i < 500; i++) {
+            Item item = new Item();
+            item.setAttributes(Map.of("userId", "user" + i, "city", i % 2 == 0 ? "Pune" : "Oslo"));
+            async.putItem("Users", item);
+        }
+
+        async.awaitIndexMaintenance();
+
+        List<Item> pune = async.queryIndex("Users", "ByCity", "Pune", null, null);
+        assertEquals(250, pune.size());
+        assertEquals(Set.of("userId", "city"), pune.get(0).getAttributes().keySet());
+        async.close();
+    }
+
+    private void putSong(String artist, String title, String genre, int year) {
+        Item song = new Item();
+        song.setAttributes(Map.of("Artist", artist, "SongTitle", title, "Genre", genre, "Year", year,
+                "Album", "Album of " + title, "Lyrics", "..."));
+        storageService.putItem("Songs", song);
+    }
+
+    private static List<Object> titles(List<Item> items) {
+        return items.stream().map(item -> item.getAttributes().get("SongTitle")).toList();
+    }
+
+    @Test
+    void numberSortKey_shouldOrderAndRangeNumericallyAndSurviveRestart() {
+        // Arrange: pull requests of a repo, numbered 1..12
+        storageService.createTable("PullRequests", "Repo", KeyType.STRING, "PRNumber", KeyType.NUMBER, List.of());
+        for (int number = 1; number <= 12; number++) {
+            Item pr = new Item();
+            pr.setAttributes(Map.of("Repo", "jkeydb", "PRNumber", number, "Title", "PR " + number));
+            storageService.putItem("PullRequests", pr);
+        }
+
+        // Act: 9 <= PRNumber < 11, which string keys would get wrong ("10" < "9")
+        Collection<Item> range = storageService.query("PullRequests", "jkeydb", "9", "11");
+        ItemPage firstPage = storageService.query("PullRequests", "jkeydb", null, null, 10, null);
+
+        // Assert: keys come back the way they were written
+        assertEquals(List.of(new Key("jkeydb", "9"), new Key("jkeydb", "10")),
+                range.stream().map(Item::getPrimaryKey).toList());
+        assertEquals(new Key("jkeydb", "10"), firstPage.lastEvaluatedKey());
+        assertEquals(2, storageService.query("PullRequests", "jkeydb", null, null, 10, "10").items().size());
+        assertEquals("PR 10", storageService.getItem("PullRequests", "jkeydb", "10.0").orElseThrow().getAttributes().get("Title"));
+        assertThrows(IllegalArgumentException.class, () -> {
+            Item bad = new Item();
+            bad.setAttributes(Map.of("Repo", "jkeydb", "PRNumber", "latest"));
+            storageService.putItem("PullRequests", bad);
+        });
+
+        storageService.deleteItem("PullRequests", "jkeydb", "12");
+        walService.close();
+        StorageService restarted = restart();
+        List<Item> all = restarted.scan("PullRequests");
+        assertEquals(11, all.size());
+        assertEquals("11", all.get(all.size() - 1).getPrimaryKey().getSortKey());
+    }
+
+    @Test
+    void restart_shouldReplayWalIntoFreshService() {
+        // Arrange: write a few items and delete one of them
+        storageService.createTable("Songs", "Artist", "SongTitle");
+        for (String title : new String[]{"Aerodynamic", "Digital Love", "One More Time"}) {
+            Item song = new Item();
+            song.setAttributes(Map.of("Artist", "Daft Punk", "SongTitle", title, "Year", 2001));
+            storageService.putItem("Songs", song);
+        }
+        storageService.deleteItem("Songs", "Daft Punk", "Digital Love");
+        walService.close();
+
+        // Act: start a brand new WAL + storage pair on the same file, like a process restart
+        StorageService restarted = restart();
+
+        // Assert
+        assertEquals(2, restarted.query("Songs", "Daft Punk", null, null).size());
+        assertFalse(restarted.getItem("Songs", "Daft Punk", "Digital Love").isPresent());
+        Item song = restarted.getItem("Songs", "Daft Punk", "Aerodynamic").orElseThrow();
+        assertEquals(2001, song.getAttributes().get("Year"));
+    }
+
+    @Test
+    void checkpoint_shouldBoundReplayToTheWalTail() throws Exception {
+        // Arrange: some history, including a table that gets dropped again
+        storageService.createTable("Temp", "id");
+        putUser("user1", "Alice");
+        storageService.deleteTable("Temp");
+        putUser("user2", "Bob");
+
+        // Act: checkpoint, then a few more writes that only live in the new WAL segment
+        long sequence = storageService.checkpoint();
+        putUser("user3", "Carol");
+        storageService.deleteItem("Users", "user1");
+        walService.close();
+        StorageService restarted = restart();
+
+        // Assert: snapshot + tail gives the same state, and only the tail was replayed
+        assertEquals(sequence, restarted.getRecoveryStats().snapshotSequence());
+        assertEquals(2, restarted.getRecoveryStats().walRecordsReplayed());
+        assertFalse(restarted.getItem("Users", "user1").isPresent());
+        assertEquals("Bob", restarted.getItem("Users", "user2").orElseThrow().getAttributes().get("name"));
+        assertEquals("Carol", restarted.getItem("Users", "user3").orElseThrow().getAttributes().get("name"));
+        assertThrows(TableNotFoundException.class, () -> restarted.getTable("Temp"));
+        assertEquals(1, walService.getSegments().size(), "sealed segments should be gone after the checkpoint");
+    }
+
+    @Test
+    void parallelReplay_shouldMatchSequentialReplay() {
+        // Arrange: several versions per key, and a table that is dropped and recreated in between
+        storageService.createTable("Scores", "player", "game");
+        for (int version = 0; version < 5; version++) {
+            for (int player = 0; player < 20; player++) {
+                Item score = new Item();
+                score.setAttributes(Map.of("player", "p" + player, "game", "g" + (player % 3), "points", version));
+                storageService.putItem("Scores", score);
+            }
+            if (version == 2) {
+                storageService.deleteTable("Scores");
+                storageService.createTable("Scores", "player", "game");
+            }
+        }
+        storageService.deleteItem("Scores", "p7", "g1");
+        walService.close();
+
+        // Act
+        StorageService sequential = restart();
+        walService.close();
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        StorageService parallel = new StorageService(walService, newSnapshotService(), 4);
+        parallel.replayWalOnStartup();
+
+        // Assert: same items, and every key ended on its last version
+        for (int player = 0; player < 20; player++) {
+            String partitionKey = "p" + player;
+            String sortKey = "g" + (player % 3);
+            assertEquals(sequential.getItem("Scores", partitionKey, sortKey), parallel.getItem("Scores", partitionKey, sortKey));
+            if (player != 7) {
+                assertEquals(4, parallel.getItem("Scores", partitionKey, sortKey).orElseThrow().getAttributes().get("points"));
+            }
+        }
+        assertFalse(parallel.getItem("Scores", "p7", "g1").isPresent());
+        assertEquals(sequential.getRecoveryStats().walRecordsReplayed(), parallel.getRecoveryStats().walRecordsReplayed());
+    }
+
+    @Test
+    void shardedWal_shouldReplayEveryShardAndRefuseADifferentShardCount() throws Exception {
+        // Arrange: four WAL shards, concurrent writers, a table dropped and recreated in between
+        walService.close();
+        Path wal = tempDir.resolve("sharded-wal.log");
+        storageService = startSharded(wal, 4);
+        storageService.createTable("Scores", "player", "game");
+        writeScoresConcurrently(0);
+        storageService.deleteTable("Scores");
+        storageService.createTable("Scores", "player", "game");
+        writeScoresConcurrently(1);
+        long sequence = storageService.checkpoint();
+        writeScoresConcurrently(2);
+        storageService.deleteItem("Scores", "p7", "g1");
+        walService.close();
+
+        // Act
+        StorageService restarted = startSharded(wal, 4);
+
+        // Assert: every shard has its own file, and each key ended on its last version
+        for (int shard = 1; shard < 4; shard++) {
+            assertTrue(tempDir.resolve("sharded-wal-" + shard + ".log").toFile().exists());
+        }
+        assertEquals(sequence, restarted.getRecoveryStats().snapshotSequence());
+        assertEquals(40 + 1, restarted.getRecoveryStats().walRecordsReplayed());
+        for (int player = 0; player < 40; player++) {
+            Optional<Item> score = restarted.getItem("Scores", "p" + player, "g" + (player % 3));
+            if (player == 7) {
+                assertFalse(score.isPresent());
+            } else {
+                assertEquals(2, score.orElseThrow().getAttributes().get("points"));
+            }
+        }
+        walService.close();
+
+        // the shard count can't change while the WAL still holds records...
+        assertThrows(IllegalStateException.class, () -> new WALService(
+                wal.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024, 2).init());
+        // ...but it can once a checkpoint has covered them
+        startSharded(wal, 4).checkpoint();
+        walService.close();
+        StorageService resharded = startSharded(wal, 2);
+        assertEquals(39, resharded.scan("Scores").size());
+    }
+
+    @Test
+    void partitionKeyOnlyCalls_onATableWithATypedSortKey_shouldFindNothingOrBeRejected() {
+        // Arrange
+        storageService.createTable("PullRequests", "Repo", KeyType.STRING, "PRNumber", KeyType.NUMBER, List.of());
+        Item pr = new Item();
+        pr.setAttributes(Map.of("Repo", "jkeydb", "PRNumber", 1, "Title", "PR 1"));
+        storageService.putItem("PullRequests", pr);
+
+        // Act + Assert: without a sort key no item matches, and an update can't make one up
+        assertTrue(storageService.getItem("PullRequests", "jkeydb").isEmpty());
+        storageService.deleteItem("PullRequests", "jkeydb");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> storageService.updateItem("PullRequests", "jkeydb", UpdateExpression.parse("ADD views 1")));
+        assertEquals("Update is missing the sort key PRNumber", e.getMessage());
+        assertTrue(storageService.getItem("PullRequests", "jkeydb", "1").isPresent());
+    }
+
+    @Test
+    void updateItem_shouldApplyAtomicallyAndLogOnlyTheChangedAttributes() throws Exception {
+        // Arrange
+        storageService.createTable("Counters", "page", KeyType.STRING, "day", KeyType.NUMBER, List.of());
+        Item page = new Item();
+        page.setAttributes(Map.of("page", "home", "day", 1, "title", "Home", "body", "x".repeat(1000), "draft", true));
+        storageService.putItem("Counters", page);
+        UpdateExpression increment = UpdateExpression.parse("ADD views 1");
+
+        // Act: 8 threads counting on one item, plus an update that creates a new one
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    storageService.updateItem("Counters", "home", "1", increment);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Item updated = storageService.updateItem("Counters", "home", "1", UpdateExpression.parse(
+                "SET title = 'Welcome', tags = list_append(if_not_exists(tags, []), ['landing']) REMOVE draft"));
+        Item created = storageService.updateItem("Counters", "about", "2", UpdateExpression.parse("SET views = 1"));
+
+        // Assert: no increment was lost and the untouched attributes stayed
+        assertEquals(2000L, ((Number) updated.getAttributes().get("views")).longValue());
+        assertEquals("Welcome", updated.getAttributes().get("title"));
+        assertEquals(List.of("landing"), updated.getAttributes().get("tags"));
+        assertFalse(updated.getAttributes().containsKey("draft"));
+        assertEquals(1000, ((String) updated.getAttributes().get("body")).length());
+        assertEquals(new Key("about", "2"), created.getPrimaryKey());
+        assertEquals(Map.of("page", "about", "day", 2L, "views", 1L), Map.copyOf(created.getAttributes()));
+        assertThrows(IllegalArgumentException.class,
+                () -> storageService.updateItem("Counters", "home", "1", UpdateExpression.parse("SET day = 3")));
+
+        // the WAL only has the delta, never the 1000 character body
+        walService.close();
+        int updates = 0;
+        try (WALReader reader = WALReader.open(tempDir.resolve("wal.log"))) {
+            for (WALRecord record = reader.next(); record != null; record = reader.next()) {
+                if (record.entry().operationType() == OperationType.UPDATE_ITEM) {
+                    updates++;
+                    assertFalse(record.entry().item().getAttributes().containsKey("body"));
+                }
+            }
+        }
+        assertEquals(2000 + 2, updates);
+
+        // and a replay of those deltas gives the same items back
+        StorageService restarted = restart();
+        Item replayed = restarted.getItem("Counters", "home", "1").orElseThrow();
+        assertEquals(2000L, ((Number) replayed.getAttributes().get("views")).longValue());
+        assertEquals("Welcome", replayed.getAttributes().get("title"));
+        assertFalse(replayed.getAttributes().containsKey("draft"));
+        assertEquals(1000, ((String) replayed.getAttributes().get("body")).length());
+        assertEquals(1L, ((Number) restarted.getItem("Counters", "about", "2").orElseThrow()
+                .getAttributes().get("views")).longValue());
+    }
+
+    @Test
+    void lsmEngine_shouldRecoverFromSegmentsPlusWalTail() throws Exception {
+        // Arrange: an LSM backed service with a tiny memtable so writes spill to segments
+        walService.close();
+        walService = new WALService(tempDir.resolve("lsm-wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        LsmStorageEngine engine = new LsmStorageEngine(tempDir.resolve("data"), 4096, 3, 1);
+        SnapshotService snapshots = new SnapshotService(tempDir.resolve("lsm-snapshots").toString(), 2);
+        StorageService lsm = new StorageService(walService, snapshots, engine, 1);
+        lsm.replayWalOnStartup();
+        lsm.createTable("Users", "userId");
+        storageService = lsm;
+        for (int i = 0; i < 200; i++) {
+            putUser("user" + i, "v1");
+        }
+        storageService.deleteItem("Users", "user5");
+        lsm.checkpoint();
+        putUser("user7", "v2");
+        lsm.close();
+        walService.close();
+        engine.close();
+
+        // Act: restart on the same files
+        walService = new WALService(tempDir.resolve("lsm-wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        LsmStorageEngine reopenedEngine = new LsmStorageEngine(tempDir.resolve("data"), 4096, 3, 1);
+        StorageService restarted = new StorageService(walService, snapshots, reopenedEngine, 1);
+        restarted.replayWalOnStartup();
+
+        // Assert: only the tail came from the WAL, the rest from the segment files
+        assertEquals(1, restarted.getRecoveryStats().walRecordsReplayed());
+        assertEquals(199, restarted.scan("Users").size());
+        assertFalse(restarted.getItem("Users", "user5").isPresent());
+        assertEquals("v2", restarted.getItem("Users", "user7").orElseThrow().getAttributes().get("name"));
+        assertEquals("v1", restarted.getItem("Users", "user123").orElseThrow().getAttributes().get("name"));
+        restarted.close();
+        reopenedEngine.close();
+    }
+
+    private void putUser(String userId, String name) {
+        Item item = new Item();
+        item.setAttributes(Map.of("userId", userId, "name", name));
+        storageService.putItem("Users", item);
+    }
+
+    private SnapshotService newSnapshotService() {
+        return new SnapshotService(tempDir.resolve("snapshots").toString(), 2);
+    }
+
+    private void writeScoresConcurrently(int version) throws InterruptedException {
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * 10;
+            writers.add(new Thread(() -> {
+                for (int player = first; player < first + 10; player++) {
+                    Item score = new Item();
+                    score.setAttributes(Map.of("player", "p" + player, "game", "g" + (player % 3), "points", version));
+                    storageService.putItem("Scores", score);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+
+    private StorageService startSharded(Path wal, int shards) {
+        return startSharded(wal, shards, FileChannel::open);
+    }
+
+    private StorageService startSharded(Path wal, int shards, WALShard.ChannelOpener channelOpener) {
+        walService = new WALService(wal.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024, shards);
+        walService.setChannelOpener(channelOpener);
+        walService.init();
+        StorageService started = new StorageService(walService, new SnapshotService(tempDir.resolve("sharded-snapshots").toString(), 2));
+        started.replayWalOnStartup();
+        return started;
+    }
+
+    // a brand new WAL + storage pair on the same files, like a process restart
+    private StorageService restart() {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        StorageService restarted = new StorageService(walService, newSnapshotService());
+        restarted.replayWalOnStartup();
+        return restarted;
+    }
+}
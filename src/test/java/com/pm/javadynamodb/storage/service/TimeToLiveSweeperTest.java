@@ -0,0 +1,132 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeToLiveSweeperTest {
+
+    private WALService walService;
+    private StorageService storageService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        storageService = start();
+        storageService.createTable("Sessions", "userId", "sessionId");
+    }
+
+    @AfterEach
+    void tearDown() {
+        walService.close();
+    }
+
+    @Test
+    void expiredItems_shouldBeHiddenAtOnceAndSweptInSmallBatches() {
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < 10; i++) {
+            // even sessions expired an hour ago, odd ones expire in an hour
+            put("u1", "s" + i, i % 2 == 0 ? now - 3600 : now + 3600);
+        }
+        put("u1", "no-ttl", null);
+
+        // nothing is hidden before the table has a TTL attribute
+        assertEquals(11, storageService.query("Sessions", "u1", null, null).size());
+
+        storageService.updateTimeToLive("Sessions", "expiresAt");
+        assertTrue(storageService.getItem("Sessions", "u1", "s0").isEmpty());
+        assertTrue(storageService.getItem("Sessions", "u1", "s1").isPresent());
+        assertEquals(6, storageService.query("Sessions", "u1", null, null).size());
+        assertEquals(6, storageService.scan("Sessions").size());
+        assertEquals(List.of("s1", "s3"), storageService.batchGetItems(Map.of("Sessions", List.of(
+                new Key("u1", "s0"), new Key("u1", "s1"), new Key("u1", "s3"))))
+                .responses().get("Sessions").stream().map(item -> item.getPrimaryKey().getSortKey()).toList());
+
+        // at most 2 deletes per slice: the table is worked off over several rounds, one WAL append each
+        TimeToLiveSweeper sweeper = new TimeToLiveSweeper(storageService, 0, 1000, 2);
+        long appendsBefore = walService.getStats().batchesWritten();
+        assertEquals(2, sweeper.sweepOnce());
+        assertEquals(appendsBefore + 1, walService.getStats().batchesWritten());
+        assertEquals(0, sweeper.getFullPasses());
+
+        int rounds = 1;
+        while (sweeper.getFullPasses() == 0) {
+            sweeper.sweepOnce();
+            rounds++;
+        }
+        assertEquals(3, rounds);
+        assertEquals(5, sweeper.getItemsExpired());
+        assertEquals(6, storageService.getTableMetrics().get(0).approximateItemCount());
+    }
+
+    @Test
+    void sweeper_shouldNotDeleteAnItemThatWasRenewed() {
+        long now = System.currentTimeMillis() / 1000;
+        put("u1", "s0", now - 10);
+        storageService.updateTimeToLive("Sessions", "expiresAt");
+        Item stale = storageService.getTable("Sessions").getStore().get("u1", "s0").orElseThrow();
+
+        // renewed after the sweeper saw it expired
+        put("u1", "s0", now + 3600);
+        assertEquals(0, storageService.expireItems("Sessions", List.of(stale.getPrimaryKey())));
+        assertTrue(storageService.getItem("Sessions", "u1", "s0").isPresent());
+    }
+
+    @Test
+    void ttlSetting_shouldSurviveReplayAndCheckpoint() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        put("u1", "old", now - 60);
+        storageService.updateTimeToLive("Sessions", "expiresAt");
+
+        // from the WAL
+        storageService = restart();
+        assertEquals("expiresAt", storageService.getTable("Sessions").getTimeToLiveAttribute());
+        assertTrue(storageService.getItem("Sessions", "u1", "old").isEmpty());
+
+        // from a snapshot
+        storageService.checkpoint();
+        storageService = restart();
+        assertEquals("expiresAt", storageService.getTable("Sessions").getTimeToLiveAttribute());
+
+        // turned off again
+        storageService.updateTimeToLive("Sessions", null);
+        storageService = restart();
+        assertNull(storageService.getTable("Sessions").getTimeToLiveAttribute());
+        assertTrue(storageService.getItem("Sessions", "u1", "old").isPresent());
+
+        assertThrows(IllegalArgumentException.class, () -> storageService.updateTimeToLive("Sessions", "userId"));
+    }
+
+    private void put(String userId, String sessionId, Long expiresAt) {
+        Item item = new Item();
+        item.setAttributes(expiresAt == null
+                ? Map.of("userId", userId, "sessionId", sessionId)
+                : Map.of("userId", userId, "sessionId", sessionId, "expiresAt", expiresAt));
+        storageService.putItem("Sessions", item);
+    }
+
+    private StorageService start() {
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        StorageService started = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2));
+        started.replayWalOnStartup();
+        return started;
+    }
+
+    private StorageService restart() {
+        walService.close();
+        return start();
+    }
+}
@@ -0,0 +1,314 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.api.exception.TransactionCanceledException;
+import com.pm.javadynamodb.core.model.ChangePage;
+import com.pm.javadynamodb.core.model.ChangeRecord;
+import com.pm.javadynamodb.core.model.ChangeType;
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.core.model.TransactGetItem;
+import com.pm.javadynamodb.core.model.TransactWriteItem;
+import com.pm.javadynamodb.storage.engine.InMemoryStorageEngine;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest {
+
+    private WALService walService;
+    private StorageService storageService;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        walService.close();
+    }
+
+    @Test
+    void failedCondition_shouldCancelTheWholeTransaction() throws IOException {
+        // Arrange
+        start(1);
+        storageService.createTable("Accounts", "owner");
+        storageService.createTable("Transfers", "transferId");
+        account("alice", 10);
+
+        // Act: alice can't afford 50, so the transfer record must not show up either
+        TransactionCanceledException canceled = assertThrows(TransactionCanceledException.class,
+                () -> storageService.transactWriteItems(transfer("t1", "alice", "bob", 50)));
+
+        // Assert
+        assertEquals(Arrays.asList(null, "ConditionalCheckFailed", null), canceled.getCancellationReasons());
+        assertTrue(storageService.getItem("Transfers", "t1").isEmpty());
+        assertEquals(10, balance("alice"));
+        assertTrue(storageService.getItem("Accounts", "bob").isEmpty());
+
+        // one item twice, or a check without a condition, is refused before anything is locked
+        assertThrows(IllegalArgumentException.class, () -> storageService.transactWriteItems(List.of(
+                TransactWriteItem.update("Accounts", new Key("alice", null), "ADD balance 1"),
+                TransactWriteItem.delete("Accounts", new Key("alice", null)))));
+        assertThrows(IllegalArgumentException.class, () -> storageService.transactWriteItems(List.of(
+                new TransactWriteItem("Accounts", null, null, null, null, new Key("alice", null), null))));
+    }
+
+    @Test
+    void transaction_shouldApplyAcrossTablesAndSurviveARestart() throws IOException {
+        // Arrange
+        start(1);
+        storageService.createTable("Accounts", "owner");
+        storageService.createTable("Transfers", "transferId");
+        account("alice", 100);
+        long checkpoint = storageService.readChanges("Accounts", null, 10, 0).nextCheckpoint();
+
+        // Act
+        storageService.transactWriteItems(transfer("t1", "alice", "bob", 30));
+
+        // Assert
+        assertEquals(70, balance("alice"));
+        assertEquals(30, balance("bob"));
+        assertEquals("alice", storageService.getItem("Transfers", "t1").orElseThrow().getAttributes().get("from"));
+
+        // each write of the transaction is a change of its own, with its own sequence number
+        ChangePage page = storageService.readChanges("Accounts", checkpoint, 10, 0);
+        assertEquals(List.of(ChangeType.UPDATE, ChangeType.UPDATE),
+                page.records().stream().map(ChangeRecord::eventName).toList());
+        assertTrue(page.records().get(1).sequence() > page.records().get(0).sequence());
+        // after a restart they are read back from the WAL, the same, also when a page ends between them
+        start(1);
+        ChangePage first = storageService.readChanges("Accounts", checkpoint, 1, 0);
+        assertTrue(first.fromWal());
+        assertEquals(page.records().get(0).sequence(), first.records().get(0).sequence());
+        assertEquals(page.records().get(0).keys(), first.records().get(0).keys());
+        ChangePage second = storageService.readChanges("Accounts", first.nextCheckpoint(), 10, 0);
+        assertEquals(List.of(page.records().get(1).sequence()), second.records().stream().map(ChangeRecord::sequence).toList());
+
+        // a restart replays the one WAL record that holds all three writes
+        assertEquals(70, balance("alice"));
+        assertEquals(30, balance("bob"));
+        assertTrue(storageService.getItem("Transfers", "t1").isPresent());
+    }
+
+    @Test
+    void concurrentTransfers_shouldNeverLoseOrCreateMoney() throws Exception {
+        // Arrange: money moves between 8 accounts on 8 threads; 2 shards, so transactions are barriers in both files
+        start(2);
+        storageService.createTable("Accounts", "owner");
+        storageService.createTable("Transfers", "transferId");
+        int accounts = 8;
+        for (int i = 0; i < accounts; i++) {
+            account("owner" + i, 100);
+        }
+
+        // Act
+        AtomicInteger transferIds = new AtomicInteger();
+        AtomicInteger canceled = new AtomicInteger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 8; w++) {
+            writers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 200; i++) {
+                    int from = random.nextInt(accounts);
+                    int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                    try {
+                        storageService.transactWriteItems(transfer("t" + transferIds.incrementAndGet(),
+                                "owner" + from, "owner" + to, 1 + random.nextInt(40)));
+                    } catch (TransactionCanceledException e) {
+                        canceled.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        // a reader checking the total all along only ever sees whole transfers
+        List<TransactGetItem> all = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            all.add(new TransactGetItem("Accounts", new Key("owner" + i, null)));
+        }
+        List<Long> totals = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                totals.add(storageService.transactGetItems(all).responses().stream()
+                        .mapToLong(item -> ((Number) item.getAttributes().get("balance")).longValue()).sum());
+            }
+        });
+        reader.start();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        reader.join();
+
+        // Assert
+        assertTrue(totals.stream().allMatch(total -> total == 100L * accounts), "a read saw half a transfer");
+        assertEquals(100L * accounts, totalBalance(accounts));
+        for (int i = 0; i < accounts; i++) {
+            assertTrue(balance("owner" + i) >= 0, "the condition keeps balances from going negative");
+        }
+        long committed = transferIds.get() - canceled.get();
+        assertEquals(committed, storageService.scan("Transfers").size());
+
+        // the sharded replay applies every transaction exactly once
+        start(2);
+        assertEquals(100L * accounts, totalBalance(accounts));
+        assertEquals(committed, storageService.scan("Transfers").size());
+    }
+
+    @Test
+    void shardedWal_shouldOnlyWriteATransactionToTheShardsOfItsWrites() throws Exception {
+        // Arrange: 4 shards, 8 accounts spread over them
+        start(4);
+        storageService.createTable("Accounts", "owner");
+        storageService.createTable("Transfers", "transferId");
+        for (int i = 0; i < 8; i++) {
+            account("owner" + i, 100);
+        }
+
+        // Act: transfers around the ring, and a deposit that only touches one partition
+        for (int i = 0; i < 8; i++) {
+            storageService.transactWriteItems(transfer("t" + i, "owner" + i, "owner" + (i + 1) % 8, 10));
+        }
+        storageService.transactWriteItems(List.of(TransactWriteItem.update("Accounts", new Key("owner0", null), "ADD balance 5")));
+        walService.close();
+
+        // Assert: each transaction is in the shards it is marked with and in no other
+        Map<WALEntry, Integer> copies = new HashMap<>();
+        for (int shard = 0; shard < 4; shard++) {
+            try (WALReader reader = WALReader.open(tempDir.resolve(shard == 0 ? "wal.log" : "wal-" + shard + ".log"))) {
+                WALRecord record;
+                while ((record = reader.next()) != null) {
+                    if (record.entry().operationType() == OperationType.TRANSACTION) {
+                        assertTrue(record.entry().shards().contains(shard));
+                        copies.merge(record.entry(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        assertEquals(9, copies.size());
+        copies.forEach((transaction, count) -> assertEquals(transaction.shards().size(), (int) count));
+        assertTrue(copies.keySet().stream().anyMatch(transaction -> transaction.shards().size() == 1));
+
+        // the sharded replay lines up only the shards of each transaction and applies it once
+        start(4);
+        assertEquals(105, balance("owner0"));
+        assertEquals(805, totalBalance(8));
+        assertEquals(8, storageService.scan("Transfers").size());
+    }
+
+    @Test
+    void transactionMissingFromOneShard_shouldNotBeReplayed() throws Exception {
+        // Arrange: 2 shards, the second one's disk fails on its next write
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        start(2, (path, options) -> path.getFileName().toString().equals("wal.log")
+                ? FileChannel.open(path, options)
+                : new WALServiceTest.FailingChannel(FileChannel.open(path, options), failNextWrite));
+        storageService.createTable("Accounts", "owner");
+        storageService.createTable("Transfers", "transferId");
+        for (int i = 0; i < 8; i++) {
+            account("owner" + i, 100);
+        }
+
+        // Act: a deposit to all 8 accounts (so both shards) fails in the second shard only,
+        // then transfers go on in both
+        failNextWrite.set(true);
+        List<TransactWriteItem> deposit = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            deposit.add(TransactWriteItem.update("Accounts", new Key("owner" + i, null), "ADD balance 1000"));
+        }
+        assertThrows(RuntimeException.class, () -> storageService.transactWriteItems(deposit));
+        for (int i = 0; i < 8; i++) {
+            storageService.transactWriteItems(transfer("t" + i, "owner" + i, "owner" + (i + 1) % 8, 10 + i));
+        }
+        List<Long> balances = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            balances.add(balance("owner" + i));
+        }
+        walService.close();
+
+        // Assert: the first shard still holds its copy of the deposit...
+        boolean orphanCopy = false;
+        try (WALReader reader = WALReader.open(tempDir.resolve("wal.log"))) {
+            WALRecord record;
+            while ((record = reader.next()) != null) {
+                orphanCopy |= record.entry().operationType() == OperationType.TRANSACTION
+                        && record.entry().operations().size() == 8;
+            }
+        }
+        assertTrue(orphanCopy);
+
+        // ...but the replay leaves it out, like the caller was told, and applies everything after it
+        start(2);
+        assertEquals(800, totalBalance(8));
+        for (int i = 0; i < 8; i++) {
+            assertEquals((long) balances.get(i), balance("owner" + i));
+        }
+        assertEquals(8, storageService.scan("Transfers").size());
+    }
+
+    // moves amount from one account to another and records it; the payer must have enough
+    private static List<TransactWriteItem> transfer(String transferId, String from, String to, int amount) {
+        return List.of(
+                TransactWriteItem.put("Transfers", Map.of("transferId", transferId, "from", from, "to", to, "amount", amount))
+                        .withCondition("attribute_not_exists(transferId)"),
+                TransactWriteItem.update("Accounts", new Key(from, null), "ADD balance -" + amount)
+                        .withCondition("balance >= " + amount),
+                TransactWriteItem.update("Accounts", new Key(to, null), "ADD balance " + amount));
+    }
+
+    private void account(String owner, int balance) {
+        Item item = new Item();
+        item.setAttributes(Map.of("owner", owner, "balance", balance));
+        storageService.putItem("Accounts", item);
+    }
+
+    private long balance(String owner) {
+        return ((Number) storageService.getItem("Accounts", owner).orElseThrow().getAttributes().get("balance")).longValue();
+    }
+
+    private long totalBalance(int accounts) {
+        long total = 0;
+        for (int i = 0; i < accounts; i++) {
+            total += balance("owner" + i);
+        }
+        return total;
+    }
+
+    // starts (or restarts) on the files in tempDir
+    private void start(int shards) throws IOException {
+        start(shards, FileChannel::open);
+    }
+
+    private void start(int shards, WALShard.ChannelOpener channelOpener) throws IOException {
+        if (walService != null) {
+            walService.close();
+        }
+        Files.createDirectories(tempDir);
+        walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024, shards);
+        walService.setChannelOpener(channelOpener);
+        walService.init();
+        storageService = new StorageService(walService, new SnapshotService(tempDir.resolve("snapshots").toString(), 2),
+                new InMemoryStorageEngine(), 1, false, 4096);
+        storageService.replayWalOnStartup();
+    }
+}
@@ -0,0 +1,104 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.metrics.LatencyHistogram;
+import com.pm.javadynamodb.storage.metrics.LatencySnapshot;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.WALStats;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load test for the write path: many concurrent clients, each sending one putItem at a
+ * time, served either the way Tomcat does by default (a pool of 200 platform threads) or
+ * with a virtual thread per request (spring.threads.virtual.enabled=true).
+ * With the pool, writers queue for a thread while the busy ones sit waiting for an fsync;
+ * with virtual threads every client's write reaches the WAL and they share group commits.
+ *
+ * Not part of the normal build, run it with: mvn test -Pbenchmarks
+ * Size it with -Djkeydb.bench.clients=10000 -Djkeydb.bench.requests=20,
+ * add -Djdk.tracePinnedThreads=full to have the JVM report any carrier thread pinning.
+ */
+@Tag("benchmark")
+class VirtualThreadLoadBenchmarkTest {
+
+    private static final int TOMCAT_DEFAULT_MAX_THREADS = 200;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void platformThreadPoolVersusVirtualThreads() throws Exception {
+        int clients = Integer.getInteger("jkeydb.bench.clients", 10_000);
+        int requests = Integer.getInteger("jkeydb.bench.requests", 20);
+        System.out.printf("%,d clients x %,d puts each, WAL in FSYNC_PER_BATCH mode%n", clients, requests);
+
+        // warm-up round so the JIT has compiled the write path for both
+        run("warm-up", Executors.newFixedThreadPool(TOMCAT_DEFAULT_MAX_THREADS), 1_000, 5);
+
+        run("platform x" + TOMCAT_DEFAULT_MAX_THREADS, Executors.newFixedThreadPool(TOMCAT_DEFAULT_MAX_THREADS), clients, requests);
+        run("virtual", Executors.newVirtualThreadPerTaskExecutor(), clients, requests);
+    }
+
+    private void run(String name, ExecutorService server, int clients, int requests) throws Exception {
+        Path directory = tempDir.resolve(name.replaceAll("\\W", "_"));
+        WALService walService = new WALService(directory.resolve("wal.log").toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 1024);
+        walService.init();
+        StorageService storage = new StorageService(walService, new SnapshotService(directory.resolve("snapshots").toString(), 1));
+        storage.replayWalOnStartup();
+        storage.createTable("Load", "client", "request");
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+        // the clients themselves are cheap virtual threads in both cases, only the server side differs
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                String client = "client" + c;
+                clientThreads.submit(() -> {
+                    for (int r = 0; r < requests; r++) {
+                        Item item = item(client, r);
+                        long sent = System.nanoTime();
+                        Future<Item> response = server.submit(() -> storage.putItem("Load", item));
+                        response.get();
+                        latency.recordSince(sent);
+                    }
+                    return null;
+                });
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        server.shutdown();
+
+        LatencySnapshot snapshot = latency.snapshot();
+        WALStats wal = walService.getStats();
+        System.out.printf("%-14s %,9.0f puts/s   p50=%7.2f ms  p99=%7.2f ms  p99.9=%7.2f ms  max=%7.2f ms  avg batch=%6.1f%n",
+                name, snapshot.count() / (elapsedNanos / 1e9),
+                snapshot.p50Nanos() / 1e6, snapshot.p99Nanos() / 1e6, snapshot.p999Nanos() / 1e6,
+                snapshot.maxNanos() / 1e6, wal.averageBatchSize());
+
+        assertEquals((long) clients * requests, snapshot.count());
+        assertEquals((long) clients * requests, storage.getTableMetrics().get(0).approximateItemCount());
+        storage.close();
+        walService.close();
+    }
+
+    private static Item item(String client, int request) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("client", client);
+        attributes.put("request", String.format("r%05d", request));
+        attributes.put("payload", "x".repeat(64));
+        Item item = new Item();
+        item.setAttributes(attributes);
+        return item;
+    }
+}
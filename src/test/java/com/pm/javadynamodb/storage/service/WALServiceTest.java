@@ -0,0 +1,337 @@
+package com.pm.javadynamodb.storage.service;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.storage.wal.DurabilityMode;
+import com.pm.javadynamodb.storage.wal.OperationType;
+import com.pm.javadynamodb.storage.wal.WALEntry;
+import com.pm.javadynamodb.storage.wal.WALReader;
+import com.pm.javadynamodb.storage.wal.WALRecord;
+import com.pm.javadynamodb.storage.wal.WALStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WALServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void concurrentWriters_shouldAllBeCommitted() throws Exception {
+        Path walFile = tempDir.resolve("wal.log");
+        WALService walService = new WALService(walFile.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 64);
+        walService.init();
+
+        // Arrange: many threads logging at the same time so the flusher has something to group
+        int threads = 8;
+        int perThread = 200;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String table = "T" + t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    walService.log(WALEntry.forTable(table, "pk", "sk"));
+                }
+            }));
+        }
+
+        // Act
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        walService.close();
+
+        // Assert: every entry made it to the file with gap-free sequence numbers
+        try (WALReader reader = WALReader.open(walFile)) {
+            long expectedSequence = 1;
+            WALRecord record;
+            while ((record = reader.next()) != null) {
+                assertEquals(expectedSequence++, record.sequence());
+            }
+            assertEquals(threads * perThread + 1, expectedSequence);
+            assertFalse(reader.hitCorruptTail());
+        }
+
+        WALStats stats = walService.getStats();
+        assertEquals(threads * perThread, stats.entriesWritten());
+        assertTrue(stats.batchesWritten() <= stats.entriesWritten());
+        assertTrue(stats.maxBatchSize() <= 64);
+        assertTrue(stats.fsyncs() >= stats.batchesWritten(), "every batch should be synced");
+    }
+
+    @Test
+    void logAll_shouldWriteAGroupWithConsecutiveSequencesOrNotAtAll() throws Exception {
+        Path walFile = tempDir.resolve("wal.log");
+        WALService walService = new WALService(walFile.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 64);
+        walService.init();
+
+        // Act: a good group, then a group whose last entry can't be encoded, then one more entry
+        long last = walService.logAll(List.of(
+                WALEntry.forItem(OperationType.PUT_ITEM, "Users", item("u1", "Alice")),
+                WALEntry.forItem(OperationType.PUT_ITEM, "Orders", item("o1", "Book"))));
+        assertThrows(RuntimeException.class, () -> walService.logAll(List.of(
+                WALEntry.forItem(OperationType.PUT_ITEM, "Payments", item("p1", "Card")),
+                WALEntry.forItem(OperationType.PUT_ITEM, "Payments", item("p2", new Object())))));
+        long next = walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "Payments", item("p3", "Cash")));
+        walService.close();
+
+        // Assert: the failed group left nothing behind, not even the interned table name
+        assertEquals(2, last);
+        assertEquals(3, next);
+        List<WALRecord> records = new ArrayList<>();
+        try (WALReader reader = WALReader.open(walFile)) {
+            WALRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+            assertFalse(reader.hitCorruptTail());
+        }
+        assertEquals(3, records.size());
+        assertEquals("Payments", records.get(2).entry().tableName());
+        assertEquals("Cash", records.get(2).entry().item().getAttributes().get("value"));
+        assertEquals(3, walService.getStats().entriesWritten());
+    }
+
+    @Test
+    void close_whileWritersAreAppending_shouldLeaveNoWriterWaiting() throws Exception {
+        for (int round = 0; round < 10; round++) {
+            Path walFile = tempDir.resolve("round" + round).resolve("wal.log");
+            Files.createDirectories(walFile.getParent());
+            WALService walService = new WALService(walFile.toString(), DurabilityMode.OS_BUFFERED, 10, 16);
+            walService.init();
+
+            // Arrange: writers that keep appending until the WAL refuses them
+            AtomicInteger committed = new AtomicInteger();
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                writers.add(new Thread(() -> {
+                    while (true) {
+                        try {
+                            walService.log(WALEntry.forTableDeletion("Users"));
+                            committed.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            return;
+                        }
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            Thread.sleep(20);
+
+            // Act
+            walService.close();
+
+            // Assert: every writer got an answer, and what was acknowledged is in the file
+            for (Thread writer : writers) {
+                writer.join(5_000);
+                assertFalse(writer.isAlive(), "a writer is still waiting for the closed WAL");
+            }
+            int records = 0;
+            try (WALReader reader = WALReader.open(walFile)) {
+                while (reader.next() != null) {
+                    records++;
+                }
+            }
+            assertEquals(committed.get(), records);
+        }
+    }
+
+    @Test
+    void failedWrite_shouldBeCutOffSoLaterBatchesStillReplay() throws Exception {
+        Path walFile = tempDir.resolve("wal.log");
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        WALService walService = new WALService(walFile.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 64);
+        walService.setChannelOpener((path, options) -> new FailingChannel(FileChannel.open(path, options), failNextWrite));
+        walService.init();
+
+        // Act: the disk fails half way through the first record of table Payments, then recovers
+        walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "Users", item("u1", "Alice")));
+        failNextWrite.set(true);
+        assertThrows(RuntimeException.class,
+                () -> walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "Payments", item("p1", "Card"))));
+        long next = walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "Payments", item("p2", "Cash")));
+        walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "Users", item("u2", "Bob")));
+        walService.close();
+
+        // Assert: no half record in the file, so everything acknowledged after the failure replays,
+        // and Payments is defined again by the first record that made it
+        assertEquals(2, next);
+        List<WALRecord> records = new ArrayList<>();
+        try (WALReader reader = WALReader.open(walFile)) {
+            WALRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+            assertFalse(reader.hitCorruptTail());
+        }
+        assertEquals(List.of("Alice", "Cash", "Bob"),
+                records.stream().map(record -> record.entry().item().getAttributes().get("value")).toList());
+        assertEquals("Payments", records.get(1).entry().tableName());
+    }
+
+    @Test
+    void failedWriteInOneShard_shouldNotHandOutAnotherShardsNumbersAgain() throws Exception {
+        // Arrange: 2 shards, only the second one's disk fails; with no partition key function
+        // entries go by table name alone, table B to shard 0 and table A to shard 1
+        Path walFile = tempDir.resolve("wal.log");
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        WALService walService = new WALService(walFile.toString(), DurabilityMode.FSYNC_PER_BATCH, 10, 64, 2);
+        walService.setChannelOpener((path, options) -> path.equals(walFile)
+                ? FileChannel.open(path, options)
+                : new FailingChannel(FileChannel.open(path, options), failNextWrite));
+        walService.init();
+
+        // Act
+        walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "B", item("b1", "x")));
+        long second = walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "B", item("b2", "x")));
+        failNextWrite.set(true);
+        assertThrows(RuntimeException.class, () -> walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "A", item("a1", "x"))));
+        long third = walService.log(WALEntry.forItem(OperationType.PUT_ITEM, "B", item("b3", "x")));
+        walService.close();
+
+        // Assert: the failed write gave its own number back, not the ones shard 0 had used
+        assertEquals(2, second);
+        assertEquals(3, third);
+    }
+
+    private static Item item(String id, Object value) {
+        Item item = new Item();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("id", id);
+        attributes.put("value", value);
+        item.setAttributes(attributes);
+        return item;
+    }
+
+    @Test
+    void logAfterClose_shouldFail() {
+        WALService walService = new WALService(tempDir.resolve("wal.log").toString(), DurabilityMode.OS_BUFFERED, 10, 16);
+        walService.init();
+        walService.close();
+
+        assertThrows(IllegalStateException.class, () -> walService.log(WALEntry.forTableDeletion("Users")));
+    }
+
+    // writes half of the next buffer it is given and then fails, like a disk running full
+    // fails the next write once failNextWrite is set, after writing half of it; also used by StorageServiceTest
+    static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        private final AtomicBoolean failNextWrite;
+
+        FailingChannel(FileChannel delegate, AtomicBoolean failNextWrite) {
+            this.delegate = delegate;
+            this.failNextWrite = failNextWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!failNextWrite.getAndSet(false)) {
+                return delegate.write(src);
+            }
+            ByteBuffer half = src.duplicate();
+            half.limit(src.position() + src.remaining() / 2);
+            delegate.write(half);
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.pm.javadynamodb.storage.wal;
+
+import com.pm.javadynamodb.core.model.Item;
+import com.pm.javadynamodb.core.model.Key;
+import com.pm.javadynamodb.storage.codec.BinaryWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WALReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void typedAttributes_shouldSurviveRoundTrip() throws IOException {
+        // Arrange
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("Artist", "Daft Punk");
+        attributes.put("Year", 2001);
+        attributes.put("Plays", 12_000_000_000L);
+        attributes.put("Rating", 4.5);
+        attributes.put("Explicit", false);
+        attributes.put("Tags", List.of("house", "french"));
+        attributes.put("Label", Map.of("name", "Virgin"));
+        attributes.put("Notes", null);
+        Item item = new Item();
+        item.setAttributes(attributes);
+
+        Path wal = writeLog(
+                WALEntry.forTable("Music", "Artist", null),
+                WALEntry.forItem(OperationType.PUT_ITEM, "Music", item),
+                WALEntry.forItem(OperationType.DELETE_ITEM, "Music", keyOnly("Daft Punk", "SINGLE_KEY_ITEM")),
+                WALEntry.forTableDeletion("Music"));
+
+        // Act & Assert
+        try (WALReader reader = WALReader.open(wal)) {
+            assertEquals(WALEntry.forTable("Music", "Artist", null), reader.next().entry());
+
+            WALRecord put = reader.next();
+            assertEquals(2, put.sequence());
+            assertEquals(attributes, put.entry().item().getAttributes());
+
+            WALRecord delete = reader.next();
+            assertEquals(new Key("Daft Punk", "SINGLE_KEY_ITEM"), delete.entry().item().getPrimaryKey());
+
+            assertEquals(OperationType.DELETE_TABLE, reader.next().entry().operationType());
+            assertNull(reader.next());
+            assertFalse(reader.hitCorruptTail());
+            assertEquals(List.of("Music"), reader.tableNames());
+        }
+    }
+
+    @Test
+    void transaction_shouldSurviveRoundTripAndInternItsTables() throws IOException {
+        // Arrange: the second write of the transaction is the first record to mention Orders
+        Item order = new Item();
+        order.setAttributes(Map.of("orderId", "o1", "total", 25));
+        WALEntry transaction = WALEntry.forTransaction(List.of(
+                WALEntry.forUpdate("Users", new Key("sam", "SINGLE_KEY_ITEM"), Map.of("orders", 1), List.of("cart")),
+                WALEntry.forItem(OperationType.PUT_ITEM, "Orders", order),
+                WALEntry.forItem(OperationType.DELETE_ITEM, "Carts", keyOnly("sam", "SINGLE_KEY_ITEM"))));
+        Path wal = writeLog(WALEntry.forTable("Users", "userId", null), transaction, WALEntry.forTableDeletion("Orders"));
+
+        // Act & Assert
+        try (WALReader reader = WALReader.open(wal)) {
+            reader.next();
+            assertEquals(transaction, reader.next().entry());
+            assertEquals("Orders", reader.next().entry().tableName());
+        }
+        // skipping over it still learns the names, so a writer continuing the file doesn't reuse their ids
+        try (WALReader reader = WALReader.open(wal)) {
+            reader.skipToEnd();
+            assertEquals(List.of("Users", "Orders", "Carts"), reader.tableNames());
+            assertEquals(3, reader.lastSequence());
+        }
+    }
+
+    @Test
+    void tornTail_shouldStopCleanlyAtLastGoodRecord() throws IOException {
+        // Arrange: two good records, then chop a few bytes off the end of the second one
+        Path wal = writeLog(
+                WALEntry.forTable("Users", "userId", null),
+                WALEntry.forTable("Orders", "orderId", "createdAt"));
+        long goodLength;
+        try (WALReader reader = WALReader.open(wal)) {
+            reader.next();
+            goodLength = reader.validLength();
+        }
+        try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // Act & Assert
+        try (WALReader reader = WALReader.open(wal)) {
+            assertEquals("Users", reader.next().entry().tableName());
+            assertNull(reader.next());
+            assertTrue(reader.hitCorruptTail());
+            assertEquals(goodLength, reader.validLength());
+            assertEquals(1, reader.lastSequence());
+        }
+    }
+
+    @Test
+    void jsonLog_shouldConvertToBinary() throws IOException {
+        // Arrange: the format the WAL used to be written in, including one broken line
+        Path json = tempDir.resolve("wal.json");
+        Files.writeString(json, """
+                {"operationType":"CREATE_TABLE","tableName":"PRs","partitionKeyName":"Authors","sortKeyName":"PRNumber"}
+                {"operationType":"PUT_ITEM","tableName":"PRs","item":{"attributes":{"Authors":"sam","PRNumber":7}}}
+                {"operationType":"PUT_ITEM","tableName":
+                {"operationType":"DELETE_TABLE","tableName":"PRs"}
+                """);
+        Path binary = tempDir.resolve("wal.bin");
+
+        // Act
+        assertTrue(JsonWALConverter.isJsonLog(json));
+        long converted = JsonWALConverter.convert(json, binary);
+
+        // Assert
+        assertEquals(3, converted);
+        assertFalse(JsonWALConverter.isJsonLog(binary));
+        try (WALReader reader = WALReader.open(binary)) {
+            assertEquals(OperationType.CREATE_TABLE, reader.next().entry().operationType());
+            assertEquals(7, reader.next().entry().item().getAttributes().get("PRNumber"));
+            assertEquals(OperationType.DELETE_TABLE, reader.next().entry().operationType());
+            assertNull(reader.next());
+        }
+    }
+
+    private Path writeLog(WALEntry... entries) throws IOException {
+        Path wal = tempDir.resolve("wal.log");
+        WALRecordEncoder encoder = new WALRecordEncoder();
+        BinaryWriter out = new BinaryWriter(16);
+        WALRecordEncoder.writeFileHeader(out, 0);
+        for (int i = 0; i < entries.length; i++) {
+            encoder.encode(i + 1, entries[i], out);
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(out.buffer());
+        }
+        return wal;
+    }
+
+    private static Item keyOnly(String partitionKey, String sortKey) {
+        Item item = new Item();
+        item.setPrimaryKey(new Key(partitionKey, sortKey));
+        return item;
+    }
+}